@@ -164,4 +164,71 @@ public abstract class AbstractCacheTest extends BaseTest {
         assertEquals(2, webServer.getRequestCount());
 
     }
+
+    @Test
+    public void testCacheHitWithVary() throws Exception {
+
+        Uri uri = (new Uri.Builder()).scheme("http").encodedAuthority("localhost:" + port).appendPath(DefaultDispatcher.TEST_CACHE_VARY.substring(1)).build();
+        final String[] language = new String[1];
+
+        String[] requestLanguages = {"en", "fr", "en"};
+        for (String requestLanguage : requestLanguages) {
+            final CountDownLatch countDownLatch = new CountDownLatch(1);
+            Request request = new Request.Builder<JSONObject>(uri).onSuccess(new Request.SuccessCallback<JSONObject>() {
+                @Override
+                public void onSuccess(JSONObject body, HttpResponse response) {
+                    language[0] = body.optString("language");
+                    countDownLatch.countDown();
+                }
+            }).header("Accept-Language", requestLanguage).cacheable().build();
+            requestThreadPool.execute(request);
+            await(countDownLatch);
+            assertEquals(requestLanguage, language[0]);
+        }
+        assertEquals(2, webServer.getRequestCount());
+
+    }
+
+    private void execute(Uri uri) {
+        final CountDownLatch countDownLatch = new CountDownLatch(1);
+        Request request = new Request.Builder<JSONObject>(uri).onSuccess(new Request.SuccessCallback<JSONObject>() {
+            @Override
+            public void onSuccess(JSONObject body, HttpResponse response) {
+                countDownLatch.countDown();
+            }
+        }).cacheable().build();
+        requestThreadPool.execute(request);
+        await(countDownLatch);
+    }
+
+    @Test
+    public void testCacheHitWithExpires() throws Exception {
+        Uri uri = (new Uri.Builder()).scheme("http").encodedAuthority("localhost:" + port).appendPath(DefaultDispatcher.TEST_CACHE_EXPIRES.substring(1)).build();
+        execute(uri);
+        execute(uri);
+        assertEquals(1, webServer.getRequestCount());
+    }
+
+    @Test
+    public void testCacheHitWithHeuristicFreshness() throws Exception {
+        Uri uri = (new Uri.Builder()).scheme("http").encodedAuthority("localhost:" + port).appendPath(DefaultDispatcher.TEST_CACHE_LAST_MODIFIED.substring(1)).build();
+        execute(uri);
+        execute(uri);
+        assertEquals(1, webServer.getRequestCount());
+    }
+
+    @Test
+    public void testCacheHitWithLastModifiedAndExpired() throws Exception {
+        Uri uri = (new Uri.Builder()).scheme("http").encodedAuthority("localhost:" + port).appendPath(DefaultDispatcher.TEST_CACHE_IF_MODIFIED_SINCE.substring(1)).build();
+        execute(uri);
+
+        //Wait for cache expired
+        Thread.sleep(1500);
+
+        execute(uri);
+        webServer.takeRequest();
+        RecordedRequest recordedRequest = webServer.takeRequest();
+        assertNotNull(recordedRequest.getHeader("If-Modified-Since"));
+        assertEquals(2, webServer.getRequestCount());
+    }
 }
@@ -37,8 +37,14 @@ import org.junit.runners.Suite;
         PerformanceTest.class,
         SingleThreadModelTest.class,
         LRUCacheTest.class,
+        CostAwareCacheTest.class,
         FileCacheTest.class,
-        RejectTest.class})
+        RejectTest.class,
+        ImageMarshallerTest.class,
+        ModelMarshallerTest.class,
+        LazyMarshallerTest.class,
+        ElementStreamMarshallerTest.class,
+        BenchmarkTest.class})
 
 public class AllTest {
 
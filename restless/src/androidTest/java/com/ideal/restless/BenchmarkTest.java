@@ -0,0 +1,473 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Ideal Technologies Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.ideal.restless;
+
+import android.os.Debug;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+/**
+ * Microbenchmarks of the hot paths, each reports the time per operation in nanosecond.
+ */
+@RunWith(AndroidJUnit4.class)
+public class BenchmarkTest {
+
+    private static final int WARM_UP = 10000;
+    private static final int ITERATIONS = 100000;
+
+    private static final List<String> CACHE_CONTROL = Arrays.asList("public, max-age=3600, must-revalidate");
+    private static final String DATE = "Sun, 06 Nov 1994 08:49:37 GMT";
+
+    /**
+     * A benchmark body, returns a value depends on the work so it is not optimized away
+     */
+    interface Operation {
+        long run();
+    }
+
+    static long measure(String name, Operation operation) {
+        return measure(name, WARM_UP, ITERATIONS, operation);
+    }
+
+    static long measure(String name, int warmUp, int iterations, Operation operation) {
+        long sink = 0;
+        for (int i = 0; i < warmUp; i++) {
+            sink += operation.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += operation.run();
+        }
+        long perOperation = (System.nanoTime() - start) / iterations;
+        System.out.println(name + ": " + perOperation + "ns/op (" + sink + ")");
+        return perOperation;
+    }
+
+    @Test
+    public void testCacheControlParsing() throws Exception {
+        measure("Cache-Control split", new Operation() {
+            @Override
+            public long run() {
+                long maxAge = 0;
+                for (String d : CACHE_CONTROL.get(0).split(",")) {
+                    d = d.trim();
+                    if (d.startsWith("max-age=")) {
+                        maxAge = Long.parseLong(d.substring(8));
+                    }
+                }
+                return maxAge;
+            }
+        });
+        measure("Cache-Control single pass", new Operation() {
+            @Override
+            public long run() {
+                return ImmutableCacheControl.parse(CACHE_CONTROL).getMaxAge();
+            }
+        });
+        assertEquals(Long.valueOf(3600), ImmutableCacheControl.parse(CACHE_CONTROL).getMaxAge());
+    }
+
+    @Test
+    public void testDateParsing() throws Exception {
+        long simpleDateFormat = measure("SimpleDateFormat", new Operation() {
+            @Override
+            public long run() {
+                try {
+                    //A SimpleDateFormat is created per CacheEntry as it is not thread safe
+                    return new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US).parse(DATE).getTime();
+                } catch (ParseException e) {
+                    throw new AssertionError(e);
+                }
+            }
+        });
+        long httpDate = measure("HttpDate", new Operation() {
+            @Override
+            public long run() {
+                return HttpDate.parse(DATE);
+            }
+        });
+        assertEquals(784111777000L, HttpDate.parse(DATE));
+        assertTrue(httpDate < simpleDateFormat);
+    }
+
+    @Test
+    public void testJsonUnmarshalling() throws Exception {
+        final byte[] content = jsonPayload(2000);
+        final DataMarshaller.JsonDataMarshaller tree = new DataMarshaller.JsonDataMarshaller();
+        final JsonStreamMarshaller.ObjectMarshaller stream = new JsonStreamMarshaller.ObjectMarshaller();
+        Operation parseTree = new Operation() {
+            @Override
+            public long run() {
+                try {
+                    return tree.unmarshal(content).getJSONArray("items").length();
+                } catch (Exception e) {
+                    throw new AssertionError(e);
+                }
+            }
+        };
+        Operation parseStream = new Operation() {
+            @Override
+            public long run() {
+                try {
+                    return stream.unmarshal(content).getJSONArray("items").length();
+                } catch (Exception e) {
+                    throw new AssertionError(e);
+                }
+            }
+        };
+        System.out.println("Payload: " + content.length + " bytes");
+        measure("JsonDataMarshaller", 10, 100, parseTree);
+        measure("JsonStreamMarshaller", 10, 100, parseStream);
+        System.out.println("JsonDataMarshaller allocated: " + allocated(parseTree) + " bytes");
+        System.out.println("JsonStreamMarshaller allocated: " + allocated(parseStream) + " bytes");
+
+        JSONObject expected = tree.unmarshal(content);
+        JSONObject actual = stream.unmarshal(content);
+        assertEquals(2000, actual.getJSONArray("items").length());
+        assertEquals(expected.getJSONArray("items").getJSONObject(7).toString(),
+                actual.getJSONArray("items").getJSONObject(7).toString());
+    }
+
+    @Test
+    public void testBinaryMarshalling() throws Exception {
+        final byte[] json = jsonPayload(2000);
+        final DataMarshaller.JsonDataMarshaller jsonMarshaller = new DataMarshaller.JsonDataMarshaller();
+        final JSONObject payload = jsonMarshaller.unmarshal(json);
+        final MessagePackMarshaller<JSONObject> msgpack = new MessagePackMarshaller<>(JSONObject.class);
+        final CborMarshaller<JSONObject> cbor = new CborMarshaller<>(JSONObject.class);
+        final byte[] msgpackContent = msgpack.marshal(payload);
+        final byte[] cborContent = cbor.marshal(payload);
+        System.out.println("Payload: json=" + json.length + " msgpack=" + msgpackContent.length
+                + " cbor=" + cborContent.length + " bytes");
+
+        measure("JSON encode", 10, 100, new Operation() {
+            @Override
+            public long run() {
+                try {
+                    return jsonMarshaller.marshal(payload).length;
+                } catch (Exception e) {
+                    throw new AssertionError(e);
+                }
+            }
+        });
+        measure("MessagePack encode", 10, 100, new Operation() {
+            @Override
+            public long run() {
+                try {
+                    return msgpack.marshal(payload).length;
+                } catch (Exception e) {
+                    throw new AssertionError(e);
+                }
+            }
+        });
+        measure("CBOR encode", 10, 100, new Operation() {
+            @Override
+            public long run() {
+                try {
+                    return cbor.marshal(payload).length;
+                } catch (Exception e) {
+                    throw new AssertionError(e);
+                }
+            }
+        });
+        measure("JSON decode", 10, 100, new Operation() {
+            @Override
+            public long run() {
+                try {
+                    return jsonMarshaller.unmarshal(json).length();
+                } catch (Exception e) {
+                    throw new AssertionError(e);
+                }
+            }
+        });
+        measure("MessagePack decode", 10, 100, new Operation() {
+            @Override
+            public long run() {
+                try {
+                    return msgpack.unmarshal(msgpackContent).length();
+                } catch (Exception e) {
+                    throw new AssertionError(e);
+                }
+            }
+        });
+        measure("CBOR decode", 10, 100, new Operation() {
+            @Override
+            public long run() {
+                try {
+                    return cbor.unmarshal(cborContent).length();
+                } catch (Exception e) {
+                    throw new AssertionError(e);
+                }
+            }
+        });
+
+        assertTrue(msgpackContent.length < json.length);
+        assertTrue(cborContent.length < json.length);
+        String expected = payload.getJSONArray("items").getJSONObject(7).toString();
+        assertEquals(expected, msgpack.unmarshal(msgpackContent).getJSONArray("items").getJSONObject(7).toString());
+        assertEquals(expected, cbor.unmarshal(cborContent).getJSONArray("items").getJSONObject(7).toString());
+    }
+
+    static class Item {
+        int id;
+        String name;
+        double price;
+        boolean active;
+        List<String> tags;
+        String note;
+    }
+
+    static class Catalog {
+        int count;
+        List<Item> items;
+    }
+
+    @Test
+    public void testModelBinding() throws Exception {
+        final byte[] content = jsonPayload(2000);
+        final DataMarshaller.JsonDataMarshaller tree = new DataMarshaller.JsonDataMarshaller();
+        final ModelMarshaller<Catalog> model = new ModelMarshaller<>(Catalog.class);
+        Operation manual = new Operation() {
+            @Override
+            public long run() {
+                try {
+                    JSONObject json = tree.unmarshal(content);
+                    Catalog catalog = new Catalog();
+                    catalog.count = json.getInt("count");
+                    JSONArray items = json.getJSONArray("items");
+                    catalog.items = new ArrayList<>(items.length());
+                    for (int i = 0; i < items.length(); i++) {
+                        JSONObject o = items.getJSONObject(i);
+                        Item item = new Item();
+                        item.id = o.getInt("id");
+                        item.name = o.getString("name");
+                        item.price = o.getDouble("price");
+                        item.active = o.getBoolean("active");
+                        JSONArray tags = o.getJSONArray("tags");
+                        item.tags = new ArrayList<>(tags.length());
+                        for (int j = 0; j < tags.length(); j++) {
+                            item.tags.add(tags.getString(j));
+                        }
+                        item.note = o.isNull("note") ? null : o.getString("note");
+                        catalog.items.add(item);
+                    }
+                    return catalog.items.size();
+                } catch (Exception e) {
+                    throw new AssertionError(e);
+                }
+            }
+        };
+        Operation bound = new Operation() {
+            @Override
+            public long run() {
+                try {
+                    return model.unmarshal(content).items.size();
+                } catch (Exception e) {
+                    throw new AssertionError(e);
+                }
+            }
+        };
+        measure("JSONObject and manual mapping", 10, 100, manual);
+        measure("ModelMarshaller", 10, 100, bound);
+        System.out.println("JSONObject and manual mapping allocated: " + allocated(manual) + " bytes");
+        System.out.println("ModelMarshaller allocated: " + allocated(bound) + " bytes");
+
+        Catalog catalog = model.unmarshal(content);
+        assertEquals(2000, catalog.count);
+        assertEquals("item 7", catalog.items.get(7).name);
+        assertEquals(10.5, catalog.items.get(7).price);
+        assertEquals(Arrays.asList("new", "sale"), catalog.items.get(7).tags);
+    }
+
+    /**
+     * @return The bytes allocated by the current thread to run the operation once
+     */
+    @SuppressWarnings("deprecation")
+    static long allocated(Operation operation) {
+        Debug.resetThreadAllocSize();
+        Debug.startAllocCounting();
+        try {
+            operation.run();
+        } finally {
+            Debug.stopAllocCounting();
+        }
+        return Debug.getThreadAllocSize();
+    }
+
+    static byte[] jsonPayload(int items) throws Exception {
+        StringBuilder json = new StringBuilder("{\"count\":").append(items).append(",\"items\":[");
+        for (int i = 0; i < items; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"id\":").append(i)
+                    .append(",\"name\":\"item ").append(i).append("\"")
+                    .append(",\"price\":").append(i * 1.5)
+                    .append(",\"active\":").append(i % 2 == 0)
+                    .append(",\"tags\":[\"new\",\"sale\"],\"note\":null}");
+        }
+        return json.append("]}").toString().getBytes("UTF-8");
+    }
+
+    @Test
+    public void testMarshallerResolution() throws Exception {
+        final String contentType = "application/json; charset=utf-8";
+        //The linear scan over the registered content types it replaces
+        final Map<String, List<DataMarshaller<?>>> inbound = new HashMap<>();
+        for (DataMarshaller<?> m : new DataMarshaller<?>[]{new DataMarshaller.StringMarshaller(),
+                new DataMarshaller.ByteArrayMarshaller(), new DataMarshaller.JsonDataMarshaller()}) {
+            for (String type : m.responseContentType()) {
+                inbound.put(type, Collections.singletonList(m));
+            }
+        }
+        measure("Content type scan", new Operation() {
+            @Override
+            public long run() {
+                for (String s : inbound.keySet()) {
+                    if (contentType.contains(s.toLowerCase())) {
+                        return inbound.get(s).size();
+                    }
+                }
+                return 0;
+            }
+        });
+        final DataMarshalProvider provider = DataMarshalProvider.getInstance();
+        measure("Content type index", new Operation() {
+            @Override
+            public long run() {
+                return provider.findMarshaller(contentType).size();
+            }
+        });
+        final Object body = new LinkedHashMap<String, String>() {
+        };
+        measure("Class hierarchy", new Operation() {
+            @Override
+            public long run() {
+                return provider.findMarshaller(body) == null ? 0 : 1;
+            }
+        });
+        assertTrue(provider.findMarshaller(contentType).get(0) instanceof DataMarshaller.JsonDataMarshaller);
+        assertTrue(provider.findMarshaller(body) instanceof DataMarshaller.UrlEncodedFormMarshaller);
+    }
+
+    @Test
+    public void testFormMarshalling() throws Exception {
+        final LinkedHashMap<String, Object> form = new LinkedHashMap<>();
+        form.put("event", "screen_view");
+        form.put("screen", "Home / Feed");
+        form.put("session", "4f1c2a9e-73b0-4d2e-9a51-0c6f8e2d1b7a");
+        form.put("timestamp", 1476748800000L);
+        form.put("locale", "fr_FR");
+        form.put("title", "Caf\u00e9 & cr\u00e8me");
+        form.put("debug", null);
+        final DataMarshaller.UrlEncodedFormMarshaller marshaller = new DataMarshaller.UrlEncodedFormMarshaller();
+
+        //The previous encoding, URLEncoder to a String then to bytes
+        Operation urlEncoder = new Operation() {
+            @Override
+            public long run() {
+                try {
+                    StringBuilder sb = new StringBuilder();
+                    for (Object key : form.keySet()) {
+                        String name = URLEncoder.encode(key.toString(), "UTF-8");
+                        String value = form.get(key) == null ? null : URLEncoder.encode(form.get(key.toString()).toString(), "UTF-8");
+                        if (sb.length() > 0) {
+                            sb.append("&");
+                        }
+                        sb.append(name);
+                        if (value != null) {
+                            sb.append("=");
+                            sb.append(value);
+                        }
+                    }
+                    return sb.toString().getBytes("ISO_8859_1").length;
+                } catch (Exception e) {
+                    throw new AssertionError(e);
+                }
+            }
+        };
+        Operation formCodec = new Operation() {
+            @Override
+            public long run() {
+                return marshaller.marshal(form).length;
+            }
+        };
+        long previous = measure("URLEncoder form", urlEncoder);
+        long current = measure("UrlEncodedFormMarshaller", formCodec);
+        System.out.println("URLEncoder form allocated: " + allocated(urlEncoder) + " bytes");
+        System.out.println("UrlEncodedFormMarshaller allocated: " + allocated(formCodec) + " bytes");
+
+        final byte[] content = marshaller.marshal(form);
+        measure("URLDecoder form", new Operation() {
+            @Override
+            public long run() {
+                try {
+                    Map<String, String> decoded = new LinkedHashMap<>();
+                    for (String pair : new String(content, "US-ASCII").split("&")) {
+                        int separator = pair.indexOf('=');
+                        decoded.put(URLDecoder.decode(separator < 0 ? pair : pair.substring(0, separator), "UTF-8"),
+                                separator < 0 ? null : URLDecoder.decode(pair.substring(separator + 1), "UTF-8"));
+                    }
+                    return decoded.size();
+                } catch (Exception e) {
+                    throw new AssertionError(e);
+                }
+            }
+        });
+        measure("UrlEncodedFormMarshaller unmarshal", new Operation() {
+            @Override
+            public long run() {
+                return marshaller.unmarshal(content).size();
+            }
+        });
+
+        assertEquals(urlEncoder.run(), content.length);
+        assertEquals("Caf\u00e9 & cr\u00e8me", marshaller.unmarshal(content).get("title"));
+        assertTrue(current < previous);
+    }
+}
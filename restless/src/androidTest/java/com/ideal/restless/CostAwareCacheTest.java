@@ -0,0 +1,114 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Ideal Technologies Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.ideal.restless;
+
+import android.net.Uri;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+
+@RunWith(AndroidJUnit4.class)
+public class CostAwareCacheTest extends AbstractCacheTest {
+
+    @Override
+    public Cache getCache() throws IOException {
+        return new CostAwareCache(1024 * 1024);
+    }
+
+    @Test
+    public void testEvictByValue() throws Exception {
+        CostAwareCache cache = new CostAwareCache(20);
+        CacheKey a = key("a");
+        CacheKey b = key("b");
+        CacheEntry entryA = entry(a, 1);
+        CacheEntry entryB = entry(b, 1);
+        cache.create(a, entryA);
+        cache.create(b, entryB);
+        cache.onServed(entryA);
+        cache.onServed(entryA);
+        cache.onServed(entryB);
+
+        //Probing the cache is not a hit
+        for (int i = 0; i < 5; i++) {
+            cache.find(b);
+        }
+        //A new response of the key keeps its hits
+        CacheEntry replaced = entry(a, 1);
+        cache.create(a, replaced);
+        assertEquals(20, cache.size());
+
+        //The costly entry evicts the least valuable one
+        CacheKey c = key("c");
+        CacheEntry entryC = entry(c, 100);
+        cache.create(c, entryC);
+        assertNull(cache.find(b));
+        assertSame(replaced, cache.find(a));
+        List<CacheEntry> entries = cache.entries();
+        assertEquals(2, entries.size());
+        assertSame(entryC, entries.get(0));
+        assertEquals(20, cache.size());
+    }
+
+    @Test
+    public void testEntryLargerThanCache() throws Exception {
+        CostAwareCache cache = new CostAwareCache(20);
+        CacheKey a = key("a");
+        cache.create(a, entry(a, 1));
+        CacheEntry large = new CacheEntry(new HttpResponse(200, "text/plain",
+                new HashMap<String, List<String>>(), new byte[30]));
+        large.setKey(a);
+        cache.create(a, large);
+        assertNull(cache.find(a));
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.entries().size());
+    }
+
+    private static CacheKey key(String path) {
+        return new CacheKey(Uri.parse("http://localhost/" + path));
+    }
+
+    /**
+     * @return An entry of 10 bytes of body stored under the key
+     */
+    private static CacheEntry entry(CacheKey key, long loadTimeMillis) {
+        CacheEntry cacheEntry = new CacheEntry(new HttpResponse(200, "text/plain",
+                new HashMap<String, List<String>>(), new byte[10]));
+        cacheEntry.setKey(key);
+        cacheEntry.setLoadTime(loadTimeMillis * 1000000);
+        return cacheEntry;
+    }
+}
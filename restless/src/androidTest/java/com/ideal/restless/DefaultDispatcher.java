@@ -31,7 +31,11 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.net.HttpURLConnection;
+import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
 
 import okhttp3.mockwebserver.Dispatcher;
 import okhttp3.mockwebserver.MockResponse;
@@ -43,13 +47,31 @@ public class DefaultDispatcher extends Dispatcher {
     public static final String TEST_CACHE = "/test_cache";
     public static final String TEST_CACHE_EXPIRED = "/test_cache_expired";
     public static final String TEST_CACHE_ETAG = "/test_cache_etag";
+    public static final String TEST_CACHE_VARY = "/test_cache_vary";
+    public static final String TEST_CACHE_EXPIRES = "/test_cache_expires";
+    public static final String TEST_CACHE_LAST_MODIFIED = "/test_cache_last_modified";
+    public static final String TEST_CACHE_IF_MODIFIED_SINCE = "/test_cache_if_modified_since";
     public static final String TEST_JSON_ARRAY = "/test_json_array";
     public static final String SLOW = "/slow";
+    public static final String TEST_CACHE_FAMILY = "/test_cache_family";
+    public static final String TEST_MISLABELLED = "/test_mislabelled";
+    public static final String TEST_ELEMENTS = "/test_elements";
+    public static final String TEST_NDJSON = "/test_ndjson";
+    public static final String TEST_JSON_SCALAR = "/test_json_scalar";
 
     @Override
     public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
         request.getBody();
 
+        if (request.getPath().startsWith(TEST_CACHE_FAMILY + "/")) {
+            if (!"GET".equals(request.getMethod())) {
+                return new MockResponse()
+                        .addHeader("Content-Location", request.getPath() + "/created")
+                        .addHeader("Content-type", "application/json")
+                        .setResponseCode(200).setBody(getJsonObject().toString());
+            }
+            return testCacheResponse();
+        }
         switch (request.getPath()) {
             case TEST:
                 return testResponse();
@@ -59,8 +81,30 @@ public class DefaultDispatcher extends Dispatcher {
                 return testCacheExpiredResponse();
             case TEST_CACHE_ETAG:
                 return testCacheResponseWithETag(request);
+            case TEST_CACHE_EXPIRES:
+                return testCacheExpiresResponse();
+            case TEST_CACHE_LAST_MODIFIED:
+                return testCacheLastModifiedResponse();
+            case TEST_CACHE_IF_MODIFIED_SINCE:
+                return testCacheIfModifiedSinceResponse(request);
+            case TEST_CACHE_VARY:
+                return testCacheVaryResponse(request);
             case TEST_JSON_ARRAY:
                 return testJsonArrayResponse();
+            case TEST_MISLABELLED:
+                return new MockResponse()
+                        .addHeader("Content-type", "application/json")
+                        .setResponseCode(200).setBody("<html><body>Maintenance</body></html>");
+            case TEST_JSON_SCALAR:
+                return new MockResponse()
+                        .addHeader("Content-type", "application/json")
+                        .setResponseCode(200).setBody("true\n");
+            case TEST_ELEMENTS:
+                return testElementsResponse();
+            case TEST_NDJSON:
+                return new MockResponse()
+                        .addHeader("Content-type", "application/x-ndjson")
+                        .setResponseCode(200).setBody("{\"id\":0}\n{\"id\":1}\n\n{\"id\":2}\n");
             case SLOW:
                 Thread.sleep(1000);
                 return testResponse();
@@ -98,6 +142,60 @@ public class DefaultDispatcher extends Dispatcher {
         }
     }
 
+    private static String httpDate(long time) {
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return format.format(new Date(time));
+    }
+
+    private MockResponse testCacheExpiresResponse() {
+        long now = System.currentTimeMillis();
+        return new MockResponse()
+                .addHeader("Date", httpDate(now))
+                .addHeader("Expires", httpDate(now + 60000))
+                .addHeader("Content-type", "application/json")
+                .setResponseCode(200).setBody(getJsonObject().toString());
+    }
+
+    private MockResponse testCacheLastModifiedResponse() {
+        long now = System.currentTimeMillis();
+        return new MockResponse()
+                .addHeader("Date", httpDate(now))
+                .addHeader("Last-Modified", httpDate(now - 24 * 60 * 60 * 1000L))
+                .addHeader("Content-type", "application/json")
+                .setResponseCode(200).setBody(getJsonObject().toString());
+    }
+
+    private MockResponse testCacheIfModifiedSinceResponse(RecordedRequest request) {
+        long now = System.currentTimeMillis();
+        if (request.getHeader("If-Modified-Since") == null) {
+            return new MockResponse()
+                    .addHeader("Date", httpDate(now))
+                    .addHeader("Cache-Control", "max-age=1")
+                    .addHeader("Last-Modified", httpDate(now - 60000))
+                    .addHeader("Content-type", "application/json")
+                    .setResponseCode(200).setBody(getJsonObject().toString());
+        } else {
+            return new MockResponse()
+                    .addHeader("Date", httpDate(now))
+                    .setResponseCode(HttpURLConnection.HTTP_NOT_MODIFIED);
+        }
+    }
+
+    private MockResponse testCacheVaryResponse(RecordedRequest request) {
+        JSONObject jsonObject = getJsonObject();
+        try {
+            jsonObject.put("language", request.getHeader("Accept-Language"));
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+        return new MockResponse()
+                .addHeader("Cache-Control", "public, max-age=60")
+                .addHeader("Vary", "Accept-Language")
+                .addHeader("Content-type", "application/json")
+                .setResponseCode(200).setBody(jsonObject.toString());
+    }
+
     private MockResponse testResponse() {
        return new MockResponse()
                 .addHeader("Content-type", "application/json")
@@ -111,6 +209,21 @@ public class DefaultDispatcher extends Dispatcher {
                 .setResponseCode(200).setBody(result);
     }
 
+    /**
+     * A cacheable array of 10 elements, received 64 bytes every 100ms
+     */
+    private MockResponse testElementsResponse() {
+        StringBuilder result = new StringBuilder("[");
+        for (int i = 0; i < 10; i++) {
+            result.append(i == 0 ? "" : ",").append("{\"id\":").append(i).append(",\"name\":\"element\"}");
+        }
+        return new MockResponse()
+                .addHeader("Cache-Control", "public, max-age=60")
+                .addHeader("Content-type", "application/json")
+                .throttleBody(64, 100, TimeUnit.MILLISECONDS)
+                .setResponseCode(200).setBody(result.append("]").toString());
+    }
+
     private JSONObject getJsonObject() {
         JSONObject jsonObject = new JSONObject();
         try {
@@ -0,0 +1,206 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Ideal Technologies Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.ideal.restless;
+
+import android.net.Uri;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+public class ElementStreamMarshallerTest extends BaseTest {
+
+    private RequestThreadPool requestThreadPool;
+
+    static class Element {
+        int id;
+        String name;
+    }
+
+    @Before
+    public void before() throws Exception {
+        requestThreadPool = new RequestThreadPool.Builder().setCorePoolSize(1)
+                .setCache(new LRUCache(100)).build();
+    }
+
+    @After
+    public void after() throws Exception {
+        requestThreadPool.shutdown();
+    }
+
+    private Uri uri(String path) {
+        return (new Uri.Builder()).scheme("http").encodedAuthority("localhost:" + port).appendPath(path.substring(1)).build();
+    }
+
+    @Test
+    public void testStreamArray() throws Exception {
+        for (int attempt = 0; attempt < 2; attempt++) {
+            final List<List<Element>> batches = new ArrayList<>();
+            final long[] time = new long[2];
+            final Object[] count = new Object[1];
+            final CountDownLatch countDownLatch = new CountDownLatch(1);
+            Request request = new Request.Builder<Integer>(uri(DefaultDispatcher.TEST_ELEMENTS))
+                    .setResponseMarshaller(new ElementStreamMarshaller<>(new ModelMarshaller<>(Element.class), 4,
+                            new Request.ElementCallback<Element>() {
+                                @Override
+                                public void onElements(List<Element> elements) {
+                                    if (batches.isEmpty()) {
+                                        time[0] = System.currentTimeMillis();
+                                    }
+                                    batches.add(elements);
+                                }
+                            }))
+                    .onSuccess(new Request.SuccessCallback<Integer>() {
+                        @Override
+                        public void onSuccess(Integer body, HttpResponse response) {
+                            count[0] = body;
+                            time[1] = System.currentTimeMillis();
+                            countDownLatch.countDown();
+                        }
+                    }).cacheable().build();
+            requestThreadPool.execute(request);
+            await(countDownLatch);
+
+            assertEquals(10, count[0]);
+            assertEquals(3, batches.size());
+            assertEquals(4, batches.get(0).size());
+            assertEquals(2, batches.get(2).size());
+            assertEquals(9, batches.get(2).get(1).id);
+            assertEquals("element", batches.get(1).get(0).name);
+            if (attempt == 0) {
+                //The first batch is delivered while the rest of the body is still arriving
+                assertTrue(time[1] - time[0] >= 200);
+            }
+        }
+        //The second attempt streams the cached body
+        assertEquals(1, webServer.getRequestCount());
+    }
+
+    @Test
+    public void testStreamNdjson() throws Exception {
+        final List<Object> elements = new ArrayList<>();
+        final Object[] count = new Object[1];
+        final CountDownLatch countDownLatch = new CountDownLatch(1);
+        Request request = new Request.Builder<Integer>(uri(DefaultDispatcher.TEST_NDJSON))
+                .setResponseMarshaller(ElementStreamMarshaller.of(1, new Request.ElementCallback<Object>() {
+                    @Override
+                    public void onElements(List<Object> batch) {
+                        assertEquals(1, batch.size());
+                        elements.addAll(batch);
+                    }
+                }))
+                .onSuccess(new Request.SuccessCallback<Integer>() {
+                    @Override
+                    public void onSuccess(Integer body, HttpResponse response) {
+                        count[0] = body;
+                        countDownLatch.countDown();
+                    }
+                }).build();
+        requestThreadPool.execute(request);
+        await(countDownLatch);
+
+        assertEquals(3, count[0]);
+        assertEquals(2, ((JSONObject) elements.get(2)).getInt("id"));
+    }
+
+    @Test
+    public void testMalformedElement() throws Exception {
+        final List<Object> elements = new ArrayList<>();
+        ElementStreamMarshaller<Object> marshaller = ElementStreamMarshaller.of(1, new Request.ElementCallback<Object>() {
+            @Override
+            public void onElements(List<Object> batch) {
+                elements.addAll(batch);
+            }
+        });
+
+        assertEquals(Integer.valueOf(0), marshaller.unmarshal(" ".getBytes("UTF-8")));
+        assertEquals(Integer.valueOf(0), marshaller.unmarshal("[]".getBytes("UTF-8")));
+        //Content starting with an array is a JSON document, not NDJSON
+        assertEquals(Integer.valueOf(2), marshaller.unmarshal("[[1],[2]]".getBytes("UTF-8")));
+        assertEquals(Integer.valueOf(2), marshaller.unmarshal("1\n\"a\"".getBytes("UTF-8")));
+        elements.clear();
+
+        //The elements before the malformed one are delivered
+        try {
+            marshaller.unmarshal("[1,2,}".getBytes("UTF-8"));
+            fail();
+        } catch (IOException expected) {
+        }
+        assertEquals(2, elements.size());
+        try {
+            marshaller.unmarshal("[1] 2".getBytes("UTF-8"));
+            fail();
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void testMalformedResponse() throws Exception {
+        final List<Object> elements = new ArrayList<>();
+        final Throwable[] error = new Throwable[1];
+        final CountDownLatch countDownLatch = new CountDownLatch(1);
+        Request request = new Request.Builder<Integer>(uri(DefaultDispatcher.TEST_MISLABELLED))
+                .setResponseMarshaller(ElementStreamMarshaller.of(1, new Request.ElementCallback<Object>() {
+                    @Override
+                    public void onElements(List<Object> batch) {
+                        elements.addAll(batch);
+                    }
+                }))
+                .onSuccess(new Request.SuccessCallback<Integer>() {
+                    @Override
+                    public void onSuccess(Integer body, HttpResponse response) {
+                        countDownLatch.countDown();
+                    }
+                })
+                .onError(new Request.ErrorCallback() {
+                    @Override
+                    public void onError(Throwable t, HttpResponse response) {
+                        error[0] = t;
+                        countDownLatch.countDown();
+                    }
+                }).build();
+        requestThreadPool.execute(request);
+        await(countDownLatch);
+
+        assertTrue(error[0] instanceof IOException);
+        assertEquals(0, elements.size());
+    }
+}
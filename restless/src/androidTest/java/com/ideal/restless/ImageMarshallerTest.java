@@ -0,0 +1,128 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Ideal Technologies Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.ideal.restless;
+
+import android.graphics.Bitmap;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class ImageMarshallerTest {
+
+    @Test
+    public void testSampleSize() {
+        assertEquals(1, ImageMarshaller.sampleSize(1024, 768, 0, 0));
+        assertEquals(1, ImageMarshaller.sampleSize(100, 100, 200, 200));
+        assertEquals(4, ImageMarshaller.sampleSize(1024, 768, 200, 150));
+        assertEquals(2, ImageMarshaller.sampleSize(1024, 768, 300, 300));
+        //Only the width is limited
+        assertEquals(8, ImageMarshaller.sampleSize(1024, 10, 100, 0));
+    }
+
+    @Test
+    public void testDownsample() throws Exception {
+        byte[] png = new ImageMarshaller().marshal(Bitmap.createBitmap(400, 300, Bitmap.Config.ARGB_8888));
+
+        Bitmap full = new ImageMarshaller().unmarshal(png);
+        assertEquals(400, full.getWidth());
+        assertFalse(full.isMutable());
+
+        Bitmap thumbnail = new ImageMarshaller(100, 75).setConfig(Bitmap.Config.RGB_565).unmarshal(png);
+        assertEquals(100, thumbnail.getWidth());
+        assertEquals(75, thumbnail.getHeight());
+        assertEquals(Bitmap.Config.RGB_565, thumbnail.getConfig());
+    }
+
+    @Test(expected = IOException.class)
+    public void testNotAnImage() throws Exception {
+        new ImageMarshaller().unmarshal("<html></html>".getBytes("UTF-8"));
+    }
+
+    @Test
+    public void testBitmapPool() throws Exception {
+        byte[] png = new ImageMarshaller().marshal(Bitmap.createBitmap(64, 64, Bitmap.Config.ARGB_8888));
+        BitmapPool pool = new BitmapPool(1024 * 1024);
+        ImageMarshaller marshaller = new ImageMarshaller().setBitmapPool(pool);
+
+        Bitmap first = marshaller.unmarshal(png);
+        assertTrue(first.isMutable());
+        assertEquals(1, pool.getMissCount());
+
+        pool.put(first);
+        assertEquals(64 * 64 * 4, pool.getSize());
+        Bitmap second = marshaller.unmarshal(png);
+        //The pixels of the given back bitmap are decoded into
+        assertSame(first, second);
+        assertEquals(1, pool.getHitCount());
+        assertEquals(0, pool.getSize());
+
+        //Immutable bitmaps cannot be reused
+        pool.put(Bitmap.createBitmap(8, 8, Bitmap.Config.ARGB_8888).copy(Bitmap.Config.ARGB_8888, false));
+        assertEquals(0, pool.getSize());
+    }
+
+    @Test
+    public void testBitmapPoolEviction() {
+        BitmapPool pool = new BitmapPool(2 * 16 * 16 * 4);
+        Bitmap a = Bitmap.createBitmap(16, 16, Bitmap.Config.ARGB_8888);
+        Bitmap b = Bitmap.createBitmap(16, 16, Bitmap.Config.ARGB_8888);
+        Bitmap c = Bitmap.createBitmap(16, 8, Bitmap.Config.ARGB_8888);
+        pool.put(a);
+        pool.put(b);
+        //The size least recently asked for is recycled first
+        pool.put(c);
+        assertEquals(16 * 16 * 4 + 16 * 8 * 4, pool.getSize());
+        assertTrue(a.isRecycled() != b.isRecycled());
+        assertSame(c, pool.get(16, 8, Bitmap.Config.ARGB_8888));
+        assertNull(pool.get(16, 8, Bitmap.Config.RGB_565));
+
+        pool.clear();
+        assertEquals(0, pool.getSize());
+    }
+
+    @Test
+    public void testContentType() {
+        assertEquals("image/png", new ImageMarshaller().requestContentType());
+        assertEquals("image/jpeg", new ImageMarshaller()
+                .setOutputFormat(Bitmap.CompressFormat.JPEG, 80).requestContentType());
+        assertEquals("image/webp", new ImageMarshaller()
+                .setOutputFormat(Bitmap.CompressFormat.WEBP, 80).requestContentType());
+        assertEquals(ImageMarshaller.class, DataMarshalProvider.getInstance()
+                .findMarshaller("image/webp").get(0).getClass());
+    }
+}
@@ -27,11 +27,33 @@
 
 package com.ideal.restless;
 
+import android.net.Uri;
+import android.support.test.InstrumentationRegistry;
 import android.support.test.runner.AndroidJUnit4;
 
+import org.json.JSONObject;
+import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
+import static junit.framework.Assert.assertNotSame;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
 
 @RunWith(AndroidJUnit4.class)
 public class LRUCacheTest extends AbstractCacheTest {
@@ -41,4 +63,471 @@ public class LRUCacheTest extends AbstractCacheTest {
         return new LRUCache(100);
     }
 
+    @Test
+    public void testDecodedCacheHit() throws Exception {
+        LRUCache cache = new LRUCache(100);
+        cache.setDecodedCacheSize(1024 * 1024);
+        RequestThreadPool threadPool = new RequestThreadPool.Builder().setCorePoolSize(1)
+                .setCache(cache)
+                .build();
+
+        Uri uri = (new Uri.Builder()).scheme("http").encodedAuthority("localhost:" + port).appendPath(DefaultDispatcher.TEST_CACHE.substring(1)).build();
+        final JSONObject[] result = new JSONObject[3];
+        final boolean[] mutated = new boolean[result.length];
+        for (int i = 0; i < result.length; i++) {
+            final CountDownLatch countDownLatch = new CountDownLatch(1);
+            final int index = i;
+            Request request = new Request.Builder<JSONObject>(uri).onSuccess(new Request.SuccessCallback<JSONObject>() {
+                @Override
+                public void onSuccess(JSONObject body, HttpResponse response) {
+                    result[index] = body;
+                    mutated[index] = body.has("mutated");
+                    countDownLatch.countDown();
+                }
+            }).cacheable().build();
+            threadPool.execute(request);
+            await(countDownLatch);
+            //Mutating the delivered object must not affect the next cache hit
+            result[i].put("mutated", true);
+        }
+        threadPool.shutdown();
+
+        assertEquals(1, webServer.getRequestCount());
+        assertNotSame(result[1], result[2]);
+        assertFalse(mutated[1]);
+        assertFalse(mutated[2]);
+        assertEquals(result[0].getLong("key5"), result[2].getLong("key5"));
+    }
+
+    @Test
+    public void testDecodedByTwoMarshallers() throws Exception {
+        LRUCache cache = new LRUCache(100);
+        cache.setDecodedCacheSize(1024 * 1024);
+        CacheEntry cacheEntry = new CacheEntry(new HttpResponse(200, "text/plain",
+                new HashMap<String, List<String>>(), "body".getBytes("UTF-8")));
+        Object string = DecodedObjectCache.decoderOf(new DataMarshaller.StringMarshaller());
+        Object bytes = DecodedObjectCache.decoderOf(new DataMarshaller.ByteArrayMarshaller());
+        cache.putDecoded(cacheEntry, string, "body");
+        cache.putDecoded(cacheEntry, bytes, new byte[]{1});
+        assertEquals("body", cache.getDecoded(cacheEntry, string));
+        assertTrue(Arrays.equals(new byte[]{1}, (byte[]) cache.getDecoded(cacheEntry, bytes)));
+
+        //A marshaller created per request finds the object of the same configuration
+        assertEquals("body", cache.getDecoded(cacheEntry,
+                DecodedObjectCache.decoderOf(new DataMarshaller.StringMarshaller())));
+        assertNull(cache.getDecoded(cacheEntry,
+                DecodedObjectCache.decoderOf(new ImageMarshaller(100, 100))));
+        assertFalse(DecodedObjectCache.decoderOf(new ImageMarshaller(100, 100))
+                .equals(DecodedObjectCache.decoderOf(new ImageMarshaller(200, 200))));
+    }
+
+    @Test
+    public void testStats() throws Exception {
+        LRUCache cache = new LRUCache(100);
+        RequestThreadPool threadPool = new RequestThreadPool.Builder().setCorePoolSize(1)
+                .setCache(cache)
+                .build();
+
+        Uri uri = (new Uri.Builder()).scheme("http").encodedAuthority("localhost:" + port).appendPath(DefaultDispatcher.TEST_CACHE.substring(1)).build();
+        final int[] length = new int[1];
+        for (int i = 0; i < 3; i++) {
+            final CountDownLatch countDownLatch = new CountDownLatch(1);
+            Request request = new Request.Builder<JSONObject>(uri).onSuccess(new Request.SuccessCallback<JSONObject>() {
+                @Override
+                public void onSuccess(JSONObject body, HttpResponse response) {
+                    length[0] = response.getBody().length;
+                    countDownLatch.countDown();
+                }
+            }).cacheable().build();
+            threadPool.execute(request);
+            await(countDownLatch);
+        }
+        threadPool.shutdown();
+
+        CacheStats.Snapshot stats = cache.getStats();
+        assertEquals(2, stats.getHitCount());
+        assertEquals(1, stats.getMissCount());
+        assertEquals(1, stats.getLoadCount());
+        assertEquals(2L * length[0], stats.getBytesSaved());
+        assertEquals(0, stats.getEvictionCount(CacheStats.Eviction.SIZE));
+    }
+
+    @Test
+    public void testEvictedVariant() throws Exception {
+        LRUCache cache = new LRUCache(1);
+        RequestThreadPool threadPool = new RequestThreadPool.Builder().setCorePoolSize(1)
+                .setCache(cache)
+                .build();
+        Uri vary = (new Uri.Builder()).scheme("http").encodedAuthority("localhost:" + port).appendPath(DefaultDispatcher.TEST_CACHE_VARY.substring(1)).build();
+        Uri other = (new Uri.Builder()).scheme("http").encodedAuthority("localhost:" + port).appendPath(DefaultDispatcher.TEST_CACHE.substring(1)).build();
+        execute(threadPool, vary);
+        assertNotNull(cache.find(new CacheKey(vary)));
+
+        //The variant is evicted by size, the primary key does not keep serving it
+        execute(threadPool, other);
+        threadPool.shutdown();
+        assertNull(cache.find(new CacheKey(vary)));
+        assertEquals(1, cache.entries().size());
+    }
+
+    @Test
+    public void testExpirySweepOfStoredEntries() throws Exception {
+        LRUCache cache = new LRUCache(100);
+        RequestThreadPool threadPool = new RequestThreadPool.Builder().setCorePoolSize(1)
+                .setCache(cache)
+                .build();
+        Uri uri = (new Uri.Builder()).scheme("http").encodedAuthority("localhost:" + port).appendPath(DefaultDispatcher.TEST_CACHE_EXPIRED.substring(1)).build();
+        execute(threadPool, uri);
+        threadPool.shutdown();
+        assertNotNull(cache.find(new CacheKey(uri)));
+
+        //The entry stored before the sweeper is enabled, then moved to the replacing sweeper
+        cache.setExpirySweepInterval(50, TimeUnit.MILLISECONDS);
+        cache.setExpirySweepInterval(100, TimeUnit.MILLISECONDS);
+        Thread.sleep(2000);
+        cache.setExpirySweepInterval(0, TimeUnit.MILLISECONDS);
+        assertNull(cache.find(new CacheKey(uri)));
+    }
+
+    @Test
+    public void testSnapshot() throws Exception {
+        File file = new File(InstrumentationRegistry.getTargetContext().getCacheDir(), "snapshot");
+        file.delete();
+        Uri uri = (new Uri.Builder()).scheme("http").encodedAuthority("localhost:" + port).appendPath(DefaultDispatcher.TEST_CACHE.substring(1)).build();
+
+        LRUCache cache = new LRUCache(100);
+        cache.setSnapshot(file, 100, 0, TimeUnit.SECONDS);
+        RequestThreadPool threadPool = new RequestThreadPool.Builder().setCorePoolSize(1)
+                .setCache(cache)
+                .build();
+        execute(threadPool, uri);
+        threadPool.shutdown();
+        cache.writeSnapshot().get();
+        cache.setSnapshot(null, 0, 0, TimeUnit.SECONDS);
+        assertTrue(file.exists());
+
+        //A new cache restores the response from the snapshot
+        LRUCache restored = new LRUCache(100);
+        restored.setSnapshot(file, 100, 0, TimeUnit.SECONDS);
+        threadPool = new RequestThreadPool.Builder().setCorePoolSize(1)
+                .setCache(restored)
+                .build();
+        execute(threadPool, uri);
+        threadPool.shutdown();
+        restored.setSnapshot(null, 0, 0, TimeUnit.SECONDS);
+
+        assertEquals(1, webServer.getRequestCount());
+        assertEquals(1, restored.getStats().getHitCount());
+        file.delete();
+    }
+
+    @Test
+    public void testCorruptSnapshot() throws Exception {
+        File file = new File(InstrumentationRegistry.getTargetContext().getCacheDir(), "snapshot");
+        file.delete();
+        Uri uri = (new Uri.Builder()).scheme("http").encodedAuthority("localhost:" + port).appendPath(DefaultDispatcher.TEST_CACHE.substring(1)).build();
+
+        LRUCache cache = new LRUCache(100);
+        cache.setSnapshot(file, 100, 0, TimeUnit.SECONDS);
+        RequestThreadPool threadPool = new RequestThreadPool.Builder().setCorePoolSize(1)
+                .setCache(cache)
+                .build();
+        execute(threadPool, uri);
+        threadPool.shutdown();
+        cache.writeSnapshot().get();
+        cache.setSnapshot(null, 0, 0, TimeUnit.SECONDS);
+
+        //The index count is beyond the index
+        RandomAccessFile snapshot = new RandomAccessFile(file, "rw");
+        snapshot.seek(snapshot.length() - 12);
+        snapshot.seek(snapshot.readLong());
+        snapshot.writeInt(Integer.MAX_VALUE);
+        snapshot.close();
+
+        //The corrupt snapshot is dropped, the request does not wait for it
+        LRUCache restored = new LRUCache(100);
+        restored.setSnapshot(file, 100, 0, TimeUnit.SECONDS);
+        threadPool = new RequestThreadPool.Builder().setCorePoolSize(1)
+                .setCache(restored)
+                .build();
+        execute(threadPool, uri);
+        threadPool.shutdown();
+        restored.setSnapshot(null, 0, 0, TimeUnit.SECONDS);
+
+        assertEquals(2, webServer.getRequestCount());
+        file.delete();
+    }
+
+    @Test
+    public void testBundle() throws Exception {
+        Uri uri = (new Uri.Builder()).scheme("http").encodedAuthority("localhost:" + port).appendPath(DefaultDispatcher.TEST_CACHE_ETAG.substring(1)).build();
+        LRUCache cache = new LRUCache(100);
+        RequestThreadPool threadPool = new RequestThreadPool.Builder().setCorePoolSize(1)
+                .setCache(cache)
+                .build();
+        execute(threadPool, uri);
+        threadPool.shutdown();
+        ByteArrayOutputStream bundle = new ByteArrayOutputStream();
+        assertEquals(1, CacheBundle.exportBundle(cache, bundle));
+
+        //The imported response is stale and revalidated with its ETag
+        Thread.sleep(1100);
+        LRUCache imported = new LRUCache(100);
+        assertEquals(1, CacheBundle.importBundle(imported, new ByteArrayInputStream(bundle.toByteArray())));
+        threadPool = new RequestThreadPool.Builder().setCorePoolSize(1)
+                .setCache(imported)
+                .build();
+        execute(threadPool, uri);
+        threadPool.shutdown();
+
+        assertEquals(2, webServer.getRequestCount());
+        webServer.takeRequest();
+        assertEquals("x12345", webServer.takeRequest().getHeader("If-None-Match"));
+        assertEquals(1, imported.getStats().getRevalidationCount());
+    }
+
+    @Test
+    public void testCorruptBundle() throws Exception {
+        ByteArrayOutputStream bundle = new ByteArrayOutputStream();
+        CacheBundle.exportBundle(new LRUCache(100), bundle);
+        byte[] content = bundle.toByteArray();
+        //A negative count
+        content[8] = (byte) 0x80;
+        try {
+            CacheBundle.importBundle(new LRUCache(100), new ByteArrayInputStream(content));
+            fail();
+        } catch (IOException expected) {
+        }
+        //A count beyond the content
+        content[8] = 0x7f;
+        try {
+            CacheBundle.importBundle(new LRUCache(100), new ByteArrayInputStream(content));
+            fail();
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void testInvalidatePrefix() throws Exception {
+        LRUCache cache = new LRUCache(100);
+        RequestThreadPool threadPool = new RequestThreadPool.Builder().setCorePoolSize(1)
+                .setCache(cache)
+                .build();
+        Uri user = Uri.parse("http://localhost:" + port + DefaultDispatcher.TEST_CACHE_FAMILY + "/users/42");
+        Uri friends = Uri.parse("http://localhost:" + port + DefaultDispatcher.TEST_CACHE_FAMILY + "/users/42/friends?page=1");
+        Uri other = Uri.parse("http://localhost:" + port + DefaultDispatcher.TEST_CACHE_FAMILY + "/users/420");
+        execute(threadPool, user);
+        execute(threadPool, friends);
+        execute(threadPool, other);
+
+        assertEquals(2, cache.invalidatePrefix(user));
+        execute(threadPool, other);
+        assertEquals(3, webServer.getRequestCount());
+        execute(threadPool, friends);
+        assertEquals(4, webServer.getRequestCount());
+
+        assertEquals(2, cache.invalidateHost(user));
+        assertEquals(0, cache.invalidatePrefix(user));
+        threadPool.shutdown();
+        assertEquals(4, cache.getStats().getEvictionCount(CacheStats.Eviction.EXPLICIT));
+    }
+
+    @Test
+    public void testInvalidateOnPost() throws Exception {
+        LRUCache cache = new LRUCache(100);
+        RequestThreadPool threadPool = new RequestThreadPool.Builder().setCorePoolSize(1)
+                .setCache(cache)
+                .build();
+        Uri item = Uri.parse("http://localhost:" + port + DefaultDispatcher.TEST_CACHE_FAMILY + "/items/7");
+        Uri created = Uri.parse("http://localhost:" + port + DefaultDispatcher.TEST_CACHE_FAMILY + "/items/7/created");
+        Uri other = Uri.parse("http://localhost:" + port + DefaultDispatcher.TEST_CACHE_FAMILY + "/items/70");
+        execute(threadPool, item);
+        execute(threadPool, created);
+        execute(threadPool, other);
+
+        final CountDownLatch countDownLatch = new CountDownLatch(1);
+        Request request = new Request.Builder<JSONObject>(item).post(new JSONObject()).onSuccess(new Request.SuccessCallback<JSONObject>() {
+            @Override
+            public void onSuccess(JSONObject body, HttpResponse response) {
+                countDownLatch.countDown();
+            }
+        }).build();
+        threadPool.execute(request);
+        await(countDownLatch);
+        assertEquals(4, webServer.getRequestCount());
+
+        //The request uri and the Content-Location uri are invalidated
+        execute(threadPool, item);
+        execute(threadPool, created);
+        execute(threadPool, other);
+        threadPool.shutdown();
+        assertEquals(6, webServer.getRequestCount());
+        assertEquals(2, cache.getStats().getEvictionCount(CacheStats.Eviction.EXPLICIT));
+    }
+
+    @Test
+    public void testCacheOnly() throws Exception {
+        RequestThreadPool threadPool = new RequestThreadPool.Builder().setCorePoolSize(1)
+                .setCache(new LRUCache(100))
+                .build();
+        Uri uri = (new Uri.Builder()).scheme("http").encodedAuthority("localhost:" + port).appendPath(DefaultDispatcher.TEST_CACHE.substring(1)).build();
+
+        final Throwable[] error = new Throwable[1];
+        final CountDownLatch missLatch = new CountDownLatch(1);
+        Request request = new Request.Builder<JSONObject>(uri).onError(new Request.ErrorCallback() {
+            @Override
+            public void onError(Throwable t, HttpResponse httpResponse) {
+                error[0] = t;
+                missLatch.countDown();
+            }
+        }).retry(3).cachePolicy(CachePolicy.CACHE_ONLY).build();
+        threadPool.execute(request);
+        await(missLatch);
+        assertTrue(error[0] instanceof Request.CacheMissException);
+        assertEquals(0, webServer.getRequestCount());
+
+        execute(threadPool, uri);
+        final CountDownLatch hitLatch = new CountDownLatch(1);
+        request = new Request.Builder<JSONObject>(uri).onSuccess(new Request.SuccessCallback<JSONObject>() {
+            @Override
+            public void onSuccess(JSONObject body, HttpResponse response) {
+                hitLatch.countDown();
+            }
+        }).cachePolicy(CachePolicy.CACHE_ONLY).build();
+        threadPool.execute(request);
+        await(hitLatch);
+        threadPool.shutdown();
+        assertEquals(1, webServer.getRequestCount());
+    }
+
+    @Test
+    public void testCacheThenNetwork() throws Exception {
+        RequestThreadPool threadPool = new RequestThreadPool.Builder().setCorePoolSize(1)
+                .setCache(new LRUCache(100))
+                .build();
+        Uri uri = (new Uri.Builder()).scheme("http").encodedAuthority("localhost:" + port).appendPath(DefaultDispatcher.TEST_CACHE_ETAG.substring(1)).build();
+        execute(threadPool, uri);
+
+        final AtomicInteger delivered = new AtomicInteger();
+        final CountDownLatch countDownLatch = new CountDownLatch(1);
+        Request request = new Request.Builder<JSONObject>(uri).onSuccess(new Request.SuccessCallback<JSONObject>() {
+            @Override
+            public void onSuccess(JSONObject body, HttpResponse response) {
+                delivered.incrementAndGet();
+                countDownLatch.countDown();
+            }
+        }).cachePolicy(CachePolicy.CACHE_THEN_NETWORK).responseOnBackgroundThread().build();
+        threadPool.execute(request);
+        await(countDownLatch);
+
+        //The single worker thread runs the next request once the revalidation is done
+        execute(threadPool, Uri.parse("http://localhost:" + port + DefaultDispatcher.TEST_CACHE));
+        threadPool.shutdown();
+        assertEquals(3, webServer.getRequestCount());
+        //The 304 response is not delivered again
+        assertEquals(1, delivered.get());
+    }
+
+    @Test
+    public void testRefreshAhead() throws Exception {
+        LRUCache cache = new LRUCache(100);
+        cache.setRefreshAhead(0.5f, 1);
+        RequestThreadPool threadPool = new RequestThreadPool.Builder().setCorePoolSize(1)
+                .setCache(cache)
+                .build();
+        Uri uri = (new Uri.Builder()).scheme("http").encodedAuthority("localhost:" + port).appendPath(DefaultDispatcher.TEST_CACHE_ETAG.substring(1)).build();
+        execute(threadPool, uri);
+        execute(threadPool, uri);
+        assertEquals(1, webServer.getRequestCount());
+
+        //Read after half of the 1 second max-age, the hit is served and refreshed in background
+        Thread.sleep(600);
+        execute(threadPool, uri);
+        //The single worker thread runs the next request once the refresh is done
+        execute(threadPool, Uri.parse("http://localhost:" + port + DefaultDispatcher.TEST_CACHE));
+        threadPool.shutdown();
+        assertEquals(3, webServer.getRequestCount());
+        assertEquals(2, cache.getStats().getHitCount());
+        assertEquals(1, cache.getStats().getRevalidationCount());
+    }
+
+    @Test
+    public void testNegativeCaching() throws Exception {
+        LRUCache cache = new LRUCache(100);
+        cache.setNegativeCaching(1, TimeUnit.SECONDS, false);
+        RequestThreadPool threadPool = new RequestThreadPool.Builder().setCorePoolSize(1)
+                .setCache(cache)
+                .build();
+        Uri uri = Uri.parse("http://localhost:" + port + "/missing");
+        for (int i = 0; i < 2; i++) {
+            final Throwable[] error = new Throwable[1];
+            final HttpResponse[] delivered = new HttpResponse[1];
+            final CountDownLatch countDownLatch = new CountDownLatch(1);
+            Request request = new Request.Builder<JSONObject>(uri).onError(new Request.ErrorCallback() {
+                @Override
+                public void onError(Throwable t, HttpResponse httpResponse) {
+                    error[0] = t;
+                    delivered[0] = httpResponse;
+                    countDownLatch.countDown();
+                }
+            }).retry(3).retryInterval(10).cacheable().build();
+            threadPool.execute(request);
+            await(countDownLatch);
+            //The retry is served by the cached 404 response
+            assertTrue(error[0] instanceof Request.CachedErrorException);
+            assertEquals(404, ((Request.CachedErrorException) error[0]).getStatusCode());
+            assertEquals(404, (int) delivered[0].getStatusCode());
+        }
+        threadPool.shutdown();
+        assertEquals(1, webServer.getRequestCount());
+    }
+
+    private void execute(RequestThreadPool threadPool, Uri uri) {
+        final CountDownLatch countDownLatch = new CountDownLatch(1);
+        Request request = new Request.Builder<JSONObject>(uri).onSuccess(new Request.SuccessCallback<JSONObject>() {
+            @Override
+            public void onSuccess(JSONObject body, HttpResponse response) {
+                countDownLatch.countDown();
+            }
+        }).cacheable().build();
+        threadPool.execute(request);
+        await(countDownLatch);
+    }
+
+    @Test
+    public void testOffHeapCacheHit() throws Exception {
+        OffHeapLRUCache cache = new OffHeapLRUCache(1024 * 1024);
+        RequestThreadPool threadPool = new RequestThreadPool.Builder().setCorePoolSize(1)
+                .setCache(cache)
+                .build();
+
+        Uri uri = (new Uri.Builder()).scheme("http").encodedAuthority("localhost:" + port).appendPath(DefaultDispatcher.TEST_CACHE.substring(1)).build();
+        final byte[][] body = new byte[2][];
+        final boolean[] readOnly = new boolean[body.length];
+        final HttpResponse[] delivered = new HttpResponse[body.length];
+        for (int i = 0; i < body.length; i++) {
+            final CountDownLatch countDownLatch = new CountDownLatch(1);
+            final int index = i;
+            Request request = new Request.Builder<JSONObject>(uri).onSuccess(new Request.SuccessCallback<JSONObject>() {
+                @Override
+                public void onSuccess(JSONObject result, HttpResponse response) {
+                    readOnly[index] = response.getBodyBuffer().isReadOnly();
+                    body[index] = response.getBody();
+                    delivered[index] = response;
+                    countDownLatch.countDown();
+                }
+            }).cacheable().build();
+            threadPool.execute(request);
+            await(countDownLatch);
+        }
+        threadPool.shutdown();
+
+        assertEquals(1, webServer.getRequestCount());
+        assertTrue(readOnly[1]);
+        assertTrue(Arrays.equals(body[0], body[1]));
+        assertTrue(cache.getReservedBytes() > 0);
+        //The heap copy stays valid after the callback returns
+        assertTrue(Arrays.equals(body[1], delivered[1].getBody()));
+    }
+
 }
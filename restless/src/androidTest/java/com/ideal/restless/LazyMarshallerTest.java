@@ -0,0 +1,203 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Ideal Technologies Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.ideal.restless;
+
+import android.net.Uri;
+import android.support.test.runner.AndroidJUnit4;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+
+@RunWith(AndroidJUnit4.class)
+public class LazyMarshallerTest extends BaseTest {
+
+    private static final String JSON = "{ \"id\" : 7, \"name\":\"Ann \\\"A\\\"\", \"a\\u0062c\":true,"
+            + "\"tags\":[\"x\",{\"y\":\"]}\"}], \"owner\":{\"id\":2,\"address\":{\"city\":\"Z\\u00fcrich\"},"
+            + "\"broken\":[1,}}, \"ratio\":-1.5e2, \"none\":null, \"id\":8 }";
+
+    private static class CountingMarshaller extends DataMarshaller.JsonDataMarshaller {
+
+        final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public JSONObject unmarshal(byte[] content) throws UnsupportedEncodingException, JSONException {
+            count.incrementAndGet();
+            return super.unmarshal(content);
+        }
+    }
+
+    @Test
+    public void testLazyObject() throws Exception {
+        LazyJsonObject object = new LazyJsonObject(JSON.getBytes("UTF-8"));
+
+        //The last duplicate wins, the names keep their order
+        assertEquals(8, object.getInt("id"));
+        assertEquals(Arrays.asList("id", "name", "abc", "tags", "owner", "ratio", "none"), object.names());
+        assertEquals("Ann \"A\"", object.getString("name"));
+        assertTrue(object.getBoolean("abc"));
+        assertEquals("]}", object.getJSONArray("tags").getJSONObject(1).getString("y"));
+        assertEquals(-150.0, object.getDouble("ratio"));
+        assertTrue(object.isNull("none"));
+        assertTrue(object.isNull("missing"));
+        assertNull(object.opt("missing"));
+
+        //The malformed member is skipped over, only parsing it fails
+        LazyJsonObject owner = object.getLazyObject("owner");
+        assertEquals(2, owner.getLong("id"));
+        assertEquals("Z\u00fcrich", owner.getLazyObject("address").getString("city"));
+        try {
+            owner.get("broken");
+            fail();
+        } catch (JSONException expected) {
+        }
+        try {
+            object.getLazyObject("tags");
+            fail();
+        } catch (JSONException expected) {
+        }
+        try {
+            object.get("missing");
+            fail();
+        } catch (JSONException expected) {
+        }
+
+        LazyJsonObject empty = new LazyJsonObject(" {} ".getBytes("UTF-8"));
+        assertEquals(0, empty.length());
+        assertEquals(0, empty.toJSONObject().length());
+        try {
+            new LazyJsonObject("[1]".getBytes("UTF-8")).length();
+            fail();
+        } catch (JSONException expected) {
+        }
+    }
+
+    @Test
+    public void testLazy() throws Exception {
+        CountingMarshaller json = new CountingMarshaller();
+        Lazy.Marshaller<JSONObject> marshaller = new Lazy.Marshaller<>(json);
+        Lazy<JSONObject> lazy = marshaller.unmarshal("{\"k\":1}".getBytes("UTF-8"));
+        assertFalse(lazy.isTransformed());
+        assertEquals(0, json.count.get());
+        assertEquals(1, lazy.get().getInt("k"));
+        assertEquals(1, lazy.get().getInt("k"));
+        assertTrue(lazy.isTransformed());
+        assertEquals(1, json.count.get());
+        assertEquals(Lazy.class, marshaller.getType());
+        assertNull(marshaller.requestContentType());
+
+        //A failed transformation is not remembered
+        Lazy<JSONObject> broken = marshaller.unmarshal("{".getBytes("UTF-8"));
+        for (int i = 0; i < 2; i++) {
+            try {
+                broken.get();
+                fail();
+            } catch (JSONException expected) {
+            }
+        }
+        assertFalse(broken.isTransformed());
+        assertEquals(3, json.count.get());
+    }
+
+    @Test
+    public void testLazyResponse() throws Exception {
+        RequestThreadPool requestThreadPool = new RequestThreadPool.Builder().build();
+        try {
+            Uri uri = (new Uri.Builder()).scheme("http").encodedAuthority("localhost:" + port).appendPath("test").build();
+            final CountingMarshaller json = new CountingMarshaller();
+            final CountDownLatch countDownLatch = new CountDownLatch(1);
+            final Object[] result = new Object[1];
+            Request request = new Request.Builder<Lazy<JSONObject>>(uri)
+                    .setResponseMarshaller(new Lazy.Marshaller<>(json))
+                    .onSuccess(new Request.SuccessCallback<Lazy<JSONObject>>() {
+                        @Override
+                        public void onSuccess(Lazy<JSONObject> body, HttpResponse response) {
+                            result[0] = body;
+                            countDownLatch.countDown();
+                        }
+                    }).responseOnBackgroundThread().build();
+            requestThreadPool.execute(request);
+            await(countDownLatch);
+
+            //The body stays readable after the response is released
+            assertEquals(0, json.count.get());
+            assertEquals("value1", ((Lazy<JSONObject>) result[0]).get().getString("key1"));
+            assertEquals(1, json.count.get());
+        } finally {
+            requestThreadPool.shutdown();
+        }
+    }
+
+    @Test
+    public void testFireAndForget() throws Exception {
+        //A single thread runs the requests in order
+        RequestThreadPool requestThreadPool = new RequestThreadPool.Builder().setCorePoolSize(1).build();
+        try {
+            Uri uri = (new Uri.Builder()).scheme("http").encodedAuthority("localhost:" + port).appendPath("test").build();
+            final CountingMarshaller json = new CountingMarshaller();
+            final boolean[] error = {false};
+            requestThreadPool.execute(new Request.Builder<JSONObject>(uri)
+                    .setResponseMarshaller(json)
+                    .onError(new Request.ErrorCallback() {
+                        @Override
+                        public void onError(Throwable t, HttpResponse response) {
+                            error[0] = true;
+                        }
+                    }).responseOnBackgroundThread().build());
+
+            final CountDownLatch countDownLatch = new CountDownLatch(1);
+            requestThreadPool.execute(new Request.Builder<JSONObject>(uri)
+                    .onSuccess(new Request.SuccessCallback<JSONObject>() {
+                        @Override
+                        public void onSuccess(JSONObject body, HttpResponse response) {
+                            countDownLatch.countDown();
+                        }
+                    }).responseOnBackgroundThread().build());
+            await(countDownLatch);
+
+            //The response without success callback is never transformed
+            assertEquals(2, webServer.getRequestCount());
+            assertEquals(0, json.count.get());
+            assertFalse(error[0]);
+        } finally {
+            requestThreadPool.shutdown();
+        }
+    }
+}
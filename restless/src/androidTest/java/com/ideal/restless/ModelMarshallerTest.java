@@ -0,0 +1,148 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Ideal Technologies Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.ideal.restless;
+
+import android.support.test.runner.AndroidJUnit4;
+
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class ModelMarshallerTest {
+
+    enum Role {
+        ADMIN, USER
+    }
+
+    static class Entity {
+        long id;
+    }
+
+    static class Person extends Entity {
+        @ModelMarshaller.Name("first_name")
+        String firstName;
+        int age;
+        double score;
+        boolean active = true;
+        Integer rank;
+        Role role;
+        List<String> tags;
+        Set<Role> roles;
+        int[] lucky;
+        Map<String, Integer> counts;
+        Person manager;
+        List<Person> reports;
+        JSONObject extra;
+        transient String secret = "secret";
+    }
+
+    static class NoDefaultConstructor {
+        NoDefaultConstructor(int value) {
+        }
+    }
+
+    private final ModelMarshaller<Person> marshaller = new ModelMarshaller<>(Person.class);
+
+    @Test
+    public void testRead() throws Exception {
+        Person person = marshaller.unmarshal(("{\"id\":9000000000,\"first_name\":\"Ann\",\"age\":41,"
+                + "\"score\":1.5,\"active\":false,\"rank\":null,\"role\":\"ADMIN\",\"tags\":[\"a\",\"b\"],"
+                + "\"roles\":[\"USER\",\"USER\",\"UNKNOWN\"],\"lucky\":[3,7],\"counts\":{\"x\":1},"
+                + "\"manager\":{\"first_name\":\"Bob\",\"reports\":[]},\"reports\":[{\"age\":20},null],"
+                + "\"extra\":{\"k\":[1,{\"n\":null}]},\"unknown\":{\"deep\":[1,2,3]},\"secret\":\"leak\"}").getBytes("UTF-8"));
+
+        assertEquals(9000000000L, person.id);
+        assertEquals("Ann", person.firstName);
+        assertEquals(41, person.age);
+        assertEquals(1.5, person.score);
+        assertFalse(person.active);
+        assertNull(person.rank);
+        assertEquals(Role.ADMIN, person.role);
+        assertEquals(Arrays.asList("a", "b"), person.tags);
+        //A set keeps the distinct values, the unknown constant is null
+        assertEquals(2, person.roles.size());
+        assertTrue(person.roles.contains(null));
+        assertEquals(7, person.lucky[1]);
+        assertEquals(Integer.valueOf(1), person.counts.get("x"));
+        assertEquals("Bob", person.manager.firstName);
+        assertEquals(0, person.manager.reports.size());
+        assertEquals(20, person.reports.get(0).age);
+        assertNull(person.reports.get(1));
+        assertEquals(JSONObject.NULL, person.extra.getJSONArray("k").getJSONObject(1).get("n"));
+        assertEquals("secret", person.secret);
+    }
+
+    @Test
+    public void testWrite() throws Exception {
+        Person person = new Person();
+        person.id = 1;
+        person.firstName = "Ann";
+        person.role = Role.USER;
+        person.tags = Arrays.asList("a", null);
+        person.manager = new Person();
+        person.manager.firstName = "Bob";
+
+        JSONObject json = new JSONObject(new String(marshaller.marshal(person), "UTF-8"));
+        assertEquals(1, json.getInt("id"));
+        assertEquals("Ann", json.getString("first_name"));
+        assertEquals("USER", json.getString("role"));
+        assertEquals(JSONObject.NULL, json.getJSONArray("tags").get(1));
+        assertEquals("Bob", json.getJSONObject("manager").getString("first_name"));
+        assertTrue(json.getBoolean("active"));
+        //Null and transient fields are left out
+        assertFalse(json.has("rank"));
+        assertFalse(json.has("secret"));
+
+        Person read = marshaller.unmarshal(marshaller.marshal(person));
+        assertEquals("Bob", read.manager.firstName);
+    }
+
+    @Test
+    public void testOutbound() throws Exception {
+        DataMarshalProvider.getInstance().register(marshaller);
+        Person person = new Person();
+        person.age = 3;
+        assertEquals("application/json", DataMarshalProvider.getInstance().marshal(person).first);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoDefaultConstructor() {
+        new ModelMarshaller<>(NoDefaultConstructor.class);
+    }
+}
@@ -33,6 +33,7 @@ import android.os.Looper;
 import android.support.test.runner.AndroidJUnit4;
 
 import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
 import org.junit.After;
 import org.junit.Before;
@@ -44,6 +45,7 @@ import static junit.framework.Assert.assertNull;
 import static junit.framework.Assert.assertTrue;
 
 import java.io.FileNotFoundException;
+import java.io.UnsupportedEncodingException;
 import java.net.HttpURLConnection;
 import java.net.SocketTimeoutException;
 import java.util.LinkedHashMap;
@@ -153,6 +155,44 @@ public class NetworkTest extends BaseTest {
 
 
 
+    @Test
+    public void testDecodeStage() throws Exception {
+        RequestThreadPool staged = new RequestThreadPool.Builder().setDecodeStage().build();
+        try {
+            final CountDownLatch countDownLatch = new CountDownLatch(1);
+            Uri uri = (new Uri.Builder()).scheme("http").encodedAuthority("localhost:" + port).appendPath("test").build();
+            final String[] thread = new String[2];
+            Request request = new Request.Builder<JSONObject>(uri)
+                    .setResponseMarshaller(new DataMarshaller.JsonDataMarshaller() {
+                        @Override
+                        public JSONObject unmarshal(byte[] content) throws UnsupportedEncodingException, JSONException {
+                            thread[0] = Thread.currentThread().getName();
+                            return super.unmarshal(content);
+                        }
+                    })
+                    .onSuccess(new Request.SuccessCallback<JSONObject>() {
+                        @Override
+                        public void onSuccess(JSONObject body, HttpResponse response) {
+                            thread[1] = Thread.currentThread().getName();
+                            countDownLatch.countDown();
+                        }
+                    }).responseOnBackgroundThread().build();
+
+            staged.execute(request);
+            await(countDownLatch);
+
+            //Transformed and delivered by the decode stage, not the network thread
+            assertTrue(thread[0].startsWith("HTTP-Decode-"));
+            assertEquals(thread[0], thread[1]);
+            assertEquals(1, staged.getNetworkStats().getPoolSize());
+            assertEquals(Runtime.getRuntime().availableProcessors(), staged.getDecodeStats().getPoolSize());
+            assertNull(requestThreadPool.getDecodeStats());
+        } finally {
+            staged.shutdown();
+        }
+    }
+
+
     @Test
     public void testRetry() throws Exception {
         final CountDownLatch countDownLatch = new CountDownLatch(1);
@@ -215,6 +255,48 @@ public class NetworkTest extends BaseTest {
         assertEquals(expect.toString(), webServer.takeRequest().getBody().readUtf8());
     }
 
+    @Test
+    public void testContentMismatch() throws Exception {
+        final CountDownLatch countDownLatch = new CountDownLatch(1);
+        Uri uri = (new Uri.Builder()).scheme("http").encodedAuthority("localhost:" + port).appendPath(DefaultDispatcher.TEST_MISLABELLED.substring(1)).build();
+        final Throwable[] error = new Throwable[1];
+        Request request = new Request.Builder<JSONObject>(uri).onSuccess(new Request.SuccessCallback<JSONObject>() {
+            @Override
+            public void onSuccess(JSONObject body, HttpResponse response) {
+                countDownLatch.countDown();
+            }
+        }).onError(new Request.ErrorCallback() {
+            @Override
+            public void onError(Throwable t, HttpResponse httpResponse) {
+                error[0] = t;
+                countDownLatch.countDown();
+            }
+        }).build();
+
+        requestThreadPool.execute(request);
+        await(countDownLatch);
+        assertTrue(error[0] instanceof DataMarshalProvider.ContentMismatchException);
+        assertEquals("text/plain", ((DataMarshalProvider.ContentMismatchException) error[0]).getDetectedType());
+    }
+
+    @Test
+    public void testJsonScalar() throws Exception {
+        final CountDownLatch countDownLatch = new CountDownLatch(1);
+        Uri uri = (new Uri.Builder()).scheme("http").encodedAuthority("localhost:" + port).appendPath(DefaultDispatcher.TEST_JSON_SCALAR.substring(1)).build();
+        final Object[] result = new Object[1];
+        Request request = new Request.Builder<Boolean>(uri).onSuccess(new Request.SuccessCallback<Boolean>() {
+            @Override
+            public void onSuccess(Boolean body, HttpResponse response) {
+                result[0] = body;
+                countDownLatch.countDown();
+            }
+        }).build();
+
+        requestThreadPool.execute(request);
+        await(countDownLatch);
+        assertEquals(Boolean.TRUE, result[0]);
+    }
+
     @Test
     public void testFormPost() throws Exception {
         LinkedHashMap<String, String> expect = new LinkedHashMap<>();
@@ -0,0 +1,160 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Ideal Technologies Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.ideal.restless;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * A buffered big-endian reader of the binary encodings. A byte[] or String of a declared length
+ * grows as its bytes arrive, so a corrupt length fails at the end of the content instead of
+ * allocating the declared length.
+ */
+final class BinaryInput {
+
+    private static final int BUFFER_SIZE = 8192;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    private int limit;
+
+    BinaryInput(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * @return The next unsigned byte
+     * @throws EOFException At the end of the content
+     */
+    int read() throws IOException {
+        if (position == limit && !fill()) {
+            throw new EOFException();
+        }
+        return buffer[position++] & 0xff;
+    }
+
+    /**
+     * @return The next unsigned byte, without consuming it
+     */
+    int peek() throws IOException {
+        if (position == limit && !fill()) {
+            throw new EOFException();
+        }
+        return buffer[position] & 0xff;
+    }
+
+    /**
+     * @return True when all the content is read
+     */
+    boolean atEnd() throws IOException {
+        return position == limit && !fill();
+    }
+
+    /**
+     * @return The next unsigned 16 bits
+     */
+    int readShort() throws IOException {
+        return read() << 8 | read();
+    }
+
+    int readInt() throws IOException {
+        return read() << 24 | read() << 16 | read() << 8 | read();
+    }
+
+    long readLong() throws IOException {
+        return (long) readInt() << 32 | readInt() & 0xffffffffL;
+    }
+
+    byte[] readBytes(long length) throws IOException {
+        int size = checkLength(length);
+        byte[] bytes = new byte[Math.min(size, BUFFER_SIZE)];
+        int read = 0;
+        while (read < size) {
+            if (position == limit && !fill()) {
+                throw new EOFException();
+            }
+            if (read == bytes.length) {
+                bytes = Arrays.copyOf(bytes, (int) Math.min(size, 2L * bytes.length));
+            }
+            int n = Math.min(bytes.length - read, limit - position);
+            System.arraycopy(buffer, position, bytes, read, n);
+            position += n;
+            read += n;
+        }
+        return bytes;
+    }
+
+    String readUtf8(long length) throws IOException {
+        int size = checkLength(length);
+        if (size > BUFFER_SIZE) {
+            return new String(readBytes(size), UTF_8);
+        }
+        if (limit - position < size) {
+            //Move the remaining bytes to the front to read the String in place
+            System.arraycopy(buffer, position, buffer, 0, limit - position);
+            limit -= position;
+            position = 0;
+            while (limit < size) {
+                int n = in.read(buffer, limit, BUFFER_SIZE - limit);
+                if (n < 0) {
+                    throw new EOFException();
+                }
+                limit += n;
+            }
+        }
+        String s = new String(buffer, position, size, UTF_8);
+        position += size;
+        return s;
+    }
+
+    /**
+     * @return The length as int
+     * @throws IOException When the length is negative or larger than an array can hold
+     */
+    static int checkLength(long length) throws IOException {
+        if (length < 0 || length > Integer.MAX_VALUE - 8) {
+            throw new IOException("Invalid length " + length);
+        }
+        return (int) length;
+    }
+
+    private boolean fill() throws IOException {
+        int n = in.read(buffer, 0, BUFFER_SIZE);
+        if (n <= 0) {
+            return false;
+        }
+        position = 0;
+        limit = n;
+        return true;
+    }
+}
@@ -0,0 +1,321 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Ideal Technologies Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.ideal.restless;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Transform a compact binary encoding to and from {@link JSONObject}, {@link JSONArray},
+ * {@link Map} or {@link List}, without external dependencies.
+ * <p>
+ * The content is encoded straight to the stream while the object is traversed, and decoded with
+ * a pull reader. Maps and arrays decode to {@link JSONObject} and {@link JSONArray} for the JSON
+ * types, null to {@link JSONObject#NULL}, and to {@link LinkedHashMap} and {@link ArrayList} for
+ * the collection types. Integers decode to Integer or Long, floating point numbers to Double and
+ * byte strings to byte[]. The {@code Object} type decodes the top level value with the JSON
+ * types, whichever it is.
+ * <p>
+ * An inbound only marshaller, created with {@code outbound} false, is registered by
+ * {@link DataMarshalProvider} for its content type without replacing the outbound marshaller of
+ * its type, {@link DataMarshaller.JsonDataMarshaller} for {@link JSONObject}.
+ *
+ * @param <T> The data type of the Object
+ * @see MessagePackMarshaller
+ * @see CborMarshaller
+ */
+public abstract class BinaryMarshaller<T> implements StreamingDataMarshaller<T> {
+
+    /**
+     * The maximum nesting of maps and arrays, a deeper content is rejected instead of
+     * overflowing the stack
+     */
+    static final int MAX_DEPTH = 256;
+
+    /**
+     * The capacity allocated upfront for a declared container size, the container grows as the
+     * content arrives beyond it
+     */
+    private static final int MAX_INITIAL_CAPACITY = 1024;
+
+    private final Class<T> type;
+    private final boolean outbound;
+    private final boolean json;
+
+    BinaryMarshaller(Class<T> type, boolean outbound) {
+        if (type != JSONObject.class && type != JSONArray.class && type != Map.class
+                && type != List.class && type != Object.class) {
+            throw new IllegalArgumentException("Unsupported type " + type.getName());
+        }
+        this.type = type;
+        this.outbound = outbound;
+        this.json = type != Map.class && type != List.class;
+    }
+
+    /**
+     * @return The media type of the encoding
+     */
+    abstract String mediaType();
+
+    /**
+     * Read one value and the values it contains
+     *
+     * @param json  True to decode maps and arrays to the JSON types
+     * @param depth The nesting depth of the value
+     */
+    abstract Object read(BinaryInput in, boolean json, int depth) throws IOException;
+
+    abstract void writeNil(BinaryOutput out) throws IOException;
+
+    abstract void writeBoolean(BinaryOutput out, boolean value) throws IOException;
+
+    abstract void writeLong(BinaryOutput out, long value) throws IOException;
+
+    abstract void writeFloat(BinaryOutput out, float value) throws IOException;
+
+    abstract void writeDouble(BinaryOutput out, double value) throws IOException;
+
+    abstract void writeString(BinaryOutput out, String value) throws IOException;
+
+    abstract void writeBytes(BinaryOutput out, byte[] value) throws IOException;
+
+    abstract void writeArrayHeader(BinaryOutput out, int size) throws IOException;
+
+    abstract void writeMapHeader(BinaryOutput out, int size) throws IOException;
+
+    @Override
+    public T unmarshal(byte[] content) throws IOException {
+        return unmarshal(new ByteArrayInputStream(content));
+    }
+
+    @Override
+    public T unmarshal(InputStream stream) throws IOException {
+        BinaryInput in = new BinaryInput(stream);
+        Object value = read(in, json, 0);
+        if (!in.atEnd()) {
+            throw new IOException("Unexpected content after the " + mediaType() + " value");
+        }
+        if (!type.isInstance(value)) {
+            throw new IOException("Expected " + type.getSimpleName() + " but the content is "
+                    + (value == null ? "null" : value.getClass().getSimpleName()));
+        }
+        return type.cast(value);
+    }
+
+    @Override
+    public byte[] marshal(T data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        write(out, data);
+        return out.toByteArray();
+    }
+
+    /**
+     * Encode the object to the stream as it is traversed
+     */
+    public void write(OutputStream stream, T data) throws IOException {
+        BinaryOutput out = new BinaryOutput(stream);
+        write(out, data, 0);
+        out.flush();
+    }
+
+    @Override
+    public Class<T> getType() {
+        return type;
+    }
+
+    @Override
+    public String requestContentType() {
+        return outbound ? mediaType() : null;
+    }
+
+    @Override
+    public String[] responseContentType() {
+        return new String[]{mediaType()};
+    }
+
+    private void write(BinaryOutput out, Object value, int depth) throws IOException {
+        if (value == null) {
+            writeNil(out);
+        } else if (value instanceof String) {
+            writeString(out, (String) value);
+        } else if (value instanceof Integer || value instanceof Long
+                || value instanceof Short || value instanceof Byte) {
+            writeLong(out, ((Number) value).longValue());
+        } else if (value instanceof Double) {
+            writeDouble(out, (Double) value);
+        } else if (value instanceof Boolean) {
+            writeBoolean(out, (Boolean) value);
+        } else if (value instanceof Float) {
+            writeFloat(out, (Float) value);
+        } else if (value instanceof BigInteger && ((BigInteger) value).bitLength() < 64) {
+            writeLong(out, ((BigInteger) value).longValue());
+        } else if (value instanceof Number) {
+            writeDouble(out, ((Number) value).doubleValue());
+        } else if (value instanceof byte[]) {
+            writeBytes(out, (byte[]) value);
+        } else if (value instanceof Map) {
+            checkDepth(depth);
+            Map<?, ?> map = (Map<?, ?>) value;
+            writeMapHeader(out, map.size());
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                write(out, entry.getKey(), depth + 1);
+                write(out, entry.getValue(), depth + 1);
+            }
+        } else if (value instanceof Collection) {
+            checkDepth(depth);
+            Collection<?> collection = (Collection<?>) value;
+            writeArrayHeader(out, collection.size());
+            for (Object element : collection) {
+                write(out, element, depth + 1);
+            }
+        } else if (value instanceof Object[]) {
+            checkDepth(depth);
+            Object[] array = (Object[]) value;
+            writeArrayHeader(out, array.length);
+            for (Object element : array) {
+                write(out, element, depth + 1);
+            }
+        } else if (value instanceof JSONObject) {
+            checkDepth(depth);
+            JSONObject object = (JSONObject) value;
+            writeMapHeader(out, object.length());
+            Iterator<String> keys = object.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                writeString(out, key);
+                write(out, object.opt(key), depth + 1);
+            }
+        } else if (value instanceof JSONArray) {
+            checkDepth(depth);
+            JSONArray array = (JSONArray) value;
+            writeArrayHeader(out, array.length());
+            for (int i = 0; i < array.length(); i++) {
+                write(out, array.opt(i), depth + 1);
+            }
+        } else if (JSONObject.NULL.equals(value)) {
+            writeNil(out);
+        } else {
+            writeString(out, value.toString());
+        }
+    }
+
+    static void checkDepth(int depth) throws IOException {
+        if (depth >= MAX_DEPTH) {
+            throw new IOException("The content is nested deeper than " + MAX_DEPTH);
+        }
+    }
+
+    /**
+     * @return The decoded null
+     */
+    static Object nil(boolean json) {
+        return json ? JSONObject.NULL : null;
+    }
+
+    /**
+     * @return The integer as Integer when it fits, otherwise as Long, as {@link JSONObject}
+     * parses it
+     */
+    static Object integer(long value) {
+        if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+            return (int) value;
+        }
+        return value;
+    }
+
+    /**
+     * @return The unsigned 64 bits integer, as Double when it is beyond long
+     */
+    static Object unsigned(long value) {
+        if (value >= 0) {
+            return integer(value);
+        }
+        return unsignedToDouble(value);
+    }
+
+    static double unsignedToDouble(long value) {
+        return (double) (value >>> 1) * 2 + (value & 1);
+    }
+
+    static Object newMap(boolean json, int size) {
+        if (json) {
+            return new JSONObject();
+        }
+        return new LinkedHashMap<>(Math.min(size, MAX_INITIAL_CAPACITY) * 4 / 3 + 1);
+    }
+
+    /**
+     * Add the entry to a map of {@link #newMap(boolean, int)}, a JSON key is the String of the
+     * decoded key
+     */
+    @SuppressWarnings("unchecked")
+    static void put(Object map, Object key, Object value) throws IOException {
+        if (map instanceof JSONObject) {
+            try {
+                ((JSONObject) map).put(String.valueOf(key), value);
+            } catch (JSONException e) {
+                throw new IOException(e.getMessage());
+            }
+        } else {
+            ((Map<Object, Object>) map).put(key, value);
+        }
+    }
+
+    static Object newList(boolean json, int size) {
+        if (json) {
+            return new JSONArray();
+        }
+        return new ArrayList<>(Math.min(size, MAX_INITIAL_CAPACITY));
+    }
+
+    /**
+     * Append the element to a list of {@link #newList(boolean, int)}
+     */
+    @SuppressWarnings("unchecked")
+    static void add(Object list, Object element) {
+        if (list instanceof JSONArray) {
+            ((JSONArray) list).put(element);
+        } else {
+            ((List<Object>) list).add(element);
+        }
+    }
+}
@@ -0,0 +1,226 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Ideal Technologies Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.ideal.restless;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A pool of mutable {@link Bitmap}s given back by the app, reused by the {@link ImageMarshaller}
+ * as {@link android.graphics.BitmapFactory.Options#inBitmap} to decode the next image without
+ * allocating its pixels. Since KitKat any bitmap with enough pixel bytes is reused, before only a
+ * bitmap of the same size and config.
+ * <p>
+ * The pool holds up to {@code maxBytes} of pixels, the bitmaps of the size and config least
+ * recently asked for are recycled first.
+ */
+public class BitmapPool {
+
+    private final long maxBytes;
+    private long bytes;
+    private long hitCount;
+    private long missCount;
+
+    /**
+     * The free bitmaps by size and config, in access order
+     */
+    private final LinkedHashMap<Key, ArrayDeque<Bitmap>> free =
+            new LinkedHashMap<Key, ArrayDeque<Bitmap>>(16, 0.75f, true);
+
+    /**
+     * @param maxBytes The maximum number of bytes of pixels held by the pool
+     */
+    public BitmapPool(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Take a free bitmap out of the pool, its pixels are overwritten by the next decode.
+     *
+     * @return A bitmap of the size and config, or null when there is none
+     */
+    public synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+        ArrayDeque<Bitmap> bitmaps = free.get(new Key(width, height, config));
+        Bitmap bitmap = bitmaps == null ? null : bitmaps.poll();
+        if (bitmap == null) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        bytes -= sizeOf(bitmap);
+        return bitmap;
+    }
+
+    /**
+     * Take the smallest free bitmap whose pixels hold an image of the size and config, a bitmap
+     * of the exact size and config first. Only KitKat and later decode into a larger bitmap.
+     *
+     * @return A bitmap of at least the bytes of the image, or null when there is none
+     */
+    synchronized Bitmap getAtLeast(int width, int height, Bitmap.Config config) {
+        ArrayDeque<Bitmap> bitmaps = free.get(new Key(width, height, config));
+        if (bitmaps != null && !bitmaps.isEmpty()) {
+            return get(width, height, config);
+        }
+        long needed = (long) width * height * bytesPerPixel(config);
+        ArrayDeque<Bitmap> best = null;
+        Bitmap bestBitmap = null;
+        for (ArrayDeque<Bitmap> candidates : free.values()) {
+            for (Bitmap bitmap : candidates) {
+                int size = sizeOf(bitmap);
+                if (size >= needed && (bestBitmap == null || size < sizeOf(bestBitmap))) {
+                    best = candidates;
+                    bestBitmap = bitmap;
+                }
+            }
+        }
+        if (bestBitmap == null) {
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        best.remove(bestBitmap);
+        bytes -= sizeOf(bestBitmap);
+        return bestBitmap;
+    }
+
+    /**
+     * Give back a bitmap which is no longer displayed. The caller must not use the bitmap
+     * afterward. A bitmap which is immutable or recycled cannot be reused and is ignored.
+     */
+    public void put(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()
+                || sizeOf(bitmap) > maxBytes) {
+            return;
+        }
+        synchronized (this) {
+            Key key = new Key(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+            ArrayDeque<Bitmap> bitmaps = free.get(key);
+            if (bitmaps == null) {
+                bitmaps = new ArrayDeque<>();
+                free.put(key, bitmaps);
+            }
+            bitmaps.push(bitmap);
+            bytes += sizeOf(bitmap);
+            trimTo(maxBytes);
+        }
+    }
+
+    /**
+     * Recycle all the free bitmaps
+     */
+    public synchronized void clear() {
+        trimTo(0);
+    }
+
+    /**
+     * @return The number of bytes of pixels held by the pool
+     */
+    public synchronized long getSize() {
+        return bytes;
+    }
+
+    /**
+     * @return The number of {@link #get} which returned a bitmap
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return The number of {@link #get} which returned null
+     */
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * @return The bytes of the pixels, a reused bitmap may hold more than its current size needs
+     */
+    private static int sizeOf(Bitmap bitmap) {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT
+                ? bitmap.getAllocationByteCount() : bitmap.getByteCount();
+    }
+
+    private static int bytesPerPixel(Bitmap.Config config) {
+        if (config == Bitmap.Config.ALPHA_8) {
+            return 1;
+        }
+        if (config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444) {
+            return 2;
+        }
+        return 4;
+    }
+
+    private void trimTo(long size) {
+        Iterator<Map.Entry<Key, ArrayDeque<Bitmap>>> eldest = free.entrySet().iterator();
+        while (bytes > size && eldest.hasNext()) {
+            ArrayDeque<Bitmap> bitmaps = eldest.next().getValue();
+            while (bytes > size && !bitmaps.isEmpty()) {
+                Bitmap bitmap = bitmaps.pollLast();
+                bytes -= sizeOf(bitmap);
+                bitmap.recycle();
+            }
+            if (bitmaps.isEmpty()) {
+                eldest.remove();
+            }
+        }
+    }
+
+    private static final class Key {
+
+        private final int width;
+        private final int height;
+        private final Bitmap.Config config;
+
+        Key(int width, int height, Bitmap.Config config) {
+            this.width = width;
+            this.height = height;
+            this.config = config;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key that = (Key) o;
+            return width == that.width && height == that.height && config == that.config;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * width + height) + (config == null ? 0 : config.hashCode());
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Ideal Technologies Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.ideal.restless;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Import and export the responses of a {@link HttpCache} as a bundle, so an app can ship with a
+ * warm cache, for example a bundle exported on a development device and packed as an asset.
+ * <pre>
+ *     HttpCache cache = new LRUCache(100);
+ *     CacheBundle.importBundle(cache, context.getAssets().open("cache.bundle"));
+ * </pre>
+ * The responses keep the time they were received, so they are fresh only as long as their
+ * {@code Cache-Control} or {@code Expires} header allows. A stale response with {@code ETag} or
+ * {@code Last-Modified} is revalidated by a conditional request, a 304 response then refreshes it
+ * without downloading the body again.
+ * <pre>
+ * int magic, int version, int count
+ * for each response: UTF uri, boolean secondary, long variant, {@link CacheRecord}
+ * </pre>
+ */
+public final class CacheBundle {
+
+    private static final int MAGIC = 0x5242444c;
+    private static final int VERSION = 1;
+
+    private CacheBundle() {
+    }
+
+    /**
+     * Store the responses of the bundle in the cache. A response which expired and cannot be
+     * revalidated is skipped, and so is a response for a request already cached.
+     *
+     * @param cache The cache to import into
+     * @param in    The bundle, it is closed after the import
+     * @return The number of the responses stored
+     */
+    public static int importBundle(HttpCache cache, InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+        try {
+            if (data.readInt() != MAGIC || data.readInt() != VERSION) {
+                throw new IOException("Invalid cache bundle");
+            }
+            long now = System.currentTimeMillis();
+            //A count beyond the content runs into the end of the bundle
+            int count = CacheRecord.checkLength(data.readInt(), Integer.MAX_VALUE);
+            int imported = 0;
+            for (int i = 0; i < count; i++) {
+                CacheKey key = CacheRecord.readKey(data);
+                CacheEntry cacheEntry = CacheRecord.read(data, cache.heuristicFreshnessCap(), Integer.MAX_VALUE);
+                if (cacheEntry.isExpired(now) && !cacheEntry.hasValidator()) {
+                    continue;
+                }
+                if (cache.restore(key, cacheEntry) != null) {
+                    imported++;
+                }
+            }
+            return imported;
+        } finally {
+            data.close();
+        }
+    }
+
+    /**
+     * Write the responses of the cache as a bundle, the least recently used first so the import
+     * keeps the order of use.
+     *
+     * @param cache The cache to export
+     * @param out   The output of the bundle, it is closed after the export
+     * @return The number of the responses written
+     */
+    public static int exportBundle(HttpCache cache, OutputStream out) throws IOException {
+        //Hold the responses, so an entry evicted during the export is still written
+        List<CacheEntry> entries = new ArrayList<>();
+        List<HttpResponse> responses = new ArrayList<>();
+        for (CacheEntry cacheEntry : cache.entries()) {
+            HttpResponse response = cache.serve(cacheEntry);
+            if (response != null) {
+                entries.add(cacheEntry);
+                responses.add(response);
+            }
+        }
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        try {
+            data.writeInt(MAGIC);
+            data.writeInt(VERSION);
+            data.writeInt(entries.size());
+            for (int i = entries.size() - 1; i >= 0; i--) {
+                CacheEntry cacheEntry = entries.get(i);
+                CacheRecord.writeKey(data, cacheEntry.getKey());
+                CacheRecord.write(data, responses.get(i), cacheEntry.getResponseTime());
+            }
+            return entries.size();
+        } finally {
+            for (HttpResponse response : responses) {
+                response.release();
+            }
+            data.close();
+        }
+    }
+}
@@ -90,107 +90,24 @@ public interface CacheControl {
         }
 
         CacheControl build() {
-            return new CacheControl() {
-                @Override
-                public boolean isNoCache() {
-                    return noCache;
-                }
-
-                @Override
-                public boolean isNoStore() {
-                    return noStore;
-                }
-
-                @Override
-                public boolean isNoTransform() {
-                    return noTransform;
-                }
-
-                @Override
-                public boolean isMustRevalidate() {
-                    return mustRevalidate;
-                }
-
-                @Override
-                public boolean isProxyRevalidate() {
-                    return proxyRevalidate;
-                }
-
-                @Override
-                public Long getMaxAge() {
-                    return maxAge;
-                }
-
-                @Override
-                public Long getSmaxAge() {
-                    return smaxAge;
-                }
-
-                @Override
-                public boolean onlyIfCached() {
-                    return onlyIfCached;
-                }
-            };
+            int flags = 0;
+            flags |= noCache ? ImmutableCacheControl.NO_CACHE : 0;
+            flags |= noStore ? ImmutableCacheControl.NO_STORE : 0;
+            flags |= noTransform ? ImmutableCacheControl.NO_TRANSFORM : 0;
+            flags |= mustRevalidate ? ImmutableCacheControl.MUST_REVALIDATE : 0;
+            flags |= proxyRevalidate ? ImmutableCacheControl.PROXY_REVALIDATE : 0;
+            flags |= isPublic ? ImmutableCacheControl.PUBLIC : 0;
+            flags |= isPrivate ? ImmutableCacheControl.PRIVATE : 0;
+            flags |= onlyIfCached ? ImmutableCacheControl.ONLY_IF_CACHED : 0;
+            return ImmutableCacheControl.of(flags, maxAge, smaxAge);
         }
 
+        /**
+         * @return The directives of all the {@code Cache-Control} header values, or null when
+         * there is no {@code Cache-Control} header.
+         */
         CacheControl build(Map<String, List<String>> headers) {
-            if (headers != null) {
-                List<String> cacheControl = headers.get("Cache-Control");
-                if (cacheControl != null) {
-                    if (cacheControl.size() == 1) {
-                        String[] directives = cacheControl.get(0).split(",");
-                        CacheControl.Builder builder = new CacheControl.Builder();
-                        for (String d : directives) {
-                            d = d.trim();
-                            if (d.startsWith("no-cache")) {
-                                builder.noCache();
-                                continue;
-                            }
-                            if (d.startsWith("no-store")) {
-                                builder.noStore();
-                                continue;
-                            }
-                            if (d.startsWith("no-transform")) {
-                                builder.noTransform();
-                                continue;
-                            }
-                            if (d.startsWith("must-revalidate")) {
-                                builder.mustRevalidate();
-                                continue;
-                            }
-                            if (d.startsWith("proxy-revalidate")) {
-                                builder.proxyRevalidate();
-                                continue;
-                            }
-                            if (d.startsWith("public")) {
-                                builder.isPublic();
-                                continue;
-                            }
-                            if (d.startsWith("private")) {
-                                builder.isPrivate();
-                                continue;
-                            }
-                            if (d.startsWith("max-age=")) {
-                                builder.maxAge(Long.parseLong(d.substring(8)));
-                                continue;
-                            }
-                            if (d.startsWith("s-maxage=")) {
-                                builder.maxAge(Long.parseLong(d.substring(9)));
-                                continue;
-                            }
-                            if (d.startsWith("only-if-cached")) {
-                                builder.onlyIfCached();
-                                continue;
-                            }
-
-                        }
-                        return builder.build();
-                    }
-                }
-            }
-            return null;
+            return ImmutableCacheControl.parse(headers);
         }
-
-        ;
     }
 }
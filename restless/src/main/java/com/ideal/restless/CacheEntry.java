@@ -1,24 +1,58 @@
 package com.ideal.restless;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Locale;
 
 public class CacheEntry {
 
+    /**
+     * The default upper bound of the heuristic freshness lifetime, 24 hours
+     */
+    static final long DEFAULT_HEURISTIC_CAP = 24 * 60 * 60 * 1000L;
+
+    /**
+     * The fraction of the time since {@code Last-Modified} used as heuristic freshness lifetime
+     */
+    private static final int HEURISTIC_PERCENT = 10;
+
     private HttpResponse response;
     private String eTag;
+    private String lastModifiedValue;
+    private Long lastModified;
     private CacheControl cacheControl;
     private long date;
     private Long expires;
+    private long age;
+    private long responseTime;
+    private String[] vary;
+    private long expiresAt;
+    private CacheKey key;
+    private long loadTime;
+    private volatile TimingWheel.Timeout<CacheEntry> expiryTimeout;
 
     public CacheEntry(HttpResponse response) {
+        this(response, System.currentTimeMillis(), DEFAULT_HEURISTIC_CAP);
+    }
+
+    /**
+     * @param response     The cached response
+     * @param responseTime The time in millisecond the response is received
+     * @param heuristicCap The maximum heuristic freshness lifetime in millisecond, applied when
+     *                     the response has {@code Last-Modified} but no explicit expiration time
+     */
+    CacheEntry(HttpResponse response, long responseTime, long heuristicCap) {
         this.response = response;
+        this.responseTime = responseTime;
         this.eTag = getETag(response);
-        this.cacheControl = new CacheControl.Builder().build(response.getResponseHeaders());
+        this.lastModifiedValue = getHeader(response, "Last-Modified");
+        this.lastModified = parseDate(lastModifiedValue);
+        this.vary = getVary(response);
+        this.cacheControl = ImmutableCacheControl.parse(response.getResponseHeaders());
         this.date = getDate(response);
         this.expires = getExpires(response);
+        this.age = getAge(response);
+        this.expiresAt = computeExpiresAt(heuristicCap);
     }
 
     public long getDate() {
@@ -37,34 +71,185 @@ public class CacheEntry {
         return eTag;
     }
 
+    /**
+     * @return The {@code Last-Modified} header value, to be sent as {@code If-Modified-Since}
+     */
+    public String getLastModified() {
+        return lastModifiedValue;
+    }
+
+    /**
+     * @return The time in millisecond the response is received
+     */
+    public long getResponseTime() {
+        return responseTime;
+    }
+
     public CacheControl getCacheControl() {
         return cacheControl;
     }
 
+    /**
+     * @return The absolute time in millisecond after which the entry is stale.
+     */
+    public long getExpiresAt() {
+        return expiresAt;
+    }
 
-    private SimpleDateFormat dateFormat = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz");
+    /**
+     * @return True when the entry is stale at the given time.
+     */
+    public boolean isExpired(long now) {
+        return now > expiresAt;
+    }
 
-    private Long getDate(HttpResponse response) {
-        List<String> date = response.getResponseHeaders().get("Date");
-        if (date != null && date.size() == 1) {
-            try {
-                return dateFormat.parse(date.get(0)).getTime();
-            } catch (ParseException e) {
-                return (new Date()).getTime();
+    /**
+     * @return True when the expiration time is set by the server, with {@code max-age} or
+     * {@code Expires}.
+     */
+    boolean hasExplicitFreshness() {
+        return expires != null || (cacheControl != null && cacheControl.getMaxAge() != null);
+    }
+
+    /**
+     * Override the expiration time computed from the headers.
+     */
+    void setExpiresAt(long expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+
+    /**
+     * @return True when the entry holds an error response, stored by negative caching.
+     */
+    boolean isNegative() {
+        return response.getStatusCode() != null && response.getStatusCode() >= 400;
+    }
+
+    /**
+     * @return True when the entry can be revalidated with a conditional request.
+     */
+    public boolean hasValidator() {
+        return eTag != null || lastModifiedValue != null;
+    }
+
+    /**
+     * @return True when the response can be served fresh for some time or be revalidated, the
+     * response is worthless to store otherwise.
+     */
+    public boolean isStorable() {
+        return expiresAt > responseTime || hasValidator();
+    }
+
+    /**
+     * @return The lower case request header names listed in the {@code Vary} header, or null
+     * when the response does not vary.
+     */
+    public String[] getVary() {
+        return vary;
+    }
+
+    /**
+     * @return True when the response carries {@code Vary: *} and cannot be matched by any request.
+     */
+    public boolean isVaryAll() {
+        if (vary != null) {
+            for (String name : vary) {
+                if ("*".equals(name)) {
+                    return true;
+                }
             }
         }
-        return (new Date()).getTime();
+        return false;
+    }
+
+    /**
+     * @return The key the entry is stored under.
+     */
+    CacheKey getKey() {
+        return key;
+    }
+
+    void setKey(CacheKey key) {
+        this.key = key;
+    }
+
+    /**
+     * @return The time in nanosecond the response took to load from the network, 0 when unknown
+     */
+    long getLoadTime() {
+        return loadTime;
+    }
+
+    void setLoadTime(long loadTime) {
+        this.loadTime = loadTime;
+    }
+
+    TimingWheel.Timeout<CacheEntry> getExpiryTimeout() {
+        return expiryTimeout;
+    }
+
+    void setExpiryTimeout(TimingWheel.Timeout<CacheEntry> expiryTimeout) {
+        this.expiryTimeout = expiryTimeout;
+    }
+
+
+    private static Long parseDate(String value) {
+        long time = HttpDate.parse(value);
+        return time == HttpDate.INVALID ? null : time;
+    }
+
+    private long getDate(HttpResponse response) {
+        Long date = parseDate(getHeader(response, "Date"));
+        return date == null ? responseTime : date;
+    }
+
+    /**
+     * The freshness lifetime and age calculation of
+     * https://tools.ietf.org/html/rfc7234#section-4.2, {@code s-maxage} applies to shared caches
+     * only and is ignored by this private cache.
+     */
+    private long computeExpiresAt(long heuristicCap) {
+        long freshnessLifetime = 0;
+        if (cacheControl != null && cacheControl.getMaxAge() != null) {
+            freshnessLifetime = cacheControl.getMaxAge() * 1000;
+        } else if (expires != null) {
+            freshnessLifetime = expires - date;
+        } else if (lastModified != null && lastModified < date) {
+            freshnessLifetime = Math.min((date - lastModified) * HEURISTIC_PERCENT / 100, heuristicCap);
+        }
+
+        long apparentAge = Math.max(0, responseTime - date);
+        long correctedInitialAge = Math.max(apparentAge, age);
+        return responseTime + Math.max(0, freshnessLifetime) - correctedInitialAge;
     }
 
     private Long getExpires(HttpResponse response) {
-        List<String> expires = response.getResponseHeaders().get("Expires");
-        if (expires != null && expires.size() == 1) {
+        String expires = getHeader(response, "Expires");
+        if (expires != null) {
+            //An invalid date, for example "0", represents a time in the past
+            Long time = parseDate(expires);
+            return time == null ? 0L : time;
+        }
+        return null;
+    }
+
+    private long getAge(HttpResponse response) {
+        String age = getHeader(response, "Age");
+        if (age != null) {
             try {
-                return dateFormat.parse(expires.get(0)).getTime();
-            } catch (ParseException e) {
-                return 0L;
+                return Math.max(0, Long.parseLong(age.trim()) * 1000);
+            } catch (NumberFormatException e) {
+                return 0;
             }
         }
+        return 0;
+    }
+
+    private String getHeader(HttpResponse response, String name) {
+        List<String> values = response.getResponseHeaders().get(name);
+        if (values != null && values.size() == 1) {
+            return values.get(0);
+        }
         return null;
     }
 
@@ -75,4 +260,21 @@ public class CacheEntry {
         }
         return null;
     }
+
+    private String[] getVary(HttpResponse response) {
+        List<String> values = response.getResponseHeaders().get("Vary");
+        if (values == null) {
+            return null;
+        }
+        List<String> names = new ArrayList<>();
+        for (String value : values) {
+            for (String name : value.split(",")) {
+                name = name.trim().toLowerCase(Locale.US);
+                if (name.length() > 0) {
+                    names.add(name);
+                }
+            }
+        }
+        return names.isEmpty() ? null : names.toArray(new String[names.size()]);
+    }
 }
@@ -0,0 +1,58 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Ideal Technologies Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.ideal.restless;
+
+/**
+ * Deliver the cached response, even when it is stale, when the network request of a
+ * {@link CachePolicy#NETWORK_FIRST_WITH_CACHE_FALLBACK} request fails without response or with a
+ * server error. It should be placed after the {@link RetryPolicy}, so the cached response is only
+ * delivered after the retries are used up.
+ */
+public class CacheFallbackPolicy implements ResponseHandler {
+
+    @Override
+    public boolean onResponse(Request request, RequestThreadPool threadPool, Throwable t) {
+        if (t == null || request.getCachePolicy() != CachePolicy.NETWORK_FIRST_WITH_CACHE_FALLBACK
+                || !(threadPool.getCache() instanceof HttpCache)) {
+            return false;
+        }
+        RunnableRequest r = (RunnableRequest) request;
+        //A client error tells the cached response is no longer right
+        if (r.getResponse() != null && r.getResponse().getStatusCode() != null
+                && r.getResponse().getStatusCode() < 500) {
+            return false;
+        }
+        HttpResponse response = ((HttpCache) threadPool.getCache()).getStored(request, false);
+        if (response == null) {
+            return false;
+        }
+        r.setResponse(response);
+        ResponseCallbackPolicy.deliver(r, response, threadPool);
+        return true;
+    }
+}
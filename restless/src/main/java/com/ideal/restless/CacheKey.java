@@ -0,0 +1,144 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Ideal Technologies Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.ideal.restless;
+
+import android.net.Uri;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The key of a {@link CacheEntry} stored by the {@link HttpCache}.
+ * <p>
+ * A response without {@code Vary} header is stored under the primary key, which is the request
+ * {@link Uri}. A response with {@code Vary} header is stored under a secondary key, the {@link Uri}
+ * and a hash of the request header values nominated by the {@code Vary} header.
+ */
+final class CacheKey {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final Uri uri;
+    private final boolean secondary;
+    private final long variant;
+    private final int hash;
+
+    CacheKey(Uri uri) {
+        this(uri, false, 0);
+    }
+
+    /**
+     * @param variant The hash of the request headers of a secondary key, from {@link #getVariant()}
+     */
+    CacheKey(Uri uri, boolean secondary, long variant) {
+        this.uri = uri;
+        this.secondary = secondary;
+        this.variant = variant;
+        this.hash = 31 * uri.hashCode() + (int) (variant ^ (variant >>> 32));
+    }
+
+    /**
+     * Create the secondary key for the request headers nominated by the {@code Vary} header.
+     *
+     * @param uri     The request uri
+     * @param vary    The lower case header names listed in the {@code Vary} response header
+     * @param headers The request headers
+     */
+    static CacheKey of(Uri uri, String[] vary, Map<String, List<String>> headers) {
+        long h = FNV_OFFSET;
+        for (String name : vary) {
+            h = hash(h, name);
+            List<String> values = header(headers, name);
+            if (values != null) {
+                for (String value : values) {
+                    h = hash(h, value);
+                }
+            }
+            //Separate the header so "a: 1, b:" and "a:, b: 1" hash differently
+            h = (h ^ 0xff) * FNV_PRIME;
+        }
+        return new CacheKey(uri, true, h);
+    }
+
+    Uri getUri() {
+        return uri;
+    }
+
+    boolean isSecondary() {
+        return secondary;
+    }
+
+    long getVariant() {
+        return variant;
+    }
+
+    private static List<String> header(Map<String, List<String>> headers, String name) {
+        if (headers == null) {
+            return null;
+        }
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (name.equalsIgnoreCase(header.getKey())) {
+                return header.getValue();
+            }
+        }
+        return null;
+    }
+
+    private static long hash(long h, String value) {
+        if (value == null) {
+            return h;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            h = (h ^ value.charAt(i)) * FNV_PRIME;
+        }
+        return (h ^ ',') * FNV_PRIME;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CacheKey)) {
+            return false;
+        }
+        CacheKey that = (CacheKey) o;
+        return secondary == that.secondary && variant == that.variant && uri.equals(that.uri);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return secondary ? uri + "#" + Long.toHexString(variant) : uri.toString();
+    }
+}
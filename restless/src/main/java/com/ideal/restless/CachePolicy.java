@@ -0,0 +1,65 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Ideal Technologies Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.ideal.restless;
+
+/**
+ * How a {@link Request} uses the cache of the {@link RequestThreadPool}, set by
+ * {@link Request.Builder#cachePolicy(CachePolicy)}.
+ */
+public enum CachePolicy {
+
+    /**
+     * Always request the network, the response is not cached. The default policy.
+     */
+    NETWORK_ONLY,
+
+    /**
+     * Deliver the cached response even when it is stale, without requesting the network. A
+     * request without cached response fails with {@link Request.CacheMissException}.
+     */
+    CACHE_ONLY,
+
+    /**
+     * Deliver the cached response while it is fresh, otherwise request the network and cache
+     * the response. Same as {@link Request.Builder#cacheable()}.
+     */
+    CACHE_FIRST,
+
+    /**
+     * Request the network and cache the response, deliver the cached response even when it is
+     * stale if the network request fails. Handled by {@link CacheFallbackPolicy}.
+     */
+    NETWORK_FIRST_WITH_CACHE_FALLBACK,
+
+    /**
+     * Deliver the cached response at once even when it is stale, then request the network and
+     * deliver the response again only when it is different from the cached one, as told by the
+     * {@code ETag} or the body content.
+     */
+    CACHE_THEN_NETWORK
+}
@@ -0,0 +1,173 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Ideal Technologies Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.ideal.restless;
+
+import android.net.Uri;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The binary form of a cached response, with the time it was received so its age and freshness
+ * are computed the same way after it is read back. It is shared by {@link CacheSnapshot} and
+ * {@link CacheBundle}.
+ * <pre>
+ * int     status code
+ * boolean has content type, UTF content type
+ * long    response time in millisecond
+ * int     header count, for each header: UTF name, int value count, UTF values
+ * int     body length, -1 for no body, body bytes
+ * </pre>
+ */
+final class CacheRecord {
+
+    private CacheRecord() {
+    }
+
+    static void write(DataOutput out, HttpResponse response, long responseTime) throws IOException {
+        out.writeInt(response.getStatusCode());
+        out.writeBoolean(response.getContentType() != null);
+        if (response.getContentType() != null) {
+            out.writeUTF(response.getContentType());
+        }
+        out.writeLong(responseTime);
+
+        Map<String, List<String>> headers = response.getResponseHeaders();
+        int count = 0;
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            //The status line is kept by HttpURLConnection under the null key
+            if (header.getKey() != null && header.getValue() != null) {
+                count++;
+            }
+        }
+        out.writeInt(count);
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (header.getKey() != null && header.getValue() != null) {
+                out.writeUTF(header.getKey());
+                out.writeInt(header.getValue().size());
+                for (String value : header.getValue()) {
+                    out.writeUTF(value == null ? "" : value);
+                }
+            }
+        }
+
+        ByteBuffer body = response.getBodyBuffer();
+        if (body == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(body.remaining());
+            if (body.hasArray()) {
+                out.write(body.array(), body.arrayOffset() + body.position(), body.remaining());
+            } else {
+                byte[] chunk = new byte[Math.min(body.remaining(), 8192)];
+                while (body.hasRemaining()) {
+                    int length = Math.min(chunk.length, body.remaining());
+                    body.get(chunk, 0, length);
+                    out.write(chunk, 0, length);
+                }
+            }
+        }
+    }
+
+    static void writeKey(DataOutput out, CacheKey key) throws IOException {
+        out.writeUTF(key.getUri().toString());
+        out.writeBoolean(key.isSecondary());
+        out.writeLong(key.getVariant());
+    }
+
+    static CacheKey readKey(DataInput in) throws IOException {
+        return new CacheKey(Uri.parse(in.readUTF()), in.readBoolean(), in.readLong());
+    }
+
+    /**
+     * @param heuristicCap The maximum heuristic freshness lifetime in millisecond
+     * @param limit        The number of bytes the record may span, a count or a length beyond
+     *                     it is corrupt
+     * @return The {@link CacheEntry} of the response
+     * @throws IOException When the record is truncated or corrupt
+     */
+    static CacheEntry read(DataInput in, long heuristicCap, int limit) throws IOException {
+        int statusCode = in.readInt();
+        String contentType = in.readBoolean() ? in.readUTF() : null;
+        long responseTime = in.readLong();
+
+        int count = checkLength(in.readInt(), limit);
+        Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (int i = 0; i < count; i++) {
+            String name = in.readUTF();
+            int size = checkLength(in.readInt(), limit);
+            List<String> values = new ArrayList<>(Math.min(size, 16));
+            for (int j = 0; j < size; j++) {
+                values.add(in.readUTF());
+            }
+            headers.put(name, values);
+        }
+
+        int length = in.readInt();
+        byte[] body = null;
+        if (length != -1) {
+            body = readBody(in, checkLength(length, limit));
+        }
+        return new CacheEntry(new HttpResponse(statusCode, contentType, headers, body), responseTime, heuristicCap);
+    }
+
+    /**
+     * @return The count or length read from the record
+     * @throws IOException When it is negative or beyond the limit
+     */
+    static int checkLength(int length, long limit) throws IOException {
+        if (length < 0 || length > limit) {
+            throw new IOException("Invalid length " + length);
+        }
+        return length;
+    }
+
+    /**
+     * Read the body in chunks, so a corrupt length runs into the end of the input before the
+     * memory is allocated
+     */
+    private static byte[] readBody(DataInput in, int length) throws IOException {
+        byte[] body = new byte[Math.min(length, 64 * 1024)];
+        int read = 0;
+        while (read < length) {
+            if (read == body.length) {
+                body = Arrays.copyOf(body, (int) Math.min(length, 2L * body.length));
+            }
+            in.readFully(body, read, body.length - read);
+            read = body.length;
+        }
+        return body;
+    }
+}
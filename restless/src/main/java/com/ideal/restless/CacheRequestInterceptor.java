@@ -27,8 +27,13 @@
 
 package com.ideal.restless;
 
+import android.net.Uri;
 import android.util.Log;
 
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.List;
 import java.util.Map;
 
 import static com.ideal.restless.RequestThreadPool.DEBUG;
@@ -39,32 +44,217 @@ import static com.ideal.restless.RequestThreadPool.TAG;
  */
 public class CacheRequestInterceptor implements RequestInterceptor {
 
+    private static final String CACHE_HIT = CacheRequestInterceptor.class.getName() + ".hit";
+    private static final String LOAD_START = CacheRequestInterceptor.class.getName() + ".start";
+    private static final String FINGERPRINT = CacheRequestInterceptor.class.getName() + ".fingerprint";
+
+    /**
+     * Set when the network response of a {@link CachePolicy#CACHE_THEN_NETWORK} request is the
+     * same as the cached response already delivered, so it is not delivered again.
+     */
+    static final String UNCHANGED = CacheRequestInterceptor.class.getName() + ".unchanged";
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
     @Override
     public void preExecute(Map requestContext, RequestThreadPool threadPool, Request request) {
 
+        Cache<Request, HttpResponse> cache = threadPool.getCache();
+        if (cache instanceof FileCache) {
+            ((FileCache) cache).prepare(request);
+        }
+
         //Is cache enabled for this request
-        if (request.isCachable()) {
-            if (threadPool.getCache() != null) {
-                HttpResponse response = threadPool.getCache().get(request);
-                if (response != null) {
-                    if (DEBUG) Log.d(TAG, String.format("Request %s cache hit", request.getUri()));
-                    ((RunnableRequest) request).setResponse(response);
-                    throw new SkipExecuteException();
-                }
+        if (!request.isCachable() || cache == null) {
+            if (request.getCachePolicy() == CachePolicy.CACHE_ONLY) {
+                throw new Request.RequestFailedException(new Request.CacheMissException(request.getUri()));
+            }
+            return;
+        }
+        if (cache instanceof HttpCache) {
+            if (request.getCachePolicy() == CachePolicy.NETWORK_FIRST_WITH_CACHE_FALLBACK) {
+                //The stored response is only read by CacheFallbackPolicy when the network fails
+                requestContext.put(LOAD_START, System.nanoTime());
+                return;
+            }
+            if (request.getCachePolicy() == CachePolicy.CACHE_THEN_NETWORK) {
+                deliverStored(requestContext, (HttpCache) cache, (RunnableRequest) request, threadPool);
+                requestContext.put(LOAD_START, System.nanoTime());
+                return;
+            }
+        }
+
+        HttpResponse response = cache.get(request);
+        if (response != null) {
+            if (DEBUG) Log.d(TAG, String.format("Request %s cache hit", request.getUri()));
+            ((RunnableRequest) request).setResponse(response);
+            requestContext.put(CACHE_HIT, Boolean.TRUE);
+            if (cache instanceof HttpCache && response.getStatusCode() != null
+                    && response.getStatusCode() >= HttpURLConnection.HTTP_BAD_REQUEST) {
+                throw new Request.RequestFailedException(
+                        new Request.CachedErrorException(request.getUri(), response.getStatusCode()));
+            }
+            if (cache instanceof HttpCache && request.getCachePolicy() == CachePolicy.CACHE_FIRST) {
+                ((HttpCache) cache).refreshAhead(request, threadPool);
             }
+            throw new SkipExecuteException();
+        }
+        if (request.getCachePolicy() == CachePolicy.CACHE_ONLY && cache instanceof HttpCache) {
+            throw new Request.RequestFailedException(new Request.CacheMissException(request.getUri()));
         }
+        requestContext.put(LOAD_START, System.nanoTime());
+    }
+
+    /**
+     * Deliver the stored response of a {@link CachePolicy#CACHE_THEN_NETWORK} request before it
+     * revalidates the response on the network. A retry only takes the fingerprint, the stored
+     * response is delivered by the first attempt.
+     */
+    private void deliverStored(Map requestContext, HttpCache cache, RunnableRequest request,
+                               RequestThreadPool threadPool) {
+        HttpResponse response = cache.getStored(request, true);
+        if (response == null) {
+            return;
+        }
+        requestContext.put(FINGERPRINT, fingerprint(response));
+        if (request.getRetryAttempted() == 0 && !request.shouldDiscard()) {
+            if (DEBUG) Log.d(TAG, String.format("Request %s cache hit before network", request.getUri()));
+            //The stored response and its entry are taken along, the request goes on to the network
+            request.setStoredDelivery(ResponseCallbackPolicy.deliver(request, response, threadPool));
+        } else {
+            response.release();
+        }
+        request.setResponse(null);
+        //The decoded object of the stored entry does not belong to the network response
+        request.setCacheEntry(null);
+    }
+
+    /**
+     * @return The hash of the {@code ETag}, or of the body when there is no {@code ETag}. A
+     * response without body, for example to {@code HEAD} or with status 204, hashes as empty.
+     */
+    private static long fingerprint(HttpResponse response) {
+        long h = FNV_OFFSET;
+        List<String> eTag = response.getResponseHeaders() == null ? null
+                : response.getResponseHeaders().get("ETag");
+        if (eTag != null && eTag.size() == 1) {
+            String value = eTag.get(0);
+            for (int i = 0; i < value.length(); i++) {
+                h = (h ^ value.charAt(i)) * FNV_PRIME;
+            }
+            //Keep an ETag apart from a body of the same bytes
+            return ~h;
+        }
+        ByteBuffer body = response.getBodyBuffer();
+        if (body == null) {
+            return h;
+        }
+        while (body.hasRemaining()) {
+            h = (h ^ (body.get() & 0xff)) * FNV_PRIME;
+        }
+        return h;
     }
 
     @Override
     public void postExecute(Map requestContext, Request request, RequestThreadPool threadPool, Throwable t) {
+        if (t == null && isUnsafe(request.getMethod())) {
+            invalidate(request, threadPool.getCache());
+        }
         if (t == null) {
-            //Only cache the result when there is no Error
-            if (request.isCachable()) {
-                if (threadPool.getCache() != null) {
-                    threadPool.getCache().put(request, ((RunnableRequest) request).getResponse());
+            //Only cache the result when there is no Error, and it is not served by the cache
+            if (request.isCachable() && requestContext.get(CACHE_HIT) == null) {
+                Cache<Request, HttpResponse> cache = threadPool.getCache();
+                if (cache != null) {
+                    HttpResponse response = ((RunnableRequest) request).getResponse();
+                    Long start = (Long) requestContext.get(LOAD_START);
+                    long loadTime = start == null ? 0 : System.nanoTime() - start;
+                    recordLoad(cache, loadTime, response);
+                    if (cache instanceof HttpCache) {
+                        ((HttpCache) cache).put(request, response, loadTime);
+                    } else {
+                        cache.put(request, response);
+                    }
+                    Long fingerprint = (Long) requestContext.get(FINGERPRINT);
+                    response = ((RunnableRequest) request).getResponse();
+                    if (fingerprint != null && response != null && fingerprint == fingerprint(response)) {
+                        requestContext.put(UNCHANGED, Boolean.TRUE);
+                    }
                 }
             }
+        } else if (request.isCachable() && requestContext.get(CACHE_HIT) == null
+                && request.getCachePolicy() != CachePolicy.NETWORK_FIRST_WITH_CACHE_FALLBACK) {
+            //The stored response is kept for the fallback
+            Cache<Request, HttpResponse> cache = threadPool.getCache();
+            if (cache instanceof HttpCache) {
+                ((HttpCache) cache).putNegative(request, ((RunnableRequest) request).getResponse());
+            }
         }
 
     }
+
+    /**
+     * @return True for the methods which may change the state of the resource
+     */
+    private static boolean isUnsafe(String method) {
+        return !Request.Method.GET.equals(method) && !"HEAD".equals(method)
+                && !"OPTIONS".equals(method) && !"TRACE".equals(method);
+    }
+
+    /**
+     * Drop the cached responses of the request uri and of the {@code Location} and
+     * {@code Content-Location} uris, after an unsafe request succeeded,
+     * https://tools.ietf.org/html/rfc7234#section-4.4
+     * <p>
+     * A request reaching here without error has a non-error status code. The {@code Location}
+     * and {@code Content-Location} uris of another host are ignored, so a response cannot drop
+     * the cached responses of a host it does not serve.
+     */
+    private void invalidate(Request request, Cache<Request, HttpResponse> cache) {
+        if (!(cache instanceof HttpCache)) {
+            //The platform HttpResponseCache behind FileCache invalidates on its own
+            return;
+        }
+        HttpCache httpCache = (HttpCache) cache;
+        httpCache.invalidate(request.getUri());
+        HttpResponse response = ((RunnableRequest) request).getResponse();
+        if (response != null && response.getResponseHeaders() != null) {
+            for (Map.Entry<String, List<String>> header : response.getResponseHeaders().entrySet()) {
+                if (header.getValue() != null && ("Location".equalsIgnoreCase(header.getKey())
+                        || "Content-Location".equalsIgnoreCase(header.getKey()))) {
+                    for (String value : header.getValue()) {
+                        Uri uri = resolve(request.getUri(), value);
+                        if (uri != null && isSameOrigin(request.getUri(), uri)) {
+                            httpCache.invalidate(uri);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    private static Uri resolve(Uri base, String reference) {
+        try {
+            return Uri.parse(URI.create(base.toString()).resolve(reference.trim()).toString());
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private static boolean isSameOrigin(Uri a, Uri b) {
+        return a.getScheme() != null && a.getScheme().equalsIgnoreCase(b.getScheme())
+                && a.getEncodedAuthority() != null && a.getEncodedAuthority().equalsIgnoreCase(b.getEncodedAuthority());
+    }
+
+    private void recordLoad(Cache cache, long loadTime, HttpResponse response) {
+        CacheStats stats = null;
+        if (cache instanceof HttpCache) {
+            stats = ((HttpCache) cache).stats();
+        } else if (cache instanceof FileCache) {
+            stats = ((FileCache) cache).stats();
+        }
+        if (stats != null && loadTime > 0 && response != null) {
+            stats.recordLoad(loadTime, response.getContentLength());
+        }
+    }
 }
@@ -0,0 +1,455 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Ideal Technologies Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.ideal.restless;
+
+import android.net.Uri;
+import android.os.Process;
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Persist the most recently used entries of a {@link HttpCache} to a file, and restore them when
+ * the cache is created again, so a cold start serves the responses which were fresh moments ago.
+ * <p>
+ * The snapshot is written on a low priority background thread, periodically and when the
+ * {@link RequestThreadPool} shuts down. The file holds the {@link CacheRecord}s followed by an
+ * index of their keys, expiration times and file positions:
+ * <pre>
+ * int   magic, int version
+ * CacheRecord...
+ * int   index size, for each record: UTF uri, boolean secondary, long variant,
+ *       long expires at, boolean has validator, long position, int length
+ * long  index position, int magic
+ * </pre>
+ * Restoring reads the index only, the records are then read by positional reads in parallel,
+ * most recently used first. A request for a record not read yet reads it on demand. The records
+ * expired without validator are dropped, as the cache does not keep them either.
+ */
+final class CacheSnapshot {
+
+    private static final String TAG = "HttpCache-Snapshot";
+    private static final int MAGIC = 0x52534e50;
+    private static final int VERSION = 1;
+    private static final int TRAILER_LENGTH = 12;
+    /**
+     * The smallest index entry, an empty uri
+     */
+    private static final int MIN_INDEX_ENTRY = 2 + 1 + 8 + 8 + 1 + 8 + 4;
+    /**
+     * The time in second a cache miss waits for the index, it is read from a local file
+     */
+    private static final int INDEX_TIMEOUT = 5;
+    private static final int LOADER_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    private static final ThreadFactory THREAD_FACTORY = new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable r) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    r.run();
+                }
+            }, TAG);
+            thread.setDaemon(true);
+            return thread;
+        }
+    };
+
+    /**
+     * Write the snapshots one at a time
+     */
+    private static final ScheduledThreadPoolExecutor WRITER = new ScheduledThreadPoolExecutor(1, THREAD_FACTORY);
+
+    private final HttpCache cache;
+    private final File file;
+    private final int maxEntries;
+    private final ScheduledFuture<?> periodic;
+    private final ConcurrentHashMap<CacheKey, IndexEntry> pending = new ConcurrentHashMap<>();
+    private final CountDownLatch indexRead = new CountDownLatch(1);
+    private final AtomicInteger loaders = new AtomicInteger();
+    private final ReadWriteLock channelLock = new ReentrantReadWriteLock();
+    private FileChannel channel;
+
+    /**
+     * @param file           The snapshot file, restored when it exists
+     * @param maxEntries     The maximum number of the entries to write
+     * @param intervalMillis The interval to write the snapshot, 0 to write it on shutdown only
+     */
+    CacheSnapshot(HttpCache cache, File file, int maxEntries, long intervalMillis) {
+        this.cache = cache;
+        this.file = file;
+        this.maxEntries = maxEntries;
+        this.periodic = intervalMillis > 0 ? WRITER.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                write();
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS) : null;
+        WRITER.execute(new Runnable() {
+            @Override
+            public void run() {
+                open();
+            }
+        });
+    }
+
+    /**
+     * Read the record of the key on demand when it is not restored yet
+     *
+     * @return The restored {@link CacheEntry}, or null when the snapshot does not have the key
+     */
+    CacheEntry load(CacheKey key) {
+        if (indexRead.getCount() > 0) {
+            try {
+                if (!indexRead.await(INDEX_TIMEOUT, TimeUnit.SECONDS)) {
+                    Log.w(TAG, "The snapshot index is not read in time " + file);
+                    return null;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+        }
+        IndexEntry entry = pending.remove(key);
+        if (entry == null) {
+            return null;
+        }
+        //A varying response is also indexed by its primary key
+        pending.remove(entry.key, entry);
+        pending.remove(new CacheKey(entry.key.getUri()), entry);
+        return restore(entry);
+    }
+
+    /**
+     * Forget the record of the key, a newer response is stored under it
+     */
+    void discard(CacheKey key) {
+        pending.remove(key);
+    }
+
+    /**
+     * Forget the records which match the uri, they are invalidated
+     *
+     * @param scope One of {@link UriTrie#EXACT}, {@link UriTrie#PREFIX} or {@link UriTrie#HOST}
+     */
+    void discard(Uri uri, int scope) {
+        for (CacheKey key : pending.keySet()) {
+            if (UriTrie.matches(uri, key.getUri(), scope)) {
+                pending.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Forget the records not restored yet, the cache is cleared
+     */
+    void discardAll() {
+        pending.clear();
+    }
+
+    /**
+     * Write the snapshot in background
+     */
+    Future<?> writeAsync() {
+        return WRITER.submit(new Runnable() {
+            @Override
+            public void run() {
+                write();
+            }
+        });
+    }
+
+    void shutdown() {
+        if (periodic != null) {
+            periodic.cancel(false);
+        }
+    }
+
+    private void open() {
+        List<IndexEntry> index = new ArrayList<>();
+        try {
+            if (file.exists()) {
+                index = readIndex();
+            }
+            long now = System.currentTimeMillis();
+            for (IndexEntry entry : index) {
+                if (entry.expiresAt < now && !entry.hasValidator) {
+                    continue;
+                }
+                if (pending.putIfAbsent(entry.key, entry) == null && entry.key.isSecondary()) {
+                    pending.putIfAbsent(new CacheKey(entry.key.getUri()), entry);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            //A corrupt snapshot is dropped, the cache starts empty
+            Log.w(TAG, "Cannot read the snapshot " + file, e);
+            pending.clear();
+            index.clear();
+        } finally {
+            //A cache miss waits for the index, it must not wait forever
+            indexRead.countDown();
+        }
+        if (pending.isEmpty()) {
+            closeChannel();
+        } else {
+            loadInParallel(index);
+        }
+    }
+
+    private List<IndexEntry> readIndex() throws IOException {
+        FileChannel channel = new RandomAccessFile(file, "r").getChannel();
+        channelLock.writeLock().lock();
+        try {
+            this.channel = channel;
+        } finally {
+            channelLock.writeLock().unlock();
+        }
+        long size = channel.size();
+        if (size < 8 + TRAILER_LENGTH) {
+            throw new EOFException();
+        }
+        ByteBuffer header = read(channel, 0, 8);
+        ByteBuffer trailer = read(channel, size - TRAILER_LENGTH, TRAILER_LENGTH);
+        long indexPosition = trailer.getLong();
+        if (header.getInt() != MAGIC || header.getInt() != VERSION || trailer.getInt() != MAGIC
+                || indexPosition < 8 || indexPosition > size - TRAILER_LENGTH) {
+            throw new IOException("Invalid snapshot");
+        }
+        ByteBuffer buffer = read(channel, indexPosition, (int) (size - TRAILER_LENGTH - indexPosition));
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(buffer.array()));
+        int count = CacheRecord.checkLength(in.readInt(), (buffer.capacity() - 4) / MIN_INDEX_ENTRY);
+        List<IndexEntry> index = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            CacheKey key = CacheRecord.readKey(in);
+            IndexEntry entry = new IndexEntry(key, in.readLong(), in.readBoolean(), in.readLong(), in.readInt());
+            //The records are written before the index
+            if (entry.position < 8 || entry.length < 0 || entry.position + entry.length > indexPosition) {
+                throw new IOException("Invalid snapshot record " + key);
+            }
+            index.add(entry);
+        }
+        return index;
+    }
+
+    /**
+     * Restore the records by striping the index over the loader threads, so the most recently
+     * used records are restored first.
+     */
+    private void loadInParallel(final List<IndexEntry> index) {
+        final int threads = Math.min(LOADER_THREADS, index.size());
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 0,
+                TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(), THREAD_FACTORY);
+        loaders.set(threads);
+        for (int t = 0; t < threads; t++) {
+            final int stripe = t;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        for (int i = stripe; i < index.size(); i += threads) {
+                            load(index.get(i).key);
+                        }
+                    } finally {
+                        if (loaders.decrementAndGet() == 0) {
+                            closeChannel();
+                        }
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+    }
+
+    private CacheEntry restore(IndexEntry entry) {
+        ByteBuffer buffer;
+        //The channel is closed once the loaders are done, an on demand read may still be running
+        channelLock.readLock().lock();
+        try {
+            if (channel == null) {
+                return null;
+            }
+            buffer = read(channel, entry.position, entry.length);
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot restore " + entry.key, e);
+            return null;
+        } finally {
+            channelLock.readLock().unlock();
+        }
+        try {
+            CacheEntry cacheEntry = CacheRecord.read(new DataInputStream(
+                    new ByteArrayInputStream(buffer.array())), cache.heuristicFreshnessCap(), entry.length);
+            return cache.restore(entry.key, cacheEntry);
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Cannot restore " + entry.key, e);
+            return null;
+        }
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private void closeChannel() {
+        channelLock.writeLock().lock();
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (IOException e) {
+            //Ignore
+        } finally {
+            channel = null;
+            channelLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Write the snapshot to a temporary file and replace the snapshot file with it, a crash
+     * during the write leaves the previous snapshot intact.
+     */
+    private void write() {
+        //Restore the records not read yet, otherwise they are lost from the new snapshot
+        if (indexRead.getCount() == 0) {
+            for (CacheKey key : pending.keySet()) {
+                load(key);
+            }
+        }
+
+        File temp = new File(file.getPath() + ".tmp");
+        FileOutputStream fos = null;
+        try {
+            fos = new FileOutputStream(temp);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+
+            long now = System.currentTimeMillis();
+            List<IndexEntry> index = new ArrayList<>();
+            for (CacheEntry cacheEntry : cache.entries()) {
+                if (index.size() >= maxEntries) {
+                    break;
+                }
+                if (cacheEntry.isExpired(now) && !cacheEntry.hasValidator()) {
+                    continue;
+                }
+                HttpResponse response = cache.serve(cacheEntry);
+                if (response == null) {
+                    continue;
+                }
+                try {
+                    long position = out.size();
+                    CacheRecord.write(out, response, cacheEntry.getResponseTime());
+                    index.add(new IndexEntry(cacheEntry.getKey(), cacheEntry.getExpiresAt(),
+                            cacheEntry.hasValidator(), position, (int) (out.size() - position)));
+                } finally {
+                    response.release();
+                }
+            }
+
+            long indexPosition = out.size();
+            out.writeInt(index.size());
+            for (IndexEntry entry : index) {
+                CacheRecord.writeKey(out, entry.key);
+                out.writeLong(entry.expiresAt);
+                out.writeBoolean(entry.hasValidator);
+                out.writeLong(entry.position);
+                out.writeInt(entry.length);
+            }
+            out.writeLong(indexPosition);
+            out.writeInt(MAGIC);
+            out.flush();
+            fos.getFD().sync();
+            out.close();
+            fos = null;
+            if (!temp.renameTo(file)) {
+                throw new IOException("Cannot rename " + temp + " to " + file);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Cannot write the snapshot " + file, e);
+            temp.delete();
+        } finally {
+            if (fos != null) {
+                try {
+                    fos.close();
+                } catch (IOException e) {
+                    //Ignore
+                }
+            }
+        }
+    }
+
+    private static final class IndexEntry {
+
+        final CacheKey key;
+        final long expiresAt;
+        final boolean hasValidator;
+        final long position;
+        final int length;
+
+        IndexEntry(CacheKey key, long expiresAt, boolean hasValidator, long position, int length) {
+            this.key = key;
+            this.expiresAt = expiresAt;
+            this.hasValidator = hasValidator;
+            this.position = position;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,304 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Ideal Technologies Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.ideal.restless;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Statistics of a {@link Cache}. Recording is lock free, the counters are striped by thread to
+ * avoid contention between the worker threads, {@link #snapshot()} sums up the stripes.
+ */
+public final class CacheStats {
+
+    /**
+     * The reason a cached response is removed from the cache
+     */
+    public enum Eviction {
+        /**
+         * Removed to keep the cache within its maximum size
+         */
+        SIZE,
+        /**
+         * Removed because the response is stale and cannot be revalidated
+         */
+        EXPIRED,
+        /**
+         * Replaced by a newer response
+         */
+        REPLACED,
+        /**
+         * Removed on request, for example invalidated by an unsafe request
+         */
+        EXPLICIT
+    }
+
+    private static final int HIT = 0;
+    private static final int MISS = 1;
+    private static final int STALE_HIT = 2;
+    private static final int REVALIDATION = 3;
+    private static final int BYTES_SERVED = 4;
+    private static final int BYTES_SAVED = 5;
+    private static final int LOAD = 6;
+    private static final int LOAD_NANOS = 7;
+    private static final int LOAD_BYTES = 8;
+    private static final int EVICTION = 9;
+    private static final int COUNTERS = EVICTION + Eviction.values().length;
+
+    /**
+     * Each stripe is padded to its own cache line
+     */
+    private static final int STRIDE = (COUNTERS + 7) & ~7;
+
+    private final int mask;
+    private final AtomicLongArray counters;
+
+    CacheStats() {
+        int stripes = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 2);
+        mask = stripes - 1;
+        counters = new AtomicLongArray(stripes * STRIDE);
+    }
+
+    private void add(int counter, long delta) {
+        int stripe = (int) Thread.currentThread().getId() & mask;
+        counters.getAndAdd(stripe * STRIDE + counter, delta);
+    }
+
+    private long sum(int counter) {
+        long sum = 0;
+        for (int i = counter; i < counters.length(); i += STRIDE) {
+            sum += counters.get(i);
+        }
+        return sum;
+    }
+
+    /**
+     * A fresh response is served from the cache
+     */
+    void recordHit(int bytes) {
+        add(HIT, 1);
+        add(BYTES_SERVED, bytes);
+        add(BYTES_SAVED, bytes);
+    }
+
+    /**
+     * The request cannot be served from the cache
+     */
+    void recordMiss() {
+        add(MISS, 1);
+    }
+
+    /**
+     * A stale response is served from the cache
+     */
+    void recordStaleHit(int bytes) {
+        add(STALE_HIT, 1);
+        add(BYTES_SERVED, bytes);
+        add(BYTES_SAVED, bytes);
+    }
+
+    /**
+     * The cached response is revalidated by a 304 Not Modified response
+     */
+    void recordRevalidation(int bytes) {
+        add(REVALIDATION, 1);
+        add(BYTES_SERVED, bytes);
+        add(BYTES_SAVED, bytes);
+    }
+
+    /**
+     * A response is loaded from the network
+     */
+    void recordLoad(long nanos, int bytes) {
+        add(LOAD, 1);
+        add(LOAD_NANOS, nanos);
+        add(LOAD_BYTES, bytes);
+    }
+
+    void recordEviction(Eviction eviction) {
+        add(EVICTION + eviction.ordinal(), 1);
+    }
+
+    /**
+     * @return The current statistics
+     */
+    public Snapshot snapshot() {
+        long[] evictions = new long[Eviction.values().length];
+        for (int i = 0; i < evictions.length; i++) {
+            evictions[i] = sum(EVICTION + i);
+        }
+        return new Snapshot(sum(HIT), sum(MISS), sum(STALE_HIT), sum(REVALIDATION),
+                sum(BYTES_SERVED), sum(BYTES_SAVED), sum(LOAD), sum(LOAD_NANOS),
+                sum(LOAD_BYTES), evictions);
+    }
+
+    /**
+     * An immutable copy of the {@link CacheStats}
+     */
+    public static final class Snapshot {
+
+        private final long hitCount;
+        private final long missCount;
+        private final long staleHitCount;
+        private final long revalidationCount;
+        private final long bytesServed;
+        private final long bytesSaved;
+        private final long loadCount;
+        private final long totalLoadTime;
+        private final long bytesLoaded;
+        private final long[] evictions;
+
+        Snapshot(long hitCount, long missCount, long staleHitCount, long revalidationCount,
+                 long bytesServed, long bytesSaved, long loadCount, long totalLoadTime,
+                 long bytesLoaded, long[] evictions) {
+            this.hitCount = hitCount;
+            this.missCount = missCount;
+            this.staleHitCount = staleHitCount;
+            this.revalidationCount = revalidationCount;
+            this.bytesServed = bytesServed;
+            this.bytesSaved = bytesSaved;
+            this.loadCount = loadCount;
+            this.totalLoadTime = totalLoadTime;
+            this.bytesLoaded = bytesLoaded;
+            this.evictions = evictions;
+        }
+
+        /**
+         * @return A copy with the hit, miss and revalidation counts replaced, for the cache which
+         * keeps its own request counts.
+         */
+        Snapshot withRequestCounts(long hitCount, long missCount, long revalidationCount) {
+            return new Snapshot(hitCount, missCount, staleHitCount, revalidationCount, bytesServed,
+                    bytesSaved, loadCount, totalLoadTime, bytesLoaded, evictions);
+        }
+
+        /**
+         * @return Number of requests served with a fresh cached response
+         */
+        public long getHitCount() {
+            return hitCount;
+        }
+
+        /**
+         * @return Number of requests which cannot be served from the cache
+         */
+        public long getMissCount() {
+            return missCount;
+        }
+
+        /**
+         * @return Number of requests served with a stale cached response
+         */
+        public long getStaleHitCount() {
+            return staleHitCount;
+        }
+
+        /**
+         * @return Number of cached responses revalidated by 304 Not Modified
+         */
+        public long getRevalidationCount() {
+            return revalidationCount;
+        }
+
+        /**
+         * @return The ratio of requests served from the cache, including revalidation
+         */
+        public double getHitRate() {
+            long served = hitCount + staleHitCount + revalidationCount;
+            long total = served + missCount;
+            return total == 0 ? 0 : (double) served / total;
+        }
+
+        /**
+         * @return The response body bytes served from the cache
+         */
+        public long getBytesServed() {
+            return bytesServed;
+        }
+
+        /**
+         * @return The response body bytes which did not have to be downloaded
+         */
+        public long getBytesSaved() {
+            return bytesSaved;
+        }
+
+        /**
+         * @return Number of responses loaded from the network
+         */
+        public long getLoadCount() {
+            return loadCount;
+        }
+
+        /**
+         * @return The total time in nanosecond spent to load the responses from the network
+         */
+        public long getTotalLoadTime() {
+            return totalLoadTime;
+        }
+
+        /**
+         * @return The average time in millisecond to load a response from the network
+         */
+        public double getAverageLoadMillis() {
+            return loadCount == 0 ? 0 : totalLoadTime / 1e6 / loadCount;
+        }
+
+        /**
+         * @return The response body bytes loaded from the network
+         */
+        public long getBytesLoaded() {
+            return bytesLoaded;
+        }
+
+        /**
+         * @return Number of responses removed from the cache for the reason
+         */
+        public long getEvictionCount(Eviction eviction) {
+            return evictions[eviction.ordinal()];
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder("CacheStats{")
+                    .append("hit=").append(hitCount)
+                    .append(", miss=").append(missCount)
+                    .append(", staleHit=").append(staleHitCount)
+                    .append(", revalidation=").append(revalidationCount)
+                    .append(", bytesServed=").append(bytesServed)
+                    .append(", bytesSaved=").append(bytesSaved)
+                    .append(", load=").append(loadCount)
+                    .append(", averageLoad=").append(getAverageLoadMillis()).append("ms")
+                    .append(", bytesLoaded=").append(bytesLoaded);
+            for (Eviction eviction : Eviction.values()) {
+                sb.append(", eviction.").append(eviction.name().toLowerCase())
+                        .append('=').append(evictions[eviction.ordinal()]);
+            }
+            return sb.append('}').toString();
+        }
+    }
+}
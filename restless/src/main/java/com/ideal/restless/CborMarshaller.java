@@ -0,0 +1,291 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Ideal Technologies Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.ideal.restless;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Transform CBOR content, https://tools.ietf.org/html/rfc7049, refer to {@link BinaryMarshaller}
+ * for the types. The indefinite length items are decoded, the tags are skipped and their content
+ * decoded as untagged.
+ *
+ * @param <T> The data type of the Object
+ */
+public class CborMarshaller<T> extends BinaryMarshaller<T> {
+
+    private static final int UNSIGNED = 0;
+    private static final int NEGATIVE = 1;
+    private static final int BYTES = 2;
+    private static final int TEXT = 3;
+    private static final int ARRAY = 4;
+    private static final int MAP = 5;
+    private static final int TAG = 6;
+    private static final int SIMPLE = 7;
+
+    private static final int INDEFINITE = 31;
+    private static final int BREAK = 0xff;
+
+    /**
+     * @param type {@code JSONObject}, {@code JSONArray}, {@code Map}, {@code List} or
+     *             {@code Object}
+     */
+    public CborMarshaller(Class<T> type) {
+        this(type, true);
+    }
+
+    /**
+     * @param outbound False to register the marshaller for the inbound content only
+     */
+    public CborMarshaller(Class<T> type, boolean outbound) {
+        super(type, outbound);
+    }
+
+    @Override
+    String mediaType() {
+        return "application/cbor";
+    }
+
+    @Override
+    Object read(BinaryInput in, boolean json, int depth) throws IOException {
+        int b = in.read();
+        int major = b >>> 5;
+        int info = b & 0x1f;
+        switch (major) {
+            case UNSIGNED:
+                return unsigned(argument(in, info));
+            case NEGATIVE:
+                long n = argument(in, info);
+                //-1 - n, n beyond long is read as negative
+                return n >= 0 ? integer(-1 - n) : -1 - unsignedToDouble(n);
+            case BYTES:
+                return info == INDEFINITE ? readChunks(in, BYTES) : in.readBytes(argument(in, info));
+            case TEXT:
+                return info == INDEFINITE ? new String(readChunks(in, TEXT), "UTF-8")
+                        : in.readUtf8(argument(in, info));
+            case ARRAY:
+                return readArray(in, info, json, depth);
+            case MAP:
+                return readMap(in, info, json, depth);
+            case TAG:
+                argument(in, info);
+                checkDepth(depth);
+                return read(in, json, depth + 1);
+            default:
+                return readSimple(in, info, json);
+        }
+    }
+
+    private Object readSimple(BinaryInput in, int info, boolean json) throws IOException {
+        switch (info) {
+            case 20:
+                return false;
+            case 21:
+                return true;
+            case 22:
+            case 23:
+                //null and undefined
+                return nil(json);
+            case 25:
+                return halfToDouble(in.readShort());
+            case 26:
+                return (double) Float.intBitsToFloat(in.readInt());
+            case 27:
+                return Double.longBitsToDouble(in.readLong());
+            case INDEFINITE:
+                throw new IOException("Unexpected break");
+            default:
+                throw new IOException("Unsupported CBOR simple value " + info);
+        }
+    }
+
+    private Object readArray(BinaryInput in, int info, boolean json, int depth) throws IOException {
+        checkDepth(depth);
+        if (info == INDEFINITE) {
+            Object list = newList(json, 0);
+            while (in.peek() != BREAK) {
+                add(list, read(in, json, depth + 1));
+            }
+            in.read();
+            return list;
+        }
+        int size = BinaryInput.checkLength(argument(in, info));
+        Object list = newList(json, size);
+        for (int i = 0; i < size; i++) {
+            add(list, read(in, json, depth + 1));
+        }
+        return list;
+    }
+
+    private Object readMap(BinaryInput in, int info, boolean json, int depth) throws IOException {
+        checkDepth(depth);
+        if (info == INDEFINITE) {
+            Object map = newMap(json, 0);
+            while (in.peek() != BREAK) {
+                Object key = read(in, json, depth + 1);
+                put(map, key, read(in, json, depth + 1));
+            }
+            in.read();
+            return map;
+        }
+        int size = BinaryInput.checkLength(argument(in, info));
+        Object map = newMap(json, size);
+        for (int i = 0; i < size; i++) {
+            Object key = read(in, json, depth + 1);
+            put(map, key, read(in, json, depth + 1));
+        }
+        return map;
+    }
+
+    /**
+     * @return The concatenated definite length chunks of an indefinite length string
+     */
+    private static byte[] readChunks(BinaryInput in, int major) throws IOException {
+        ByteArrayOutputStream chunks = new ByteArrayOutputStream();
+        for (int b = in.read(); b != BREAK; b = in.read()) {
+            if (b >>> 5 != major || (b & 0x1f) == INDEFINITE) {
+                throw new IOException("Invalid chunk of an indefinite length string");
+            }
+            chunks.write(in.readBytes(argument(in, b & 0x1f)));
+        }
+        return chunks.toByteArray();
+    }
+
+    /**
+     * @return The argument of the initial byte, an unsigned 64 bits value
+     */
+    private static long argument(BinaryInput in, int info) throws IOException {
+        if (info < 24) {
+            return info;
+        }
+        switch (info) {
+            case 24:
+                return in.read();
+            case 25:
+                return in.readShort();
+            case 26:
+                return in.readInt() & 0xffffffffL;
+            case 27:
+                return in.readLong();
+            default:
+                throw new IOException("Invalid CBOR additional information " + info);
+        }
+    }
+
+    /**
+     * The decoding of the half precision float of https://tools.ietf.org/html/rfc7049#appendix-D
+     */
+    static double halfToDouble(int half) {
+        int exponent = (half >> 10) & 0x1f;
+        int mantissa = half & 0x3ff;
+        double value;
+        if (exponent == 0) {
+            value = Math.scalb((double) mantissa, -24);
+        } else if (exponent != 31) {
+            value = Math.scalb((double) (mantissa + 1024), exponent - 25);
+        } else {
+            value = mantissa == 0 ? Double.POSITIVE_INFINITY : Double.NaN;
+        }
+        return (half & 0x8000) != 0 ? -value : value;
+    }
+
+    @Override
+    void writeNil(BinaryOutput out) throws IOException {
+        out.write(SIMPLE << 5 | 22);
+    }
+
+    @Override
+    void writeBoolean(BinaryOutput out, boolean value) throws IOException {
+        out.write(SIMPLE << 5 | (value ? 21 : 20));
+    }
+
+    @Override
+    void writeLong(BinaryOutput out, long value) throws IOException {
+        if (value >= 0) {
+            writeHead(out, UNSIGNED, value);
+        } else {
+            writeHead(out, NEGATIVE, -1 - value);
+        }
+    }
+
+    @Override
+    void writeFloat(BinaryOutput out, float value) throws IOException {
+        out.write(SIMPLE << 5 | 26);
+        out.writeInt(Float.floatToIntBits(value));
+    }
+
+    @Override
+    void writeDouble(BinaryOutput out, double value) throws IOException {
+        out.write(SIMPLE << 5 | 27);
+        out.writeLong(Double.doubleToLongBits(value));
+    }
+
+    @Override
+    void writeString(BinaryOutput out, String value) throws IOException {
+        writeHead(out, TEXT, BinaryOutput.utf8Length(value));
+        out.writeUtf8(value);
+    }
+
+    @Override
+    void writeBytes(BinaryOutput out, byte[] value) throws IOException {
+        writeHead(out, BYTES, value.length);
+        out.write(value);
+    }
+
+    @Override
+    void writeArrayHeader(BinaryOutput out, int size) throws IOException {
+        writeHead(out, ARRAY, size);
+    }
+
+    @Override
+    void writeMapHeader(BinaryOutput out, int size) throws IOException {
+        writeHead(out, MAP, size);
+    }
+
+    /**
+     * Write the initial byte and the argument in the fewest bytes
+     */
+    private static void writeHead(BinaryOutput out, int major, long value) throws IOException {
+        int type = major << 5;
+        if (value < 24) {
+            out.write(type | (int) value);
+        } else if (value <= 0xff) {
+            out.write(type | 24);
+            out.write((int) value);
+        } else if (value <= 0xffff) {
+            out.write(type | 25);
+            out.writeShort((int) value);
+        } else if (value <= 0xffffffffL) {
+            out.write(type | 26);
+            out.writeInt((int) value);
+        } else {
+            out.write(type | 27);
+            out.writeLong(value);
+        }
+    }
+}
@@ -0,0 +1,277 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Ideal Technologies Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.ideal.restless;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Tell the kind of a body from its first bytes, so the {@link DataMarshalProvider} picks one
+ * marshaller for it and reports a body which does not match its declared content type, instead
+ * of trying every marshaller.
+ */
+final class ContentSniffer {
+
+    /**
+     * The number of bytes inspected to tell text from binary content
+     */
+    private static final int TEXT_SAMPLE = 512;
+
+    private static final byte[] PNG = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'};
+    private static final byte[] JPEG = {(byte) 0xff, (byte) 0xd8, (byte) 0xff};
+    private static final byte[] GIF87A = {'G', 'I', 'F', '8', '7', 'a'};
+    private static final byte[] GIF89A = {'G', 'I', 'F', '8', '9', 'a'};
+    private static final byte[] RIFF = {'R', 'I', 'F', 'F'};
+    private static final byte[] WEBP = {'W', 'E', 'B', 'P'};
+
+    enum Kind {
+        JSON_OBJECT("application/json", JSONObject.class),
+        JSON_ARRAY("application/json", JSONArray.class),
+        /**
+         * A top level string, number, boolean or null
+         */
+        JSON_SCALAR("application/json", null),
+        PNG("image/png", null),
+        JPEG("image/jpeg", null),
+        GIF("image/gif", null),
+        WEBP("image/webp", null),
+        TEXT("text/plain", null),
+        BINARY("application/octet-stream", null);
+
+        private final String mediaType;
+        private final Class<?> type;
+
+        Kind(String mediaType, Class<?> type) {
+            this.mediaType = mediaType;
+            this.type = type;
+        }
+
+        /**
+         * @return The media type of the content of this kind
+         */
+        String mediaType() {
+            return mediaType;
+        }
+
+        boolean isJson() {
+            return this == JSON_OBJECT || this == JSON_ARRAY || this == JSON_SCALAR;
+        }
+
+        boolean isImage() {
+            return this == PNG || this == JPEG || this == GIF || this == WEBP;
+        }
+
+        /**
+         * @return False when the content of this kind cannot be the declared media type
+         */
+        boolean matches(String mediaType) {
+            if (mediaType == null) {
+                return true;
+            }
+            if (mediaType.equals("application/json") || mediaType.endsWith("+json")) {
+                return isJson();
+            }
+            if (mediaType.startsWith("image/")) {
+                return isImage();
+            }
+            if (mediaType.startsWith("text/")) {
+                //A text of another charset looks binary, only a picture is told apart
+                return !isImage();
+            }
+            return true;
+        }
+
+        /**
+         * @return The marshaller of the content, the first one in the order to try which does not
+         * produce the type of another kind, so a JSON array is not given to the JSONObject
+         * marshaller
+         */
+        DataMarshaller<?> choose(Iterable<DataMarshaller<?>> marshallers) {
+            for (DataMarshaller<?> m : marshallers) {
+                if (!producesOtherKind(m.getType())) {
+                    return m;
+                }
+            }
+            return null;
+        }
+
+        private boolean producesOtherKind(Class<?> marshallerType) {
+            for (Kind kind : values()) {
+                if (kind != this && kind.type != null && kind.type.equals(marshallerType)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private ContentSniffer() {
+    }
+
+    /**
+     * @param body The body content, its position is left unchanged
+     * @return The kind of the content
+     */
+    static Kind sniff(ByteBuffer body) {
+        ByteBuffer content = body.duplicate();
+        if (startsWith(content, PNG)) {
+            return Kind.PNG;
+        }
+        if (startsWith(content, JPEG)) {
+            return Kind.JPEG;
+        }
+        if (startsWith(content, GIF87A) || startsWith(content, GIF89A)) {
+            return Kind.GIF;
+        }
+        if (startsWith(content, RIFF) && startsWith(content, 8, WEBP)) {
+            return Kind.WEBP;
+        }
+        int start = content.position();
+        //Skip the UTF-8 byte order mark and the leading white space of a JSON text
+        if (content.remaining() >= 3 && (content.get(start) & 0xff) == 0xef
+                && (content.get(start + 1) & 0xff) == 0xbb && (content.get(start + 2) & 0xff) == 0xbf) {
+            start += 3;
+        }
+        for (int i = start; i < content.limit(); i++) {
+            byte b = content.get(i);
+            if (b == '{') {
+                return Kind.JSON_OBJECT;
+            } else if (b == '[') {
+                return Kind.JSON_ARRAY;
+            } else if (!isWhitespace(b)) {
+                if (isText(content, start)) {
+                    return isScalar(content, i) ? Kind.JSON_SCALAR : Kind.TEXT;
+                }
+                return Kind.BINARY;
+            }
+        }
+        return isText(content, start) ? Kind.TEXT : Kind.BINARY;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+
+    /**
+     * @param start The index of the first byte which is not white space
+     * @return True when the content is a JSON string, or a single number, boolean or null
+     */
+    private static boolean isScalar(ByteBuffer content, int start) {
+        byte first = content.get(start);
+        if (first == '"') {
+            return true;
+        }
+        int end = start;
+        while (end < content.limit() && !isWhitespace(content.get(end))) {
+            end++;
+        }
+        for (int i = end; i < content.limit(); i++) {
+            if (!isWhitespace(content.get(i))) {
+                return false;
+            }
+        }
+        if (first == '-' || (first >= '0' && first <= '9')) {
+            for (int i = start; i < end; i++) {
+                byte b = content.get(i);
+                if ((b < '0' || b > '9') && b != '-' && b != '+' && b != '.' && b != 'e' && b != 'E') {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return equals(content, start, end, "true") || equals(content, start, end, "false")
+                || equals(content, start, end, "null");
+    }
+
+    private static boolean equals(ByteBuffer content, int start, int end, String literal) {
+        if (end - start != literal.length()) {
+            return false;
+        }
+        for (int i = 0; i < literal.length(); i++) {
+            if (content.get(start + i) != literal.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean startsWith(ByteBuffer content, byte[] magic) {
+        return startsWith(content, 0, magic);
+    }
+
+    /**
+     * @param offset The offset of the magic number from the start of the content
+     */
+    private static boolean startsWith(ByteBuffer content, int offset, byte[] magic) {
+        if (content.remaining() < offset + magic.length) {
+            return false;
+        }
+        for (int i = 0; i < magic.length; i++) {
+            if (content.get(content.position() + offset + i) != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return True when the sample is well formed UTF-8 without control characters other than
+     * white space. A sequence cut by the end of the sample is accepted.
+     */
+    private static boolean isText(ByteBuffer content, int start) {
+        int end = Math.min(content.limit(), start + TEXT_SAMPLE);
+        int i = start;
+        while (i < end) {
+            int b = content.get(i) & 0xff;
+            int continuation;
+            if (b < 0x80) {
+                if (b < 0x20 && b != '\t' && b != '\n' && b != '\r' && b != '\f') {
+                    return false;
+                }
+                continuation = 0;
+            } else if (b >= 0xc2 && b <= 0xdf) {
+                continuation = 1;
+            } else if (b >= 0xe0 && b <= 0xef) {
+                continuation = 2;
+            } else if (b >= 0xf0 && b <= 0xf4) {
+                continuation = 3;
+            } else {
+                return false;
+            }
+            i++;
+            for (int j = 0; j < continuation && i < end; j++, i++) {
+                if ((content.get(i) & 0xc0) != 0x80) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
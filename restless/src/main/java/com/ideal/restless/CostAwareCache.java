@@ -0,0 +1,187 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Ideal Technologies Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.ideal.restless;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A memory cache bounded by the size of the response bodies, which evicts by the
+ * GreedyDual-Size-Frequency policy instead of recency. An entry is worth the time its response
+ * took to load times the number of hits, per byte of body, so a small response from a slow
+ * backend outlives a large response which loads fast.
+ * <p>
+ * An entry without known load time, restored from a snapshot or a bundle, is valued as if it
+ * loaded in 1 millisecond.
+ */
+public class CostAwareCache extends HttpCache {
+
+    private static final double MIN_COST_MILLIS = 1;
+
+    private final long maxBytes;
+    private final Map<CacheKey, CacheEntry> entries = new HashMap<>();
+    private final GreedyDualSizeFrequency<CacheKey> policy = new GreedyDualSizeFrequency<>();
+    private final Object lock = new Object();
+
+    /**
+     * @param maxBytes The maximum total size of the response bodies
+     */
+    public CostAwareCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    @Override
+    CacheEntry find(CacheKey key) {
+        synchronized (lock) {
+            return entries.get(key);
+        }
+    }
+
+    @Override
+    void onServed(CacheEntry cacheEntry) {
+        synchronized (lock) {
+            //The hit counts on the variant, an entry replaced meanwhile is not tracked
+            CacheKey key = cacheEntry.getKey();
+            if (entries.get(key) == cacheEntry) {
+                policy.access(key);
+            }
+        }
+    }
+
+    @Override
+    void delete(CacheKey key) {
+        synchronized (lock) {
+            CacheEntry cacheEntry = entries.remove(key);
+            if (cacheEntry != null) {
+                removed(key, cacheEntry, true);
+            }
+        }
+    }
+
+    @Override
+    boolean delete(CacheKey key, CacheEntry cacheEntry) {
+        synchronized (lock) {
+            if (entries.get(key) == cacheEntry) {
+                entries.remove(key);
+                removed(key, cacheEntry, true);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    void deleteAll() {
+        synchronized (lock) {
+            for (CacheKey key : new ArrayList<>(entries.keySet())) {
+                delete(key);
+            }
+        }
+    }
+
+    @Override
+    void create(CacheKey key, CacheEntry cacheEntry) {
+        synchronized (lock) {
+            CacheEntry old = entries.put(key, cacheEntry);
+            if (old != null && old != cacheEntry) {
+                if (key.equals(old.getKey())) {
+                    stats().recordEviction(CacheStats.Eviction.REPLACED);
+                }
+                //A new response of the same key keeps the frequency of the key
+                removed(key, old, !key.equals(cacheEntry.getKey()));
+            }
+            if (!key.equals(cacheEntry.getKey())) {
+                return;
+            }
+            long size = sizeOf(cacheEntry);
+            if (size > maxBytes) {
+                //An entry larger than the cache is evicted right away
+                entries.remove(key);
+                policy.remove(key);
+                stats().recordEviction(CacheStats.Eviction.SIZE);
+                onRemoved(key, cacheEntry);
+                return;
+            }
+            policy.add(key, Math.max(MIN_COST_MILLIS, cacheEntry.getLoadTime() / 1e6), size);
+            while (policy.size() > maxBytes) {
+                CacheKey victim = policy.evict();
+                CacheEntry evicted = entries.remove(victim);
+                stats().recordEviction(CacheStats.Eviction.SIZE);
+                removed(victim, evicted, true);
+            }
+        }
+    }
+
+    @Override
+    List<CacheEntry> entries() {
+        synchronized (lock) {
+            //The most valuable entries first
+            List<CacheEntry> list = new ArrayList<>();
+            for (CacheKey key : policy.keys()) {
+                list.add(entries.get(key));
+            }
+            return list;
+        }
+    }
+
+    /**
+     * @return The total size of the response bodies in the cache
+     */
+    public long size() {
+        synchronized (lock) {
+            return policy.size();
+        }
+    }
+
+    private static long sizeOf(CacheEntry cacheEntry) {
+        return Math.max(1, cacheEntry.getResponse().getContentLength());
+    }
+
+    /**
+     * Untrack the entry removed from the key, and drop the primary key reference to a removed
+     * variant.
+     *
+     * @param untrack False to keep the key in the policy, when the key is stored again
+     */
+    private void removed(CacheKey key, CacheEntry cacheEntry, boolean untrack) {
+        if (key.equals(cacheEntry.getKey())) {
+            if (untrack) {
+                policy.remove(key);
+            }
+            if (key.isSecondary()) {
+                CacheKey primary = new CacheKey(key.getUri());
+                if (entries.get(primary) == cacheEntry) {
+                    entries.remove(primary);
+                }
+            }
+        }
+        onRemoved(key, cacheEntry);
+    }
+}
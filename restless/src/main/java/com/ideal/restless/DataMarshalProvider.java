@@ -29,10 +29,11 @@ package com.ideal.restless;
 
 import android.util.Pair;
 
-import java.util.ArrayList;
-import java.util.HashMap;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.io.IOException;
 import java.util.List;
-import java.util.Map;
 
 /**
  * The {@link DataMarshalProvider} provide serialize/deserialize data, it transforms Object to byte[]
@@ -42,52 +43,50 @@ public class DataMarshalProvider {
 
     private static DataMarshalProvider instance = new DataMarshalProvider();
 
-    private Map<Class, DataMarshaller> outboundMarshallers = new HashMap<>();
-    private Map<String, List<DataMarshaller>> inboundMarshallers = new HashMap<>();
+    /**
+     * Replaced on register, so a lookup on a worker thread reads a consistent registry without
+     * locking
+     */
+    private volatile MarshallerRegistry registry = MarshallerRegistry.EMPTY;
 
     private DataMarshalProvider() {
+        //The JSONArray marshaller is tried after the JSONObject marshaller
+        register(new DataMarshaller.JsonArrayDataMarshaller());
         register(new DataMarshaller.JsonDataMarshaller());
         register(new DataMarshaller.StringMarshaller());
         register(new DataMarshaller.ByteArrayMarshaller());
-        register(new DataMarshaller.JsonArrayDataMarshaller());
         register(new DataMarshaller.UrlEncodedFormMarshaller());
+        register(new ImageMarshaller());
+        //Inbound only, the JSON types are still sent as JSON
+        register(new MessagePackMarshaller<>(Object.class, false));
+        register(new CborMarshaller<>(Object.class, false));
     }
 
     /**
-     * Register {@link DataMarshaller}
+     * Register {@link DataMarshaller}. The marshaller registered last is tried first for its
+     * content types, and replaces the outbound marshaller of its type.
      */
-    public void register(DataMarshaller dataMarshaller) {
-        if (dataMarshaller.responseContentType() != null) {
-            for (String responseContentType : dataMarshaller.responseContentType()) {
-                List<DataMarshaller> list = inboundMarshallers.get(responseContentType);
-                if (list == null) {
-                    list = new ArrayList<>();
-                }
-                list.add(dataMarshaller);
-                inboundMarshallers.put(responseContentType, list);
-            }
-        }
-        if (dataMarshaller.requestContentType() != null) {
-            outboundMarshallers.put(dataMarshaller.getType(), dataMarshaller);
-        }
+    public synchronized void register(DataMarshaller<?> dataMarshaller) {
+        registry = registry.with(dataMarshaller);
     }
 
-
     public static DataMarshalProvider getInstance() {
         return instance;
     }
 
-    private DataMarshaller findMarshaller(Object obj) {
-        return outboundMarshallers.get(obj.getClass());
+    /**
+     * @return The outbound marshaller of the object class or its nearest supertype
+     */
+    DataMarshaller<?> findMarshaller(Object obj) {
+        return registry.outbound(obj.getClass());
     }
 
-    private List<DataMarshaller> findMarshaller(String contentType) {
-        for (String s : inboundMarshallers.keySet()) {
-            if (contentType.contains(s.toLowerCase())) {
-                return inboundMarshallers.get(s);
-            }
-        }
-        return null;
+    /**
+     * @return The inbound marshallers of the media type of the content type, ignoring the
+     * parameters, in the order to try
+     */
+    List<DataMarshaller<?>> findMarshaller(String contentType) {
+        return registry.inbound(contentType);
     }
 
     /**
@@ -99,7 +98,9 @@ public class DataMarshalProvider {
      * @throws Exception Error occur during the transformation
      */
     Pair<String, byte[]> marshal(Object object) throws Exception {
-        DataMarshaller marshaller = findMarshaller(object);
+        //The outbound marshaller is found by the class of the object
+        @SuppressWarnings("unchecked")
+        DataMarshaller<Object> marshaller = (DataMarshaller<Object>) findMarshaller(object);
         if (marshaller != null) {
             return new Pair<>(marshaller.requestContentType(), marshaller.marshal(object));
         } else {
@@ -109,24 +110,86 @@ public class DataMarshalProvider {
 
 
     /**
-     * Unmarshall data according to the content type
+     * Unmarshall the body of the response according to its content type. The marshaller is
+     * chosen by the first bytes of the body among the marshallers of the content type, a
+     * {@link StreamingDataMarshaller} reads the body as a stream.
      *
-     * @param contentType The content type of the data
-     * @param data        The raw data as byte[]
-     * @return The Object represent with the provided content
+     * @return The Object represent with the body, or the body as byte[] when no marshaller is
+     * registered for the content type
+     * @throws ContentMismatchException When the body is not of the declared content type
+     * @throws Exception                Error occur during the transformation
      */
-    Object unmarshal(String contentType, byte[] data) {
-        List<DataMarshaller> marshallers = findMarshaller(contentType);
-        if (marshallers != null) {
-            for (DataMarshaller m : marshallers) {
-                try {
-                    return m.unmarshal(data);
-                } catch (Exception ignored) {
-                }
-            }
+    Object unmarshal(HttpResponse response) throws Exception {
+        List<DataMarshaller<?>> marshallers = response.getContentType() == null ? null
+                : findMarshaller(response.getContentType());
+        if (marshallers == null || response.getContentLength() == 0) {
+            return response.getBody();
+        }
+        ContentSniffer.Kind kind = ContentSniffer.sniff(response.getBodyBuffer());
+        String mediaType = MarshallerRegistry.mediaType(response.getContentType());
+        if (!kind.matches(mediaType)) {
+            throw new ContentMismatchException(mediaType, kind.mediaType());
+        }
+        DataMarshaller<?> marshaller = kind.choose(marshallers);
+        if (marshaller == null && kind == ContentSniffer.Kind.JSON_SCALAR) {
+            return unmarshalScalar(response.getBody(), mediaType);
+        }
+        if (marshaller == null) {
+            throw new ContentMismatchException(mediaType, kind.mediaType());
+        }
+        if (marshaller instanceof StreamingDataMarshaller) {
+            return ((StreamingDataMarshaller<?>) marshaller).unmarshal(response.getBodyStream());
         }
-        return data;
+        return marshaller.unmarshal(response.getBody());
     }
 
+    /**
+     * @return The String, Boolean, Number or {@link JSONObject#NULL} of a top level JSON scalar,
+     * which neither the JSONObject nor the JSONArray marshaller accepts
+     */
+    private static Object unmarshalScalar(byte[] content, String mediaType) throws Exception {
+        String text = new String(content, "UTF-8");
+        if (text.startsWith("\uFEFF")) {
+            text = text.substring(1);
+        }
+        JSONTokener tokener = new JSONTokener(text);
+        Object value = tokener.nextValue();
+        //An unquoted word is read as a String by the lenient tokener
+        if (tokener.nextClean() != 0 || (value instanceof String && !text.trim().startsWith("\""))) {
+            throw new ContentMismatchException(mediaType, "text/plain");
+        }
+        return value;
+    }
+
+    /**
+     * The body of a response is not of its declared content type, for example an HTML error page
+     * served as {@code application/json}.
+     */
+    public static class ContentMismatchException extends IOException {
 
+        private static final long serialVersionUID = 1L;
+
+        private final String declaredType;
+        private final String detectedType;
+
+        ContentMismatchException(String declaredType, String detectedType) {
+            super("Content declared as " + declaredType + " looks like " + detectedType);
+            this.declaredType = declaredType;
+            this.detectedType = detectedType;
+        }
+
+        /**
+         * @return The media type of the {@code Content-Type} header
+         */
+        public String getDeclaredType() {
+            return declaredType;
+        }
+
+        /**
+         * @return The media type told by the first bytes of the body
+         */
+        public String getDetectedType() {
+            return detectedType;
+        }
+    }
 }
@@ -36,7 +36,6 @@ import org.json.JSONObject;
 
 import java.io.ByteArrayOutputStream;
 import java.io.UnsupportedEncodingException;
-import java.net.URLEncoder;
 import java.util.LinkedHashMap;
 
 /**
@@ -81,37 +80,19 @@ public interface DataMarshaller<T> {
     String[] responseContentType();
 
     /**
-     * Transform a {@link LinkedHashMap} to a URL encoded Form
-     * <em>Note:</em> Inbound is not supported for this Data Type
+     * Transform a {@link LinkedHashMap} to a URL encoded Form, and a URL encoded Form to a
+     * {@link LinkedHashMap} of String names and values. The content is encoded as UTF-8.
      */
     class UrlEncodedFormMarshaller implements DataMarshaller<LinkedHashMap> {
 
         @Override
-        public LinkedHashMap unmarshal(byte[] content) throws Exception {
-            throw new UnsupportedOperationException();
+        public LinkedHashMap unmarshal(byte[] content) {
+            return FormCodec.decode(content);
         }
 
         @Override
-        public byte[] marshal(LinkedHashMap data) throws Exception {
-            StringBuilder sb = new StringBuilder();
-            for (Object key : data.keySet()) {
-                String name;
-                try {
-                    name = URLEncoder.encode(key.toString(), "UTF-8");
-                    String value = data.get(key) == null ? null : URLEncoder.encode(data.get(key.toString()).toString(), "UTF-8");
-                    if (sb.length() > 0) {
-                        sb.append("&");
-                    }
-                    sb.append(name);
-                    if (value != null) {
-                        sb.append("=");
-                        sb.append(value);
-                    }
-                } catch (UnsupportedEncodingException e) {
-                    throw new RuntimeException(e);
-                }
-            }
-            return sb.toString().getBytes("ISO_8859_1");
+        public byte[] marshal(LinkedHashMap data) {
+            return FormCodec.encode(data);
         }
 
         @Override
@@ -126,7 +107,7 @@ public interface DataMarshaller<T> {
 
         @Override
         public String[] responseContentType() {
-            return null;
+            return new String[]{"application/x-www-form-urlencoded"};
         }
     }
 
@@ -244,8 +225,8 @@ public interface DataMarshaller<T> {
     }
 
     /**
-     * Transform a {@link Bitmap} to/from PNG image format
-     * To support gif, jpg, jpeg,
+     * Transform a {@link Bitmap} to/from PNG image format, the image is decoded at full resolution.
+     * {@link ImageMarshaller} decodes for a target size and reuses bitmaps.
      */
     class BitmapMarshaller implements DataMarshaller<Bitmap> {
 
@@ -273,7 +254,7 @@ public interface DataMarshaller<T> {
 
         @Override
         public String[] responseContentType() {
-            return new String[] {"image/png", "image/jpg", "image/gif"};
+            return new String[] {"image/png", "image/jpeg", "image/jpg", "image/gif", "image/webp"};
         }
     }
 
@@ -0,0 +1,119 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Ideal Technologies Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.ideal.restless;
+
+import android.os.Process;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The stage of the {@link RequestThreadPool} which transforms the received responses and
+ * delivers them to the callbacks, so the network threads are free for the next request while
+ * the CPU bound decoding runs on as many threads as the device has cores.
+ * <p>
+ * The queue is bounded. When it is full the network thread decodes the response itself, which
+ * holds back the network stage until the decode stage catches up. A task submitted after
+ * {@link #shutdown()} also runs on the submitting thread, so a received response is never lost.
+ */
+final class DecodeStage implements Executor {
+
+    /**
+     * The number of responses queued per decode thread
+     */
+    private static final int QUEUE_PER_THREAD = 16;
+
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong callerRuns = new AtomicLong();
+    private final AtomicLong queueTime = new AtomicLong();
+
+    DecodeStage(int size) {
+        final AtomicInteger count = new AtomicInteger();
+        executor = new ThreadPoolExecutor(size, size, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(size * QUEUE_PER_THREAD),
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(final Runnable r) {
+                        Thread thread = new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                                r.run();
+                            }
+                        }, "HTTP-Decode-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                },
+                new RejectedExecutionHandler() {
+                    @Override
+                    public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+                        callerRuns.incrementAndGet();
+                        r.run();
+                    }
+                });
+    }
+
+    /**
+     * @return The number of decode threads for the device, one per CPU core
+     */
+    static int defaultSize() {
+        return Math.max(1, Runtime.getRuntime().availableProcessors());
+    }
+
+    @Override
+    public void execute(final Runnable command) {
+        final long queued = System.nanoTime();
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                queueTime.addAndGet(System.nanoTime() - queued);
+                command.run();
+            }
+        });
+    }
+
+    StageStats getStats() {
+        return new StageStats(executor.getPoolSize(), executor.getActiveCount(),
+                executor.getQueue().size(), executor.getCompletedTaskCount(), callerRuns.get(),
+                queueTime.get());
+    }
+
+    /**
+     * Decode the queued responses and stop the threads
+     */
+    void shutdown() {
+        executor.shutdown();
+    }
+}
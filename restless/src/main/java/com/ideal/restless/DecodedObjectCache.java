@@ -0,0 +1,251 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Ideal Technologies Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.ideal.restless;
+
+import android.graphics.Bitmap;
+import android.util.LruCache;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Iterator;
+
+/**
+ * Keep the unmarshalled object of a {@link CacheEntry}, so a cache hit does not have to
+ * unmarshal the same response body again.
+ * <p>
+ * The decoded objects are stored per {@link CacheEntry} instance and per decoder, see
+ * {@link #decoderOf(DataMarshaller)}. Once the {@link CacheEntry} is replaced or removed from the
+ * {@link HttpCache} the decoded objects are removed as well. Mutable objects ({@link JSONObject},
+ * {@link JSONArray} and {@code byte[]}) are copied on read, objects that cannot be copied safely
+ * are not cached.
+ */
+final class DecodedObjectCache {
+
+    /**
+     * Rough per node overhead of the {@link JSONObject} tree compare to the raw body size.
+     */
+    private static final int JSON_WEIGHT_FACTOR = 4;
+
+    private final LruCache<CacheEntry, Decoded> cache;
+
+    DecodedObjectCache(int maxBytes) {
+        cache = new LruCache<CacheEntry, Decoded>(maxBytes) {
+            @Override
+            protected int sizeOf(CacheEntry key, Decoded value) {
+                return value.weight;
+            }
+        };
+    }
+
+    /**
+     * @return The key of the objects decoded by the marshaller, its class and its type, or the
+     * target size and config of an {@link ImageMarshaller}. A marshaller created per request
+     * shares the objects of the same configuration.
+     */
+    static Object decoderOf(DataMarshaller<?> marshaller) {
+        if (marshaller instanceof ImageMarshaller) {
+            return new Decoder(marshaller.getClass(), ((ImageMarshaller) marshaller).decodeConfiguration());
+        }
+        return new Decoder(marshaller.getClass(), marshaller.getType());
+    }
+
+    /**
+     * @return A private copy of the decoded object, or null when it is not cached.
+     */
+    Object get(CacheEntry cacheEntry, Object decoder) {
+        Decoded decoded = cache.get(cacheEntry);
+        if (decoded != null) {
+            for (int i = 0; i < decoded.decoders.length; i++) {
+                if (decoded.decoders[i].equals(decoder)) {
+                    return copy(decoded.values[i]);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Store a copy of the decoded object, the caller keeps the ownership of the provided value.
+     */
+    void put(CacheEntry cacheEntry, Object decoder, Object value) {
+        if (value == null || !isCopyable(value)) {
+            return;
+        }
+        Object copy = copy(value);
+        int weight = weigh(copy, cacheEntry.getResponse().getContentLength());
+        synchronized (this) {
+            Decoded decoded = cache.get(cacheEntry);
+            cache.put(cacheEntry, decoded == null ? new Decoded(decoder, copy, weight)
+                    : decoded.with(decoder, copy, weight));
+        }
+    }
+
+    /**
+     * Remove all decoded objects of the {@link CacheEntry}
+     */
+    void invalidate(CacheEntry cacheEntry) {
+        cache.remove(cacheEntry);
+    }
+
+    void clear() {
+        cache.evictAll();
+    }
+
+    private static boolean isCopyable(Object value) {
+        if (value instanceof Bitmap) {
+            //Only immutable bitmap can be shared between callers
+            return !((Bitmap) value).isMutable();
+        }
+        return value instanceof JSONObject
+                || value instanceof JSONArray
+                || value instanceof byte[]
+                || value instanceof String
+                || value instanceof Number
+                || value instanceof Boolean;
+    }
+
+    private static int weigh(Object value, int bodyLength) {
+        if (value instanceof Bitmap) {
+            return ((Bitmap) value).getByteCount();
+        }
+        if (value instanceof byte[]) {
+            return ((byte[]) value).length;
+        }
+        if (value instanceof String) {
+            return ((String) value).length() * 2;
+        }
+        if (value instanceof JSONObject || value instanceof JSONArray) {
+            return Math.max(1, bodyLength * JSON_WEIGHT_FACTOR);
+        }
+        return Math.max(1, bodyLength);
+    }
+
+    private static Object copy(Object value) {
+        try {
+            if (value instanceof JSONObject) {
+                return copy((JSONObject) value);
+            }
+            if (value instanceof JSONArray) {
+                return copy((JSONArray) value);
+            }
+        } catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+        if (value instanceof byte[]) {
+            return ((byte[]) value).clone();
+        }
+        //Immutable
+        return value;
+    }
+
+    private static JSONObject copy(JSONObject source) throws JSONException {
+        JSONObject target = new JSONObject();
+        Iterator<String> keys = source.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            target.put(key, copy(source.opt(key)));
+        }
+        return target;
+    }
+
+    private static JSONArray copy(JSONArray source) throws JSONException {
+        JSONArray target = new JSONArray();
+        for (int i = 0; i < source.length(); i++) {
+            target.put(copy(source.opt(i)));
+        }
+        return target;
+    }
+
+    /**
+     * A marshaller class and the configuration which changes what it decodes
+     */
+    private static final class Decoder {
+
+        private final Class<?> type;
+        private final Object configuration;
+
+        Decoder(Class<?> type, Object configuration) {
+            this.type = type;
+            this.configuration = configuration;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Decoder)) {
+                return false;
+            }
+            Decoder that = (Decoder) o;
+            return type == that.type && (configuration == null ? that.configuration == null
+                    : configuration.equals(that.configuration));
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * type.hashCode() + (configuration == null ? 0 : configuration.hashCode());
+        }
+    }
+
+    /**
+     * The decoded objects of a {@link CacheEntry}. Usually a response is decoded by a single
+     * decoder, the arrays are copied on write.
+     */
+    private static final class Decoded {
+
+        private final Object[] decoders;
+        private final Object[] values;
+        private final int weight;
+
+        Decoded(Object decoder, Object value, int weight) {
+            this(new Object[]{decoder}, new Object[]{value}, weight);
+        }
+
+        private Decoded(Object[] decoders, Object[] values, int weight) {
+            this.decoders = decoders;
+            this.values = values;
+            this.weight = weight;
+        }
+
+        Decoded with(Object decoder, Object value, int weight) {
+            for (Object d : decoders) {
+                if (d.equals(decoder)) {
+                    return this;
+                }
+            }
+            int n = decoders.length;
+            Object[] d = new Object[n + 1];
+            Object[] v = new Object[n + 1];
+            System.arraycopy(decoders, 0, d, 0, n);
+            System.arraycopy(values, 0, v, 0, n);
+            d[n] = decoder;
+            v[n] = value;
+            return new Decoded(d, v, this.weight + weight);
+        }
+    }
+}
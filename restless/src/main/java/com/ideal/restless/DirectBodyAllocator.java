@@ -0,0 +1,177 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Ideal Technologies Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.ideal.restless;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Allocate the response bodies of {@link OffHeapLRUCache} from direct {@link ByteBuffer} slabs.
+ * <p>
+ * A slab is carved into chunks of a single power of two size class when the size class runs out
+ * of free chunks, freed chunks go back to the free list of their size class. Bodies larger than
+ * the largest size class, or allocated after the slab budget is used up, get a dedicated direct
+ * buffer which is reclaimed with the chunk object.
+ */
+final class DirectBodyAllocator {
+
+    /**
+     * The smallest size class, 512 bytes
+     */
+    private static final int MIN_SHIFT = 9;
+
+    private final int slabSize;
+    private final int maxChunkSize;
+    private final long maxSlabBytes;
+    private final ArrayDeque<ByteBuffer>[] freeChunks;
+    private long slabBytes;
+
+    /**
+     * @param slabSize     The size of a slab, the largest size class is a quarter of it
+     * @param maxSlabBytes The maximum bytes reserved by the slabs
+     */
+    @SuppressWarnings("unchecked")
+    DirectBodyAllocator(int slabSize, long maxSlabBytes) {
+        this.slabSize = Math.max(Integer.highestOneBit(slabSize), 1 << (MIN_SHIFT + 2));
+        this.maxChunkSize = this.slabSize >> 2;
+        this.maxSlabBytes = maxSlabBytes;
+        int classes = Integer.numberOfTrailingZeros(maxChunkSize) - MIN_SHIFT + 1;
+        this.freeChunks = new ArrayDeque[classes];
+        for (int i = 0; i < classes; i++) {
+            freeChunks[i] = new ArrayDeque<>();
+        }
+    }
+
+    /**
+     * Copy the data to a new chunk
+     *
+     * @return The chunk with a single reference
+     */
+    Chunk allocate(ByteBuffer data) {
+        int length = data.remaining();
+        ByteBuffer buffer = length <= maxChunkSize ? poll(sizeClass(length)) : null;
+        int sizeClass = -1;
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(length);
+        } else {
+            sizeClass = sizeClass(length);
+        }
+        buffer.clear();
+        buffer.put(data);
+        buffer.flip();
+        return new Chunk(this, sizeClass, buffer);
+    }
+
+    /**
+     * @return The bytes reserved by the slabs
+     */
+    synchronized long getSlabBytes() {
+        return slabBytes;
+    }
+
+    private static int sizeClass(int length) {
+        int shift = length <= 1 << MIN_SHIFT ? MIN_SHIFT : 32 - Integer.numberOfLeadingZeros(length - 1);
+        return shift - MIN_SHIFT;
+    }
+
+    private synchronized ByteBuffer poll(int sizeClass) {
+        ArrayDeque<ByteBuffer> free = freeChunks[sizeClass];
+        if (free.isEmpty() && slabBytes + slabSize <= maxSlabBytes) {
+            ByteBuffer slab = ByteBuffer.allocateDirect(slabSize);
+            int chunkSize = 1 << (sizeClass + MIN_SHIFT);
+            for (int offset = 0; offset < slabSize; offset += chunkSize) {
+                slab.limit(offset + chunkSize).position(offset);
+                free.add(slab.slice());
+            }
+            slabBytes += slabSize;
+        }
+        return free.poll();
+    }
+
+    private synchronized void free(int sizeClass, ByteBuffer buffer) {
+        freeChunks[sizeClass].add(buffer);
+    }
+
+    /**
+     * A reference counted body, returned to the allocator when the last reference is released.
+     */
+    static final class Chunk {
+
+        private final DirectBodyAllocator allocator;
+        private final int sizeClass;
+        private final ByteBuffer buffer;
+        private final AtomicInteger refCount = new AtomicInteger(1);
+
+        private Chunk(DirectBodyAllocator allocator, int sizeClass, ByteBuffer buffer) {
+            this.allocator = allocator;
+            this.sizeClass = sizeClass;
+            this.buffer = buffer;
+        }
+
+        /**
+         * @return The length of the body
+         */
+        int length() {
+            return buffer.limit();
+        }
+
+        /**
+         * @return A read only view of the body
+         */
+        ByteBuffer view() {
+            return buffer.asReadOnlyBuffer();
+        }
+
+        /**
+         * Add a reference
+         *
+         * @return False when the chunk is already freed
+         */
+        boolean retain() {
+            for (; ; ) {
+                int count = refCount.get();
+                if (count == 0) {
+                    return false;
+                }
+                if (refCount.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * Remove a reference, the chunk is freed when no reference left
+         */
+        void release() {
+            if (refCount.decrementAndGet() == 0 && sizeClass >= 0) {
+                allocator.free(sizeClass, buffer);
+            }
+        }
+    }
+}
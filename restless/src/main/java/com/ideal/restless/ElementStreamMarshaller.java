@@ -0,0 +1,218 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Ideal Technologies Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.ideal.restless;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Hand the elements of a JSON array, or the values of newline delimited JSON
+ * ({@code application/x-ndjson}), to a {@link Request.ElementCallback} in batches, instead of
+ * building the whole list.
+ * <p>
+ * Set to a request by {@link Request.Builder#setResponseMarshaller(DataMarshaller)}, the elements
+ * are read while the body is still arriving, so the first batch is delivered about when the
+ * first bytes are received. The {@link Request.SuccessCallback} is the completion callback, it
+ * receives the number of elements after the last batch. A body read from the cache is streamed
+ * the same way from the stored bytes.
+ * <p>
+ * The elements delivered before a malformed element are not taken back, the malformed element
+ * fails the request. A request retried, or served by {@link CachePolicy#NETWORK_FIRST_WITH_CACHE_FALLBACK}
+ * after the network fails in the middle of the body, delivers the elements again from the first.
+ * A {@link CachePolicy#CACHE_THEN_NETWORK} request streams the network response once it is
+ * received completely, so an unchanged response is not delivered twice.
+ *
+ * @param <E> The type of the elements
+ */
+public class ElementStreamMarshaller<E> implements StreamingDataMarshaller<Integer> {
+
+    private static final String UTF_8 = "UTF-8";
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private final JsonStreamMarshaller<E> elementMarshaller;
+    private final int batchSize;
+    private final Request.ElementCallback<E> callback;
+
+    /**
+     * @param elementMarshaller The marshaller reading each element, for example a
+     *                          {@link ModelMarshaller}
+     * @param batchSize         The number of elements delivered together, 1 to deliver each
+     *                          element as it is read. The last batch may be smaller.
+     * @param callback          The callback of the batches
+     */
+    public ElementStreamMarshaller(JsonStreamMarshaller<E> elementMarshaller, int batchSize,
+                                   Request.ElementCallback<E> callback) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize < 1");
+        }
+        this.elementMarshaller = elementMarshaller;
+        this.batchSize = batchSize;
+        this.callback = callback;
+    }
+
+    /**
+     * Deliver the elements as the types {@link org.json.JSONObject} holds, refer to
+     * {@link JsonStreamMarshaller#readValue(JsonReader)}
+     */
+    public static ElementStreamMarshaller<Object> of(int batchSize, Request.ElementCallback<Object> callback) {
+        return new ElementStreamMarshaller<>(null, batchSize, callback);
+    }
+
+    @Override
+    public Integer unmarshal(byte[] content) throws IOException {
+        return unmarshal(new ByteArrayInputStream(content));
+    }
+
+    /**
+     * Deliver the batches on the calling thread. The content is read as NDJSON unless it starts
+     * with a JSON array.
+     *
+     * @return The number of elements
+     */
+    @Override
+    public Integer unmarshal(InputStream stream) throws IOException {
+        return read(stream, null, DIRECT);
+    }
+
+    /**
+     * @param contentType The response content type, the content is read as NDJSON unless it
+     *                    starts with a JSON array when it is null
+     * @param delivery    The executor delivering each batch to the callback
+     * @return The number of elements
+     */
+    int read(InputStream stream, String contentType, Executor delivery) throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(stream, UTF_8));
+        try {
+            String mediaType = MarshallerRegistry.mediaType(contentType);
+            //Lenient to read one top level value after another
+            reader.setLenient(true);
+            JsonToken first;
+            try {
+                first = reader.peek();
+            } catch (EOFException e) {
+                if (mediaType != null && !isDelimited(mediaType)) {
+                    throw e;
+                }
+                //An empty NDJSON body has no element
+                return 0;
+            }
+            boolean delimited = mediaType == null ? first != JsonToken.BEGIN_ARRAY : isDelimited(mediaType);
+            reader.setLenient(delimited);
+
+            int count = 0;
+            List<E> batch = new ArrayList<>(batchSize);
+            if (!delimited) {
+                reader.beginArray();
+            }
+            while (delimited ? reader.peek() != JsonToken.END_DOCUMENT : reader.hasNext()) {
+                batch.add(readElement(reader));
+                count++;
+                if (batch.size() == batchSize) {
+                    deliver(delivery, batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (!delimited) {
+                reader.endArray();
+                if (reader.peek() != JsonToken.END_DOCUMENT) {
+                    throw new IOException("Unexpected content after the JSON array");
+                }
+            }
+            if (!batch.isEmpty()) {
+                deliver(delivery, batch);
+            }
+            return count;
+        } catch (IllegalStateException e) {
+            //A token of an unexpected type, reported as malformed content
+            throw new IOException(e.getMessage());
+        } finally {
+            reader.close();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private E readElement(JsonReader reader) throws IOException {
+        return elementMarshaller == null ? (E) JsonStreamMarshaller.readValue(reader)
+                : elementMarshaller.read(reader);
+    }
+
+    private void deliver(Executor delivery, final List<E> batch) {
+        delivery.execute(new Runnable() {
+            @Override
+            public void run() {
+                callback.onElements(batch);
+            }
+        });
+    }
+
+    static boolean isDelimited(String mediaType) {
+        return "application/x-ndjson".equals(mediaType) || "application/jsonl".equals(mediaType)
+                || "application/x-jsonlines".equals(mediaType);
+    }
+
+    /**
+     * The marshaller reads responses only, the count it produces has no request body.
+     *
+     * @throws IOException Always
+     */
+    @Override
+    public byte[] marshal(Integer data) throws IOException {
+        throw new IOException("ElementStreamMarshaller cannot write a request body");
+    }
+
+    @Override
+    public Class<Integer> getType() {
+        return Integer.class;
+    }
+
+    @Override
+    public String requestContentType() {
+        return null;
+    }
+
+    @Override
+    public String[] responseContentType() {
+        return new String[]{"application/json", "application/x-ndjson", "application/jsonl",
+                "application/x-jsonlines"};
+    }
+}
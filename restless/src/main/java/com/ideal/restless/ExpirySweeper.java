@@ -0,0 +1,110 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Ideal Technologies Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.ideal.restless;
+
+import android.os.Process;
+
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Evict the expired {@link CacheEntry} of a {@link HttpCache} in background. The entries are
+ * tracked by a {@link TimingWheel} which is advanced on a low priority daemon thread shared by
+ * all the caches.
+ * <p>
+ * Only the entries without validator are evicted, an expired entry with validator is kept for
+ * the conditional request.
+ */
+final class ExpirySweeper implements Runnable {
+
+    private static final ScheduledThreadPoolExecutor EXECUTOR =
+            new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable r) {
+                    Thread thread = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_LOWEST);
+                            r.run();
+                        }
+                    }, "HttpCache-ExpirySweeper");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private final HttpCache cache;
+    private final TimingWheel<CacheEntry> wheel;
+    private final ScheduledFuture<?> future;
+
+    ExpirySweeper(HttpCache cache, long tickMillis) {
+        this.cache = cache;
+        this.wheel = new TimingWheel<>(tickMillis, System.currentTimeMillis());
+        this.future = EXECUTOR.scheduleWithFixedDelay(this, tickMillis, tickMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Track the {@link CacheEntry} when it expires and has no validator
+     */
+    void schedule(CacheEntry cacheEntry) {
+        if (cacheEntry.getExpiresAt() != Long.MAX_VALUE && !cacheEntry.hasValidator()) {
+            cacheEntry.setExpiryTimeout(wheel.schedule(cacheEntry, cacheEntry.getExpiresAt()));
+        }
+    }
+
+    /**
+     * Stop tracking the {@link CacheEntry}
+     */
+    void cancel(CacheEntry cacheEntry) {
+        TimingWheel.Timeout<CacheEntry> timeout = cacheEntry.getExpiryTimeout();
+        if (timeout != null) {
+            wheel.cancel(timeout);
+            cacheEntry.setExpiryTimeout(null);
+        }
+    }
+
+    /**
+     * Stop the sweeper, the tracked entries are kept in the cache.
+     */
+    void shutdown() {
+        future.cancel(false);
+    }
+
+    @Override
+    public void run() {
+        List<CacheEntry> expired = wheel.advance(System.currentTimeMillis());
+        for (CacheEntry cacheEntry : expired) {
+            cacheEntry.setExpiryTimeout(null);
+            cache.delete(cacheEntry, CacheStats.Eviction.EXPIRED);
+        }
+    }
+}
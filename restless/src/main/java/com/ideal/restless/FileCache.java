@@ -10,6 +10,7 @@ public class FileCache implements Cache<Request, HttpResponse> {
 
     private File file;
     private long size;
+    private final CacheStats stats = new CacheStats();
 
     public FileCache(File file, long size) throws IOException {
         this.file = file;
@@ -17,6 +18,26 @@ public class FileCache implements Cache<Request, HttpResponse> {
         HttpResponseCache.install(file, size);
     }
 
+    /**
+     * @return The statistics of the cache since it is created. The request counts are provided
+     * by {@link HttpResponseCache}, the eviction and bytes served are not tracked.
+     */
+    public CacheStats.Snapshot getStats() {
+        CacheStats.Snapshot snapshot = stats.snapshot();
+        HttpResponseCache cache = HttpResponseCache.getInstalled();
+        if (cache == null) {
+            return snapshot;
+        }
+        //A conditional hit is counted as both hit and network request
+        long revalidation = Math.max(0, cache.getHitCount() + cache.getNetworkCount() - cache.getRequestCount());
+        return snapshot.withRequestCounts(cache.getHitCount() - revalidation,
+                cache.getNetworkCount() - revalidation, revalidation);
+    }
+
+    CacheStats stats() {
+        return stats;
+    }
+
     @Override
     public HttpResponse get(Request key) {
         HttpURLConnection connection = ((RunnableRequest) key).getConnection();
@@ -26,6 +47,24 @@ public class FileCache implements Cache<Request, HttpResponse> {
         return null;
     }
 
+    /**
+     * Map the {@link CachePolicy} of the request to {@link HttpResponseCache}. A
+     * {@link CachePolicy#NETWORK_ONLY} request bypasses the platform cache, without asking the
+     * servers and proxies on the way to revalidate. The policies serving a stale response are
+     * left to the platform cache, which treats them as {@link CachePolicy#CACHE_FIRST}.
+     */
+    void prepare(Request request) {
+        HttpURLConnection connection = ((RunnableRequest) request).getConnection();
+        if (connection == null) {
+            return;
+        }
+        if (request.getCachePolicy() == CachePolicy.NETWORK_ONLY) {
+            connection.setUseCaches(false);
+        } else if (request.getCachePolicy() == CachePolicy.CACHE_ONLY) {
+            connection.setRequestProperty("Cache-Control", "only-if-cached");
+        }
+    }
+
     @Override
     public void put(Request key, HttpResponse value) {
         HttpResponseCache cache = HttpResponseCache.getInstalled();
@@ -0,0 +1,232 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Ideal Technologies Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.ideal.restless;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Encode and decode {@code application/x-www-form-urlencoded} content as UTF-8, straight between
+ * the characters and the bytes. The encoded form is the one of {@link java.net.URLEncoder}, the
+ * characters {@code a-z A-Z 0-9 . - * _} are kept, a space is {@code +} and any other byte is
+ * percent-encoded.
+ * <p>
+ * The bytes are written to a buffer kept by the thread, the content only allocates the array
+ * returned.
+ */
+final class FormCodec {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final byte[] HEX = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9',
+            'A', 'B', 'C', 'D', 'E', 'F'};
+
+    /**
+     * True for the ASCII characters written as they are
+     */
+    private static final boolean[] UNRESERVED = new boolean[128];
+
+    static {
+        for (char c = 'a'; c <= 'z'; c++) {
+            UNRESERVED[c] = true;
+        }
+        for (char c = 'A'; c <= 'Z'; c++) {
+            UNRESERVED[c] = true;
+        }
+        for (char c = '0'; c <= '9'; c++) {
+            UNRESERVED[c] = true;
+        }
+        UNRESERVED['.'] = true;
+        UNRESERVED['-'] = true;
+        UNRESERVED['*'] = true;
+        UNRESERVED['_'] = true;
+    }
+
+    /**
+     * A buffer grown beyond is not kept by the thread
+     */
+    private static final int MAX_RETAINED = 64 * 1024;
+
+    private static final ThreadLocal<byte[]> BUFFER = new ThreadLocal<>();
+
+    private byte[] buffer;
+    private int count;
+
+    private FormCodec() {
+        //Taken from the thread, a toString() encoding another form gets a buffer of its own
+        buffer = BUFFER.get();
+        if (buffer == null) {
+            buffer = new byte[1024];
+        } else {
+            BUFFER.set(null);
+        }
+    }
+
+    /**
+     * @param form The names and values, {@code toString()} is written for each of them. A name
+     *             with null value is written without {@code =}.
+     * @return The encoded content
+     */
+    static byte[] encode(Map<?, ?> form) {
+        FormCodec codec = new FormCodec();
+        for (Map.Entry<?, ?> entry : form.entrySet()) {
+            if (codec.count > 0) {
+                codec.append('&');
+            }
+            codec.encode(entry.getKey().toString());
+            if (entry.getValue() != null) {
+                codec.append('=');
+                codec.encode(entry.getValue().toString());
+            }
+        }
+        return codec.finish();
+    }
+
+    /**
+     * @return The names and values in the order of the content, the last value of a repeated
+     * name, null for a name without {@code =}
+     * @throws IllegalArgumentException When a {@code %} is not followed by two hex digits
+     */
+    static LinkedHashMap<String, String> decode(byte[] content) {
+        LinkedHashMap<String, String> form = new LinkedHashMap<>();
+        FormCodec codec = new FormCodec();
+        int start = 0;
+        while (start < content.length) {
+            int end = start;
+            int separator = -1;
+            while (end < content.length && content[end] != '&') {
+                if (separator < 0 && content[end] == '=') {
+                    separator = end;
+                }
+                end++;
+            }
+            if (end > start) {
+                String name = codec.decode(content, start, separator < 0 ? end : separator);
+                form.put(name, separator < 0 ? null : codec.decode(content, separator + 1, end));
+            }
+            start = end + 1;
+        }
+        codec.release();
+        return form;
+    }
+
+    private void encode(String s) {
+        int length = s.length();
+        require(length);
+        for (int i = 0; i < length; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                if (UNRESERVED[c]) {
+                    append(c);
+                } else if (c == ' ') {
+                    append('+');
+                } else {
+                    escape(c);
+                }
+            } else if (c < 0x800) {
+                escape(0xc0 | (c >> 6));
+                escape(0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, s.charAt(++i));
+                escape(0xf0 | (codePoint >> 18));
+                escape(0x80 | ((codePoint >> 12) & 0x3f));
+                escape(0x80 | ((codePoint >> 6) & 0x3f));
+                escape(0x80 | (codePoint & 0x3f));
+            } else if (Character.isHighSurrogate(c) || Character.isLowSurrogate(c)) {
+                //An unpaired surrogate is replaced, as the UTF-8 encoder does
+                escape('?');
+            } else {
+                escape(0xe0 | (c >> 12));
+                escape(0x80 | ((c >> 6) & 0x3f));
+                escape(0x80 | (c & 0x3f));
+            }
+        }
+    }
+
+    private String decode(byte[] content, int start, int end) {
+        count = 0;
+        require(end - start);
+        for (int i = start; i < end; i++) {
+            byte b = content[i];
+            if (b == '+') {
+                buffer[count++] = ' ';
+            } else if (b == '%') {
+                if (i + 2 >= end) {
+                    throw new IllegalArgumentException("Incomplete percent encoding at " + i);
+                }
+                int high = Character.digit(content[i + 1], 16);
+                int low = Character.digit(content[i + 2], 16);
+                if (high < 0 || low < 0) {
+                    throw new IllegalArgumentException("Illegal percent encoding at " + i);
+                }
+                buffer[count++] = (byte) ((high << 4) | low);
+                i += 2;
+            } else {
+                buffer[count++] = b;
+            }
+        }
+        return new String(buffer, 0, count, UTF_8);
+    }
+
+    private void append(char c) {
+        if (count == buffer.length) {
+            require(1);
+        }
+        buffer[count++] = (byte) c;
+    }
+
+    private void escape(int b) {
+        require(3);
+        buffer[count++] = '%';
+        buffer[count++] = HEX[(b >> 4) & 0xf];
+        buffer[count++] = HEX[b & 0xf];
+    }
+
+    /**
+     * Make room for n more bytes
+     */
+    private void require(int n) {
+        if (buffer.length - count < n) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, count + n));
+        }
+    }
+
+    private byte[] finish() {
+        byte[] content = Arrays.copyOf(buffer, count);
+        release();
+        return content;
+    }
+
+    private void release() {
+        if (buffer.length <= MAX_RETAINED) {
+            BUFFER.set(buffer);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Ideal Technologies Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.ideal.restless;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * The GreedyDual-Size-Frequency replacement policy, which evicts the key of the lowest value per
+ * byte first.
+ * <p>
+ * A key has the priority {@code L + frequency * cost / size}, where {@code L} is the priority of
+ * the last evicted key. The priority of a key is recomputed on access, so the keys which are not
+ * accessed age out as {@code L} grows, however costly they are to fetch.
+ * <p>
+ * The policy is not thread safe.
+ *
+ * @param <K> The type of the key
+ */
+final class GreedyDualSizeFrequency<K> {
+
+    private static final Comparator<Node<?>> ORDER = new Comparator<Node<?>>() {
+        @Override
+        public int compare(Node<?> a, Node<?> b) {
+            int order = Double.compare(a.priority, b.priority);
+            //The least recently accessed key goes first among the keys of the same priority
+            return order != 0 ? order : (a.sequence < b.sequence ? -1 : (a.sequence == b.sequence ? 0 : 1));
+        }
+    };
+
+    private final Map<K, Node<K>> nodes = new HashMap<>();
+    private final TreeSet<Node<?>> queue = new TreeSet<>(ORDER);
+    private double inflation;
+    private long sequence;
+    private long totalSize;
+
+    /**
+     * Add the key, or replace the cost and size of the key keeping its frequency.
+     *
+     * @param cost The cost to fetch the value of the key again
+     * @param size The size of the value of the key, at least 1
+     */
+    void add(K key, double cost, long size) {
+        Node<K> node = nodes.get(key);
+        if (node == null) {
+            node = new Node<>(key);
+            nodes.put(key, node);
+        } else {
+            queue.remove(node);
+            totalSize -= node.size;
+        }
+        node.cost = cost;
+        node.size = Math.max(1, size);
+        totalSize += node.size;
+        touch(node);
+    }
+
+    /**
+     * Count an access to the key.
+     *
+     * @return False when the key is not tracked
+     */
+    boolean access(K key) {
+        Node<K> node = nodes.get(key);
+        if (node == null) {
+            return false;
+        }
+        queue.remove(node);
+        touch(node);
+        return true;
+    }
+
+    void remove(K key) {
+        Node<K> node = nodes.remove(key);
+        if (node != null) {
+            queue.remove(node);
+            totalSize -= node.size;
+        }
+    }
+
+    /**
+     * Remove the key of the lowest priority, which raises the priority of the keys added or
+     * accessed afterwards.
+     *
+     * @return The removed key, or null when no key is tracked
+     */
+    @SuppressWarnings("unchecked")
+    K evict() {
+        Node<K> node = (Node<K>) queue.pollFirst();
+        if (node == null) {
+            return null;
+        }
+        nodes.remove(node.key);
+        totalSize -= node.size;
+        inflation = node.priority;
+        return node.key;
+    }
+
+    /**
+     * @return The total size of the tracked keys
+     */
+    long size() {
+        return totalSize;
+    }
+
+    /**
+     * @return The tracked keys, the highest priority first
+     */
+    @SuppressWarnings("unchecked")
+    List<K> keys() {
+        List<K> keys = new ArrayList<>(queue.size());
+        for (Node<?> node : queue.descendingSet()) {
+            keys.add(((Node<K>) node).key);
+        }
+        return keys;
+    }
+
+    private void touch(Node<K> node) {
+        node.frequency++;
+        node.priority = inflation + node.frequency * node.cost / node.size;
+        node.sequence = sequence++;
+        queue.add(node);
+    }
+
+    private static final class Node<K> {
+        private final K key;
+        private double cost;
+        private long size;
+        private long frequency;
+        private double priority;
+        private long sequence;
+
+        Node(K key) {
+            this.key = key;
+        }
+    }
+}
@@ -1,25 +1,216 @@
 package com.ideal.restless;
 
+import android.net.Uri;
+
+import java.io.File;
 import java.io.IOException;
 import java.net.HttpURLConnection;
 import java.util.ArrayList;
-import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Http caching which implement https://www.w3.org/Protocols/rfc2616/rfc2616-sec14.html#sec14.9
  */
 public abstract class HttpCache implements Cache<Request, HttpResponse> {
 
+    private final CacheStats stats = new CacheStats();
+    private volatile DecodedObjectCache decodedObjectCache;
+    private volatile ExpirySweeper expirySweeper;
+    private volatile long heuristicFreshnessCap = CacheEntry.DEFAULT_HEURISTIC_CAP;
+    private volatile CacheSnapshot snapshot;
+    private volatile RefreshAhead refreshAhead;
+    private volatile long negativeTtl;
+    private volatile boolean negativeServerErrors;
+    private final UriTrie index = new UriTrie();
+    private final Object indexLock = new Object();
+
+    /**
+     * Keep the unmarshalled response object of the cached responses, so a cache hit is delivered
+     * without unmarshalling the body again. Disabled by default.
+     *
+     * @param maxBytes The estimated size of the decoded objects to keep, 0 to disable.
+     */
+    public void setDecodedCacheSize(int maxBytes) {
+        decodedObjectCache = maxBytes > 0 ? new DecodedObjectCache(maxBytes) : null;
+    }
+
+    /**
+     * Evict the expired entries without validator in background, so the memory holds live
+     * responses only. Disabled by default. The entries already stored are tracked by the new
+     * sweeper.
+     *
+     * @param interval The interval to sweep the expired entries, 0 to disable.
+     * @param unit     The time unit of the interval
+     */
+    public synchronized void setExpirySweepInterval(long interval, TimeUnit unit) {
+        ExpirySweeper old = expirySweeper;
+        ExpirySweeper sweeper = interval > 0 ? new ExpirySweeper(this, unit.toMillis(interval)) : null;
+        expirySweeper = sweeper;
+        if (old != null) {
+            old.shutdown();
+        }
+        for (CacheEntry cacheEntry : entries()) {
+            if (old != null) {
+                old.cancel(cacheEntry);
+            }
+            if (sweeper != null) {
+                sweeper.schedule(cacheEntry);
+            }
+        }
+    }
+
+    /**
+     * A response with {@code Last-Modified} but without explicit expiration time is fresh for 10%
+     * of the time since it was last modified, up to this cap. Default to 24 hours.
+     *
+     * @param cap  The maximum heuristic freshness lifetime, 0 to disable heuristic freshness
+     * @param unit The time unit of the cap
+     */
+    public void setHeuristicFreshnessCap(long cap, TimeUnit unit) {
+        heuristicFreshnessCap = unit.toMillis(cap);
+    }
+
+    /**
+     * Keep the {@code 404} and {@code 410} responses, and optionally the server error responses,
+     * for a short time, so the requests for a missing resource or a failing endpoint do not reach
+     * the network again meanwhile. A cached error response is delivered to the
+     * {@link Request.ErrorCallback} with {@link Request.CachedErrorException}. The expiration time
+     * set by the server takes precedence over the ttl. Disabled by default.
+     *
+     * @param ttl          The time to keep an error response, 0 to disable
+     * @param unit         The time unit of the ttl
+     * @param serverErrors True to keep the {@code 5xx} responses too
+     */
+    public void setNegativeCaching(long ttl, TimeUnit unit, boolean serverErrors) {
+        negativeServerErrors = serverErrors;
+        negativeTtl = unit.toMillis(ttl);
+    }
+
+    /**
+     * Revalidate an entry in background when it is read after the fraction of its freshness
+     * lifetime passed, so the popular entries are refreshed before they expire. Disabled by
+     * default.
+     *
+     * @param fraction      The fraction of the freshness lifetime, between 0 and 1, 0 to disable
+     * @param maxConcurrent The maximum number of refreshes in flight
+     */
+    public void setRefreshAhead(float fraction, int maxConcurrent) {
+        if (fraction >= 1 || maxConcurrent < 0) {
+            throw new IllegalArgumentException("fraction must be less than 1 and maxConcurrent not negative");
+        }
+        refreshAhead = fraction > 0 && maxConcurrent > 0 ? new RefreshAhead(fraction, maxConcurrent) : null;
+    }
+
+    /**
+     * Persist the most recently used entries to the file, in background periodically and when the
+     * {@link RequestThreadPool} shuts down. The entries in the file are restored when the
+     * snapshot is set, lazily and in parallel, the entries which expired in the meantime are
+     * dropped. Disabled by default.
+     *
+     * @param file       The snapshot file, null to disable
+     * @param maxEntries The maximum number of the entries to persist, should not be more than the
+     *                   cache can hold
+     * @param interval   The interval to write the snapshot, 0 to write it on shutdown only
+     * @param unit       The time unit of the interval
+     */
+    public synchronized void setSnapshot(File file, int maxEntries, long interval, TimeUnit unit) {
+        if (snapshot != null) {
+            snapshot.shutdown();
+            snapshot = null;
+        }
+        if (file != null) {
+            snapshot = new CacheSnapshot(this, file, maxEntries, unit.toMillis(interval));
+        }
+    }
+
+    /**
+     * Write the snapshot set by {@link #setSnapshot(File, int, long, TimeUnit)} in background
+     *
+     * @return The pending write, or null when the snapshot is not set
+     */
+    public Future<?> writeSnapshot() {
+        CacheSnapshot snapshot = this.snapshot;
+        return snapshot == null ? null : snapshot.writeAsync();
+    }
+
+    /**
+     * Remove the responses of the uri, with any {@code Vary} variant
+     *
+     * @return The number of the responses removed
+     */
+    public int invalidate(Uri uri) {
+        return invalidate(uri, UriTrie.EXACT);
+    }
+
+    /**
+     * Remove the responses of the uri and all the uris under its path, for example
+     * {@code http://host/users/42} removes {@code http://host/users/42?fields=name} and
+     * {@code http://host/users/42/friends}, but not {@code http://host/users/420}.
+     *
+     * @return The number of the responses removed
+     */
+    public int invalidatePrefix(Uri uri) {
+        return invalidate(uri, UriTrie.PREFIX);
+    }
+
+    /**
+     * Remove all the responses of the scheme and authority of the uri
+     *
+     * @return The number of the responses removed
+     */
+    public int invalidateHost(Uri uri) {
+        return invalidate(uri, UriTrie.HOST);
+    }
+
+    private int invalidate(Uri uri, int scope) {
+        CacheSnapshot snapshot = this.snapshot;
+        if (snapshot != null) {
+            snapshot.discard(uri, scope);
+        }
+        int count = 0;
+        for (CacheEntry cacheEntry : index.get(uri, scope)) {
+            delete(cacheEntry, CacheStats.Eviction.EXPLICIT);
+            count++;
+        }
+        return count;
+    }
+
     /**
-     * Find the {@link CacheEntry} by request
+     * @return The statistics of the cache since it is created
      */
-    abstract CacheEntry find(Request request);
+    public CacheStats.Snapshot getStats() {
+        return stats.snapshot();
+    }
+
+    CacheStats stats() {
+        return stats;
+    }
+
+    long heuristicFreshnessCap() {
+        return heuristicFreshnessCap;
+    }
 
     /**
-     * Delete the {@link CacheEntry} by request
+     * Find the {@link CacheEntry} by key
      */
-    abstract void delete(Request request);
+    abstract CacheEntry find(CacheKey key);
+
+    /**
+     * Delete the {@link CacheEntry} by key
+     */
+    abstract void delete(CacheKey key);
+
+    /**
+     * Delete the {@link CacheEntry} by key only when the key is still associated with it
+     *
+     * @return True when the {@link CacheEntry} is deleted
+     */
+    abstract boolean delete(CacheKey key, CacheEntry cacheEntry);
 
     /**
      * Delete all {@link CacheEntry}
@@ -27,9 +218,184 @@ public abstract class HttpCache implements Cache<Request, HttpResponse> {
     abstract void deleteAll();
 
     /**
-     * Create a {@link CacheEntry} which associate with the request
+     * Create a {@link CacheEntry} which associate with the key
+     */
+    abstract void create(CacheKey key, CacheEntry cacheEntry);
+
+    /**
+     * @return The stored {@link CacheEntry}, most recently used first
+     */
+    abstract List<CacheEntry> entries();
+
+    /**
+     * Called when the response of the {@link CacheEntry} is served to a request, unlike
+     * {@link #find(CacheKey)} which also probes the cache internally. Nothing is done by default.
+     */
+    void onServed(CacheEntry cacheEntry) {
+    }
+
+    /**
+     * Convert the response to the form the cache stores, called before the {@link CacheEntry} is
+     * created. The response is stored as is by default.
+     */
+    HttpResponse store(HttpResponse response) {
+        return response;
+    }
+
+    /**
+     * @return The response of the {@link CacheEntry} to serve to a request, or null when it can
+     * no longer be served. The stored response is served as is by default.
+     */
+    HttpResponse serve(CacheEntry cacheEntry) {
+        return cacheEntry.getResponse();
+    }
+
+    /**
+     * Find the {@link CacheEntry} by request. The primary key is probed first, only when the
+     * stored response varies a second probe is made with the secondary key built from the
+     * request headers nominated by {@code Vary}.
+     */
+    CacheEntry find(Request request) {
+        CacheEntry cacheEntry = findOrRestore(new CacheKey(request.getUri()));
+        if (cacheEntry == null || cacheEntry.getVary() == null) {
+            return cacheEntry;
+        }
+        CacheKey key = CacheKey.of(request.getUri(), cacheEntry.getVary(), request.getHeaders());
+        if (key.equals(cacheEntry.getKey())) {
+            return cacheEntry;
+        }
+        return findOrRestore(key);
+    }
+
+    /**
+     * Find the {@link CacheEntry} by key, or restore it from the snapshot when it is not
+     * restored yet.
+     */
+    private CacheEntry findOrRestore(CacheKey key) {
+        CacheEntry cacheEntry = find(key);
+        CacheSnapshot snapshot = this.snapshot;
+        if (cacheEntry == null && snapshot != null) {
+            cacheEntry = snapshot.load(key);
+        }
+        return cacheEntry;
+    }
+
+    /**
+     * Store a {@link CacheEntry} read from a persisted form, unless a response is already stored
+     * under the key.
+     *
+     * @return The stored {@link CacheEntry}, or null when it is not stored
+     */
+    CacheEntry restore(CacheKey key, CacheEntry cacheEntry) {
+        if (find(key) != null) {
+            return null;
+        }
+        HttpResponse persisted = cacheEntry.getResponse();
+        HttpResponse response = store(persisted);
+        if (response != persisted) {
+            cacheEntry = new CacheEntry(response, cacheEntry.getResponseTime(), heuristicFreshnessCap);
+        }
+        //A network response stored meanwhile is newer than the persisted one
+        if (!add(key, cacheEntry, true)) {
+            if (response != persisted) {
+                response.release();
+            }
+            return null;
+        }
+        return cacheEntry;
+    }
+
+    /**
+     * Store the {@link CacheEntry} under the key, and the primary key when the key is secondary.
+     *
+     * @param ifAbsent True to store only when no response is stored under the key, and to keep
+     *                 the variant already referenced by the primary key
+     * @return False when a response is already stored under the key and ifAbsent is set
+     */
+    private boolean add(CacheKey key, CacheEntry cacheEntry, boolean ifAbsent) {
+        cacheEntry.setKey(key);
+        //Create and index together, so a concurrent put of the same key cannot leave the index
+        //with the replaced entry, nor be replaced by a restored entry
+        synchronized (indexLock) {
+            if (ifAbsent && find(key) != null) {
+                return false;
+            }
+            create(key, cacheEntry);
+            if (key.isSecondary()) {
+                //The primary key keeps the latest variant, so a lookup can learn the Vary header
+                //names from the first probe.
+                CacheKey primary = new CacheKey(key.getUri());
+                if (!ifAbsent || find(primary) == null) {
+                    create(primary, cacheEntry);
+                }
+            }
+            //An entry larger than the cache is evicted right away. A concurrent delete does not
+            //take the lock, the entry deleted before it is indexed is unindexed here
+            if (find(key) == cacheEntry) {
+                index.add(cacheEntry);
+                if (find(key) != cacheEntry) {
+                    index.remove(cacheEntry);
+                }
+            }
+        }
+        ExpirySweeper sweeper = expirySweeper;
+        if (sweeper != null) {
+            sweeper.schedule(cacheEntry);
+        }
+        return true;
+    }
+
+    /**
+     * Called by the implementation after the {@link CacheEntry} is evicted, replaced or deleted
+     * from the key.
+     */
+    void onRemoved(CacheKey key, CacheEntry cacheEntry) {
+        if (!key.equals(cacheEntry.getKey())) {
+            return;
+        }
+        DecodedObjectCache decoded = decodedObjectCache;
+        if (decoded != null) {
+            decoded.invalidate(cacheEntry);
+        }
+        ExpirySweeper sweeper = expirySweeper;
+        if (sweeper != null) {
+            sweeper.cancel(cacheEntry);
+        }
+        index.remove(cacheEntry);
+        cacheEntry.getResponse().release();
+    }
+
+    /**
+     * @return A copy of the decoded object of the {@link CacheEntry} produced by the decoder,
+     * or null when it is not available.
      */
-    abstract void create(Request request, CacheEntry cacheEntry);
+    Object getDecoded(CacheEntry cacheEntry, Object decoder) {
+        DecodedObjectCache decoded = decodedObjectCache;
+        return decoded == null ? null : decoded.get(cacheEntry, decoder);
+    }
+
+    /**
+     * Keep the decoded object of the {@link CacheEntry} produced by the decoder
+     */
+    void putDecoded(CacheEntry cacheEntry, Object decoder, Object value) {
+        DecodedObjectCache decoded = decodedObjectCache;
+        if (decoded != null) {
+            decoded.put(cacheEntry, decoder, value);
+        }
+    }
+
+    /**
+     * Delete the {@link CacheEntry} and the primary key reference to it.
+     */
+    void delete(CacheEntry cacheEntry, CacheStats.Eviction eviction) {
+        CacheKey key = cacheEntry.getKey();
+        if (delete(key, cacheEntry)) {
+            stats.recordEviction(eviction);
+        }
+        if (key.isSecondary()) {
+            delete(new CacheKey(key.getUri()), cacheEntry);
+        }
+    }
 
 
     @Override
@@ -41,84 +407,230 @@ public abstract class HttpCache implements Cache<Request, HttpResponse> {
             CacheEntry cacheEntry = find(request);
             if (cacheEntry != null) {
 
-                if (rr.getCacheControl() != null) {
-                    if (rr.getCacheControl().onlyIfCached()) {
-                        return cacheEntry.getResponse();
-                    }
+                if (request.getCachePolicy() == CachePolicy.CACHE_ONLY
+                        || (rr.getCacheControl() != null && rr.getCacheControl().onlyIfCached())) {
+                    return serveStored(rr, cacheEntry);
                 }
 
-                if (cacheEntry.getETag() != null) {
-                    List<String> values = new ArrayList<>();
-                    values.add(cacheEntry.getETag());
-                    request.getHeaders().put("If-None-Match", values);
-                }
+                addValidators(request, cacheEntry);
 
                 CacheControl cc = cacheEntry.getCacheControl();
-                if (cc.isMustRevalidate() ||
+                if (cc != null && (cc.isMustRevalidate() ||
                         cc.isProxyRevalidate() ||
-                        cc.isNoCache()) {
+                        cc.isNoCache())) {
+                    stats.recordMiss();
                     return null;
                 } else if (isExpired(cacheEntry)) {
-                    if (cacheEntry.getETag() == null) {
-                        delete(request);
+                    if (!cacheEntry.hasValidator()) {
+                        delete(cacheEntry, CacheStats.Eviction.EXPIRED);
                     }
+                    stats.recordMiss();
                     return null;
                 } else {
-                    return cacheEntry.getResponse();
+                    HttpResponse response = serve(cacheEntry);
+                    if (response != null) {
+                        stats.recordHit(response.getContentLength());
+                        onServed(cacheEntry);
+                        rr.setCacheEntry(cacheEntry);
+                        return response;
+                    }
                 }
             }
+            stats.recordMiss();
         }
         return null;
     }
 
-    private boolean isExpired(CacheEntry cacheEntry) {
-        long now = (new Date()).getTime();
-
-        //If a response includes an s-maxage directive, then for a shared cache
-        //(but not for a private cache), the maximum age specified by this directive overrides
-        // the maximum age specified by either the max-age directive or the Expires header.
-        if (cacheEntry.getCacheControl().getSmaxAge() != null) {
-            if ((now - cacheEntry.getDate() - (cacheEntry.getCacheControl().getSmaxAge() * 1000)) > 0) {
-                return true;
-            }
+    /**
+     * Get the stored response of the request regardless of its freshness, for the
+     * {@link CachePolicy} serving a stale response.
+     *
+     * @param conditional True to make the request revalidate the stored response
+     * @return The stored response, or null when there is none
+     */
+    HttpResponse getStored(Request request, boolean conditional) {
+        if (!request.getMethod().equals(Request.Method.GET)) {
+            return null;
+        }
+        CacheEntry cacheEntry = find(request);
+        if (cacheEntry == null || cacheEntry.isNegative()) {
+            stats.recordMiss();
+            return null;
+        }
+        if (conditional) {
+            addValidators(request, cacheEntry);
         }
+        return serveStored((RunnableRequest) request, cacheEntry);
+    }
 
-        if (cacheEntry.getCacheControl().getMaxAge() != null) {
-            if ((now - cacheEntry.getDate() - (cacheEntry.getCacheControl().getMaxAge() * 1000)) > 0) {
-                return true;
-            }
+    private HttpResponse serveStored(RunnableRequest request, CacheEntry cacheEntry) {
+        HttpResponse response = serve(cacheEntry);
+        if (response == null) {
+            stats.recordMiss();
+            return null;
+        }
+        if (isExpired(cacheEntry)) {
+            stats.recordStaleHit(response.getContentLength());
+        } else {
+            stats.recordHit(response.getContentLength());
         }
+        onServed(cacheEntry);
+        request.setCacheEntry(cacheEntry);
+        return response;
+    }
+
+    private static void addValidators(Request request, CacheEntry cacheEntry) {
+        if (cacheEntry.getETag() != null) {
+            List<String> values = new ArrayList<>();
+            values.add(cacheEntry.getETag());
+            request.getHeaders().put("If-None-Match", values);
+        }
+        if (cacheEntry.getLastModified() != null) {
+            List<String> values = new ArrayList<>();
+            values.add(cacheEntry.getLastModified());
+            request.getHeaders().put("If-Modified-Since", values);
+        }
+    }
 
-        if (cacheEntry.getExpires() != null) {
-            if ((now - cacheEntry.getExpires()) > 0) {
-                return true;
+    /**
+     * Refresh the entry served to the request in background, when refresh ahead is enabled and
+     * the entry is due to refresh.
+     */
+    void refreshAhead(Request request, RequestThreadPool threadPool) {
+        RefreshAhead refreshAhead = this.refreshAhead;
+        if (refreshAhead == null) {
+            return;
+        }
+        CacheEntry cacheEntry = find(request);
+        if (cacheEntry != null && refreshAhead.begin(cacheEntry, System.currentTimeMillis())) {
+            try {
+                threadPool.execute(refreshAhead.newRequest(request, cacheEntry));
+            } catch (RejectedExecutionException e) {
+                //The pool is shutting down, the entry expires as usual
+                refreshAhead.end(cacheEntry.getKey());
             }
         }
-        return false;
+    }
+
+    private boolean isExpired(CacheEntry cacheEntry) {
+        return cacheEntry.isExpired(System.currentTimeMillis());
     }
 
     @Override
     public void put(Request key, HttpResponse value) {
+        put(key, value, 0);
+    }
+
+    /**
+     * Store the response of the request.
+     *
+     * @param loadTime The time in nanosecond the response took to load from the network, 0 when
+     *                 unknown
+     */
+    void put(Request key, HttpResponse value, long loadTime) {
         if (key.getMethod().equals(Request.Method.GET)) {
             if (value.getStatusCode().equals(HttpURLConnection.HTTP_NOT_MODIFIED)) {
                 CacheEntry cacheEntry = find(key);
-                if (cacheEntry != null) {
-                    ((RunnableRequest) key).setResponse(cacheEntry.getResponse());
+                HttpResponse stored = cacheEntry == null ? null : serve(cacheEntry);
+                if (stored != null) {
+                    stats.recordRevalidation(stored.getContentLength());
+                    //Freshen the stored response with the 304 headers
+                    value = stored.withHeaders(merge(stored.getResponseHeaders(), value.getResponseHeaders()));
+                    ((RunnableRequest) key).setResponse(value);
+                } else {
                     return;
                 }
             }
-            CacheEntry cacheEntry = new CacheEntry(value);
-            if (cacheEntry.getCacheControl() == null
-                    || cacheEntry.getCacheControl().isNoStore()) {
+            CacheEntry cacheEntry = new CacheEntry(value, System.currentTimeMillis(), heuristicFreshnessCap);
+            if ((cacheEntry.getCacheControl() != null && cacheEntry.getCacheControl().isNoStore())
+                    || cacheEntry.isVaryAll()
+                    || !cacheEntry.isStorable()) {
                 return;
             }
-            create(key, cacheEntry);
+            cacheEntry.setLoadTime(loadTime);
+            add(key, value, cacheEntry);
         }
     }
 
+    /**
+     * Store the error response of the request when negative caching is enabled, see
+     * {@link #setNegativeCaching(long, TimeUnit, boolean)}.
+     */
+    void putNegative(Request key, HttpResponse value) {
+        long ttl = negativeTtl;
+        if (ttl <= 0 || value == null || value.getStatusCode() == null
+                || !key.getMethod().equals(Request.Method.GET)) {
+            return;
+        }
+        int status = value.getStatusCode();
+        if (status != HttpURLConnection.HTTP_NOT_FOUND && status != HttpURLConnection.HTTP_GONE
+                && !(negativeServerErrors && status >= HttpURLConnection.HTTP_INTERNAL_ERROR)) {
+            return;
+        }
+        //An error response is never fresh by heuristic
+        CacheEntry cacheEntry = new CacheEntry(value, System.currentTimeMillis(), 0);
+        CacheControl cc = cacheEntry.getCacheControl();
+        if ((cc != null && (cc.isNoStore() || cc.isNoCache())) || cacheEntry.isVaryAll()) {
+            return;
+        }
+        if (!cacheEntry.hasExplicitFreshness()) {
+            cacheEntry.setExpiresAt(cacheEntry.getResponseTime() + ttl);
+        }
+        if (cacheEntry.isStorable()) {
+            add(key, value, cacheEntry);
+        }
+    }
+
+    private void add(Request key, HttpResponse value, CacheEntry cacheEntry) {
+        HttpResponse response = store(value);
+        if (response != value) {
+            long expiresAt = cacheEntry.getExpiresAt();
+            long loadTime = cacheEntry.getLoadTime();
+            cacheEntry = new CacheEntry(response, cacheEntry.getResponseTime(), heuristicFreshnessCap);
+            cacheEntry.setExpiresAt(expiresAt);
+            cacheEntry.setLoadTime(loadTime);
+        }
+        CacheKey entryKey = cacheEntry.getVary() == null ? new CacheKey(key.getUri())
+                : CacheKey.of(key.getUri(), cacheEntry.getVary(), key.getHeaders());
+        CacheSnapshot snapshot = this.snapshot;
+        if (snapshot != null) {
+            snapshot.discard(entryKey);
+        }
+        add(entryKey, cacheEntry, false);
+        ((RunnableRequest) key).setCacheEntry(cacheEntry);
+    }
+
+    /**
+     * Update the stored headers with the headers of the 304 response,
+     * https://tools.ietf.org/html/rfc7234#section-4.3.4
+     */
+    private static Map<String, List<String>> merge(Map<String, List<String>> stored,
+                                                   Map<String, List<String>> notModified) {
+        Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (Map.Entry<String, List<String>> header : stored.entrySet()) {
+            if (header.getKey() != null) {
+                headers.put(header.getKey(), header.getValue());
+            }
+        }
+        for (Map.Entry<String, List<String>> header : notModified.entrySet()) {
+            if (header.getKey() != null && !"Content-Length".equalsIgnoreCase(header.getKey())) {
+                headers.put(header.getKey(), header.getValue());
+            }
+        }
+        return headers;
+    }
+
     @Override
     public void clear() throws IOException {
+        CacheSnapshot snapshot = this.snapshot;
+        if (snapshot != null) {
+            snapshot.discardAll();
+        }
         deleteAll();
+        DecodedObjectCache decoded = decodedObjectCache;
+        if (decoded != null) {
+            decoded.clear();
+        }
     }
 
 
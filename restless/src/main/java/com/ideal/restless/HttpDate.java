@@ -0,0 +1,236 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Ideal Technologies Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.ideal.restless;
+
+/**
+ * A thread safe parser of the HTTP date formats, https://tools.ietf.org/html/rfc7231#section-7.1.1.1
+ * <pre>
+ * Sun, 06 Nov 1994 08:49:37 GMT    ; IMF-fixdate (RFC 1123)
+ * Sunday, 06-Nov-94 08:49:37 GMT   ; obsolete RFC 850 format
+ * Sun Nov  6 08:49:37 1994         ; ANSI C's asctime() format
+ * </pre>
+ * It replaces {@link java.text.SimpleDateFormat}, which is neither thread safe nor cheap to
+ * create, and does not allocate while parsing.
+ */
+final class HttpDate {
+
+    /**
+     * Returned by {@link #parse(String)} when the value is not a valid HTTP date
+     */
+    static final long INVALID = Long.MIN_VALUE;
+
+    private static final String MONTHS = "JanFebMarAprMayJunJulAugSepOctNovDec";
+    private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000L;
+    private static final long AVERAGE_MILLIS_PER_YEAR = 31556952000L;
+
+    private HttpDate() {
+    }
+
+    /**
+     * @return The time in millisecond since epoch, or {@link #INVALID} when the value is null or
+     * not in any of the HTTP date formats.
+     */
+    static long parse(String value) {
+        return value == null ? INVALID : parse(value, System.currentTimeMillis());
+    }
+
+    /**
+     * @param now The current time in millisecond, to resolve the two digit year of RFC 850
+     */
+    static long parse(String value, long now) {
+        int length = value.length();
+        int i = skipSpaces(value, 0);
+        int nameEnd = i;
+        while (nameEnd < length && isLetter(value.charAt(nameEnd))) {
+            nameEnd++;
+        }
+        if (nameEnd == i || nameEnd == length) {
+            return INVALID;
+        }
+
+        int day;
+        int month;
+        int year;
+        int seconds;
+        if (value.charAt(nameEnd) == ',') {
+            //IMF-fixdate or RFC 850
+            i = skipSpaces(value, nameEnd + 1);
+            int end = digitsEnd(value, i);
+            if (end - i < 1 || end - i > 2 || end == length) {
+                return INVALID;
+            }
+            day = number(value, i, end);
+            char separator = value.charAt(end);
+            if (separator != ' ' && separator != '-') {
+                return INVALID;
+            }
+            month = month(value, end + 1);
+            i = end + 4;
+            if (month < 0 || i >= length || value.charAt(i) != separator) {
+                return INVALID;
+            }
+            end = digitsEnd(value, ++i);
+            if (end - i == 2) {
+                year = twoDigitYear(number(value, i, end), now);
+            } else if (end - i == 4) {
+                year = number(value, i, end);
+            } else {
+                return INVALID;
+            }
+            i = skipSpaces(value, end);
+            if (i == end) {
+                return INVALID;
+            }
+            seconds = time(value, i);
+            i = skipSpaces(value, i + 8);
+            if (!value.regionMatches(true, i, "GMT", 0, 3) && !value.regionMatches(true, i, "UTC", 0, 3)) {
+                return INVALID;
+            }
+            if (skipSpaces(value, i + 3) != length) {
+                return INVALID;
+            }
+        } else {
+            //asctime
+            i = skipSpaces(value, nameEnd);
+            month = month(value, i);
+            if (month < 0) {
+                return INVALID;
+            }
+            i = skipSpaces(value, i + 3);
+            int end = digitsEnd(value, i);
+            if (end - i < 1 || end - i > 2) {
+                return INVALID;
+            }
+            day = number(value, i, end);
+            i = skipSpaces(value, end);
+            seconds = time(value, i);
+            i = skipSpaces(value, i + 8);
+            end = digitsEnd(value, i);
+            if (end - i != 4 || skipSpaces(value, end) != length) {
+                return INVALID;
+            }
+            year = number(value, i, end);
+        }
+
+        if (seconds < 0 || day < 1 || day > daysInMonth(year, month)) {
+            return INVALID;
+        }
+        return daysFromCivil(year, month + 1, day) * MILLIS_PER_DAY + seconds * 1000L;
+    }
+
+    /**
+     * @return The seconds of the day of "HH:MM:SS" at the index, or -1 when it is invalid
+     */
+    private static int time(String value, int i) {
+        if (i + 8 > value.length() || value.charAt(i + 2) != ':' || value.charAt(i + 5) != ':'
+                || digitsEnd(value, i) != i + 2
+                || digitsEnd(value, i + 3) != i + 5
+                || digitsEnd(value, i + 6) != i + 8) {
+            return -1;
+        }
+        int hour = number(value, i, i + 2);
+        int minute = number(value, i + 3, i + 5);
+        int second = number(value, i + 6, i + 8);
+        if (hour > 23 || minute > 59 || second > 60) {
+            return -1;
+        }
+        //A leap second is taken as the last second of the minute
+        return hour * 3600 + minute * 60 + Math.min(second, 59);
+    }
+
+    /**
+     * @return The month from 0 to 11 of the 3 letters abbreviation at the index, or -1
+     */
+    private static int month(String value, int i) {
+        if (i + 3 > value.length()) {
+            return -1;
+        }
+        for (int m = 0; m < 12; m++) {
+            if (value.regionMatches(true, i, MONTHS, m * 3, 3)) {
+                return m;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * A two digit year more than 50 years in the future is the most recent year in the past
+     * with the same last two digits.
+     */
+    private static int twoDigitYear(int year, long now) {
+        int currentYear = (int) (1970 + now / AVERAGE_MILLIS_PER_YEAR);
+        year += currentYear / 100 * 100;
+        return year > currentYear + 50 ? year - 100 : year;
+    }
+
+    private static int daysInMonth(int year, int month) {
+        if (month == 1) {
+            boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+            return leap ? 29 : 28;
+        }
+        return month == 3 || month == 5 || month == 8 || month == 10 ? 30 : 31;
+    }
+
+    /**
+     * @return The days since epoch of the proleptic Gregorian date, month from 1 to 12
+     */
+    private static long daysFromCivil(int year, int month, int day) {
+        year -= month <= 2 ? 1 : 0;
+        long era = (year >= 0 ? year : year - 399) / 400;
+        long yearOfEra = year - era * 400;
+        long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    private static int skipSpaces(String value, int i) {
+        while (i < value.length() && value.charAt(i) == ' ') {
+            i++;
+        }
+        return i;
+    }
+
+    private static int digitsEnd(String value, int i) {
+        while (i < value.length() && value.charAt(i) >= '0' && value.charAt(i) <= '9') {
+            i++;
+        }
+        return i;
+    }
+
+    private static int number(String value, int start, int end) {
+        int n = 0;
+        for (int i = start; i < end; i++) {
+            n = n * 10 + (value.charAt(i) - '0');
+        }
+        return n;
+    }
+
+    private static boolean isLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+}
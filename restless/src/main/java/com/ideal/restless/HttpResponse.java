@@ -27,12 +27,21 @@
 
 package com.ideal.restless;
 
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * After receiving and interpreting a request message, a server responds
  * with an HTTP response message.
+ * <p>
+ * The body of a response served by {@link OffHeapLRUCache} lives outside the Java heap, it is
+ * readable by {@link #getBodyBuffer()} and {@link #getBodyStream()} until the
+ * {@link Request.SuccessCallback} or {@link Request.ErrorCallback} returns. {@link #getBody()}
+ * makes a heap copy which stays valid afterward.
  */
 public class HttpResponse {
 
@@ -40,12 +49,35 @@ public class HttpResponse {
     private String contentType;
     private Map<String, List<String>> responseHeaders;
     private byte[] body;
+    private final DirectBodyAllocator.Chunk chunk;
+    private final boolean copyOnce;
+    private final AtomicBoolean released;
 
     public HttpResponse(Integer statusCode, String contentType, Map<String, List<String>> responseHeaders, byte[] body) {
         this.statusCode = statusCode;
         this.contentType = contentType;
         this.responseHeaders = responseHeaders;
         this.body = body;
+        this.chunk = null;
+        this.copyOnce = false;
+        this.released = null;
+    }
+
+    /**
+     * A response with the body stored in the {@link DirectBodyAllocator.Chunk}, the response owns
+     * one reference of the chunk until {@link #release()}.
+     *
+     * @param copyOnce True to keep the heap copy made by {@link #getBody()}, false for the
+     *                 response held by the cache which must not grow a heap copy.
+     */
+    HttpResponse(Integer statusCode, String contentType, Map<String, List<String>> responseHeaders,
+                 DirectBodyAllocator.Chunk chunk, boolean copyOnce) {
+        this.statusCode = statusCode;
+        this.contentType = contentType;
+        this.responseHeaders = responseHeaders;
+        this.chunk = chunk;
+        this.copyOnce = copyOnce;
+        this.released = new AtomicBoolean();
     }
 
     /**
@@ -72,8 +104,126 @@ public class HttpResponse {
 
     /**
      * @return The body content
+     * @throws IllegalStateException When the off heap body is released before a copy is made
      */
     public byte[] getBody() {
-        return body;
+        if (chunk == null || body != null) {
+            return body;
+        }
+        ByteBuffer buffer = getBodyBuffer();
+        byte[] copy = new byte[buffer.remaining()];
+        buffer.get(copy);
+        if (copyOnce) {
+            body = copy;
+        }
+        return copy;
+    }
+
+    /**
+     * @return A read only view of the body content, or null when there is no body. The view
+     * is not copied from an off heap body.
+     * @throws IllegalStateException When the off heap body is released
+     */
+    public ByteBuffer getBodyBuffer() {
+        if (chunk == null) {
+            return body == null ? null : ByteBuffer.wrap(body).asReadOnlyBuffer();
+        }
+        if (released.get()) {
+            throw new IllegalStateException("The response body is released");
+        }
+        return chunk.view();
+    }
+
+    /**
+     * @return A stream of the body content, or null when there is no body.
+     * @throws IllegalStateException When the off heap body is released
+     */
+    public InputStream getBodyStream() {
+        if (chunk == null) {
+            return body == null ? null : new ByteArrayInputStream(body);
+        }
+        return new ByteBufferInputStream(getBodyBuffer());
+    }
+
+    /**
+     * @return The length of the body content without copying it, 0 when there is no body.
+     */
+    public int getContentLength() {
+        if (chunk == null) {
+            return body == null ? 0 : body.length;
+        }
+        return chunk.length();
+    }
+
+    /**
+     * @return A response which shares the off heap body and owns its own reference to it, or null
+     * when the body is already freed. A heap response returns itself.
+     */
+    HttpResponse retain() {
+        if (chunk == null) {
+            return this;
+        }
+        return chunk.retain() ? new HttpResponse(statusCode, contentType, responseHeaders, chunk, true) : null;
+    }
+
+    /**
+     * @return A response with the given headers which takes over the reference to the off heap
+     * body of this response.
+     */
+    HttpResponse withHeaders(Map<String, List<String>> headers) {
+        if (chunk == null) {
+            return new HttpResponse(statusCode, contentType, headers, body);
+        }
+        released.set(true);
+        return new HttpResponse(statusCode, contentType, headers, chunk, copyOnce);
+    }
+
+    /**
+     * Give up the reference to the off heap body, the body is freed once all references are
+     * released. Calling it more than once or on a heap response has no effect.
+     */
+    void release() {
+        if (chunk != null && released.compareAndSet(false, true)) {
+            chunk.release();
+        }
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            len = Math.min(len, buffer.remaining());
+            buffer.get(b, off, len);
+            return len;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+
+        @Override
+        public long skip(long n) {
+            int skipped = (int) Math.max(0, Math.min(n, buffer.remaining()));
+            buffer.position(buffer.position() + skipped);
+            return skipped;
+        }
     }
 }
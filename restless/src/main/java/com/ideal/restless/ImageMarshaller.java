@@ -0,0 +1,212 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Ideal Technologies Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.ideal.restless;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Transform an image to a {@link Bitmap} no larger than needed for its target size, and a
+ * {@link Bitmap} to the configured output format.
+ * <p>
+ * The image bounds are decoded first, then the image is subsampled by the largest power of two
+ * keeping it at least as large as the target size, so a thumbnail never allocates the pixels of
+ * the full resolution image. With a {@link BitmapPool} the pixels of a bitmap given back to the
+ * pool are reused for the next image, of any smaller size since KitKat.
+ * <p>
+ * Configure the marshaller before registering it, it is shared by the worker threads.
+ */
+public class ImageMarshaller implements DataMarshaller<Bitmap> {
+
+    private final int targetWidth;
+    private final int targetHeight;
+    private Bitmap.Config config = Bitmap.Config.ARGB_8888;
+    private BitmapPool bitmapPool;
+    private Bitmap.CompressFormat format = Bitmap.CompressFormat.PNG;
+    private int quality = 100;
+
+    /**
+     * Decode the images at full resolution
+     */
+    public ImageMarshaller() {
+        this(0, 0);
+    }
+
+    /**
+     * @param targetWidth  The width the image is displayed at, 0 for no limit
+     * @param targetHeight The height the image is displayed at, 0 for no limit
+     */
+    public ImageMarshaller(int targetWidth, int targetHeight) {
+        this.targetWidth = targetWidth;
+        this.targetHeight = targetHeight;
+    }
+
+    /**
+     * @param config The pixel config to decode, {@link Bitmap.Config#RGB_565} halves the memory
+     *               of an opaque image
+     */
+    public ImageMarshaller setConfig(Bitmap.Config config) {
+        this.config = config;
+        return this;
+    }
+
+    /**
+     * Reuse the bitmaps given back to the pool. The decoded bitmaps are mutable, so they are not
+     * kept by the {@link HttpCache} decoded object cache.
+     */
+    public ImageMarshaller setBitmapPool(BitmapPool bitmapPool) {
+        this.bitmapPool = bitmapPool;
+        return this;
+    }
+
+    /**
+     * The format to upload a {@link Bitmap} with, PNG by default
+     *
+     * @param quality The compression quality from 0 to 100, ignored by the lossless formats
+     */
+    public ImageMarshaller setOutputFormat(Bitmap.CompressFormat format, int quality) {
+        this.format = format;
+        this.quality = quality;
+        return this;
+    }
+
+    /**
+     * @return The target size and config, which tell apart the bitmaps decoded from the same image
+     */
+    String decodeConfiguration() {
+        return targetWidth + "x" + targetHeight + ":" + config;
+    }
+
+    @Override
+    public Bitmap unmarshal(byte[] content) throws Exception {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(content, 0, content.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            throw new IOException("Unable to decode the image bounds");
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize(options.outWidth, options.outHeight, targetWidth, targetHeight);
+        options.inPreferredConfig = config;
+        BitmapPool pool = bitmapPool;
+        if (pool != null) {
+            options.inMutable = true;
+            options.inBitmap = reusable(pool, options);
+        }
+
+        Bitmap bitmap;
+        try {
+            bitmap = BitmapFactory.decodeByteArray(content, 0, content.length, options);
+        } catch (IllegalArgumentException e) {
+            if (options.inBitmap == null) {
+                throw e;
+            }
+            //The pooled bitmap does not fit the image, decode into new pixels
+            pool.put(options.inBitmap);
+            options.inBitmap = null;
+            bitmap = BitmapFactory.decodeByteArray(content, 0, content.length, options);
+        }
+        if (bitmap == null) {
+            throw new IOException("Unable to decode the image");
+        }
+        return bitmap;
+    }
+
+    @Override
+    public byte[] marshal(Bitmap data) throws Exception {
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        data.compress(format, quality, stream);
+        return stream.toByteArray();
+    }
+
+    @Override
+    public Class<Bitmap> getType() {
+        return Bitmap.class;
+    }
+
+    @Override
+    public String requestContentType() {
+        return contentType(format);
+    }
+
+    @Override
+    public String[] responseContentType() {
+        return new String[]{"image/png", "image/jpeg", "image/jpg", "image/gif", "image/webp"};
+    }
+
+    /**
+     * @return The media type of the compress format
+     */
+    static String contentType(Bitmap.CompressFormat format) {
+        //Compare by name, the lossy and lossless WEBP formats are not known to older platforms
+        String name = format.name();
+        if (name.equals("PNG")) {
+            return "image/png";
+        } else if (name.equals("JPEG")) {
+            return "image/jpeg";
+        }
+        return "image/webp";
+    }
+
+    /**
+     * @return The largest power of two which keeps the subsampled image at least as large as the
+     * target size, a target of 0 does not limit its dimension
+     */
+    static int sampleSize(int width, int height, int targetWidth, int targetHeight) {
+        int sampleSize = 1;
+        if (targetWidth <= 0 && targetHeight <= 0) {
+            return sampleSize;
+        }
+        int halfWidth = width / 2;
+        int halfHeight = height / 2;
+        while ((targetWidth <= 0 || halfWidth / sampleSize >= targetWidth)
+                && (targetHeight <= 0 || halfHeight / sampleSize >= targetHeight)) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * @return A pooled bitmap the image can be decoded into, or null
+     */
+    private Bitmap reusable(BitmapPool pool, BitmapFactory.Options options) {
+        int sampleSize = options.inSampleSize;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            //Any bitmap with enough bytes works, the decoder rounds the subsampled size either way
+            return pool.getAtLeast((options.outWidth + sampleSize - 1) / sampleSize,
+                    (options.outHeight + sampleSize - 1) / sampleSize, config);
+        }
+        //Older platforms reuse only a bitmap of the exact size, without subsampling
+        return sampleSize == 1 ? pool.get(options.outWidth, options.outHeight, config) : null;
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Ideal Technologies Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.ideal.restless;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable {@link CacheControl} which keeps the directives as a bit set. The instances
+ * without {@code max-age} and {@code s-maxage} are shared, a response with only flag directives
+ * does not allocate.
+ * <p>
+ * The directives are parsed in a single pass over the {@code Cache-Control} header values,
+ * https://tools.ietf.org/html/rfc7234#section-5.2
+ */
+final class ImmutableCacheControl implements CacheControl {
+
+    static final int NO_CACHE = 1;
+    static final int NO_STORE = 1 << 1;
+    static final int NO_TRANSFORM = 1 << 2;
+    static final int MUST_REVALIDATE = 1 << 3;
+    static final int PROXY_REVALIDATE = 1 << 4;
+    static final int PUBLIC = 1 << 5;
+    static final int PRIVATE = 1 << 6;
+    static final int ONLY_IF_CACHED = 1 << 7;
+
+    /**
+     * The delta-seconds greater than the greatest integer it can represent is taken as 2^31,
+     * https://tools.ietf.org/html/rfc7234#section-1.2.1
+     */
+    static final long MAX_DELTA_SECONDS = 1L << 31;
+
+    private static final String[] FLAG_DIRECTIVES = {"no-cache", "no-store", "no-transform",
+            "must-revalidate", "proxy-revalidate", "public", "private", "only-if-cached"};
+    private static final String MAX_AGE = "max-age";
+    private static final String S_MAXAGE = "s-maxage";
+    private static final long ABSENT = -1;
+
+    private static final ImmutableCacheControl[] SHARED = new ImmutableCacheControl[1 << FLAG_DIRECTIVES.length];
+
+    static {
+        for (int flags = 0; flags < SHARED.length; flags++) {
+            SHARED[flags] = new ImmutableCacheControl(flags, null, null);
+        }
+    }
+
+    private final int flags;
+    private final Long maxAge;
+    private final Long sMaxAge;
+
+    private ImmutableCacheControl(int flags, Long maxAge, Long sMaxAge) {
+        this.flags = flags;
+        this.maxAge = maxAge;
+        this.sMaxAge = sMaxAge;
+    }
+
+    /**
+     * @return The shared instance when neither {@code max-age} nor {@code s-maxage} is given
+     */
+    static ImmutableCacheControl of(int flags, Long maxAge, Long sMaxAge) {
+        if (maxAge == null && sMaxAge == null) {
+            return SHARED[flags & (SHARED.length - 1)];
+        }
+        return new ImmutableCacheControl(flags & (SHARED.length - 1), maxAge, sMaxAge);
+    }
+
+    /**
+     * @return The directives of all the {@code Cache-Control} header values, or null when there
+     * is no {@code Cache-Control} header.
+     */
+    static ImmutableCacheControl parse(Map<String, List<String>> headers) {
+        if (headers == null) {
+            return null;
+        }
+        List<String> values = headers.get("Cache-Control");
+        if (values == null) {
+            //The request headers are not necessary case insensitive
+            for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                if ("Cache-Control".equalsIgnoreCase(header.getKey())) {
+                    values = header.getValue();
+                    break;
+                }
+            }
+        }
+        return values == null ? null : parse(values);
+    }
+
+    /**
+     * @return The directives of the {@code Cache-Control} header values, an unknown directive
+     * and a directive with invalid argument are ignored. A repeated {@code max-age} or
+     * {@code s-maxage} with different values makes the response stale.
+     */
+    static ImmutableCacheControl parse(List<String> values) {
+        int flags = 0;
+        long maxAge = ABSENT;
+        long sMaxAge = ABSENT;
+        for (int v = 0; v < values.size(); v++) {
+            String value = values.get(v);
+            if (value == null) {
+                continue;
+            }
+            int length = value.length();
+            int i = 0;
+            while (i < length) {
+                char c = value.charAt(i);
+                if (c == ',' || c == ' ' || c == '\t') {
+                    i++;
+                    continue;
+                }
+                int nameStart = i;
+                while (i < length && isTokenChar(value.charAt(i))) {
+                    i++;
+                }
+                int nameEnd = i;
+                i = skipWhitespace(value, i);
+                int argStart = -1;
+                int argEnd = -1;
+                if (i < length && value.charAt(i) == '=') {
+                    i = skipWhitespace(value, i + 1);
+                    if (i < length && value.charAt(i) == '"') {
+                        argStart = ++i;
+                        while (i < length && value.charAt(i) != '"') {
+                            i += value.charAt(i) == '\\' ? 2 : 1;
+                        }
+                        argEnd = Math.min(i, length);
+                        i++;
+                    } else {
+                        argStart = i;
+                        while (i < length && isTokenChar(value.charAt(i))) {
+                            i++;
+                        }
+                        argEnd = i;
+                    }
+                }
+                //Skip the rest of a malformed directive
+                while (i < length && value.charAt(i) != ',') {
+                    i++;
+                }
+
+                int nameLength = nameEnd - nameStart;
+                if (nameLength == MAX_AGE.length() && value.regionMatches(true, nameStart, MAX_AGE, 0, nameLength)) {
+                    maxAge = merge(maxAge, parseDeltaSeconds(value, argStart, argEnd));
+                } else if (nameLength == S_MAXAGE.length() && value.regionMatches(true, nameStart, S_MAXAGE, 0, nameLength)) {
+                    sMaxAge = merge(sMaxAge, parseDeltaSeconds(value, argStart, argEnd));
+                } else {
+                    for (int d = 0; d < FLAG_DIRECTIVES.length; d++) {
+                        String directive = FLAG_DIRECTIVES[d];
+                        if (nameLength == directive.length()
+                                && value.regionMatches(true, nameStart, directive, 0, nameLength)) {
+                            flags |= 1 << d;
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+        return of(flags, maxAge == ABSENT ? null : maxAge, sMaxAge == ABSENT ? null : sMaxAge);
+    }
+
+    private static long merge(long current, long value) {
+        if (value == ABSENT || current == ABSENT || current == value) {
+            return current == ABSENT ? value : current;
+        }
+        //https://tools.ietf.org/html/rfc7234#section-4.2.1, conflicting values are invalid
+        return 0;
+    }
+
+    private static long parseDeltaSeconds(String value, int start, int end) {
+        if (start < 0 || start == end) {
+            return ABSENT;
+        }
+        long seconds = 0;
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return ABSENT;
+            }
+            seconds = Math.min(seconds * 10 + (c - '0'), MAX_DELTA_SECONDS);
+        }
+        return seconds;
+    }
+
+    private static int skipWhitespace(String value, int i) {
+        while (i < value.length() && (value.charAt(i) == ' ' || value.charAt(i) == '\t')) {
+            i++;
+        }
+        return i;
+    }
+
+    private static boolean isTokenChar(char c) {
+        return c > ' ' && c < 0x7F && c != ',' && c != '=' && c != '"' && c != ';';
+    }
+
+    boolean has(int flag) {
+        return (flags & flag) != 0;
+    }
+
+    @Override
+    public boolean isNoCache() {
+        return has(NO_CACHE);
+    }
+
+    @Override
+    public boolean isNoStore() {
+        return has(NO_STORE);
+    }
+
+    @Override
+    public boolean isNoTransform() {
+        return has(NO_TRANSFORM);
+    }
+
+    @Override
+    public boolean isMustRevalidate() {
+        return has(MUST_REVALIDATE);
+    }
+
+    @Override
+    public boolean isProxyRevalidate() {
+        return has(PROXY_REVALIDATE);
+    }
+
+    @Override
+    public Long getMaxAge() {
+        return maxAge;
+    }
+
+    @Override
+    public Long getSmaxAge() {
+        return sMaxAge;
+    }
+
+    @Override
+    public boolean onlyIfCached() {
+        return has(ONLY_IF_CACHED);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (int d = 0; d < FLAG_DIRECTIVES.length; d++) {
+            if (has(1 << d)) {
+                builder.append(builder.length() == 0 ? "" : ", ").append(FLAG_DIRECTIVES[d]);
+            }
+        }
+        if (maxAge != null) {
+            builder.append(builder.length() == 0 ? "" : ", ").append(MAX_AGE).append('=').append(maxAge);
+        }
+        if (sMaxAge != null) {
+            builder.append(builder.length() == 0 ? "" : ", ").append(S_MAXAGE).append('=').append(sMaxAge);
+        }
+        return builder.toString();
+    }
+}
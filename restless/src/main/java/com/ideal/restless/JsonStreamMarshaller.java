@@ -0,0 +1,276 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Ideal Technologies Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.ideal.restless;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.JsonWriter;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.util.Iterator;
+
+/**
+ * Transform JSON content with a pull parser reading the tokens straight from the bytes, without
+ * decoding the whole content to a String first.
+ * <p>
+ * A subclass binds the content to its type in {@link #read(JsonReader)}, either by building the
+ * object or by handing the values to callbacks as they are read. The marshaller is registered by
+ * {@link DataMarshalProvider#register(DataMarshaller)} or set to a request by
+ * {@link Request.Builder#setResponseMarshaller(DataMarshaller)}.
+ *
+ * @param <T> The data type of the Object
+ */
+public abstract class JsonStreamMarshaller<T> implements StreamingDataMarshaller<T> {
+
+    private static final String UTF_8 = "UTF-8";
+
+    /**
+     * Read the top level JSON value.
+     *
+     * @param reader The reader positioned before the top level value
+     */
+    protected abstract T read(JsonReader reader) throws IOException;
+
+    /**
+     * Write the object as JSON.
+     */
+    protected abstract void write(JsonWriter writer, T data) throws IOException;
+
+    @Override
+    public T unmarshal(byte[] content) throws IOException {
+        return unmarshal(new ByteArrayInputStream(content));
+    }
+
+    @Override
+    public T unmarshal(InputStream stream) throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(stream, UTF_8));
+        try {
+            T value = read(reader);
+            if (reader.peek() != JsonToken.END_DOCUMENT) {
+                throw new IOException("Unexpected content after the JSON value");
+            }
+            return value;
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Override
+    public byte[] marshal(T data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonWriter writer = new JsonWriter(new OutputStreamWriter(out, UTF_8));
+        write(writer, data);
+        writer.close();
+        return out.toByteArray();
+    }
+
+    @Override
+    public String requestContentType() {
+        return "application/json";
+    }
+
+    @Override
+    public String[] responseContentType() {
+        return new String[]{"application/json"};
+    }
+
+    /**
+     * Read a JSON object to {@link JSONObject}.
+     */
+    public static JSONObject readObject(JsonReader reader) throws IOException {
+        JSONObject object = new JSONObject();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            try {
+                object.put(name, readValue(reader));
+            } catch (JSONException e) {
+                throw new IOException(e.getMessage());
+            }
+        }
+        reader.endObject();
+        return object;
+    }
+
+    /**
+     * Read a JSON array to {@link JSONArray}.
+     */
+    public static JSONArray readArray(JsonReader reader) throws IOException {
+        JSONArray array = new JSONArray();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            array.put(readValue(reader));
+        }
+        reader.endArray();
+        return array;
+    }
+
+    /**
+     * Read a JSON value to the type {@link JSONObject} holds, {@link JSONObject#NULL} for null.
+     */
+    public static Object readValue(JsonReader reader) throws IOException {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT:
+                return readObject(reader);
+            case BEGIN_ARRAY:
+                return readArray(reader);
+            case STRING:
+                return reader.nextString();
+            case NUMBER:
+                return parseNumber(reader.nextString());
+            case BOOLEAN:
+                return reader.nextBoolean();
+            case NULL:
+                reader.nextNull();
+                return JSONObject.NULL;
+            default:
+                throw new IOException("Unexpected " + reader.peek());
+        }
+    }
+
+    /**
+     * Write a value of the type {@link JSONObject} holds, {@link JSONObject#NULL} and null as
+     * null.
+     */
+    public static void writeValue(JsonWriter writer, Object value) throws IOException {
+        if (value == null || value == JSONObject.NULL) {
+            writer.nullValue();
+        } else if (value instanceof JSONObject) {
+            JSONObject object = (JSONObject) value;
+            writer.beginObject();
+            Iterator<String> keys = object.keys();
+            while (keys.hasNext()) {
+                String name = keys.next();
+                writer.name(name);
+                writeValue(writer, object.opt(name));
+            }
+            writer.endObject();
+        } else if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+            writer.beginArray();
+            for (int i = 0; i < array.length(); i++) {
+                writeValue(writer, array.opt(i));
+            }
+            writer.endArray();
+        } else if (value instanceof Boolean) {
+            writer.value((Boolean) value);
+        } else if (value instanceof Number) {
+            writer.value((Number) value);
+        } else {
+            writer.value(value.toString());
+        }
+    }
+
+    /**
+     * @return The number as Integer or Long when it is integral and fits, otherwise as Double, as
+     * {@link JSONObject} parses it.
+     */
+    static Number parseNumber(String number) {
+        boolean integral = true;
+        for (int i = 0; i < number.length() && integral; i++) {
+            char c = number.charAt(i);
+            integral = c != '.' && c != 'e' && c != 'E';
+        }
+        if (integral) {
+            try {
+                long value = Long.parseLong(number);
+                if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+                    return (int) value;
+                }
+                return value;
+            } catch (NumberFormatException e) {
+                //Beyond long
+            }
+        }
+        return Double.valueOf(number);
+    }
+
+    /**
+     * Transform JSON object content to {@link JSONObject}, a replacement of
+     * {@link DataMarshaller.JsonDataMarshaller} without the intermediate String.
+     */
+    public static class ObjectMarshaller extends JsonStreamMarshaller<JSONObject> {
+
+        @Override
+        protected JSONObject read(JsonReader reader) throws IOException {
+            return readObject(reader);
+        }
+
+        @Override
+        protected void write(JsonWriter writer, JSONObject data) throws IOException {
+            writeValue(writer, data);
+        }
+
+        @Override
+        public byte[] marshal(JSONObject data) throws UnsupportedEncodingException {
+            return data.toString().getBytes(UTF_8);
+        }
+
+        @Override
+        public Class<JSONObject> getType() {
+            return JSONObject.class;
+        }
+    }
+
+    /**
+     * Transform JSON array content to {@link JSONArray}, a replacement of
+     * {@link DataMarshaller.JsonArrayDataMarshaller} without the intermediate String.
+     */
+    public static class ArrayMarshaller extends JsonStreamMarshaller<JSONArray> {
+
+        @Override
+        protected JSONArray read(JsonReader reader) throws IOException {
+            return readArray(reader);
+        }
+
+        @Override
+        protected void write(JsonWriter writer, JSONArray data) throws IOException {
+            writeValue(writer, data);
+        }
+
+        @Override
+        public byte[] marshal(JSONArray data) throws UnsupportedEncodingException {
+            return data.toString().getBytes(UTF_8);
+        }
+
+        @Override
+        public Class<JSONArray> getType() {
+            return JSONArray.class;
+        }
+    }
+}
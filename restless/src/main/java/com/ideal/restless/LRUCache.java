@@ -32,39 +32,102 @@ import android.util.LruCache;
 
 import java.net.HttpURLConnection;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 /**
  * A wrapper to the {@link LruCache}
  */
 public class LRUCache extends HttpCache {
 
-    private LruCache<Uri, CacheEntry> cache;
+    private LruCache<CacheKey, CacheEntry> cache;
 
     public LRUCache(final int maxSize) {
-        cache = new LruCache<>(maxSize);
+        cache = new LruCache<CacheKey, CacheEntry>(maxSize) {
+            @Override
+            protected int sizeOf(CacheKey key, CacheEntry value) {
+                //The primary key of a varying response only references the latest variant
+                return !key.isSecondary() && value.getVary() != null ? 0 : LRUCache.this.sizeOf(value);
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, CacheKey key, CacheEntry oldValue, CacheEntry newValue) {
+                if (oldValue != newValue) {
+                    if (key.equals(oldValue.getKey())) {
+                        if (evicted) {
+                            stats().recordEviction(CacheStats.Eviction.SIZE);
+                        } else if (newValue != null) {
+                            stats().recordEviction(CacheStats.Eviction.REPLACED);
+                        }
+                    }
+                    onRemoved(key, oldValue);
+                    if (key.isSecondary() && key.equals(oldValue.getKey())) {
+                        //Drop the primary key reference to the removed variant, as it is not
+                        //indexed any more it would be served but never invalidated
+                        delete(new CacheKey(key.getUri()), oldValue);
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * @return The size of the {@link CacheEntry} counted against the max size, 1 by default so
+     * the max size is the number of entries.
+     */
+    int sizeOf(CacheEntry cacheEntry) {
+        return 1;
     }
 
     @Override
-    CacheEntry find(Request request) {
-        return cache.get(request.getUri());
+    CacheEntry find(CacheKey key) {
+        return cache.get(key);
     }
 
     @Override
-    void delete(Request request) {
-        cache.remove(request.getUri());
+    void delete(CacheKey key) {
+        cache.remove(key);
 
     }
 
+    @Override
+    boolean delete(CacheKey key, CacheEntry cacheEntry) {
+        //LruCache guards its state with its own monitor
+        synchronized (cache) {
+            if (cache.get(key) == cacheEntry) {
+                cache.remove(key);
+                return true;
+            }
+        }
+        return false;
+    }
+
     @Override
     void deleteAll() {
-        cache.evictAll();
+        //Remove instead of LruCache#evictAll(), which reports the entries as evicted by size
+        for (CacheKey key : cache.snapshot().keySet()) {
+            cache.remove(key);
+        }
+
+    }
 
+    @Override
+    void create(CacheKey key, CacheEntry cacheEntry) {
+        cache.put(key, cacheEntry);
     }
 
     @Override
-    void create(Request request, CacheEntry cacheEntry) {
-        cache.put(request.getUri(), cacheEntry);
+    List<CacheEntry> entries() {
+        //The snapshot is ordered from the least recently used
+        List<CacheEntry> entries = new ArrayList<>();
+        for (Map.Entry<CacheKey, CacheEntry> entry : cache.snapshot().entrySet()) {
+            if (entry.getKey().equals(entry.getValue().getKey())) {
+                entries.add(entry.getValue());
+            }
+        }
+        Collections.reverse(entries);
+        return entries;
     }
 }
@@ -0,0 +1,123 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Ideal Technologies Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.ideal.restless;
+
+/**
+ * A response body transformed on first access instead of before the
+ * {@link Request.SuccessCallback}, for a caller which may only check the status, read a header
+ * or drop the result. The body is kept on the heap, so the result can be read after the
+ * callback returns.
+ * <pre>
+ * Request request = new Request.Builder&lt;Lazy&lt;Person&gt;&gt;(uri)
+ *         .setResponseMarshaller(new Lazy.Marshaller&lt;&gt;(new ModelMarshaller&lt;&gt;(Person.class)))
+ *         .build();
+ * </pre>
+ * A lazy result is not kept by the {@link HttpCache} decoded object cache, a cache hit hands
+ * the cached body over without transforming it.
+ *
+ * @param <T> The type of the transformed body
+ */
+public final class Lazy<T> {
+
+    private final byte[] content;
+    private final DataMarshaller<T> marshaller;
+    private boolean transformed;
+    private T value;
+
+    Lazy(byte[] content, DataMarshaller<T> marshaller) {
+        this.content = content;
+        this.marshaller = marshaller;
+    }
+
+    /**
+     * @return The transformed body, transformed by the first call only
+     * @throws Exception Error occur during the transformation, the next call tries again
+     */
+    public synchronized T get() throws Exception {
+        if (!transformed) {
+            value = marshaller.unmarshal(content);
+            transformed = true;
+        }
+        return value;
+    }
+
+    /**
+     * @return True when the body has been transformed by {@link #get()}
+     */
+    public synchronized boolean isTransformed() {
+        return transformed;
+    }
+
+    /**
+     * @return The raw body, not to be modified
+     */
+    public byte[] getContent() {
+        return content;
+    }
+
+    /**
+     * Wrap the body in a {@link Lazy} for the marshaller of its type. The marshaller is inbound
+     * only.
+     *
+     * @param <T> The type of the transformed body
+     */
+    public static class Marshaller<T> implements DataMarshaller<Lazy<T>> {
+
+        private final DataMarshaller<T> marshaller;
+
+        public Marshaller(DataMarshaller<T> marshaller) {
+            this.marshaller = marshaller;
+        }
+
+        @Override
+        public Lazy<T> unmarshal(byte[] content) {
+            return new Lazy<>(content, marshaller);
+        }
+
+        @Override
+        public byte[] marshal(Lazy<T> data) {
+            return data.getContent();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Class<Lazy<T>> getType() {
+            return (Class<Lazy<T>>) (Class<?>) Lazy.class;
+        }
+
+        @Override
+        public String requestContentType() {
+            return null;
+        }
+
+        @Override
+        public String[] responseContentType() {
+            return marshaller.responseContentType();
+        }
+    }
+}
@@ -0,0 +1,410 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Ideal Technologies Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.ideal.restless;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A read only JSON object which parses a member only when it is read. The first access scans
+ * the object once to find where each member value starts and ends, without building it. A
+ * member read by {@link #get(String)} is parsed from its bytes and kept, a member never read is
+ * never built, and {@link #getLazyObject(String)} gives a nested object as another lazy view.
+ * <p>
+ * The getters convert the values as {@link JSONObject} does. A syntax error is reported by the
+ * access which runs into it.
+ */
+public final class LazyJsonObject {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final Object UNPARSED = new Object();
+
+    private final byte[] content;
+    private final int start;
+    private final int end;
+
+    private Map<String, Integer> index;
+    private List<String> names;
+    private int[] valueStarts;
+    private int[] valueEnds;
+    private Object[] values;
+    private LazyJsonObject[] views;
+
+    /**
+     * @param content The UTF-8 JSON object
+     */
+    public LazyJsonObject(byte[] content) {
+        this(content, 0, content.length);
+    }
+
+    LazyJsonObject(byte[] content, int start, int end) {
+        this.content = content;
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * @return The number of members
+     */
+    public synchronized int length() throws JSONException {
+        index();
+        return names.size();
+    }
+
+    /**
+     * @return The member names in the order they appear
+     */
+    public synchronized List<String> names() throws JSONException {
+        index();
+        return new ArrayList<>(names);
+    }
+
+    public synchronized boolean has(String name) throws JSONException {
+        index();
+        return index.containsKey(name);
+    }
+
+    /**
+     * @return The value parsed to the types {@link JSONObject} holds, or null when there is no
+     * such member
+     */
+    public synchronized Object opt(String name) throws JSONException {
+        index();
+        Integer slot = index.get(name);
+        if (slot == null) {
+            return null;
+        }
+        Object value = values[slot];
+        if (value == UNPARSED) {
+            value = new JSONTokener(string(valueStarts[slot], valueEnds[slot])).nextValue();
+            values[slot] = value;
+        }
+        return value;
+    }
+
+    /**
+     * @throws JSONException When there is no such member
+     */
+    public Object get(String name) throws JSONException {
+        Object value = opt(name);
+        if (value == null) {
+            throw new JSONException("No value for " + name);
+        }
+        return value;
+    }
+
+    public boolean isNull(String name) throws JSONException {
+        Object value = opt(name);
+        return value == null || value == JSONObject.NULL;
+    }
+
+    public String getString(String name) throws JSONException {
+        Object value = get(name);
+        return value instanceof String ? (String) value : String.valueOf(value);
+    }
+
+    public boolean getBoolean(String name) throws JSONException {
+        Object value = get(name);
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        } else if ("true".equalsIgnoreCase(String.valueOf(value))) {
+            return true;
+        } else if ("false".equalsIgnoreCase(String.valueOf(value))) {
+            return false;
+        }
+        throw mismatch(name, value, "boolean");
+    }
+
+    public double getDouble(String name) throws JSONException {
+        Object value = get(name);
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue();
+        } else if (value instanceof String) {
+            try {
+                return Double.parseDouble((String) value);
+            } catch (NumberFormatException e) {
+                //Reported as type mismatch
+            }
+        }
+        throw mismatch(name, value, "double");
+    }
+
+    public int getInt(String name) throws JSONException {
+        Object value = get(name);
+        return value instanceof Number ? ((Number) value).intValue() : (int) getDouble(name);
+    }
+
+    public long getLong(String name) throws JSONException {
+        Object value = get(name);
+        return value instanceof Number ? ((Number) value).longValue() : (long) getDouble(name);
+    }
+
+    public JSONObject getJSONObject(String name) throws JSONException {
+        Object value = get(name);
+        if (value instanceof JSONObject) {
+            return (JSONObject) value;
+        }
+        throw mismatch(name, value, "JSONObject");
+    }
+
+    public JSONArray getJSONArray(String name) throws JSONException {
+        Object value = get(name);
+        if (value instanceof JSONArray) {
+            return (JSONArray) value;
+        }
+        throw mismatch(name, value, "JSONArray");
+    }
+
+    /**
+     * @return The nested object as a lazy view, none of its members is parsed
+     * @throws JSONException When there is no such member or it is not an object
+     */
+    public synchronized LazyJsonObject getLazyObject(String name) throws JSONException {
+        index();
+        Integer slot = index.get(name);
+        if (slot == null) {
+            throw new JSONException("No value for " + name);
+        }
+        if (views[slot] == null) {
+            if (content[valueStarts[slot]] != '{') {
+                throw new JSONException("Value at " + name + " is not a JSONObject");
+            }
+            views[slot] = new LazyJsonObject(content, valueStarts[slot], valueEnds[slot]);
+        }
+        return views[slot];
+    }
+
+    /**
+     * @return The whole object parsed
+     */
+    public JSONObject toJSONObject() throws JSONException {
+        return new JSONObject(toString());
+    }
+
+    /**
+     * @return The object as its JSON text
+     */
+    @Override
+    public String toString() {
+        return string(start, end);
+    }
+
+    private static JSONException mismatch(String name, Object value, String type) {
+        return new JSONException("Value " + value + " at " + name + " cannot be converted to " + type);
+    }
+
+    private String string(int from, int to) {
+        return new String(content, from, to - from, UTF_8);
+    }
+
+    /**
+     * Find the name and the bounds of the value of every member. The structural characters are
+     * ASCII, which never occurs inside a multi byte UTF-8 sequence, so the bytes are scanned as
+     * they are.
+     */
+    private void index() throws JSONException {
+        if (index != null) {
+            return;
+        }
+        Map<String, Integer> index = new HashMap<>();
+        List<String> names = new ArrayList<>();
+        List<int[]> bounds = new ArrayList<>();
+        int i = skipWhitespace(start);
+        if (i >= end || content[i] != '{') {
+            throw new JSONException("Not a JSON object");
+        }
+        i = skipWhitespace(i + 1);
+        if (i < end && content[i] == '}') {
+            i++;
+        } else {
+            while (true) {
+                if (i >= end || content[i] != '"') {
+                    throw syntaxError("Expected a member name", i);
+                }
+                int nameEnd = skipString(i);
+                String name = decodeName(i, nameEnd);
+                i = skipWhitespace(nameEnd);
+                if (i >= end || content[i] != ':') {
+                    throw syntaxError("Expected ':'", i);
+                }
+                int valueStart = skipWhitespace(i + 1);
+                int valueEnd = skipValue(valueStart);
+                Integer previous = index.put(name, bounds.size());
+                if (previous != null) {
+                    //The last duplicate wins, as JSONObject
+                    bounds.set(previous, new int[]{valueStart, valueEnd});
+                    index.put(name, previous);
+                } else {
+                    names.add(name);
+                    bounds.add(new int[]{valueStart, valueEnd});
+                }
+                i = skipWhitespace(valueEnd);
+                if (i < end && content[i] == ',') {
+                    i = skipWhitespace(i + 1);
+                } else if (i < end && content[i] == '}') {
+                    i++;
+                    break;
+                } else {
+                    throw syntaxError("Expected ',' or '}'", i);
+                }
+            }
+        }
+        if (skipWhitespace(i) != end) {
+            throw syntaxError("Unexpected content after the object", i);
+        }
+
+        valueStarts = new int[bounds.size()];
+        valueEnds = new int[bounds.size()];
+        for (int j = 0; j < bounds.size(); j++) {
+            valueStarts[j] = bounds.get(j)[0];
+            valueEnds[j] = bounds.get(j)[1];
+        }
+        values = new Object[bounds.size()];
+        Arrays.fill(values, UNPARSED);
+        views = new LazyJsonObject[bounds.size()];
+        this.names = names;
+        this.index = index;
+    }
+
+    private String decodeName(int from, int to) throws JSONException {
+        for (int i = from + 1; i < to - 1; i++) {
+            if (content[i] == '\\') {
+                return (String) new JSONTokener(string(from, to)).nextValue();
+            }
+        }
+        return string(from + 1, to - 1);
+    }
+
+    private int skipWhitespace(int i) {
+        while (i < end && (content[i] == ' ' || content[i] == '\t' || content[i] == '\n' || content[i] == '\r')) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * @param i The index of the opening quote
+     * @return The index after the closing quote
+     */
+    private int skipString(int i) throws JSONException {
+        for (i++; i < end; i++) {
+            if (content[i] == '\\') {
+                i++;
+            } else if (content[i] == '"') {
+                return i + 1;
+            }
+        }
+        throw syntaxError("Unterminated string", end);
+    }
+
+    /**
+     * @return The index after the value starting at i
+     */
+    private int skipValue(int i) throws JSONException {
+        if (i >= end) {
+            throw syntaxError("Expected a value", i);
+        }
+        byte b = content[i];
+        if (b == '"') {
+            return skipString(i);
+        }
+        if (b == '{' || b == '[') {
+            int depth = 0;
+            while (i < end) {
+                b = content[i];
+                if (b == '"') {
+                    i = skipString(i);
+                    continue;
+                }
+                if (b == '{' || b == '[') {
+                    depth++;
+                } else if (b == '}' || b == ']') {
+                    depth--;
+                }
+                i++;
+                if (depth == 0) {
+                    return i;
+                }
+            }
+            throw syntaxError("Unterminated value", end);
+        }
+        int from = i;
+        while (i < end && b != ',' && b != '}' && b != ']' && b != ' ' && b != '\t' && b != '\n' && b != '\r') {
+            b = ++i < end ? content[i] : 0;
+        }
+        if (i == from) {
+            throw syntaxError("Expected a value", i);
+        }
+        return i;
+    }
+
+    private JSONException syntaxError(String message, int i) {
+        return new JSONException(message + " at " + (i - start));
+    }
+
+    /**
+     * Wrap the body in a {@link LazyJsonObject}, nothing is parsed before the first access.
+     * The marshaller is inbound only.
+     */
+    public static class Marshaller implements DataMarshaller<LazyJsonObject> {
+
+        @Override
+        public LazyJsonObject unmarshal(byte[] content) {
+            return new LazyJsonObject(content);
+        }
+
+        @Override
+        public byte[] marshal(LazyJsonObject data) {
+            return data.toString().getBytes(UTF_8);
+        }
+
+        @Override
+        public Class<LazyJsonObject> getType() {
+            return LazyJsonObject.class;
+        }
+
+        @Override
+        public String requestContentType() {
+            return null;
+        }
+
+        @Override
+        public String[] responseContentType() {
+            return new String[]{"application/json"};
+        }
+    }
+}
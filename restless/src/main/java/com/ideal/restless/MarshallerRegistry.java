@@ -0,0 +1,191 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Ideal Technologies Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.ideal.restless;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An immutable set of registered {@link DataMarshaller}, indexed for the lookup of every request.
+ * <p>
+ * The inbound marshallers are indexed by media type, {@code type/subtype} in lower case without
+ * parameters. A media type with a structured syntax suffix, such as
+ * {@code application/problem+json}, falls back to the marshallers of the suffix,
+ * {@code application/json}. The outbound marshaller of a class is resolved through its
+ * superclasses, then its interfaces.
+ * <p>
+ * The resolution of a content type or a class is memoized, so a lookup is a single hash probe
+ * once the type is seen. Registering a marshaller creates a new registry with empty memos.
+ */
+final class MarshallerRegistry {
+
+    static final MarshallerRegistry EMPTY = new MarshallerRegistry(
+            new HashMap<String, List<DataMarshaller<?>>>(), new HashMap<Class<?>, DataMarshaller<?>>());
+
+    /**
+     * The content types are sent by the server, the memo stops growing past this size
+     */
+    private static final int MAX_CONTENT_TYPES = 64;
+
+    private static final List<DataMarshaller<?>> NONE = Collections.emptyList();
+    private static final Object NO_MARSHALLER = new Object();
+
+    private final Map<String, List<DataMarshaller<?>>> inbound;
+    private final Map<Class<?>, DataMarshaller<?>> outbound;
+    private final ConcurrentHashMap<String, List<DataMarshaller<?>>> contentTypes = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Class<?>, Object> classes = new ConcurrentHashMap<>();
+
+    private MarshallerRegistry(Map<String, List<DataMarshaller<?>>> inbound,
+                               Map<Class<?>, DataMarshaller<?>> outbound) {
+        this.inbound = inbound;
+        this.outbound = outbound;
+    }
+
+    /**
+     * @return A registry with the marshaller added, tried first for its content types and
+     * replacing the outbound marshaller of its type
+     */
+    MarshallerRegistry with(DataMarshaller<?> dataMarshaller) {
+        Map<String, List<DataMarshaller<?>>> inbound = new HashMap<>(this.inbound);
+        if (dataMarshaller.responseContentType() != null) {
+            for (String responseContentType : dataMarshaller.responseContentType()) {
+                String mediaType = mediaType(responseContentType);
+                if (mediaType == null) {
+                    continue;
+                }
+                List<DataMarshaller<?>> list = new ArrayList<>();
+                list.add(dataMarshaller);
+                List<DataMarshaller<?>> registered = inbound.get(mediaType);
+                if (registered != null) {
+                    for (DataMarshaller<?> m : registered) {
+                        if (m != dataMarshaller) {
+                            list.add(m);
+                        }
+                    }
+                }
+                inbound.put(mediaType, Collections.unmodifiableList(list));
+            }
+        }
+        Map<Class<?>, DataMarshaller<?>> outbound = new HashMap<>(this.outbound);
+        if (dataMarshaller.requestContentType() != null) {
+            outbound.put(dataMarshaller.getType(), dataMarshaller);
+        }
+        return new MarshallerRegistry(inbound, outbound);
+    }
+
+    /**
+     * @return The marshallers of the content type in the order to try, or null when there is none
+     */
+    List<DataMarshaller<?>> inbound(String contentType) {
+        List<DataMarshaller<?>> marshallers = contentTypes.get(contentType);
+        if (marshallers == null) {
+            marshallers = resolve(contentType);
+            if (contentTypes.size() < MAX_CONTENT_TYPES) {
+                contentTypes.put(contentType, marshallers);
+            }
+        }
+        return marshallers.isEmpty() ? null : marshallers;
+    }
+
+    /**
+     * @return The marshaller of the class or its nearest supertype, or null when there is none
+     */
+    DataMarshaller<?> outbound(Class<?> type) {
+        Object marshaller = classes.get(type);
+        if (marshaller == null) {
+            DataMarshaller<?> resolved = resolve(type);
+            marshaller = resolved == null ? NO_MARSHALLER : resolved;
+            classes.put(type, marshaller);
+        }
+        return marshaller == NO_MARSHALLER ? null : (DataMarshaller<?>) marshaller;
+    }
+
+    private List<DataMarshaller<?>> resolve(String contentType) {
+        String mediaType = mediaType(contentType);
+        if (mediaType == null) {
+            return NONE;
+        }
+        List<DataMarshaller<?>> marshallers = inbound.get(mediaType);
+        if (marshallers == null) {
+            int slash = mediaType.indexOf('/');
+            int plus = mediaType.lastIndexOf('+');
+            if (plus > slash && plus < mediaType.length() - 1) {
+                marshallers = inbound.get("application/" + mediaType.substring(plus + 1));
+            }
+        }
+        return marshallers == null ? NONE : marshallers;
+    }
+
+    private DataMarshaller<?> resolve(Class<?> type) {
+        for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+            DataMarshaller<?> marshaller = outbound.get(c);
+            if (marshaller != null) {
+                return marshaller;
+            }
+        }
+        //The interfaces of the nearest class first
+        Deque<Class<?>> queue = new ArrayDeque<>();
+        Set<Class<?>> visited = new HashSet<>();
+        for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+            Collections.addAll(queue, c.getInterfaces());
+        }
+        while (!queue.isEmpty()) {
+            Class<?> c = queue.poll();
+            if (visited.add(c)) {
+                DataMarshaller<?> marshaller = outbound.get(c);
+                if (marshaller != null) {
+                    return marshaller;
+                }
+                Collections.addAll(queue, c.getInterfaces());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The media type of the content type in lower case without parameters, or null when
+     * the content type has no media type
+     */
+    static String mediaType(String contentType) {
+        if (contentType == null) {
+            return null;
+        }
+        int end = contentType.indexOf(';');
+        String mediaType = (end < 0 ? contentType : contentType.substring(0, end)).trim();
+        return mediaType.isEmpty() ? null : mediaType.toLowerCase(Locale.US);
+    }
+}
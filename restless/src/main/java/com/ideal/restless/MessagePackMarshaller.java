@@ -0,0 +1,259 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Ideal Technologies Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.ideal.restless;
+
+import java.io.IOException;
+
+/**
+ * Transform MessagePack content, https://github.com/msgpack/msgpack/blob/master/spec.md, refer
+ * to {@link BinaryMarshaller} for the types. The extension types are not supported.
+ *
+ * @param <T> The data type of the Object
+ */
+public class MessagePackMarshaller<T> extends BinaryMarshaller<T> {
+
+    /**
+     * @param type {@code JSONObject}, {@code JSONArray}, {@code Map}, {@code List} or
+     *             {@code Object}
+     */
+    public MessagePackMarshaller(Class<T> type) {
+        this(type, true);
+    }
+
+    /**
+     * @param outbound False to register the marshaller for the inbound content only
+     */
+    public MessagePackMarshaller(Class<T> type, boolean outbound) {
+        super(type, outbound);
+    }
+
+    @Override
+    String mediaType() {
+        return "application/msgpack";
+    }
+
+    @Override
+    Object read(BinaryInput in, boolean json, int depth) throws IOException {
+        int b = in.read();
+        if (b <= 0x7f) {
+            return b;
+        } else if (b >= 0xe0) {
+            return b - 0x100;
+        } else if (b >= 0xa0 && b <= 0xbf) {
+            return in.readUtf8(b & 0x1f);
+        } else if (b >= 0x90 && b <= 0x9f) {
+            return readArray(in, b & 0x0f, json, depth);
+        } else if (b <= 0x8f) {
+            return readMap(in, b & 0x0f, json, depth);
+        }
+        switch (b) {
+            case 0xc0:
+                return nil(json);
+            case 0xc2:
+                return false;
+            case 0xc3:
+                return true;
+            case 0xc4:
+                return in.readBytes(in.read());
+            case 0xc5:
+                return in.readBytes(in.readShort());
+            case 0xc6:
+                return in.readBytes(in.readInt() & 0xffffffffL);
+            case 0xca:
+                return (double) Float.intBitsToFloat(in.readInt());
+            case 0xcb:
+                return Double.longBitsToDouble(in.readLong());
+            case 0xcc:
+                return in.read();
+            case 0xcd:
+                return in.readShort();
+            case 0xce:
+                return integer(in.readInt() & 0xffffffffL);
+            case 0xcf:
+                return unsigned(in.readLong());
+            case 0xd0:
+                return (int) (byte) in.read();
+            case 0xd1:
+                return (int) (short) in.readShort();
+            case 0xd2:
+                return in.readInt();
+            case 0xd3:
+                return integer(in.readLong());
+            case 0xd9:
+                return in.readUtf8(in.read());
+            case 0xda:
+                return in.readUtf8(in.readShort());
+            case 0xdb:
+                return in.readUtf8(in.readInt() & 0xffffffffL);
+            case 0xdc:
+                return readArray(in, in.readShort(), json, depth);
+            case 0xdd:
+                return readArray(in, in.readInt() & 0xffffffffL, json, depth);
+            case 0xde:
+                return readMap(in, in.readShort(), json, depth);
+            case 0xdf:
+                return readMap(in, in.readInt() & 0xffffffffL, json, depth);
+            default:
+                throw new IOException("Unsupported MessagePack type 0x" + Integer.toHexString(b));
+        }
+    }
+
+    private Object readArray(BinaryInput in, long length, boolean json, int depth) throws IOException {
+        checkDepth(depth);
+        int size = BinaryInput.checkLength(length);
+        Object list = newList(json, size);
+        for (int i = 0; i < size; i++) {
+            add(list, read(in, json, depth + 1));
+        }
+        return list;
+    }
+
+    private Object readMap(BinaryInput in, long length, boolean json, int depth) throws IOException {
+        checkDepth(depth);
+        int size = BinaryInput.checkLength(length);
+        Object map = newMap(json, size);
+        for (int i = 0; i < size; i++) {
+            Object key = read(in, json, depth + 1);
+            put(map, key, read(in, json, depth + 1));
+        }
+        return map;
+    }
+
+    @Override
+    void writeNil(BinaryOutput out) throws IOException {
+        out.write(0xc0);
+    }
+
+    @Override
+    void writeBoolean(BinaryOutput out, boolean value) throws IOException {
+        out.write(value ? 0xc3 : 0xc2);
+    }
+
+    @Override
+    void writeLong(BinaryOutput out, long value) throws IOException {
+        if (value >= 0) {
+            if (value < 0x80) {
+                out.write((int) value);
+            } else if (value <= 0xff) {
+                out.write(0xcc);
+                out.write((int) value);
+            } else if (value <= 0xffff) {
+                out.write(0xcd);
+                out.writeShort((int) value);
+            } else if (value <= 0xffffffffL) {
+                out.write(0xce);
+                out.writeInt((int) value);
+            } else {
+                out.write(0xcf);
+                out.writeLong(value);
+            }
+        } else if (value >= -32) {
+            out.write((int) value & 0xff);
+        } else if (value >= Byte.MIN_VALUE) {
+            out.write(0xd0);
+            out.write((int) value & 0xff);
+        } else if (value >= Short.MIN_VALUE) {
+            out.write(0xd1);
+            out.writeShort((int) value);
+        } else if (value >= Integer.MIN_VALUE) {
+            out.write(0xd2);
+            out.writeInt((int) value);
+        } else {
+            out.write(0xd3);
+            out.writeLong(value);
+        }
+    }
+
+    @Override
+    void writeFloat(BinaryOutput out, float value) throws IOException {
+        out.write(0xca);
+        out.writeInt(Float.floatToIntBits(value));
+    }
+
+    @Override
+    void writeDouble(BinaryOutput out, double value) throws IOException {
+        out.write(0xcb);
+        out.writeLong(Double.doubleToLongBits(value));
+    }
+
+    @Override
+    void writeString(BinaryOutput out, String value) throws IOException {
+        int length = BinaryOutput.utf8Length(value);
+        if (length < 32) {
+            out.write(0xa0 | length);
+        } else if (length <= 0xff) {
+            out.write(0xd9);
+            out.write(length);
+        } else if (length <= 0xffff) {
+            out.write(0xda);
+            out.writeShort(length);
+        } else {
+            out.write(0xdb);
+            out.writeInt(length);
+        }
+        out.writeUtf8(value);
+    }
+
+    @Override
+    void writeBytes(BinaryOutput out, byte[] value) throws IOException {
+        if (value.length <= 0xff) {
+            out.write(0xc4);
+            out.write(value.length);
+        } else if (value.length <= 0xffff) {
+            out.write(0xc5);
+            out.writeShort(value.length);
+        } else {
+            out.write(0xc6);
+            out.writeInt(value.length);
+        }
+        out.write(value);
+    }
+
+    @Override
+    void writeArrayHeader(BinaryOutput out, int size) throws IOException {
+        writeHeader(out, size, 0x90, 0xdc, 0xdd);
+    }
+
+    @Override
+    void writeMapHeader(BinaryOutput out, int size) throws IOException {
+        writeHeader(out, size, 0x80, 0xde, 0xdf);
+    }
+
+    private static void writeHeader(BinaryOutput out, int size, int fix, int type16, int type32)
+            throws IOException {
+        if (size < 16) {
+            out.write(fix | size);
+        } else if (size <= 0xffff) {
+            out.write(type16);
+            out.writeShort(size);
+        } else {
+            out.write(type32);
+            out.writeInt(size);
+        }
+    }
+}
@@ -0,0 +1,746 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Ideal Technologies Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.ideal.restless;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.JsonWriter;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Bind JSON to the fields of a model class and back, with the accessible fields and constructor
+ * looked up once per class. A primitive field is read and written with the primitive accessor
+ * of {@link Field}, without boxing.
+ * <p>
+ * The bound fields are the instance fields of the class and its superclasses, except the
+ * transient ones, named by {@link ModelMarshaller.Name} or by the field name. The nested models
+ * are resolved on first use, so a model can refer to itself.
+ *
+ * @param <T> The model type
+ */
+final class ModelAdapter<T> {
+
+    private static final ConcurrentHashMap<Class<?>, ModelAdapter<?>> ADAPTERS = new ConcurrentHashMap<>();
+
+    private final Class<T> type;
+    private final Constructor<T> constructor;
+    private final Property[] properties;
+    private final Map<String, Property> byName;
+
+    private ModelAdapter(Class<T> type) {
+        if (type.isInterface() || type.isPrimitive() || type.isArray()
+                || Modifier.isAbstract(type.getModifiers())) {
+            throw new IllegalArgumentException(type.getName() + " is not a model class");
+        }
+        try {
+            constructor = type.getDeclaredConstructor();
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException(type.getName() + " has no constructor without argument");
+        }
+        constructor.setAccessible(true);
+        this.type = type;
+
+        List<Property> properties = new ArrayList<>();
+        byName = new HashMap<>();
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                int modifiers = field.getModifiers();
+                if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()) {
+                    continue;
+                }
+                ModelMarshaller.Name name = field.getAnnotation(ModelMarshaller.Name.class);
+                Property property = new Property(name == null ? field.getName() : name.value(), field);
+                //A field of the subclass hides the field of the same name of its superclass
+                if (!byName.containsKey(property.name)) {
+                    byName.put(property.name, property);
+                    properties.add(property);
+                }
+            }
+        }
+        this.properties = properties.toArray(new Property[properties.size()]);
+    }
+
+    /**
+     * @return The adapter of the model class, created on first use
+     * @throws IllegalArgumentException When the class is not a concrete class with a
+     *                                  constructor without argument
+     */
+    @SuppressWarnings("unchecked")
+    static <T> ModelAdapter<T> of(Class<T> type) {
+        ModelAdapter<?> adapter = ADAPTERS.get(type);
+        if (adapter == null) {
+            adapter = new ModelAdapter<>(type);
+            ModelAdapter<?> existing = ADAPTERS.putIfAbsent(type, adapter);
+            if (existing != null) {
+                adapter = existing;
+            }
+        }
+        return (ModelAdapter<T>) adapter;
+    }
+
+    Class<T> getType() {
+        return type;
+    }
+
+    /**
+     * Read a JSON object to a new instance, the members without field are skipped
+     */
+    T read(JsonReader reader) throws IOException {
+        T instance;
+        try {
+            instance = constructor.newInstance();
+        } catch (InvocationTargetException e) {
+            throw new IOException("Unable to create " + type.getName(), e.getCause());
+        } catch (Exception e) {
+            throw new IOException("Unable to create " + type.getName(), e);
+        }
+        reader.beginObject();
+        while (reader.hasNext()) {
+            Property property = byName.get(reader.nextName());
+            if (property == null) {
+                reader.skipValue();
+            } else {
+                property.read(reader, instance);
+            }
+        }
+        reader.endObject();
+        return instance;
+    }
+
+    /**
+     * Write the fields as a JSON object, a null field is left out
+     */
+    void write(JsonWriter writer, Object value) throws IOException {
+        writer.beginObject();
+        for (Property property : properties) {
+            property.write(writer, value);
+        }
+        writer.endObject();
+    }
+
+    /**
+     * Read and write a value of one type
+     */
+    interface ValueAdapter {
+
+        /**
+         * @param reader The reader positioned before a value which is not null
+         */
+        Object read(JsonReader reader) throws IOException;
+
+        /**
+         * @param value The value, not null
+         */
+        void write(JsonWriter writer, Object value) throws IOException;
+    }
+
+    static Object read(ValueAdapter adapter, JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return adapter.read(reader);
+    }
+
+    static void write(ValueAdapter adapter, JsonWriter writer, Object value) throws IOException {
+        if (value == null) {
+            writer.nullValue();
+        } else {
+            adapter.write(writer, value);
+        }
+    }
+
+    private static final ValueAdapter STRING = new ValueAdapter() {
+        @Override
+        public Object read(JsonReader reader) throws IOException {
+            if (reader.peek() == JsonToken.BOOLEAN) {
+                return String.valueOf(reader.nextBoolean());
+            }
+            return reader.nextString();
+        }
+
+        @Override
+        public void write(JsonWriter writer, Object value) throws IOException {
+            writer.value((String) value);
+        }
+    };
+
+    private static final ValueAdapter BOOLEAN = new ValueAdapter() {
+        @Override
+        public Object read(JsonReader reader) throws IOException {
+            return reader.nextBoolean();
+        }
+
+        @Override
+        public void write(JsonWriter writer, Object value) throws IOException {
+            writer.value((boolean) (Boolean) value);
+        }
+    };
+
+    private static final ValueAdapter INTEGER = new NumberAdapter() {
+        @Override
+        public Object read(JsonReader reader) throws IOException {
+            return reader.nextInt();
+        }
+    };
+
+    private static final ValueAdapter LONG = new NumberAdapter() {
+        @Override
+        public Object read(JsonReader reader) throws IOException {
+            return reader.nextLong();
+        }
+    };
+
+    private static final ValueAdapter DOUBLE = new NumberAdapter() {
+        @Override
+        public Object read(JsonReader reader) throws IOException {
+            return reader.nextDouble();
+        }
+    };
+
+    private static final ValueAdapter FLOAT = new NumberAdapter() {
+        @Override
+        public Object read(JsonReader reader) throws IOException {
+            return (float) reader.nextDouble();
+        }
+    };
+
+    private static final ValueAdapter SHORT = new NumberAdapter() {
+        @Override
+        public Object read(JsonReader reader) throws IOException {
+            return (short) reader.nextInt();
+        }
+    };
+
+    private static final ValueAdapter BYTE = new NumberAdapter() {
+        @Override
+        public Object read(JsonReader reader) throws IOException {
+            return (byte) reader.nextInt();
+        }
+    };
+
+    private static final ValueAdapter CHARACTER = new ValueAdapter() {
+        @Override
+        public Object read(JsonReader reader) throws IOException {
+            String s = reader.nextString();
+            return s.isEmpty() ? '\0' : s.charAt(0);
+        }
+
+        @Override
+        public void write(JsonWriter writer, Object value) throws IOException {
+            writer.value(String.valueOf(value));
+        }
+    };
+
+    /**
+     * A value of an undeclared type, read to the types {@link JSONObject} holds and written by
+     * its runtime type
+     */
+    private static final ValueAdapter ANY = new ValueAdapter() {
+        @Override
+        public Object read(JsonReader reader) throws IOException {
+            return JsonStreamMarshaller.readValue(reader);
+        }
+
+        @Override
+        public void write(JsonWriter writer, Object value) throws IOException {
+            writeAny(writer, value);
+        }
+    };
+
+    private abstract static class NumberAdapter implements ValueAdapter {
+
+        @Override
+        public void write(JsonWriter writer, Object value) throws IOException {
+            writer.value((Number) value);
+        }
+    }
+
+    /**
+     * @return The adapter of the declared type of a field, an element or a map value
+     */
+    static ValueAdapter adapterFor(Type type) {
+        if (type instanceof ParameterizedType) {
+            Class<?> raw = (Class<?>) ((ParameterizedType) type).getRawType();
+            Type[] arguments = ((ParameterizedType) type).getActualTypeArguments();
+            if (Collection.class.isAssignableFrom(raw)) {
+                return new CollectionAdapter(raw, adapterFor(arguments[0]));
+            }
+            if (Map.class.isAssignableFrom(raw)) {
+                return new MapAdapter(raw, adapterFor(arguments[1]));
+            }
+            return adapterFor(raw);
+        }
+        if (type instanceof GenericArrayType) {
+            Type component = ((GenericArrayType) type).getGenericComponentType();
+            return new ArrayAdapter(rawType(component), adapterFor(component));
+        }
+        if (type instanceof WildcardType) {
+            return adapterFor(((WildcardType) type).getUpperBounds()[0]);
+        }
+        if (!(type instanceof Class)) {
+            //A type variable
+            return ANY;
+        }
+        Class<?> c = (Class<?>) type;
+        if (c == String.class) {
+            return STRING;
+        } else if (c == int.class || c == Integer.class) {
+            return INTEGER;
+        } else if (c == long.class || c == Long.class) {
+            return LONG;
+        } else if (c == double.class || c == Double.class) {
+            return DOUBLE;
+        } else if (c == boolean.class || c == Boolean.class) {
+            return BOOLEAN;
+        } else if (c == float.class || c == Float.class) {
+            return FLOAT;
+        } else if (c == short.class || c == Short.class) {
+            return SHORT;
+        } else if (c == byte.class || c == Byte.class) {
+            return BYTE;
+        } else if (c == char.class || c == Character.class) {
+            return CHARACTER;
+        } else if (c == Object.class || c == JSONObject.class || c == JSONArray.class
+                || Number.class.isAssignableFrom(c)) {
+            return c == Object.class ? ANY : new JsonAdapter(c);
+        } else if (c.isEnum()) {
+            return new EnumAdapter(c);
+        } else if (c.isArray()) {
+            return new ArrayAdapter(c.getComponentType(), adapterFor(c.getComponentType()));
+        } else if (Collection.class.isAssignableFrom(c)) {
+            return new CollectionAdapter(c, ANY);
+        } else if (Map.class.isAssignableFrom(c)) {
+            return new MapAdapter(c, ANY);
+        }
+        return new ModelReference(c);
+    }
+
+    private static Class<?> rawType(Type type) {
+        if (type instanceof Class) {
+            return (Class<?>) type;
+        } else if (type instanceof ParameterizedType) {
+            return (Class<?>) ((ParameterizedType) type).getRawType();
+        } else if (type instanceof GenericArrayType) {
+            return Array.newInstance(rawType(((GenericArrayType) type).getGenericComponentType()), 0).getClass();
+        }
+        return Object.class;
+    }
+
+    /**
+     * Write a value by its runtime type
+     */
+    @SuppressWarnings("unchecked")
+    static void writeAny(JsonWriter writer, Object value) throws IOException {
+        if (value == null || JSONObject.NULL.equals(value)) {
+            writer.nullValue();
+        } else if (value instanceof String) {
+            writer.value((String) value);
+        } else if (value instanceof Boolean) {
+            writer.value((boolean) (Boolean) value);
+        } else if (value instanceof Number) {
+            writer.value((Number) value);
+        } else if (value instanceof JSONObject) {
+            JSONObject object = (JSONObject) value;
+            writer.beginObject();
+            Iterator<String> keys = object.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                writer.name(key);
+                writeAny(writer, object.opt(key));
+            }
+            writer.endObject();
+        } else if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+            writer.beginArray();
+            for (int i = 0; i < array.length(); i++) {
+                writeAny(writer, array.opt(i));
+            }
+            writer.endArray();
+        } else {
+            adapterFor(value.getClass()).write(writer, value);
+        }
+    }
+
+    /**
+     * A number of a declared type other than the primitive wrappers, or a JSON tree
+     */
+    private static final class JsonAdapter implements ValueAdapter {
+
+        private final Class<?> type;
+
+        JsonAdapter(Class<?> type) {
+            this.type = type;
+        }
+
+        @Override
+        public Object read(JsonReader reader) throws IOException {
+            if (type == JSONObject.class) {
+                return JsonStreamMarshaller.readObject(reader);
+            } else if (type == JSONArray.class) {
+                return JsonStreamMarshaller.readArray(reader);
+            }
+            String literal = reader.nextString();
+            if (type == BigDecimal.class) {
+                return new BigDecimal(literal);
+            } else if (type == BigInteger.class) {
+                return new BigInteger(literal);
+            }
+            Number number = JsonStreamMarshaller.parseNumber(literal);
+            if (!type.isInstance(number)) {
+                throw new IOException("Unable to read " + number + " as " + type.getName());
+            }
+            return number;
+        }
+
+        @Override
+        public void write(JsonWriter writer, Object value) throws IOException {
+            writeAny(writer, value);
+        }
+    }
+
+    private static final class EnumAdapter implements ValueAdapter {
+
+        private final Map<String, Object> constants = new HashMap<>();
+
+        EnumAdapter(Class<?> type) {
+            for (Object constant : type.getEnumConstants()) {
+                constants.put(((Enum<?>) constant).name(), constant);
+            }
+        }
+
+        /**
+         * @return The constant of the name, null for an unknown name
+         */
+        @Override
+        public Object read(JsonReader reader) throws IOException {
+            return constants.get(reader.nextString());
+        }
+
+        @Override
+        public void write(JsonWriter writer, Object value) throws IOException {
+            writer.value(((Enum<?>) value).name());
+        }
+    }
+
+    private static final class ArrayAdapter implements ValueAdapter {
+
+        private final Class<?> componentType;
+        private final ValueAdapter component;
+
+        ArrayAdapter(Class<?> componentType, ValueAdapter component) {
+            this.componentType = componentType;
+            this.component = component;
+        }
+
+        @Override
+        public Object read(JsonReader reader) throws IOException {
+            List<Object> elements = new ArrayList<>();
+            reader.beginArray();
+            while (reader.hasNext()) {
+                elements.add(ModelAdapter.read(component, reader));
+            }
+            reader.endArray();
+            Object array = Array.newInstance(componentType, elements.size());
+            for (int i = 0; i < elements.size(); i++) {
+                Object element = elements.get(i);
+                if (element != null || !componentType.isPrimitive()) {
+                    Array.set(array, i, element);
+                }
+            }
+            return array;
+        }
+
+        @Override
+        public void write(JsonWriter writer, Object value) throws IOException {
+            writer.beginArray();
+            int length = Array.getLength(value);
+            for (int i = 0; i < length; i++) {
+                ModelAdapter.write(component, writer, Array.get(value, i));
+            }
+            writer.endArray();
+        }
+    }
+
+    private static final class CollectionAdapter implements ValueAdapter {
+
+        private final Class<?> type;
+        private final ValueAdapter element;
+
+        CollectionAdapter(Class<?> type, ValueAdapter element) {
+            this.type = type;
+            this.element = element;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Object read(JsonReader reader) throws IOException {
+            Collection<Object> collection = newCollection();
+            reader.beginArray();
+            while (reader.hasNext()) {
+                collection.add(ModelAdapter.read(element, reader));
+            }
+            reader.endArray();
+            return collection;
+        }
+
+        @SuppressWarnings("unchecked")
+        private Collection<Object> newCollection() throws IOException {
+            if (type.isInterface() || Modifier.isAbstract(type.getModifiers())) {
+                if (SortedSet.class.isAssignableFrom(type)) {
+                    return new TreeSet<>();
+                } else if (Set.class.isAssignableFrom(type)) {
+                    return new LinkedHashSet<>();
+                }
+                return new ArrayList<>();
+            }
+            try {
+                return (Collection<Object>) type.getDeclaredConstructor().newInstance();
+            } catch (Exception e) {
+                throw new IOException("Unable to create " + type.getName(), e);
+            }
+        }
+
+        @Override
+        public void write(JsonWriter writer, Object value) throws IOException {
+            writer.beginArray();
+            for (Object e : (Collection<?>) value) {
+                ModelAdapter.write(element, writer, e);
+            }
+            writer.endArray();
+        }
+    }
+
+    /**
+     * A map of JSON member names to values
+     */
+    private static final class MapAdapter implements ValueAdapter {
+
+        private final Class<?> type;
+        private final ValueAdapter value;
+
+        MapAdapter(Class<?> type, ValueAdapter value) {
+            this.type = type;
+            this.value = value;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Object read(JsonReader reader) throws IOException {
+            Map<String, Object> map;
+            if (type.isInterface() || Modifier.isAbstract(type.getModifiers())) {
+                map = new LinkedHashMap<>();
+            } else {
+                try {
+                    map = (Map<String, Object>) type.getDeclaredConstructor().newInstance();
+                } catch (Exception e) {
+                    throw new IOException("Unable to create " + type.getName(), e);
+                }
+            }
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                map.put(name, ModelAdapter.read(value, reader));
+            }
+            reader.endObject();
+            return map;
+        }
+
+        @Override
+        public void write(JsonWriter writer, Object map) throws IOException {
+            writer.beginObject();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) map).entrySet()) {
+                writer.name(String.valueOf(entry.getKey()));
+                ModelAdapter.write(value, writer, entry.getValue());
+            }
+            writer.endObject();
+        }
+    }
+
+    /**
+     * A nested model, its adapter is resolved on first use
+     */
+    private static final class ModelReference implements ValueAdapter {
+
+        private final Class<?> type;
+        private volatile ModelAdapter<?> adapter;
+
+        ModelReference(Class<?> type) {
+            this.type = type;
+        }
+
+        private ModelAdapter<?> adapter() {
+            ModelAdapter<?> a = adapter;
+            if (a == null) {
+                a = ModelAdapter.of(type);
+                adapter = a;
+            }
+            return a;
+        }
+
+        @Override
+        public Object read(JsonReader reader) throws IOException {
+            return adapter().read(reader);
+        }
+
+        @Override
+        public void write(JsonWriter writer, Object value) throws IOException {
+            adapter().write(writer, value);
+        }
+    }
+
+    /**
+     * A bound field
+     */
+    private static final class Property {
+
+        private static final int OBJECT = 0;
+        private static final int INT = 1;
+        private static final int LONG = 2;
+        private static final int DOUBLE = 3;
+        private static final int BOOLEAN = 4;
+        private static final int FLOAT = 5;
+
+        final String name;
+        private final Field field;
+        private final int primitive;
+        private final ValueAdapter adapter;
+
+        Property(String name, Field field) {
+            this.name = name;
+            this.field = field;
+            field.setAccessible(true);
+            Class<?> type = field.getType();
+            if (type == int.class) {
+                primitive = INT;
+            } else if (type == long.class) {
+                primitive = LONG;
+            } else if (type == double.class) {
+                primitive = DOUBLE;
+            } else if (type == boolean.class) {
+                primitive = BOOLEAN;
+            } else if (type == float.class) {
+                primitive = FLOAT;
+            } else {
+                primitive = OBJECT;
+            }
+            adapter = adapterFor(field.getGenericType());
+        }
+
+        void read(JsonReader reader, Object target) throws IOException {
+            try {
+                if (reader.peek() == JsonToken.NULL) {
+                    reader.nextNull();
+                    //A primitive field keeps its default value
+                    if (!field.getType().isPrimitive()) {
+                        field.set(target, null);
+                    }
+                    return;
+                }
+                switch (primitive) {
+                    case INT:
+                        field.setInt(target, reader.nextInt());
+                        break;
+                    case LONG:
+                        field.setLong(target, reader.nextLong());
+                        break;
+                    case DOUBLE:
+                        field.setDouble(target, reader.nextDouble());
+                        break;
+                    case BOOLEAN:
+                        field.setBoolean(target, reader.nextBoolean());
+                        break;
+                    case FLOAT:
+                        field.setFloat(target, (float) reader.nextDouble());
+                        break;
+                    default:
+                        field.set(target, adapter.read(reader));
+                }
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        void write(JsonWriter writer, Object source) throws IOException {
+            try {
+                switch (primitive) {
+                    case INT:
+                        writer.name(name).value(field.getInt(source));
+                        break;
+                    case LONG:
+                        writer.name(name).value(field.getLong(source));
+                        break;
+                    case DOUBLE:
+                        writer.name(name).value(field.getDouble(source));
+                        break;
+                    case BOOLEAN:
+                        writer.name(name).value(field.getBoolean(source));
+                        break;
+                    case FLOAT:
+                        writer.name(name).value(field.getFloat(source));
+                        break;
+                    default:
+                        Object value = field.get(source);
+                        if (value != null) {
+                            writer.name(name);
+                            adapter.write(writer, value);
+                        }
+                }
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Ideal Technologies Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.ideal.restless;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.JsonWriter;
+
+import java.io.IOException;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Bind JSON straight to the fields of a model class in one pass, and write the model back as
+ * JSON for a request body. The fields are looked up once per model class and kept, the
+ * instances are created by the constructor without argument of the class.
+ * <p>
+ * The supported field types are the primitives and their wrappers, String, enums, nested
+ * models, arrays, collections and maps of the supported types, {@code JSONObject},
+ * {@code JSONArray} and {@code Object} for any JSON value. A member without field is skipped
+ * and a null field is left out of the written object.
+ * <pre>
+ * Request request = new Request.Builder&lt;Person&gt;(uri)
+ *         .setResponseMarshaller(new ModelMarshaller&lt;&gt;(Person.class))
+ *         .build();
+ * </pre>
+ * Registered by {@link DataMarshalProvider#register(DataMarshaller)}, the model is sent as JSON
+ * by {@link Request.Builder#post(Object)}. The registered marshaller is outbound only by default,
+ * so the JSON responses of the requests without their own marshaller are not bound to the model.
+ *
+ * @param <T> The model type
+ */
+public class ModelMarshaller<T> extends JsonStreamMarshaller<T> {
+
+    /**
+     * The JSON member name of a field, when it is not the field name
+     */
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target(ElementType.FIELD)
+    public @interface Name {
+        String value();
+    }
+
+    private final ModelAdapter<T> adapter;
+    private final boolean inbound;
+
+    /**
+     * @param type A concrete class with a constructor without argument
+     * @throws IllegalArgumentException When the class cannot be instantiated
+     */
+    public ModelMarshaller(Class<T> type) {
+        this(type, false);
+    }
+
+    /**
+     * @param type    A concrete class with a constructor without argument
+     * @param inbound True to register the marshaller for the JSON responses as well, every JSON
+     *                response without its own marshaller is then bound to the model
+     * @throws IllegalArgumentException When the class cannot be instantiated
+     */
+    public ModelMarshaller(Class<T> type, boolean inbound) {
+        this.adapter = ModelAdapter.of(type);
+        this.inbound = inbound;
+    }
+
+    @Override
+    protected T read(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return null;
+        }
+        return adapter.read(reader);
+    }
+
+    @Override
+    protected void write(JsonWriter writer, T data) throws IOException {
+        adapter.write(writer, data);
+    }
+
+    @Override
+    public String[] responseContentType() {
+        return inbound ? super.responseContentType() : null;
+    }
+
+    @Override
+    public Class<T> getType() {
+        return adapter.getType();
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Ideal Technologies Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.ideal.restless;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link LRUCache} which keeps the response bodies outside the Java heap, in direct
+ * {@link ByteBuffer} slabs managed by its own allocator. Only the headers and the cache metadata
+ * stay on the heap, so a large cache does not add to the garbage collection work.
+ * <p>
+ * The max size is the total bytes of the response bodies. The body of an evicted response is
+ * freed once the requests it is served to have delivered their callbacks, the served
+ * {@link HttpResponse} exposes the body by {@link HttpResponse#getBodyBuffer()} and
+ * {@link HttpResponse#getBodyStream()} until then, and {@link HttpResponse#getBody()} makes a
+ * heap copy on demand.
+ */
+public class OffHeapLRUCache extends LRUCache {
+
+    /**
+     * The default slab size, 1 MB
+     */
+    private static final int DEFAULT_SLAB_SIZE = 1024 * 1024;
+
+    private final DirectBodyAllocator allocator;
+
+    /**
+     * @param maxBytes The maximum total bytes of the cached response bodies
+     */
+    public OffHeapLRUCache(int maxBytes) {
+        this(maxBytes, DEFAULT_SLAB_SIZE);
+    }
+
+    /**
+     * @param maxBytes The maximum total bytes of the cached response bodies
+     * @param slabSize The size of a slab, bodies larger than a quarter of it get a dedicated buffer
+     */
+    public OffHeapLRUCache(int maxBytes, int slabSize) {
+        super(maxBytes);
+        //Leave room for the rounding up to the size classes and the partially used slabs
+        allocator = new DirectBodyAllocator(slabSize, (long) maxBytes + 16L * slabSize);
+    }
+
+    /**
+     * @return The bytes reserved by the slabs
+     */
+    public long getReservedBytes() {
+        return allocator.getSlabBytes();
+    }
+
+    @Override
+    int sizeOf(CacheEntry cacheEntry) {
+        return Math.max(1, cacheEntry.getResponse().getContentLength());
+    }
+
+    @Override
+    HttpResponse store(HttpResponse response) {
+        ByteBuffer body = response.getBodyBuffer();
+        if (body == null) {
+            return response;
+        }
+        return new HttpResponse(response.getStatusCode(), response.getContentType(),
+                response.getResponseHeaders(), allocator.allocate(body), false);
+    }
+
+    @Override
+    HttpResponse serve(CacheEntry cacheEntry) {
+        return cacheEntry.getResponse().retain();
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Ideal Technologies Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.ideal.restless;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Revalidate the {@link CacheEntry} which is read after a fraction of its freshness lifetime
+ * passed, in background, so a popular entry is refreshed before it expires and its readers keep
+ * hitting the cache.
+ * <p>
+ * The refresh is a conditional request through the {@link RequestThreadPool} of the reader, the
+ * {@link HttpCache} stores the response as for any other request. The number of refreshes in
+ * flight is capped, an entry is refreshed by one request at a time.
+ */
+class RefreshAhead {
+
+    /**
+     * A refresh which does not report back in time, as it is purged from the
+     * {@link RequestThreadPool}, gives its slot back.
+     */
+    private static final long ABANDONED_AFTER = 60 * 1000L;
+
+    private final float fraction;
+    private final int maxConcurrent;
+    private final Map<CacheKey, Long> inFlight = new HashMap<>();
+
+    /**
+     * @param fraction      The fraction of the freshness lifetime after which a read refreshes
+     *                      the entry, between 0 and 1
+     * @param maxConcurrent The maximum number of refreshes in flight
+     */
+    RefreshAhead(float fraction, int maxConcurrent) {
+        this.fraction = fraction;
+        this.maxConcurrent = maxConcurrent;
+    }
+
+    /**
+     * Claim the refresh of the entry just read.
+     *
+     * @return True when the entry is due to refresh and the caller should refresh it
+     */
+    boolean begin(CacheEntry cacheEntry, long now) {
+        long lifetime = cacheEntry.getExpiresAt() - cacheEntry.getResponseTime();
+        if (cacheEntry.getKey() == null || cacheEntry.isExpired(now) || lifetime <= 0
+                || now - cacheEntry.getResponseTime() < lifetime * fraction) {
+            return false;
+        }
+        synchronized (inFlight) {
+            if (inFlight.containsKey(cacheEntry.getKey())) {
+                return false;
+            }
+            if (inFlight.size() >= maxConcurrent) {
+                for (Iterator<Long> i = inFlight.values().iterator(); i.hasNext(); ) {
+                    if (now - i.next() > ABANDONED_AFTER) {
+                        i.remove();
+                    }
+                }
+                if (inFlight.size() >= maxConcurrent) {
+                    return false;
+                }
+            }
+            inFlight.put(cacheEntry.getKey(), now);
+            return true;
+        }
+    }
+
+    void end(CacheKey key) {
+        synchronized (inFlight) {
+            inFlight.remove(key);
+        }
+    }
+
+    /**
+     * Create the conditional request to refresh the entry read by the request.
+     */
+    Request newRequest(Request request, CacheEntry cacheEntry) {
+        final CacheKey key = cacheEntry.getKey();
+        Request.Builder<Object> builder = new Request.Builder<>(request.getUri());
+        for (Map.Entry<String, List<String>> header : request.getHeaders().entrySet()) {
+            if (header.getValue() != null && !"If-None-Match".equalsIgnoreCase(header.getKey())
+                    && !"If-Modified-Since".equalsIgnoreCase(header.getKey())) {
+                for (String value : new ArrayList<>(header.getValue())) {
+                    builder.header(header.getKey(), value);
+                }
+            }
+        }
+        if (cacheEntry.getETag() != null) {
+            builder.header("If-None-Match", cacheEntry.getETag());
+        }
+        if (cacheEntry.getLastModified() != null) {
+            builder.header("If-Modified-Since", cacheEntry.getLastModified());
+        }
+        //Store the response without reading the cache, nobody is waiting for the result
+        return builder.cachePolicy(CachePolicy.NETWORK_FIRST_WITH_CACHE_FALLBACK)
+                .responseOnBackgroundThread()
+                .setResponseHandlers(new ResponseHandler() {
+                    @Override
+                    public boolean onResponse(Request request, RequestThreadPool threadPool, Throwable t) {
+                        end(key);
+                        return true;
+                    }
+                })
+                .build();
+    }
+}
@@ -34,7 +34,9 @@ import android.os.Looper;
 import android.util.Log;
 import android.util.Pair;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
@@ -43,7 +45,9 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import javax.net.ssl.HttpsURLConnection;
 
@@ -95,6 +99,11 @@ public interface Request extends Runnable {
      */
     boolean isCachable();
 
+    /**
+     * @return How the request uses the cache of the {@link RequestThreadPool}.
+     */
+    CachePolicy getCachePolicy();
+
     /**
      * @return The http method for the request.
      */
@@ -102,7 +111,8 @@ public interface Request extends Runnable {
 
     ResponseHandler[] getResponseHandler();
 
-    ResponseHandler[] DEFAULT_POLICY = {new RetryPolicy(), new ResponseCallbackPolicy()};
+    ResponseHandler[] DEFAULT_POLICY = {new RetryPolicy(), new CacheFallbackPolicy(),
+            new ResponseCallbackPolicy()};
 
     interface Method {
         String GET = "GET";
@@ -125,6 +135,20 @@ public interface Request extends Runnable {
         void onSuccess(T body, HttpResponse httpResponse);
     }
 
+    /**
+     * Callback interface for delivering the elements of a streamed response, see
+     * {@link ElementStreamMarshaller}.
+     */
+    interface ElementCallback<E> {
+
+        /**
+         * Callback method that a batch of elements is read.
+         *
+         * @param elements The elements in the order of the response, the list is not reused
+         */
+        void onElements(List<E> elements);
+    }
+
     /**
      * Callback interface for delivering error responses.
      */
@@ -145,7 +169,7 @@ public interface Request extends Runnable {
         private String method = Method.GET;
         private Map<String, List<String>> headers = new HashMap<>();
         private Object body;
-        private boolean cacheable = false;
+        private CachePolicy cachePolicy = CachePolicy.NETWORK_ONLY;
         private boolean responseOnBackgroundThread = false;
         private SuccessCallback<T> successCallback;
         private ErrorCallback errorCallback;
@@ -205,10 +229,18 @@ public interface Request extends Runnable {
         }
 
         /**
-         * Enable cache for this request. By default false.
+         * Enable cache for this request, the same as {@link CachePolicy#CACHE_FIRST}. By default false.
          */
         public Builder<T> cacheable() {
-            this.cacheable = true;
+            return cachePolicy(CachePolicy.CACHE_FIRST);
+        }
+
+        /**
+         * Set how the request uses the cache of the {@link RequestThreadPool}. By default
+         * {@link CachePolicy#NETWORK_ONLY}.
+         */
+        public Builder<T> cachePolicy(CachePolicy cachePolicy) {
+            this.cachePolicy = cachePolicy == null ? CachePolicy.NETWORK_ONLY : cachePolicy;
             return this;
         }
 
@@ -273,8 +305,8 @@ public interface Request extends Runnable {
          * Provide {@link ResponseHandler} chain set to handle the response.
          * The chain will be executed in sequence until one of the
          * {@link ResponseHandler#onResponse(Request, RequestThreadPool, Throwable)} return true or
-         * end of the chain. By default {@link RetryPolicy} and {@link ResponseCallbackPolicy} are
-         * defined.
+         * end of the chain. By default {@link RetryPolicy}, {@link CacheFallbackPolicy} and
+         * {@link ResponseCallbackPolicy} are defined.
          */
         public Builder<T> setResponseHandlers(ResponseHandler... policies) {
             this.responseHandlers = policies;
@@ -290,6 +322,9 @@ public interface Request extends Runnable {
          * {@link DataMarshaller}. {@link DataMarshalProvider} uses
          * {@link DataMarshaller#responseContentType()} to map with the response content type to find
          * the {@link DataMarshaller}
+         * <p>
+         * <p>An {@link ElementStreamMarshaller} reads the elements while the body arrives, the
+         * {@link SuccessCallback} receives the number of elements once they are all delivered.
          */
         public Builder<T> setResponseMarshaller(DataMarshaller<T> dataMarshaller) {
             this.responseMarshaller = dataMarshaller;
@@ -322,19 +357,99 @@ public interface Request extends Runnable {
                 }
 
                 private HttpResponse response;
+                private CacheEntry cacheEntry;
+                private volatile ResponseCallbackPolicy.Delivery storedDelivery;
                 private int retryAttempted;
                 private RequestThreadPool threadPool;
                 private HttpURLConnection connection;
+                private Integer streamedCount;
+                private IOException streamError;
+
+                /**
+                 * Deliver the batches of an {@link ElementStreamMarshaller} to the thread of the
+                 * callbacks
+                 */
+                private final Executor elementDelivery = new Executor() {
+                    @Override
+                    public void execute(final Runnable command) {
+                        if (shouldDiscard()) {
+                            return;
+                        }
+                        if (responseOnBackgroundThread) {
+                            command.run();
+                        } else {
+                            new Handler(Looper.getMainLooper()).post(new Runnable() {
+                                @Override
+                                public void run() {
+                                    if (!shouldDiscard()) {
+                                        command.run();
+                                    }
+                                }
+                            });
+                        }
+                    }
+                };
 
 
                 @Override
                 public void onSuccess() throws Exception {
+                    onSuccess(response, cacheEntry);
+                }
+
+                @Override
+                public void onSuccess(HttpResponse response, CacheEntry cacheEntry) throws Exception {
+                    boolean streaming = responseMarshaller instanceof ElementStreamMarshaller;
+                    if ((successCallback == null && !streaming) || shouldDiscard()) {
+                        //Nobody reads the result, the body is not transformed
+                        release(response);
+                        return;
+                    }
+                    if (streamError != null) {
+                        onError(streamError);
+                        return;
+                    }
+                    if (streamedCount != null) {
+                        //The elements are delivered while the body is received
+                        onSuccess((T) streamedCount, response);
+                        return;
+                    }
+                    HttpCache cache = null;
+                    //The elements are delivered by the transformation, it is never skipped
+                    if (cacheEntry != null && threadPool.getCache() instanceof HttpCache && !streaming) {
+                        cache = (HttpCache) threadPool.getCache();
+                    }
+                    Object decoder = responseMarshaller == null ? DataMarshalProvider.class
+                            : DecodedObjectCache.decoderOf(responseMarshaller);
+                    T result = cache == null ? null : (T) cache.getDecoded(cacheEntry, decoder);
+                    if (result == null) {
+                        try {
+                            result = unmarshal(response);
+                        } catch (Exception e) {
+                            //The body cannot be transformed, the response is delivered as error
+                            onError(e);
+                            return;
+                        }
+                        if (cache != null) {
+                            cache.putDecoded(cacheEntry, decoder, result);
+                        }
+                    }
+                    onSuccess(result, response);
+                }
+
+                private T unmarshal(HttpResponse response) throws Exception {
                     if (responseMarshaller == null) {
-                        onSuccess((T) DataMarshalProvider.getInstance().unmarshal(response.getContentType(),
-                                response.getBody()), response);
-                    } else {
-                        onSuccess((T) responseMarshaller.unmarshal(response.getBody()), response);
+                        return (T) DataMarshalProvider.getInstance().unmarshal(response);
+                    }
+                    InputStream stream = response.getBodyStream();
+                    if (responseMarshaller instanceof ElementStreamMarshaller) {
+                        return (T) (Integer) ((ElementStreamMarshaller<?>) responseMarshaller).read(
+                                stream != null ? stream : new ByteArrayInputStream(response.getBody()),
+                                response.getContentType(), elementDelivery);
                     }
+                    if (responseMarshaller instanceof StreamingDataMarshaller && stream != null) {
+                        return ((StreamingDataMarshaller<T>) responseMarshaller).unmarshal(stream);
+                    }
+                    return responseMarshaller.unmarshal(response.getBody());
                 }
 
                 @Override
@@ -342,6 +457,26 @@ public interface Request extends Runnable {
                     this.response = response;
                 }
 
+                @Override
+                public void setCacheEntry(CacheEntry cacheEntry) {
+                    this.cacheEntry = cacheEntry;
+                }
+
+                @Override
+                public CacheEntry getCacheEntry() {
+                    return cacheEntry;
+                }
+
+                @Override
+                public void setStoredDelivery(ResponseCallbackPolicy.Delivery delivery) {
+                    this.storedDelivery = delivery;
+                }
+
+                @Override
+                public ResponseCallbackPolicy.Delivery getStoredDelivery() {
+                    return storedDelivery;
+                }
+
                 @Override
                 public Uri getUri() {
                     return uri;
@@ -379,7 +514,7 @@ public interface Request extends Runnable {
 
                 @Override
                 public boolean isCachable() {
-                    if (cacheable) {
+                    if (cachePolicy != CachePolicy.NETWORK_ONLY) {
                         if (cacheControl != null) {
                             return !cacheControl.isNoCache() && !cacheControl.isNoStore();
                         }
@@ -388,6 +523,11 @@ public interface Request extends Runnable {
                     return false;
                 }
 
+                @Override
+                public CachePolicy getCachePolicy() {
+                    return cachePolicy;
+                }
+
                 @Override
                 public String getMethod() {
                     return method;
@@ -428,34 +568,64 @@ public interface Request extends Runnable {
                     if (!shouldDiscard()) {
                         if (successCallback != null) {
                             if (responseOnBackgroundThread) {
-                                successCallback.onSuccess(result, response);
+                                try {
+                                    successCallback.onSuccess(result, response);
+                                } finally {
+                                    release(response);
+                                }
                             } else {
                                 new Handler(Looper.getMainLooper()).post(new Runnable() {
                                     @Override
                                     public void run() {
-                                        successCallback.onSuccess(result, response);
+                                        try {
+                                            successCallback.onSuccess(result, response);
+                                        } finally {
+                                            release(response);
+                                        }
                                     }
                                 });
                             }
+                            return;
                         }
                     }
+                    release(response);
                 }
 
                 public void onError(final Throwable t) {
+                    final HttpResponse response = this.response;
                     if (!shouldDiscard()) {
                         if (errorCallback != null) {
                             if (responseOnBackgroundThread) {
-                                errorCallback.onError(t, response);
+                                try {
+                                    errorCallback.onError(t, response);
+                                } finally {
+                                    release(response);
+                                }
                             } else {
                                 new Handler(Looper.getMainLooper()).post(new Runnable() {
                                     @Override
                                     public void run() {
-                                        errorCallback.onError(t, response);
+                                        try {
+                                            errorCallback.onError(t, response);
+                                        } finally {
+                                            release(response);
+                                        }
                                     }
                                 });
                             }
+                            return;
                         }
                     }
+                    release(response);
+                }
+
+                /**
+                 * Give up the off heap body of the response once it is delivered
+                 */
+                private void release(HttpResponse response) {
+                    if (response != null) {
+                        response.release();
+                    }
                 }
 
                 @Override
@@ -539,7 +709,8 @@ public interface Request extends Runnable {
                         InputStream inputStream = null;
                         try {
                             inputStream = conn.getInputStream();
-                            byte[] data = slurpStream(inputStream);
+                            byte[] data = isStreamed(responseStatusCode)
+                                    ? streamElements(inputStream, contentType) : slurpStream(inputStream);
                             response = new HttpResponse(responseStatusCode, contentType, responseHeaders, data);
                         } catch (IOException ioe) {
                             inputStream = conn.getErrorStream();
@@ -553,10 +724,74 @@ public interface Request extends Runnable {
                     }
                 }
 
+                private boolean isStreamed(int statusCode) {
+                    return responseMarshaller instanceof ElementStreamMarshaller
+                            && statusCode >= HttpURLConnection.HTTP_OK && statusCode < HttpURLConnection.HTTP_MULT_CHOICE
+                            && cachePolicy != CachePolicy.CACHE_THEN_NETWORK;
+                }
+
+                /**
+                 * Deliver the elements while the body is read, the body is kept for the cache. A
+                 * malformed element is reported after the rest of the body is read, a failure of
+                 * the network fails the request.
+                 *
+                 * @return The body
+                 */
+                private byte[] streamElements(InputStream stream, String contentType) throws IOException {
+                    final ByteArrayOutputStream out = new ByteArrayOutputStream(4096);
+                    final IOException[] failure = new IOException[1];
+                    InputStream tee = new FilterInputStream(stream) {
+                        @Override
+                        public int read() throws IOException {
+                            byte[] b = new byte[1];
+                            return read(b, 0, 1) > 0 ? b[0] & 0xff : -1;
+                        }
+
+                        @Override
+                        public int read(byte[] b, int off, int len) throws IOException {
+                            try {
+                                int got = super.read(b, off, len);
+                                if (got > 0) {
+                                    out.write(b, off, got);
+                                    if (out.size() >= LIMIT) {
+                                        throw new IOException("Stream limit exceeded");
+                                    }
+                                }
+                                return got;
+                            } catch (IOException e) {
+                                failure[0] = e;
+                                throw e;
+                            }
+                        }
+
+                        @Override
+                        public void close() {
+                            //Closed by the caller
+                        }
+                    };
+                    try {
+                        streamedCount = ((ElementStreamMarshaller<?>) responseMarshaller).read(
+                                tee, contentType, elementDelivery);
+                    } catch (IOException e) {
+                        if (failure[0] != null) {
+                            throw failure[0];
+                        }
+                        streamError = e;
+                    }
+                    final byte[] buf = new byte[4096];
+                    while (tee.read(buf, 0, buf.length) > 0) {
+                        //Keep the rest of the body
+                    }
+                    return out.toByteArray();
+                }
+
                 @Override
                 public void run() {
 
                     if (DEBUG) Log.d(TAG, String.format("Request %s is running", uri));
+                    cacheEntry = null;
+                    streamedCount = null;
+                    streamError = null;
 
                     try {
                         connection = (HttpURLConnection) new URL(uri.toString()).openConnection();
@@ -600,4 +835,40 @@ public interface Request extends Runnable {
             super(cause);
         }
     }
+
+    /**
+     * Delivered to the {@link ErrorCallback} when the error response of an earlier request is
+     * served from the cache, see {@link HttpCache#setNegativeCaching(long, TimeUnit, boolean)}.
+     */
+    class CachedErrorException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int statusCode;
+
+        CachedErrorException(Uri uri, int statusCode) {
+            super("Cached HTTP " + statusCode + " response for " + uri);
+            this.statusCode = statusCode;
+        }
+
+        /**
+         * @return The status code of the cached error response
+         */
+        public int getStatusCode() {
+            return statusCode;
+        }
+    }
+
+    /**
+     * Delivered to the {@link ErrorCallback} of a {@link CachePolicy#CACHE_ONLY} request without
+     * cached response.
+     */
+    class CacheMissException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        CacheMissException(Uri uri) {
+            super("No cached response for " + uri);
+        }
+    }
 }
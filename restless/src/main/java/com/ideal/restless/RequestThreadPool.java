@@ -28,6 +28,7 @@
 package com.ideal.restless;
 
 import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -41,7 +42,8 @@ public interface RequestThreadPool {
     boolean DEBUG = android.util.Log.isLoggable(TAG,  android.util.Log.VERBOSE);
 
     /**
-     * Shutdown the thread poo {@link ThreadPoolExecutor#shutdown()}
+     * Shutdown the thread poo {@link ThreadPoolExecutor#shutdown()}, and write the snapshot of the
+     * {@link HttpCache} when it is set by {@link HttpCache#setSnapshot}
      */
     void shutdown();
 
@@ -82,10 +84,27 @@ public interface RequestThreadPool {
      */
     SSLSocketFactory getSSLSocketFactory();
 
+    /**
+     * @return The executor of the decode stage, which transforms the responses and delivers them
+     * to the callbacks, or null when the responses are decoded on the network threads
+     */
+    Executor getDecodeExecutor();
+
+    /**
+     * @return The queue statistics of the network threads which execute the requests
+     */
+    StageStats getNetworkStats();
+
+    /**
+     * @return The queue statistics of the decode stage, or null when there is no decode stage
+     */
+    StageStats getDecodeStats();
+
     class Builder {
 
 
         private int corePoolSize = 3;
+        private int decodePoolSize; //Decode on the network threads by default
         private Cache<Request, HttpResponse> cache; //No cache by default
         private RequestInterceptor[] requestInterceptors = new RequestInterceptor[]{
                 new ResponseInterceptor(), new CacheRequestInterceptor()};
@@ -99,6 +118,28 @@ public interface RequestThreadPool {
             return this;
         }
 
+        /**
+         * Transform the responses and call the callbacks on a separate stage of
+         * {@code decodePoolSize} threads, instead of the network threads. The network threads
+         * hand the received response over and execute the next request, so the core pool size
+         * can be raised for I/O bound requests without oversubscribing the CPU with decoding.
+         * The number of CPU cores is a good size, see {@link #setDecodeStage()}.
+         *
+         * @param decodePoolSize The number of decode threads, 0 to decode on the network threads
+         */
+        public Builder setDecodePoolSize(int decodePoolSize) {
+            this.decodePoolSize = decodePoolSize;
+            return this;
+        }
+
+        /**
+         * Decode the responses on a separate stage of one thread per CPU core, refer to
+         * {@link #setDecodePoolSize(int)}
+         */
+        public Builder setDecodeStage() {
+            return setDecodePoolSize(DecodeStage.defaultSize());
+        }
+
         /**
          * Set the cache engine to use for {@link RequestThreadPool}
          */
@@ -138,10 +179,18 @@ public interface RequestThreadPool {
                 private ScheduledThreadPoolExecutor pool =
                         new ScheduledThreadPoolExecutor(corePoolSize);
 
+                private DecodeStage decodeStage =
+                        decodePoolSize > 0 ? new DecodeStage(decodePoolSize) : null;
 
                 @Override
                 public void shutdown() {
                     pool.shutdown();
+                    if (decodeStage != null) {
+                        decodeStage.shutdown();
+                    }
+                    if (cache instanceof HttpCache) {
+                        ((HttpCache) cache).writeSnapshot();
+                    }
                 }
 
                 @Override
@@ -187,6 +236,22 @@ public interface RequestThreadPool {
                     return sslSocketFactory;
                 }
 
+                @Override
+                public Executor getDecodeExecutor() {
+                    return decodeStage;
+                }
+
+                @Override
+                public StageStats getNetworkStats() {
+                    return new StageStats(pool.getPoolSize(), pool.getActiveCount(),
+                            pool.getQueue().size(), pool.getCompletedTaskCount(), 0, 0);
+                }
+
+                @Override
+                public StageStats getDecodeStats() {
+                    return decodeStage == null ? null : decodeStage.getStats();
+                }
+
             };
 
             Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
@@ -29,32 +29,133 @@ package com.ideal.restless;
 
 import android.util.Log;
 
+import java.util.concurrent.Executor;
+
 /**
  * Provide response to {@link com.ideal.restless.Request.SuccessCallback} or
- * {@link com.ideal.restless.Request.ErrorCallback}
+ * {@link com.ideal.restless.Request.ErrorCallback}. The successful response is transformed on the
+ * decode stage when the {@link RequestThreadPool} has one, see
+ * {@link RequestThreadPool.Builder#setDecodePoolSize(int)}.
  */
 public class ResponseCallbackPolicy implements ResponseHandler {
 
     @Override
-    public boolean onResponse(Request request, RequestThreadPool threadPool, Throwable t) {
-        RunnableRequest r = (RunnableRequest) request;
+    public boolean onResponse(Request request, RequestThreadPool threadPool, final Throwable t) {
+        final RunnableRequest r = (RunnableRequest) request;
         if (t == null) {
-            try {
-                r.onSuccess();
-            } catch (Throwable e) {
-                Log.e(ResponseCallbackPolicy.class.getCanonicalName(), e.getMessage(), e);
-            }
+            deliver(r, r.getResponse(), threadPool);
         } else {
-            try {
-                if (t instanceof Request.RequestFailedException) {
-                    r.onError(t.getCause());
-                } else {
-                    r.onError(t);
+            Runnable error = new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (t instanceof Request.RequestFailedException) {
+                            r.onError(t.getCause());
+                        } else {
+                            r.onError(t);
+                        }
+                    } catch (Throwable e) {
+                        Log.e(ResponseCallbackPolicy.class.getCanonicalName(), e.getMessage(), e);
+                    }
                 }
-            } catch (Throwable e) {
-                Log.e(ResponseCallbackPolicy.class.getCanonicalName(), e.getMessage(), e);
+            };
+            //The error follows the stored response still queued for decoding
+            Delivery stored = r.getStoredDelivery();
+            if (stored == null || !stored.then(error)) {
+                error.run();
             }
         }
         return true;
     }
+
+    /**
+     * Transform and deliver the response to the success callback, on the decode stage when the
+     * {@link RequestThreadPool} has one. The response and its {@link CacheEntry} are taken now,
+     * so the request may go on with another response meanwhile. A response of a request whose
+     * stored response is still queued is delivered right after it, on the same thread.
+     *
+     * @return The delivery, done or queued
+     */
+    static Delivery deliver(RunnableRequest r, HttpResponse response, RequestThreadPool threadPool) {
+        Delivery delivery = new Delivery(r, response, r.getCacheEntry());
+        Delivery stored = r.getStoredDelivery();
+        if (stored != null && stored.then(delivery)) {
+            return delivery;
+        }
+        Executor decodeExecutor = threadPool.getDecodeExecutor();
+        if (decodeExecutor == null) {
+            delivery.run();
+        } else {
+            decodeExecutor.execute(delivery);
+        }
+        return delivery;
+    }
+
+    private static void deliver(RunnableRequest r, HttpResponse response, CacheEntry cacheEntry) {
+        if (r.shouldDiscard()) {
+            //Cancelled or purged while queued for decoding, do not spend the CPU on it
+            release(response);
+            return;
+        }
+        try {
+            r.onSuccess(response, cacheEntry);
+        } catch (Throwable e) {
+            Log.e(ResponseCallbackPolicy.class.getCanonicalName(), e.getMessage(), e);
+            //The response is not delivered, give up its off heap body
+            release(response);
+        }
+    }
+
+    private static void release(HttpResponse response) {
+        if (response != null) {
+            response.release();
+        }
+    }
+
+    /**
+     * The delivery of a response, which runs the delivery chained to it once it is done, so the
+     * stored and the network response of a {@link CachePolicy#CACHE_THEN_NETWORK} request reach
+     * the callbacks in order whatever the number of decode threads.
+     */
+    static final class Delivery implements Runnable {
+
+        private final RunnableRequest r;
+        private final HttpResponse response;
+        private final CacheEntry cacheEntry;
+        private Runnable next;
+        private boolean done;
+
+        Delivery(RunnableRequest r, HttpResponse response, CacheEntry cacheEntry) {
+            this.r = r;
+            this.response = response;
+            this.cacheEntry = cacheEntry;
+        }
+
+        /**
+         * Run the task after this delivery
+         *
+         * @return False when the delivery is already done, the caller runs the task itself
+         */
+        synchronized boolean then(Runnable task) {
+            if (done) {
+                return false;
+            }
+            next = task;
+            return true;
+        }
+
+        @Override
+        public void run() {
+            deliver(r, response, cacheEntry);
+            Runnable task;
+            synchronized (this) {
+                done = true;
+                task = next;
+                next = null;
+            }
+            if (task != null) {
+                task.run();
+            }
+        }
+    }
 }
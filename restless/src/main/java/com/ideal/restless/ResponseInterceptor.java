@@ -48,6 +48,13 @@ class ResponseInterceptor implements RequestInterceptor {
     public void postExecute(Map requestContext, Request request, RequestThreadPool threadPool, Throwable t) {
         //Do not response when request is canceled or threadpool is purged.
         RunnableRequest r = (RunnableRequest) request;
+        if (t == null && requestContext.get(CacheRequestInterceptor.UNCHANGED) != null) {
+            //The cached response delivered before the network request is still current
+            if (r.getResponse() != null) {
+                r.getResponse().release();
+            }
+            return;
+        }
         if (!r.shouldDiscard()) {
             for (ResponseHandler policy : request.getResponseHandler()) {
                 if (policy.onResponse(request, threadPool, t)) {
@@ -37,7 +37,9 @@ public class RetryPolicy implements ResponseHandler {
     @Override
     public boolean onResponse(Request request, RequestThreadPool threadPool, Throwable t) {
         RunnableRequest r = (RunnableRequest) request;
-        if (t != null) {
+        //A cache miss or a cached error is the same on retry
+        if (t != null && !(t.getCause() instanceof Request.CacheMissException)
+                && !(t.getCause() instanceof Request.CachedErrorException)) {
             if (r.getRetryAttempted() < r.getMaxRetry() - 1) {
                 r.incrementRetryCount();
                 threadPool.schedule(request, r.getRetryInterval(), TimeUnit.MILLISECONDS);
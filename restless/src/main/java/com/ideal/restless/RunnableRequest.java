@@ -38,10 +38,21 @@ interface RunnableRequest<T> extends Request {
     /**
      * Trigger the {@link com.ideal.restless.Request.SuccessCallback} which registered by
      * {@link com.ideal.restless.Request.Builder#onSuccess(SuccessCallback)} with the stored
-     * {@link HttpResponse}
+     * {@link HttpResponse}. A body which cannot be transformed, or is not of its declared content
+     * type, triggers the {@link com.ideal.restless.Request.ErrorCallback} instead. The body is
+     * not transformed when there is no success callback or the request is discarded.
      */
     void onSuccess() throws Exception;
 
+    /**
+     * Trigger the {@link com.ideal.restless.Request.SuccessCallback} with the given response
+     * instead of the stored one, for a response delivered while the request goes on, such as the
+     * cached response of a {@link CachePolicy#CACHE_THEN_NETWORK} request.
+     *
+     * @param cacheEntry The {@link CacheEntry} of the response, or null
+     */
+    void onSuccess(HttpResponse response, CacheEntry cacheEntry) throws Exception;
+
     /**
      * Trigger the {@link com.ideal.restless.Request.SuccessCallback} which registered by
      * {@link com.ideal.restless.Request.Builder#onSuccess(SuccessCallback)} with the provide
@@ -63,6 +74,30 @@ interface RunnableRequest<T> extends Request {
      */
     HttpResponse getResponse();
 
+    /**
+     * Associate the request with the {@link CacheEntry} which holds the current response, so
+     * the decoded response can be kept by the {@link HttpCache}.
+     *
+     * @param cacheEntry The {@link CacheEntry} of the response
+     */
+    void setCacheEntry(CacheEntry cacheEntry);
+
+    /**
+     * @return The {@link CacheEntry} of the current response, or null
+     */
+    CacheEntry getCacheEntry();
+
+    /**
+     * Keep the delivery of the stored response of a {@link CachePolicy#CACHE_THEN_NETWORK}
+     * request, the network response or error is delivered after it.
+     */
+    void setStoredDelivery(ResponseCallbackPolicy.Delivery delivery);
+
+    /**
+     * @return The delivery of the stored response, or null
+     */
+    ResponseCallbackPolicy.Delivery getStoredDelivery();
+
     /**
      * Increment the retry count
      */
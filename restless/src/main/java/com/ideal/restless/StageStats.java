@@ -0,0 +1,101 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Ideal Technologies Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.ideal.restless;
+
+/**
+ * A snapshot of the queue of one stage of the {@link RequestThreadPool}, the network stage which
+ * executes the requests or the decode stage which transforms the responses.
+ */
+public final class StageStats {
+
+    private final int poolSize;
+    private final int activeCount;
+    private final int queueSize;
+    private final long completedCount;
+    private final long callerRunsCount;
+    private final long queueTime;
+
+    StageStats(int poolSize, int activeCount, int queueSize, long completedCount,
+               long callerRunsCount, long queueTime) {
+        this.poolSize = poolSize;
+        this.activeCount = activeCount;
+        this.queueSize = queueSize;
+        this.completedCount = completedCount;
+        this.callerRunsCount = callerRunsCount;
+        this.queueTime = queueTime;
+    }
+
+    /**
+     * @return The number of threads of the stage
+     */
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    /**
+     * @return The number of threads running a task
+     */
+    public int getActiveCount() {
+        return activeCount;
+    }
+
+    /**
+     * @return The number of tasks waiting for a thread
+     */
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    /**
+     * @return The number of tasks completed by the stage
+     */
+    public long getCompletedCount() {
+        return completedCount;
+    }
+
+    /**
+     * @return The number of tasks run by the submitting thread because the queue was full
+     */
+    public long getCallerRunsCount() {
+        return callerRunsCount;
+    }
+
+    /**
+     * @return The total time in nanosecond the tasks waited in the queue, 0 when not tracked
+     */
+    public long getQueueTime() {
+        return queueTime;
+    }
+
+    @Override
+    public String toString() {
+        return "StageStats{poolSize=" + poolSize + ", active=" + activeCount + ", queued=" + queueSize
+                + ", completed=" + completedCount + ", callerRuns=" + callerRunsCount
+                + ", queueTime=" + queueTime / 1000000 + "ms}";
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Ideal Technologies Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.ideal.restless;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A hierarchical timing wheel. Schedule, cancel and expire are O(1), a timeout scheduled far in
+ * the future is cascaded to the lower wheel when its slot is reached, each timeout is cascaded at
+ * most once per level.
+ * <p>
+ * The wheel does not own a thread, {@link #advance(long)} has to be called periodically.
+ *
+ * @param <E> The type of the scheduled element
+ */
+final class TimingWheel<E> {
+
+    private static final int WHEEL_BITS = 6;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    private static final int LEVELS = 4;
+
+    private final long tickMillis;
+    private final Timeout<E>[][] wheels;
+    private long currentTick;
+
+    @SuppressWarnings("unchecked")
+    TimingWheel(long tickMillis, long now) {
+        this.tickMillis = tickMillis;
+        this.wheels = new Timeout[LEVELS][WHEEL_SIZE];
+        this.currentTick = now / tickMillis;
+    }
+
+    /**
+     * Schedule the element to expire at the deadline
+     *
+     * @param element  The element to expire
+     * @param deadline The absolute expire time in millisecond
+     * @return The handle to cancel the timeout
+     */
+    synchronized Timeout<E> schedule(E element, long deadline) {
+        Timeout<E> timeout = new Timeout<>(element, deadline);
+        //Round up, the element must not expire before the deadline
+        timeout.tick = Math.max(deadline / tickMillis + (deadline % tickMillis == 0 ? 0 : 1),
+                currentTick + 1);
+        insert(timeout);
+        return timeout;
+    }
+
+    /**
+     * Cancel the timeout, the element will not be returned by {@link #advance(long)}
+     */
+    synchronized void cancel(Timeout<E> timeout) {
+        if (timeout != null && timeout.wheel != null) {
+            unlink(timeout);
+        }
+    }
+
+    /**
+     * Advance the wheel to the time.
+     *
+     * @param now The current time in millisecond
+     * @return The elements which expired since the last advance
+     */
+    synchronized List<E> advance(long now) {
+        List<E> expired = new ArrayList<>();
+        long nowTick = now / tickMillis;
+        while (currentTick < nowTick) {
+            long tick = ++currentTick;
+            if ((tick & WHEEL_MASK) == 0) {
+                cascade(1, tick);
+            }
+            Timeout<E>[] wheel = wheels[0];
+            int index = (int) (tick & WHEEL_MASK);
+            Timeout<E> timeout = wheel[index];
+            wheel[index] = null;
+            while (timeout != null) {
+                Timeout<E> next = timeout.next;
+                timeout.wheel = null;
+                timeout.prev = timeout.next = null;
+                if (timeout.tick <= tick) {
+                    expired.add(timeout.element);
+                } else {
+                    //Clamped to the top level, not due yet
+                    insert(timeout);
+                }
+                timeout = next;
+            }
+        }
+        return expired;
+    }
+
+    private void cascade(int level, long tick) {
+        int index = (int) ((tick >>> (WHEEL_BITS * level)) & WHEEL_MASK);
+        if (index == 0 && level + 1 < LEVELS) {
+            cascade(level + 1, tick);
+        }
+        Timeout<E>[] wheel = wheels[level];
+        Timeout<E> timeout = wheel[index];
+        wheel[index] = null;
+        while (timeout != null) {
+            Timeout<E> next = timeout.next;
+            timeout.wheel = null;
+            timeout.prev = timeout.next = null;
+            insert(timeout);
+            timeout = next;
+        }
+    }
+
+    private void insert(Timeout<E> timeout) {
+        long delta = timeout.tick - currentTick;
+        int level = 0;
+        long tick = timeout.tick;
+        while (level < LEVELS - 1 && delta >= (1L << (WHEEL_BITS * (level + 1)))) {
+            level++;
+        }
+        if (delta >= (1L << (WHEEL_BITS * LEVELS))) {
+            //Beyond the range of the wheels, park at the furthest slot and reinsert when reached
+            tick = currentTick + (1L << (WHEEL_BITS * LEVELS)) - 1;
+        }
+        int index = (int) ((tick >>> (WHEEL_BITS * level)) & WHEEL_MASK);
+        Timeout<E>[] wheel = wheels[level];
+        timeout.wheel = wheel;
+        timeout.index = index;
+        timeout.next = wheel[index];
+        if (wheel[index] != null) {
+            wheel[index].prev = timeout;
+        }
+        wheel[index] = timeout;
+    }
+
+    private void unlink(Timeout<E> timeout) {
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            timeout.wheel[timeout.index] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.wheel = null;
+        timeout.prev = timeout.next = null;
+    }
+
+    /**
+     * The handle of a scheduled element
+     */
+    static final class Timeout<E> {
+
+        private final E element;
+        private final long deadline;
+        private long tick;
+        private Timeout<E>[] wheel;
+        private int index;
+        private Timeout<E> prev;
+        private Timeout<E> next;
+
+        private Timeout(E element, long deadline) {
+            this.element = element;
+            this.deadline = deadline;
+        }
+
+        long getDeadline() {
+            return deadline;
+        }
+    }
+}
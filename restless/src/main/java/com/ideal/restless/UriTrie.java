@@ -0,0 +1,266 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Ideal Technologies Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.ideal.restless;
+
+import android.net.Uri;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * An index of the {@link CacheEntry}s of a {@link HttpCache} by the path segments of their
+ * {@link Uri}, so a whole family of resources is found in time proportional to the number of
+ * matches rather than the size of the cache.
+ * <p>
+ * The first level is the scheme and authority, the following levels are the path segments. A
+ * node holds the entries of its path, with any query and any {@code Vary} variant. All methods are
+ * synchronized.
+ */
+final class UriTrie {
+
+    /**
+     * Match the uri itself
+     */
+    static final int EXACT = 0;
+
+    /**
+     * Match the uri and all the uris under its path
+     */
+    static final int PREFIX = 1;
+
+    /**
+     * Match all the uris of the scheme and authority
+     */
+    static final int HOST = 2;
+
+    private final Map<String, Node> roots = new HashMap<>();
+
+    /**
+     * @param scope One of {@link #EXACT}, {@link #PREFIX} or {@link #HOST}
+     * @return The entries which match the uri in the scope
+     */
+    List<CacheEntry> get(Uri uri, int scope) {
+        switch (scope) {
+            case EXACT:
+                return get(uri);
+            case PREFIX:
+                return getPrefix(uri);
+            default:
+                return getHost(uri);
+        }
+    }
+
+    /**
+     * Index the {@link CacheEntry} by its key
+     */
+    synchronized void add(CacheEntry cacheEntry) {
+        CacheKey key = cacheEntry.getKey();
+        Node node = roots.get(root(key.getUri()));
+        if (node == null) {
+            node = new Node();
+            roots.put(root(key.getUri()), node);
+        }
+        for (String segment : segments(key.getUri())) {
+            Node child = node.children.get(segment);
+            if (child == null) {
+                child = new Node();
+                node.children.put(segment, child);
+            }
+            node = child;
+        }
+        node.entries.put(key, cacheEntry);
+    }
+
+    /**
+     * Remove the {@link CacheEntry} from the index, unless its key is already indexed for
+     * another {@link CacheEntry}.
+     */
+    synchronized void remove(CacheEntry cacheEntry) {
+        CacheKey key = cacheEntry.getKey();
+        String root = root(key.getUri());
+        Node node = roots.get(root);
+        if (node != null && remove(node, segments(key.getUri()), 0, cacheEntry)) {
+            roots.remove(root);
+        }
+    }
+
+    /**
+     * @return True when the node is empty and can be pruned
+     */
+    private static boolean remove(Node node, List<String> segments, int depth, CacheEntry cacheEntry) {
+        if (depth == segments.size()) {
+            if (node.entries.get(cacheEntry.getKey()) == cacheEntry) {
+                node.entries.remove(cacheEntry.getKey());
+            }
+        } else {
+            Node child = node.children.get(segments.get(depth));
+            if (child != null && remove(child, segments, depth + 1, cacheEntry)) {
+                node.children.remove(segments.get(depth));
+            }
+        }
+        return node.entries.isEmpty() && node.children.isEmpty();
+    }
+
+    /**
+     * @return The entries of the uri with any variant
+     */
+    synchronized List<CacheEntry> get(Uri uri) {
+        List<CacheEntry> entries = new ArrayList<>();
+        Node node = find(uri);
+        if (node != null) {
+            for (CacheEntry cacheEntry : node.entries.values()) {
+                Uri cached = cacheEntry.getKey().getUri();
+                if (trim(uri.getEncodedPath()).equals(trim(cached.getEncodedPath()))
+                        && equals(uri.getEncodedQuery(), cached.getEncodedQuery())) {
+                    entries.add(cacheEntry);
+                }
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * @return The entries of the uri and all the uris under its path
+     */
+    synchronized List<CacheEntry> getPrefix(Uri uri) {
+        List<CacheEntry> entries = new ArrayList<>();
+        Node node = find(uri);
+        if (node != null) {
+            collect(node, entries);
+        }
+        return entries;
+    }
+
+    /**
+     * @return The entries of the scheme and authority of the uri
+     */
+    synchronized List<CacheEntry> getHost(Uri uri) {
+        List<CacheEntry> entries = new ArrayList<>();
+        Node node = roots.get(root(uri));
+        if (node != null) {
+            collect(node, entries);
+        }
+        return entries;
+    }
+
+    /**
+     * The same matching as {@link #get(Uri, int)} without the index
+     *
+     * @return True when the uri matches the target in the scope
+     */
+    static boolean matches(Uri target, Uri uri, int scope) {
+        if (!root(target).equals(root(uri))) {
+            return false;
+        }
+        List<String> targetSegments = segments(target);
+        List<String> segments = segments(uri);
+        switch (scope) {
+            case EXACT:
+                return segments.equals(targetSegments)
+                        && equals(target.getEncodedQuery(), uri.getEncodedQuery());
+            case PREFIX:
+                return segments.size() >= targetSegments.size()
+                        && segments.subList(0, targetSegments.size()).equals(targetSegments);
+            default:
+                return true;
+        }
+    }
+
+    private Node find(Uri uri) {
+        Node node = roots.get(root(uri));
+        if (node != null) {
+            for (String segment : segments(uri)) {
+                node = node.children.get(segment);
+                if (node == null) {
+                    return null;
+                }
+            }
+        }
+        return node;
+    }
+
+    private static void collect(Node node, List<CacheEntry> entries) {
+        entries.addAll(node.entries.values());
+        for (Node child : node.children.values()) {
+            collect(child, entries);
+        }
+    }
+
+    private static boolean equals(String a, String b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private static String trim(String path) {
+        if (path == null) {
+            return "";
+        }
+        int end = path.length();
+        while (end > 0 && path.charAt(end - 1) == '/') {
+            end--;
+        }
+        return path.substring(0, end);
+    }
+
+    /**
+     * The host is case insensitive, https://tools.ietf.org/html/rfc3986#section-6.2.2.1
+     */
+    private static String root(Uri uri) {
+        String scheme = uri.getScheme() == null ? "" : uri.getScheme();
+        String authority = uri.getEncodedAuthority() == null ? "" : uri.getEncodedAuthority();
+        return (scheme + "://" + authority).toLowerCase(Locale.US);
+    }
+
+    /**
+     * @return The non empty path segments, a trailing slash does not make a segment
+     */
+    private static List<String> segments(Uri uri) {
+        List<String> segments = new ArrayList<>();
+        String path = uri.getEncodedPath();
+        if (path != null) {
+            int start = 0;
+            for (int i = 0; i <= path.length(); i++) {
+                if (i == path.length() || path.charAt(i) == '/') {
+                    if (i > start) {
+                        segments.add(path.substring(start, i));
+                    }
+                    start = i + 1;
+                }
+            }
+        }
+        return segments;
+    }
+
+    private static final class Node {
+
+        final Map<String, Node> children = new HashMap<>(4);
+        final Map<CacheKey, CacheEntry> entries = new HashMap<>(2);
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Ideal Technologies Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.ideal.restless;
+
+import org.junit.Test;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@SuppressWarnings({"unchecked", "rawtypes"})
+public class BinaryMarshallerTest {
+
+    private final MessagePackMarshaller<List> msgpackList = new MessagePackMarshaller<>(List.class);
+    private final MessagePackMarshaller<Map> msgpackMap = new MessagePackMarshaller<>(Map.class);
+    private final CborMarshaller<List> cborList = new CborMarshaller<>(List.class);
+    private final CborMarshaller<Map> cborMap = new CborMarshaller<>(Map.class);
+
+    @Test
+    public void testMessagePackEncoding() throws Exception {
+        assertArrayEquals(bytes(0x93, 0x01, 0x7f, 0xcc, 0x80), msgpackList.marshal(Arrays.asList(1, 127, 128)));
+        assertArrayEquals(bytes(0x94, 0xff, 0xe0, 0xd0, 0xdf, 0xd1, 0xff, 0x7f),
+                msgpackList.marshal(Arrays.asList(-1, -32, -33, -129)));
+        assertArrayEquals(bytes(0x92, 0xce, 0xff, 0xff, 0xff, 0xff, 0xd2, 0x80, 0x00, 0x00, 0x00),
+                msgpackList.marshal(Arrays.asList(0xffffffffL, Integer.MIN_VALUE)));
+        assertArrayEquals(bytes(0x93, 0xc0, 0xc3, 0xc2), msgpackList.marshal(Arrays.asList(null, true, false)));
+        assertArrayEquals(bytes(0x81, 0xa1, 'a', 0xcb, 0x3f, 0xf8, 0, 0, 0, 0, 0, 0),
+                msgpackMap.marshal(map("a", 1.5)));
+        assertArrayEquals(bytes(0x91, 0xc4, 0x02, 0x01, 0x02), msgpackList.marshal(Arrays.asList(new byte[]{1, 2})));
+    }
+
+    @Test
+    public void testMessagePackDecoding() throws Exception {
+        List list = msgpackList.unmarshal(bytes(0x95, 0xcd, 0x01, 0x00, 0xd3, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff, 0xfe,
+                0xca, 0x3f, 0xc0, 0x00, 0x00, 0xd9, 0x01, 'x', 0xcf, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff));
+        assertEquals(256, list.get(0));
+        assertEquals(-2, list.get(1));
+        assertEquals(1.5, list.get(2));
+        assertEquals("x", list.get(3));
+        assertEquals(18446744073709551615.0, list.get(4));
+
+        Map map = msgpackMap.unmarshal(bytes(0x82, 0x01, 0xa1, 'a', 0xa1, 'b', 0x90));
+        assertEquals("a", map.get(1));
+        assertEquals(new ArrayList<>(), map.get("b"));
+    }
+
+    @Test
+    public void testCborEncoding() throws Exception {
+        //The examples of https://tools.ietf.org/html/rfc7049#appendix-A
+        assertArrayEquals(bytes(0x86, 0x00, 0x17, 0x18, 0x18, 0x19, 0x03, 0xe8, 0x20, 0x38, 0x63),
+                cborList.marshal(Arrays.asList(0, 23, 24, 1000, -1, -100)));
+        assertArrayEquals(bytes(0x81, 0x1b, 0x00, 0x00, 0x00, 0xe8, 0xd4, 0xa5, 0x10, 0x00),
+                cborList.marshal(Arrays.asList(1000000000000L)));
+        assertArrayEquals(bytes(0x83, 0xf6, 0xf5, 0xf4), cborList.marshal(Arrays.asList(null, true, false)));
+        assertArrayEquals(bytes(0xa2, 0x61, 'a', 0x01, 0x61, 'b', 0x82, 0x02, 0x03),
+                cborMap.marshal(map("a", 1, "b", Arrays.asList(2, 3))));
+        assertArrayEquals(bytes(0x81, 0x62, 0xc3, 0xbc), cborList.marshal(Arrays.asList("\u00fc")));
+        assertArrayEquals(bytes(0x81, 0x64, 0xf0, 0x90, 0x85, 0x91), cborList.marshal(Arrays.asList("\ud800\udd51")));
+    }
+
+    @Test
+    public void testCborDecoding() throws Exception {
+        List list = cborList.unmarshal(bytes(0x86, 0xf9, 0x3c, 0x00, 0xf9, 0x7b, 0xff, 0xf9, 0xc4, 0x00,
+                0xfb, 0x3f, 0xf1, 0x99, 0x99, 0x99, 0x99, 0x99, 0x9a, 0xc1, 0x1a, 0x51, 0x4b, 0x67, 0xb0,
+                0x3b, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff, 0xff));
+        assertEquals(1.0, list.get(0));
+        assertEquals(65504.0, list.get(1));
+        assertEquals(-4.0, list.get(2));
+        assertEquals(1.1, list.get(3));
+        //The tag of an epoch time is skipped
+        assertEquals(1363896240, list.get(4));
+        assertEquals(-18446744073709551616.0, list.get(5));
+        assertEquals(5.960464477539063E-8, CborMarshaller.halfToDouble(0x0001), 0);
+
+        //Indefinite length items
+        Map map = cborMap.unmarshal(bytes(0xbf, 0x63, 'F', 'u', 'n', 0xf5, 0x63, 'A', 'm', 't', 0x9f, 0x21, 0xff,
+                0x61, 's', 0x7f, 0x62, 's', 't', 0x63, 'r', 'e', 'a', 0xff, 0xff));
+        assertEquals(true, map.get("Fun"));
+        assertEquals(Arrays.asList(-2), map.get("Amt"));
+        assertEquals("strea", map.get("s"));
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        Map<String, Object> value = new LinkedHashMap<>();
+        value.put("id", 42);
+        value.put("big", Long.MAX_VALUE);
+        value.put("min", Long.MIN_VALUE);
+        value.put("price", 19.99);
+        value.put("name", "caf\u00e9 \u65e5\u672c \ud83d\ude00");
+        value.put("long", new String(new char[70000]).replace('\u0000', 'x'));
+        value.put("none", null);
+        value.put("tags", Arrays.asList("a", "b", Arrays.asList(1, 2)));
+        for (BinaryMarshaller<Map> marshaller : Arrays.<BinaryMarshaller<Map>>asList(msgpackMap, cborMap)) {
+            Map decoded = marshaller.unmarshal(marshaller.marshal(value));
+            assertEquals(value, decoded);
+            assertEquals(new ArrayList<>(value.keySet()), new ArrayList<>(decoded.keySet()));
+        }
+    }
+
+    @Test
+    public void testUnpairedSurrogate() throws Exception {
+        assertEquals(Arrays.asList("a?b"), msgpackList.unmarshal(msgpackList.marshal(Arrays.asList("a\ud800b"))));
+        assertEquals(3, BinaryOutput.utf8Length("a\ud800b"));
+    }
+
+    @Test
+    public void testInvalidContent() throws Exception {
+        //Truncated
+        assertFails(msgpackList, bytes(0x92, 0x01), EOFException.class);
+        assertFails(cborList, bytes(0x82, 0x01), EOFException.class);
+        assertFails(msgpackList, bytes(0x91, 0xa5, 'a'), EOFException.class);
+        //A length far beyond the content fails without allocating it
+        assertFails(cborList, bytes(0x81, 0x5a, 0x10, 0x00, 0x00, 0x00, 0x00), EOFException.class);
+        //Trailing content
+        assertFails(msgpackList, bytes(0x90, 0x00), IOException.class);
+        //Not the expected type
+        assertFails(msgpackList, bytes(0x80), IOException.class);
+        assertFails(msgpackList, bytes(0xc1), IOException.class);
+
+        byte[] nested = new byte[BinaryMarshaller.MAX_DEPTH + 1];
+        Arrays.fill(nested, (byte) 0x91);
+        assertFails(msgpackList, nested, IOException.class);
+        assertNull(new MessagePackMarshaller<>(Map.class, false).requestContentType());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnsupportedType() throws Exception {
+        new CborMarshaller<>(String.class);
+    }
+
+    private static void assertFails(BinaryMarshaller<?> marshaller, byte[] content, Class<? extends IOException> expected) {
+        try {
+            marshaller.unmarshal(content);
+            fail();
+        } catch (IOException e) {
+            assertTrue(e.getClass().getName(), expected.isInstance(e));
+        }
+    }
+
+    private static Map<Object, Object> map(Object... entries) {
+        Map<Object, Object> map = new LinkedHashMap<>();
+        for (int i = 0; i < entries.length; i += 2) {
+            map.put(entries[i], entries[i + 1]);
+        }
+        return map;
+    }
+
+    private static byte[] bytes(int... values) {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+}
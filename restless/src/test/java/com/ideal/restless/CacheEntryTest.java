@@ -0,0 +1,73 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Ideal Technologies Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.ideal.restless;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CacheEntryTest {
+
+    /**
+     * 2016-10-18T00:00:00Z
+     */
+    private static final long NOW = 1476748800000L;
+
+    @Test
+    public void testMaxAge() throws Exception {
+        CacheEntry cacheEntry = entry("max-age=60");
+        assertTrue(cacheEntry.hasExplicitFreshness());
+        assertFalse(cacheEntry.isExpired(NOW + 60000));
+        assertTrue(cacheEntry.isExpired(NOW + 60001));
+    }
+
+    @Test
+    public void testSMaxAgeIgnored() throws Exception {
+        //s-maxage applies to shared caches only
+        CacheEntry cacheEntry = entry("s-maxage=60");
+        assertFalse(cacheEntry.hasExplicitFreshness());
+        assertTrue(cacheEntry.isExpired(NOW + 1));
+
+        cacheEntry = entry("max-age=60, s-maxage=10");
+        assertFalse(cacheEntry.isExpired(NOW + 30000));
+        assertTrue(cacheEntry.isExpired(NOW + 60001));
+    }
+
+    private static CacheEntry entry(String cacheControl) {
+        Map<String, List<String>> headers = new HashMap<>();
+        headers.put("Cache-Control", Arrays.asList(cacheControl));
+        HttpResponse response = new HttpResponse(200, "text/plain", headers, new byte[1]);
+        return new CacheEntry(response, NOW, CacheEntry.DEFAULT_HEURISTIC_CAP);
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Ideal Technologies Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.ideal.restless;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ContentSnifferTest {
+
+    @Test
+    public void testJson() throws Exception {
+        assertEquals(ContentSniffer.Kind.JSON_OBJECT, sniff("{\"a\":1}"));
+        assertEquals(ContentSniffer.Kind.JSON_ARRAY, sniff(" \r\n\t[1,2]"));
+        assertEquals(ContentSniffer.Kind.JSON_OBJECT, sniff("\ufeff{}"));
+        assertEquals(ContentSniffer.Kind.TEXT, sniff("<html><body>Not Found</body></html>"));
+        assertEquals(ContentSniffer.Kind.JSON_SCALAR, sniff("\"a json string\""));
+        assertEquals(ContentSniffer.Kind.JSON_SCALAR, sniff("true"));
+        assertEquals(ContentSniffer.Kind.JSON_SCALAR, sniff(" 42\n"));
+        assertEquals(ContentSniffer.Kind.JSON_SCALAR, sniff("-1.5e3"));
+        assertEquals(ContentSniffer.Kind.JSON_SCALAR, sniff("null"));
+        assertEquals(ContentSniffer.Kind.TEXT, sniff("true story"));
+        assertEquals(ContentSniffer.Kind.TEXT, sniff("404 Not Found"));
+    }
+
+    @Test
+    public void testImage() throws Exception {
+        assertEquals(ContentSniffer.Kind.PNG, sniff(new byte[]{(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n', 0, 0}));
+        assertEquals(ContentSniffer.Kind.JPEG, sniff(new byte[]{(byte) 0xff, (byte) 0xd8, (byte) 0xff, (byte) 0xe0}));
+        assertEquals(ContentSniffer.Kind.GIF, sniff("GIF89a\u0001\u0000".getBytes("ISO-8859-1")));
+        assertEquals(ContentSniffer.Kind.GIF, sniff("GIF87a".getBytes("ISO-8859-1")));
+        assertEquals(ContentSniffer.Kind.WEBP, sniff("RIFF\u0024\u0000\u0000\u0000WEBPVP8 ".getBytes("ISO-8859-1")));
+        //A RIFF container of another format
+        assertEquals(ContentSniffer.Kind.BINARY, sniff("RIFF\u0024\u0000\u0000\u0000WAVEfmt ".getBytes("ISO-8859-1")));
+        //Too short for the PNG signature
+        assertEquals(ContentSniffer.Kind.BINARY, sniff(new byte[]{(byte) 0x89, 'P', 'N', 'G'}));
+    }
+
+    @Test
+    public void testText() throws Exception {
+        assertEquals(ContentSniffer.Kind.TEXT, sniff("caf\u00e9 \u4e2d\u6587\n"));
+        assertEquals(ContentSniffer.Kind.BINARY, sniff(new byte[]{'a', 0, 'b'}));
+        //Latin-1 is not well formed UTF-8
+        assertEquals(ContentSniffer.Kind.BINARY, sniff("caf\u00e9 ok".getBytes("ISO-8859-1")));
+        //A multi byte sequence cut by the end of the sample
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 511; i++) {
+            text.append('a');
+        }
+        text.append('\u00e9');
+        assertEquals(ContentSniffer.Kind.TEXT, sniff(text.toString()));
+    }
+
+    @Test
+    public void testPositionUnchanged() throws Exception {
+        ByteBuffer buffer = ByteBuffer.wrap("xx[1]".getBytes("UTF-8"));
+        buffer.position(2);
+        assertEquals(ContentSniffer.Kind.JSON_ARRAY, ContentSniffer.sniff(buffer));
+        assertEquals(2, buffer.position());
+    }
+
+    @Test
+    public void testMatches() throws Exception {
+        assertTrue(ContentSniffer.Kind.JSON_ARRAY.matches("application/json"));
+        assertTrue(ContentSniffer.Kind.JSON_OBJECT.matches("application/problem+json"));
+        assertTrue(ContentSniffer.Kind.JSON_SCALAR.matches("application/problem+json"));
+        assertFalse(ContentSniffer.Kind.TEXT.matches("application/json"));
+        assertTrue(ContentSniffer.Kind.JPEG.matches("image/png"));
+        assertFalse(ContentSniffer.Kind.TEXT.matches("image/png"));
+        assertTrue(ContentSniffer.Kind.WEBP.matches("image/webp"));
+        assertFalse(ContentSniffer.Kind.PNG.matches("text/plain"));
+        assertTrue(ContentSniffer.Kind.BINARY.matches("text/plain"));
+        assertTrue(ContentSniffer.Kind.TEXT.matches("application/octet-stream"));
+        assertTrue(ContentSniffer.Kind.TEXT.matches(null));
+    }
+
+    @Test
+    public void testChoose() throws Exception {
+        DataMarshaller object = new DataMarshaller.JsonDataMarshaller();
+        DataMarshaller array = new DataMarshaller.JsonArrayDataMarshaller();
+        DataMarshaller string = new DataMarshaller.StringMarshaller();
+        List<DataMarshaller<?>> json = new ArrayList<>();
+        json.add(object);
+        json.add(array);
+
+        assertSame(object, ContentSniffer.Kind.JSON_OBJECT.choose(json));
+        assertSame(array, ContentSniffer.Kind.JSON_ARRAY.choose(json));
+
+        List<DataMarshaller<?>> objectOnly = new ArrayList<>();
+        objectOnly.add(object);
+        assertNull(ContentSniffer.Kind.JSON_ARRAY.choose(objectOnly));
+
+        //The order to try is kept, a marshaller of its own type takes any JSON
+        List<DataMarshaller<?>> typed = new ArrayList<>();
+        typed.add(string);
+        typed.add(object);
+        assertSame(string, ContentSniffer.Kind.JSON_OBJECT.choose(typed));
+        assertSame(object, ContentSniffer.Kind.JSON_OBJECT.choose(json));
+        assertNull(ContentSniffer.Kind.JSON_SCALAR.choose(json));
+        assertSame(string, ContentSniffer.Kind.JSON_SCALAR.choose(typed));
+        assertSame(string, ContentSniffer.Kind.JSON_ARRAY.choose(typed));
+        assertSame(string, ContentSniffer.Kind.TEXT.choose(typed));
+        assertEquals(JSONObject.class, object.getType());
+        assertEquals(JSONArray.class, array.getType());
+    }
+
+    private static ContentSniffer.Kind sniff(String content) throws Exception {
+        return sniff(content.getBytes("UTF-8"));
+    }
+
+    private static ContentSniffer.Kind sniff(byte[] content) {
+        return ContentSniffer.sniff(ByteBuffer.wrap(content));
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Ideal Technologies Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.ideal.restless;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DirectBodyAllocatorTest {
+
+    private static final int SLAB_SIZE = 64 * 1024;
+
+    @Test
+    public void testAllocate() throws Exception {
+        DirectBodyAllocator allocator = new DirectBodyAllocator(SLAB_SIZE, 4 * SLAB_SIZE);
+        byte[] data = bytes(1000);
+        DirectBodyAllocator.Chunk chunk = allocator.allocate(ByteBuffer.wrap(data));
+
+        assertEquals(1000, chunk.length());
+        assertTrue(chunk.view().isReadOnly());
+        byte[] copy = new byte[chunk.length()];
+        chunk.view().get(copy);
+        assertArrayEquals(data, copy);
+        assertEquals(SLAB_SIZE, allocator.getSlabBytes());
+    }
+
+    @Test
+    public void testReuseFreedChunk() throws Exception {
+        DirectBodyAllocator allocator = new DirectBodyAllocator(SLAB_SIZE, 2 * SLAB_SIZE);
+        //A slab of the 16 KB size class holds 4 chunks
+        DirectBodyAllocator.Chunk[] chunks = new DirectBodyAllocator.Chunk[4];
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = allocator.allocate(ByteBuffer.wrap(bytes(10000)));
+        }
+        chunks[0].release();
+        DirectBodyAllocator.Chunk reused = allocator.allocate(ByteBuffer.wrap(bytes(9000)));
+
+        assertEquals(9000, reused.length());
+        //No new slab is carved while the size class has a free chunk
+        assertEquals(SLAB_SIZE, allocator.getSlabBytes());
+    }
+
+    @Test
+    public void testDedicatedBuffer() throws Exception {
+        DirectBodyAllocator allocator = new DirectBodyAllocator(SLAB_SIZE, SLAB_SIZE);
+        DirectBodyAllocator.Chunk chunk = allocator.allocate(ByteBuffer.wrap(bytes(SLAB_SIZE)));
+
+        assertEquals(SLAB_SIZE, chunk.length());
+        assertEquals(0, allocator.getSlabBytes());
+    }
+
+    @Test
+    public void testRetainAfterFreed() throws Exception {
+        DirectBodyAllocator allocator = new DirectBodyAllocator(SLAB_SIZE, SLAB_SIZE);
+        DirectBodyAllocator.Chunk chunk = allocator.allocate(ByteBuffer.wrap(bytes(100)));
+
+        assertTrue(chunk.retain());
+        chunk.release();
+        chunk.release();
+        assertFalse(chunk.retain());
+    }
+
+    @Test
+    public void testReleasedResponse() throws Exception {
+        DirectBodyAllocator allocator = new DirectBodyAllocator(SLAB_SIZE, SLAB_SIZE);
+        byte[] data = bytes(100);
+        HttpResponse stored = new HttpResponse(200, "text/plain", new HashMap<String, List<String>>(),
+                allocator.allocate(ByteBuffer.wrap(data)), false);
+        HttpResponse served = stored.retain();
+        stored.release();
+
+        assertEquals(100, served.getBodyBuffer().remaining());
+        assertArrayEquals(data, served.getBody());
+        served.release();
+        //The copy made before the release stays valid
+        assertArrayEquals(data, served.getBody());
+        assertNull(stored.retain());
+        try {
+            served.getBodyBuffer();
+            fail();
+        } catch (IllegalStateException e) {
+            //expected
+        }
+    }
+
+    private static byte[] bytes(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) i;
+        }
+        return data;
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Ideal Technologies Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.ideal.restless;
+
+import org.junit.Test;
+
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FormCodecTest {
+
+    private static String string(byte[] content) throws Exception {
+        return new String(content, "US-ASCII");
+    }
+
+    private static byte[] bytes(String content) throws Exception {
+        return content.getBytes("UTF-8");
+    }
+
+    @Test
+    public void testEncode() throws Exception {
+        Map<Object, Object> form = new LinkedHashMap<>();
+        form.put("name", "Ann Lee");
+        form.put("q", "a+b=c&d~e/f");
+        form.put(1, 2.5);
+        form.put("flag", null);
+        form.put("text", "caf\u00e9 \u20ac \ud83d\ude00");
+        assertEquals("name=Ann+Lee&q=a%2Bb%3Dc%26d%7Ee%2Ff&1=2.5&flag&text=caf%C3%A9+%E2%82%AC+%F0%9F%98%80",
+                string(FormCodec.encode(form)));
+        assertEquals("", string(FormCodec.encode(new LinkedHashMap<>())));
+    }
+
+    @Test
+    public void testEncodeAsUrlEncoder() throws Exception {
+        Random random = new Random(7);
+        for (int i = 0; i < 1000; i++) {
+            StringBuilder sb = new StringBuilder();
+            int length = random.nextInt(40);
+            for (int j = 0; j < length; j++) {
+                switch (random.nextInt(4)) {
+                    case 0:
+                        sb.append((char) random.nextInt(0x80));
+                        break;
+                    case 1:
+                        sb.append((char) (0x80 + random.nextInt(0x780)));
+                        break;
+                    case 2:
+                        sb.append((char) (0x800 + random.nextInt(0xd000)));
+                        break;
+                    default:
+                        sb.appendCodePoint(0x10000 + random.nextInt(0x100000));
+                }
+            }
+            String value = sb.toString();
+            Map<String, String> form = new LinkedHashMap<>();
+            form.put("k", value);
+            assertEquals(value, "k=" + URLEncoder.encode(value, "UTF-8"), string(FormCodec.encode(form)));
+            assertEquals(value, FormCodec.decode(FormCodec.encode(form)).get("k"));
+        }
+    }
+
+    @Test
+    public void testUnpairedSurrogate() throws Exception {
+        Map<String, String> form = new LinkedHashMap<>();
+        form.put("k", "a\ud800b\udc00");
+        assertEquals("k=" + URLEncoder.encode("a\ud800b\udc00", "UTF-8"), string(FormCodec.encode(form)));
+    }
+
+    @Test
+    public void testDecode() throws Exception {
+        Map<String, String> form = FormCodec.decode(bytes("a=1&b=x+y%2Bz&&c&d=&a=2&e=%e2%82%ac&=v&f=g=h"));
+        assertEquals("[a, b, c, d, e, , f]", form.keySet().toString());
+        //The last value of a repeated name
+        assertEquals("2", form.get("a"));
+        assertEquals("x y+z", form.get("b"));
+        assertTrue(form.containsKey("c"));
+        assertNull(form.get("c"));
+        assertEquals("", form.get("d"));
+        assertEquals("\u20ac", form.get("e"));
+        assertEquals("v", form.get(""));
+        assertEquals("g=h", form.get("f"));
+        assertEquals(URLDecoder.decode("%F0%9F%98%80+.", "UTF-8"), FormCodec.decode(bytes("k=%F0%9F%98%80+.")).get("k"));
+        assertTrue(FormCodec.decode(new byte[0]).isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIncompletePercent() throws Exception {
+        FormCodec.decode(bytes("a=%4"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIllegalPercent() throws Exception {
+        FormCodec.decode(bytes("a=%zz"));
+    }
+
+    @Test
+    public void testLargeForm() throws Exception {
+        Map<String, String> form = new LinkedHashMap<>();
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 50000; i++) {
+            value.append('\u00e9');
+        }
+        form.put("k", value.toString());
+        //Beyond the retained buffer, then a small form again
+        assertEquals(2 + 50000 * 6, FormCodec.encode(form).length);
+        assertEquals(value.toString(), FormCodec.decode(FormCodec.encode(form)).get("k"));
+        form.put("k", "v");
+        assertEquals("k=v", string(FormCodec.encode(form)));
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Ideal Technologies Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.ideal.restless;
+
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class GreedyDualSizeFrequencyTest {
+
+    @Test
+    public void testEvictLowestValuePerByte() throws Exception {
+        GreedyDualSizeFrequency<String> policy = new GreedyDualSizeFrequency<>();
+        //A small response from a slow backend and a large response from a fast CDN
+        policy.add("api", 2000, 50);
+        policy.add("asset", 20, 50 * 1024);
+        policy.add("page", 200, 5 * 1024);
+        assertEquals(50 + 55 * 1024, policy.size());
+
+        assertEquals("asset", policy.evict());
+        assertEquals("page", policy.evict());
+        assertEquals("api", policy.evict());
+        assertNull(policy.evict());
+        assertEquals(0, policy.size());
+    }
+
+    @Test
+    public void testFrequency() throws Exception {
+        GreedyDualSizeFrequency<String> policy = new GreedyDualSizeFrequency<>();
+        policy.add("a", 100, 100);
+        policy.add("b", 100, 100);
+        policy.access("a");
+        assertEquals("b", policy.evict());
+
+        //a, c and d have the same priority, the least recently accessed goes first
+        policy.add("c", 100, 100);
+        policy.add("d", 100, 100);
+        assertEquals("a", policy.evict());
+        assertEquals("c", policy.evict());
+    }
+
+    @Test
+    public void testAging() throws Exception {
+        GreedyDualSizeFrequency<String> policy = new GreedyDualSizeFrequency<>();
+        policy.add("costly", 1000, 100);
+        for (int i = 0; i < 3; i++) {
+            policy.add("cheap" + i, 100, 100);
+            policy.access("cheap" + i);
+            policy.access("cheap" + i);
+            assertEquals("cheap" + i, policy.evict());
+        }
+        //The evictions raised the priority of the new keys past the key no longer accessed
+        policy.add("new", 100, 100);
+        policy.access("new");
+        assertEquals("costly", policy.evict());
+    }
+
+    @Test
+    public void testReplaceKeepsFrequency() throws Exception {
+        GreedyDualSizeFrequency<String> policy = new GreedyDualSizeFrequency<>();
+        policy.add("a", 100, 100);
+        policy.access("a");
+        policy.add("a", 100, 200);
+        policy.add("b", 100, 100);
+        assertEquals(300, policy.size());
+        //a: 3 * 100 / 200, b: 1 * 100 / 100
+        assertEquals("a", policy.keys().get(0));
+
+        policy.remove("a");
+        assertEquals(100, policy.size());
+        List<String> keys = policy.keys();
+        assertEquals(1, keys.size());
+        assertEquals("b", keys.get(0));
+    }
+
+    /**
+     * Replay a trace of small responses from slow backends mixed with large responses from a fast
+     * CDN, and compare the network time saved by the hits against a byte bounded LRU.
+     */
+    @Test
+    public void testTraceSimulation() throws Exception {
+        int objects = 2000;
+        int requests = 200000;
+        Random random = new Random(42);
+        long[] size = new long[objects];
+        long[] latency = new long[objects];
+        long totalBytes = 0;
+        for (int i = 0; i < objects; i++) {
+            if (random.nextInt(5) == 0) {
+                size[i] = 200 + random.nextInt(1800);
+                latency[i] = 300 + random.nextInt(1700);
+            } else {
+                size[i] = 20 * 1024 + random.nextInt(80 * 1024);
+                latency[i] = 10 + random.nextInt(40);
+            }
+            totalBytes += size[i];
+        }
+        long capacity = totalBytes / 20;
+        int[] trace = new int[requests];
+        for (int i = 0; i < requests; i++) {
+            //Skewed popularity, a few objects take most of the requests
+            trace[i] = (int) (objects * Math.pow(random.nextDouble(), 3));
+        }
+
+        long gdsfSaved = 0;
+        GreedyDualSizeFrequency<Integer> policy = new GreedyDualSizeFrequency<>();
+        for (int key : trace) {
+            if (policy.access(key)) {
+                gdsfSaved += latency[key];
+            } else {
+                policy.add(key, latency[key], size[key]);
+                while (policy.size() > capacity) {
+                    policy.evict();
+                }
+            }
+        }
+
+        long lruSaved = 0;
+        long lruBytes = 0;
+        LinkedHashMap<Integer, Long> lru = new LinkedHashMap<>(16, 0.75f, true);
+        for (int key : trace) {
+            if (lru.get(key) != null) {
+                lruSaved += latency[key];
+            } else {
+                lru.put(key, size[key]);
+                lruBytes += size[key];
+                for (Iterator<Map.Entry<Integer, Long>> i = lru.entrySet().iterator(); lruBytes > capacity; ) {
+                    lruBytes -= i.next().getValue();
+                    i.remove();
+                }
+            }
+        }
+
+        assertTrue("Latency saved, GDSF: " + gdsfSaved + "ms, LRU: " + lruSaved + "ms",
+                gdsfSaved > lruSaved * 3 / 2);
+    }
+}
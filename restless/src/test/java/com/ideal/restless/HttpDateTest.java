@@ -0,0 +1,115 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Ideal Technologies Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.ideal.restless;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class HttpDateTest {
+
+    /**
+     * Sun, 06 Nov 1994 08:49:37 GMT
+     */
+    private static final long EXAMPLE = 784111777000L;
+
+    /**
+     * 2016-10-18T00:00:00Z
+     */
+    private static final long NOW = 1476748800000L;
+
+    private static final String[] VALID = {
+            "Sun, 06 Nov 1994 08:49:37 GMT",
+            "Sunday, 06-Nov-94 08:49:37 GMT",
+            "Sun Nov  6 08:49:37 1994",
+            "Sun Nov 6 08:49:37 1994",
+            "sun, 06 nov 1994 08:49:37 gmt",
+            "Sun, 6 Nov 1994 08:49:37 GMT",
+            "Sun, 06 Nov 1994 08:49:37 UTC",
+            "  Sun, 06 Nov 1994 08:49:37 GMT  ",
+    };
+
+    private static final String[] INVALID = {
+            "",
+            "0",
+            "-1",
+            "Sun",
+            "Sun, 06 Nov 1994",
+            "Sun, 06 Nov 1994 08:49:37",
+            "Sun, 06 Nov 1994 08:49:37 PST",
+            "Sun, 06 Nov 1994 08:49:37 GMT+1",
+            "Sun, 06 Foo 1994 08:49:37 GMT",
+            "Sun, 31 Nov 1994 08:49:37 GMT",
+            "Sun, 06 Nov 1994 24:00:00 GMT",
+            "Sun, 06 Nov 1994 08:60:37 GMT",
+            "Sun, 06 Nov 1994 8:49:37 GMT",
+            "Sun, 06 Nov 994 08:49:37 GMT",
+            "Sun, 06-Nov 1994 08:49:37 GMT",
+            "Sun, 006 Nov 1994 08:49:37 GMT",
+            "Sun Nov  6 08:49:37",
+            "Sun Nov  6 08:49:37 1994 GMT",
+            "2016-10-18T00:00:00Z",
+    };
+
+    @Test
+    public void testValid() throws Exception {
+        for (String value : VALID) {
+            assertEquals(value, EXAMPLE, HttpDate.parse(value, NOW));
+        }
+    }
+
+    @Test
+    public void testInvalid() throws Exception {
+        for (String value : INVALID) {
+            assertEquals(value, HttpDate.INVALID, HttpDate.parse(value, NOW));
+        }
+        assertEquals(HttpDate.INVALID, HttpDate.parse(null));
+    }
+
+    @Test
+    public void testCalendar() throws Exception {
+        assertEquals(0L, HttpDate.parse("Thu, 01 Jan 1970 00:00:00 GMT", NOW));
+        assertEquals(951782400000L, HttpDate.parse("Tue, 29 Feb 2000 00:00:00 GMT", NOW));
+        assertEquals(1456704000000L, HttpDate.parse("Mon, 29 Feb 2016 00:00:00 GMT", NOW));
+        assertEquals(HttpDate.INVALID, HttpDate.parse("Thu, 29 Feb 2100 00:00:00 GMT", NOW));
+        assertEquals(253402300799000L, HttpDate.parse("Fri, 31 Dec 9999 23:59:59 GMT", NOW));
+        //Leap second
+        assertEquals(1483228799000L, HttpDate.parse("Sat, 31 Dec 2016 23:59:60 GMT", NOW));
+    }
+
+    @Test
+    public void testTwoDigitYear() throws Exception {
+        //More than 50 years in the future is in the past century
+        assertEquals(HttpDate.parse("Thu, 01 Jan 1970 00:00:00 GMT", NOW),
+                HttpDate.parse("Thursday, 01-Jan-70 00:00:00 GMT", NOW));
+        assertEquals(HttpDate.parse("Sat, 01 Jan 2050 00:00:00 GMT", NOW),
+                HttpDate.parse("Saturday, 01-Jan-50 00:00:00 GMT", NOW));
+        assertEquals(HttpDate.parse("Mon, 18 Oct 2016 00:00:00 GMT", NOW),
+                HttpDate.parse("Monday, 18-Oct-16 00:00:00 GMT", NOW));
+    }
+}
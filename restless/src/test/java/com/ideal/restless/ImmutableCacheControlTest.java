@@ -0,0 +1,122 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Ideal Technologies Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.ideal.restless;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ImmutableCacheControlTest {
+
+    /**
+     * Header values and the expected directives as {@link ImmutableCacheControl#toString()}
+     */
+    private static final String[][] CORPUS = {
+            {"", ""},
+            {"no-cache", "no-cache"},
+            {"no-store", "no-store"},
+            {"NO-CACHE, No-Store", "no-cache, no-store"},
+            {"no-transform, must-revalidate, proxy-revalidate", "no-transform, must-revalidate, proxy-revalidate"},
+            {"public, max-age=3600", "public, max-age=3600"},
+            {"private, max-age=0", "private, max-age=0"},
+            {"s-maxage=60", "s-maxage=60"},
+            {"max-age=60, s-maxage=120", "max-age=60, s-maxage=120"},
+            {"max-age=\"60\"", "max-age=60"},
+            {"max-age = 60", "max-age=60"},
+            {"max-age=60,max-age=60", "max-age=60"},
+            {"max-age=60, max-age=120", "max-age=0"},
+            {"max-age=abc", ""},
+            {"max-age=", ""},
+            {"max-age", ""},
+            {"max-age=-1", ""},
+            {"max-age=99999999999999999999", "max-age=2147483648"},
+            {"no-cache=\"Set-Cookie, Set-Cookie2\", max-age=10", "no-cache, max-age=10"},
+            {"private=\"x\\\"y\", public", "public, private"},
+            {"no-cache-extension, x-max-age=60", ""},
+            {"community=\"UCI\", max-age=5", "max-age=5"},
+            {" , ,public,,", "public"},
+            {"only-if-cached", "only-if-cached"},
+            {"max-stale=60, min-fresh=10, stale-while-revalidate=30", ""},
+    };
+
+    @Test
+    public void testCorpus() throws Exception {
+        for (String[] entry : CORPUS) {
+            assertEquals(entry[0], entry[1], ImmutableCacheControl.parse(Arrays.asList(entry[0])).toString());
+        }
+    }
+
+    @Test
+    public void testMultipleHeaderValues() throws Exception {
+        CacheControl cc = ImmutableCacheControl.parse(Arrays.asList("public", "max-age=60", "must-revalidate"));
+
+        assertEquals(Long.valueOf(60), cc.getMaxAge());
+        assertTrue(cc.isMustRevalidate());
+        assertNull(cc.getSmaxAge());
+    }
+
+    @Test
+    public void testSMaxAge() throws Exception {
+        CacheControl cc = ImmutableCacheControl.parse(Arrays.asList("s-maxage=30"));
+
+        assertEquals(Long.valueOf(30), cc.getSmaxAge());
+        assertNull(cc.getMaxAge());
+    }
+
+    @Test
+    public void testSharedInstance() throws Exception {
+        assertSame(ImmutableCacheControl.parse(Arrays.asList("no-cache, no-store")),
+                ImmutableCacheControl.parse(Arrays.asList("no-store", "no-cache")));
+        assertSame(ImmutableCacheControl.parse(Arrays.asList("public")),
+                new CacheControl.Builder().isPublic().build());
+    }
+
+    @Test
+    public void testHeaders() throws Exception {
+        Map<String, List<String>> headers = new HashMap<>();
+        assertNull(ImmutableCacheControl.parse(headers));
+
+        List<String> values = new ArrayList<>();
+        values.add("no-cache");
+        headers.put("cache-control", values);
+        CacheControl cc = ImmutableCacheControl.parse(headers);
+        assertTrue(cc.isNoCache());
+        assertFalse(cc.isNoStore());
+        assertFalse(cc.onlyIfCached());
+    }
+}
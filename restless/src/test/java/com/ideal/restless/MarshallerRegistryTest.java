@@ -0,0 +1,164 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Ideal Technologies Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.ideal.restless;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class MarshallerRegistryTest {
+
+    private final DataMarshaller.StringMarshaller string = new DataMarshaller.StringMarshaller();
+    private final DataMarshaller.ByteArrayMarshaller bytes = new DataMarshaller.ByteArrayMarshaller();
+    private final DataMarshaller.UrlEncodedFormMarshaller form = new DataMarshaller.UrlEncodedFormMarshaller();
+    private final JsonStreamMarshaller.ObjectMarshaller json = new JsonStreamMarshaller.ObjectMarshaller();
+
+    @Test
+    public void testMediaType() throws Exception {
+        assertEquals("text/html", MarshallerRegistry.mediaType("text/html"));
+        assertEquals("text/html", MarshallerRegistry.mediaType(" Text/HTML ; charset=UTF-8"));
+        assertNull(MarshallerRegistry.mediaType(" ;charset=UTF-8"));
+        assertNull(MarshallerRegistry.mediaType(null));
+    }
+
+    @Test
+    public void testInbound() throws Exception {
+        MarshallerRegistry registry = MarshallerRegistry.EMPTY.with(string).with(bytes).with(json);
+
+        assertSame(string, registry.inbound("text/plain; charset=utf-8").get(0));
+        assertSame(string, registry.inbound("TEXT/HTML").get(0));
+        assertSame(bytes, registry.inbound("application/octet-stream").get(0));
+        assertSame(json, registry.inbound("application/json;charset=UTF-8").get(0));
+        //Memoized
+        assertSame(registry.inbound("text/plain"), registry.inbound("text/plain"));
+        //A substring of a registered media type does not match
+        assertNull(registry.inbound("text/plainer"));
+        assertNull(registry.inbound("application/xml"));
+        assertNull(registry.inbound(""));
+    }
+
+    @Test
+    public void testStructuredSyntaxSuffix() throws Exception {
+        MarshallerRegistry registry = MarshallerRegistry.EMPTY.with(json);
+
+        assertSame(json, registry.inbound("application/problem+json").get(0));
+        assertSame(json, registry.inbound("application/vnd.api+json; charset=utf-8").get(0));
+        assertNull(registry.inbound("application/json+"));
+    }
+
+    @Test
+    public void testLastRegisteredFirst() throws Exception {
+        DataMarshaller.JsonArrayDataMarshaller array = new DataMarshaller.JsonArrayDataMarshaller();
+        MarshallerRegistry registry = MarshallerRegistry.EMPTY.with(array).with(json);
+        List<DataMarshaller<?>> marshallers = registry.inbound("application/json");
+        assertEquals(2, marshallers.size());
+        assertSame(json, marshallers.get(0));
+        assertSame(array, marshallers.get(1));
+
+        //Registering again moves the marshaller to the front
+        marshallers = registry.with(array).inbound("application/json");
+        assertEquals(2, marshallers.size());
+        assertSame(array, marshallers.get(0));
+        //The registry is immutable
+        assertSame(json, registry.inbound("application/json").get(0));
+    }
+
+    @Test
+    public void testModelOutboundOnly() throws Exception {
+        ModelMarshaller<Person> model = new ModelMarshaller<>(Person.class);
+        MarshallerRegistry registry = MarshallerRegistry.EMPTY.with(json).with(model);
+
+        //The JSON responses are not bound to the registered model
+        List<DataMarshaller<?>> marshallers = registry.inbound("application/json");
+        assertEquals(1, marshallers.size());
+        assertSame(json, marshallers.get(0));
+        assertSame(model, registry.outbound(Person.class));
+
+        ModelMarshaller<Person> inbound = new ModelMarshaller<>(Person.class, true);
+        assertSame(inbound, registry.with(inbound).inbound("application/json").get(0));
+    }
+
+    @Test
+    public void testOutboundClassHierarchy() throws Exception {
+        MarshallerRegistry registry = MarshallerRegistry.EMPTY.with(string).with(form);
+
+        assertSame(string, registry.outbound(String.class));
+        assertSame(form, registry.outbound(LinkedHashMap.class));
+        //A subclass resolves to the marshaller of its superclass
+        assertSame(form, registry.outbound(new LinkedHashMap<String, String>() {
+        }.getClass()));
+        assertNull(registry.outbound(HashMap.class));
+        assertNull(registry.outbound(Integer.class));
+        assertNull(registry.outbound(Integer.class));
+    }
+
+    @Test
+    public void testOutboundInterface() throws Exception {
+        DataMarshaller<CharSequence> chars = new DataMarshaller<CharSequence>() {
+            @Override
+            public CharSequence unmarshal(byte[] content) throws Exception {
+                return new String(content, "UTF-8");
+            }
+
+            @Override
+            public byte[] marshal(CharSequence data) throws Exception {
+                return data.toString().getBytes("UTF-8");
+            }
+
+            @Override
+            public Class<CharSequence> getType() {
+                return CharSequence.class;
+            }
+
+            @Override
+            public String requestContentType() {
+                return "text/plain";
+            }
+
+            @Override
+            public String[] responseContentType() {
+                return null;
+            }
+        };
+        MarshallerRegistry registry = MarshallerRegistry.EMPTY.with(chars);
+
+        assertSame(chars, registry.outbound(StringBuilder.class));
+        assertSame(chars, registry.outbound(String.class));
+        assertNull(registry.inbound("text/plain"));
+    }
+
+    static class Person {
+        String name;
+    }
+}
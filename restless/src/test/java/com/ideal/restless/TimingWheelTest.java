@@ -0,0 +1,102 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2016 Ideal Technologies Ltd.
+ *
+ * Permission is hereby granted, free of charge, to any person
+ * obtaining a copy of this software and associated documentation
+ * files (the "Software"), to deal in the Software without
+ * restriction, including without limitation the rights to use,
+ * copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the
+ * Software is furnished to do so, subject to the following
+ * conditions:
+ *
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES
+ * OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT
+ * HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING
+ * FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR
+ * OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.ideal.restless;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TimingWheelTest {
+
+    private static final long TICK = 1000;
+
+    @Test
+    public void testExpireAtDeadline() throws Exception {
+        TimingWheel<String> wheel = new TimingWheel<>(TICK, 0);
+        wheel.schedule("a", 5000);
+        wheel.schedule("b", 5500);
+
+        assertTrue(wheel.advance(4999).isEmpty());
+        List<String> expired = wheel.advance(5000);
+        assertEquals(1, expired.size());
+        assertEquals("a", expired.get(0));
+        assertTrue(wheel.advance(5999).isEmpty());
+        assertEquals("b", wheel.advance(6000).get(0));
+    }
+
+    @Test
+    public void testCascade() throws Exception {
+        TimingWheel<Long> wheel = new TimingWheel<>(TICK, 0);
+        long[] deadlines = {63 * TICK, 64 * TICK, 65 * TICK, 4095 * TICK, 4096 * TICK,
+                4097 * TICK, 300000 * TICK};
+        for (long deadline : deadlines) {
+            wheel.schedule(deadline, deadline);
+        }
+        int count = 0;
+        for (long now = 0; now <= 300001 * TICK; now += TICK) {
+            for (Long deadline : wheel.advance(now)) {
+                assertEquals(deadline.longValue(), now);
+                count++;
+            }
+        }
+        assertEquals(deadlines.length, count);
+    }
+
+    @Test
+    public void testBeyondWheelRange() throws Exception {
+        TimingWheel<String> wheel = new TimingWheel<>(TICK, 0);
+        long deadline = 20000000 * TICK;
+        wheel.schedule("a", deadline);
+        assertTrue(wheel.advance(deadline - TICK).isEmpty());
+        assertEquals("a", wheel.advance(deadline).get(0));
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        TimingWheel<String> wheel = new TimingWheel<>(TICK, 0);
+        TimingWheel.Timeout<String> a = wheel.schedule("a", 2000);
+        wheel.schedule("b", 2000);
+        TimingWheel.Timeout<String> c = wheel.schedule("c", 200000);
+        wheel.cancel(a);
+        wheel.cancel(c);
+
+        List<String> expired = wheel.advance(300000);
+        assertEquals(1, expired.size());
+        assertEquals("b", expired.get(0));
+    }
+
+    @Test
+    public void testScheduleInThePast() throws Exception {
+        TimingWheel<String> wheel = new TimingWheel<>(TICK, 10000);
+        wheel.schedule("a", 5000);
+        assertEquals("a", wheel.advance(11000).get(0));
+    }
+}